@@ -0,0 +1,338 @@
+package br.com.witt.jpa.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that generates, for each class annotated with
+ * <code>br.com.witt.jpa.util.SqlResult</code>, a
+ * <code>br.com.witt.jpa.util.RowMapper</code> that creates the DTO instances by
+ * calling its constructor directly, and, for each package, a
+ * <code>br.com.witt.jpa.util.RowMapperRegistry</code> listing them, registered
+ * as a service so that <code>TypeConverter</code> finds the mappers at runtime.
+ *
+ * @author lucianowitt@gmail.com
+ */
+@SupportedAnnotationTypes(SqlResultProcessor.SQL_RESULT)
+public class SqlResultProcessor extends AbstractProcessor {
+
+	static final String SQL_RESULT = "br.com.witt.jpa.util.SqlResult";
+
+	private static final String ROW_MAPPER = "br.com.witt.jpa.util.RowMapper";
+	private static final String ROW_MAPPER_REGISTRY = "br.com.witt.jpa.util.RowMapperRegistry";
+	private static final String TYPE_CONVERTER = "br.com.witt.jpa.util.TypeConverter";
+	private static final String CONVERTER = "br.com.witt.jpa.util.Converter";
+	private static final String REGISTRY_NAME = "SqlResultRowMapperRegistry";
+
+	private final Set<String> registries = new LinkedHashSet<String>();
+	private final Set<String> generatedNames = new LinkedHashSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeServiceFile();
+			return false;
+		}
+
+		Map<String, List<TypeElement>> dtosByPackage = new LinkedHashMap<String, List<TypeElement>>();
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.CLASS) {
+					error(element, "@SqlResult can only be applied to classes");
+					continue;
+				}
+				TypeElement dto = (TypeElement) element;
+				String packageName = getPackageName(dto);
+				dtosByPackage.computeIfAbsent(packageName, k -> new ArrayList<TypeElement>()).add(dto);
+			}
+		}
+
+		for (Map.Entry<String, List<TypeElement>> entry : dtosByPackage.entrySet()) {
+			Map<TypeElement, String> mappers = new LinkedHashMap<TypeElement, String>();
+			for (TypeElement dto : entry.getValue()) {
+				String mapperName = writeMapper(entry.getKey(), dto);
+				if (Objects.nonNull(mapperName)) {
+					mappers.put(dto, mapperName);
+				}
+			}
+			if (!mappers.isEmpty()) {
+				writeRegistry(entry.getKey(), mappers);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the row mapper of the given DTO class.
+	 * 
+	 * @return the simple name of the generated mapper, or <code>null</code> if the
+	 *         class is not a valid result class
+	 */
+	private String writeMapper(String packageName, TypeElement dto) {
+		if (dto.getModifiers().contains(Modifier.PRIVATE) || dto.getModifiers().contains(Modifier.ABSTRACT)
+				|| (dto.getNestingKind() == NestingKind.MEMBER && !dto.getModifiers().contains(Modifier.STATIC))) {
+			error(dto, "@SqlResult classes must be concrete, non private and, if nested, static");
+			return null;
+		}
+
+		List<VariableElement> fields = getPersistentFields(dto);
+		if (!hasConstructor(dto, fields)) {
+			error(dto, "@SqlResult class must have a non private constructor with all its persistent fields as arguments,"
+					+ " in declaration order");
+			return null;
+		}
+
+		String dtoName = dto.getQualifiedName().toString();
+		String mapperName = uniqueName(packageName, getFlatName(dto) + "RowMapper");
+		StringBuilder code = new StringBuilder();
+		appendPackage(code, packageName);
+		code.append("final class ").append(mapperName).append(" implements ").append(ROW_MAPPER).append("<")
+				.append(dtoName).append("> {\n\n");
+		for (int i = 0; i < fields.size(); i++) {
+			code.append("\tprivate static final ").append(CONVERTER).append("<Object, ?> COLUMN").append(i)
+					.append(" = ").append(TYPE_CONVERTER).append(".getColumnConverter(")
+					.append(getRawTypeName(fields.get(i).asType())).append(".class);\n");
+		}
+		if (!fields.isEmpty()) {
+			code.append("\n");
+		}
+		code.append("\t@Override\n");
+		code.append("\t@SuppressWarnings(\"unchecked\")\n");
+		code.append("\tpublic ").append(dtoName).append(" map(Object[] row) {\n");
+		code.append("\t\tif (").append(fields.size()).append(" > row.length) {\n");
+		code.append("\t\t\tthrow new IllegalArgumentException(\"Wrong number of columns\");\n");
+		code.append("\t\t}\n");
+		code.append("\t\treturn new ").append(dtoName).append("(");
+		for (int i = 0; i < fields.size(); i++) {
+			TypeMirror type = fields.get(i).asType();
+			String rawType = getRawTypeName(type);
+			String castType = type.getKind().isPrimitive()
+					? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+					: rawType;
+			code.append(i == 0 ? "\n" : ",\n");
+			code.append("\t\t\t\t(").append(castType).append(") COLUMN").append(i).append(".convert(row[").append(i)
+					.append("])");
+		}
+		code.append(");\n");
+		code.append("\t}\n");
+		code.append("}\n");
+
+		writeSource(packageName, mapperName, code, dto);
+		return mapperName;
+	}
+
+	/**
+	 * Writes the registry of the mappers of the package, named after the DTO
+	 * classes it maps, so that modules with classes in the same package do not
+	 * generate registries with the same name.
+	 */
+	private void writeRegistry(String packageName, Map<TypeElement, String> mappers) {
+		StringBuilder dtoNames = new StringBuilder();
+		for (TypeElement dto : mappers.keySet()) {
+			dtoNames.append(dto.getQualifiedName()).append(';');
+		}
+		String hash = UUID.nameUUIDFromBytes(dtoNames.toString().getBytes(StandardCharsets.UTF_8)).toString();
+		String registryName = uniqueName(packageName, REGISTRY_NAME + "_" + hash.substring(0, 8));
+		StringBuilder code = new StringBuilder();
+		appendPackage(code, packageName);
+		code.append("public final class ").append(registryName).append(" implements ").append(ROW_MAPPER_REGISTRY)
+				.append(" {\n\n");
+		code.append("\t@Override\n");
+		code.append("\tpublic java.util.Map<Class<?>, ").append(ROW_MAPPER).append("<?>> getRowMappers() {\n");
+		code.append("\t\tjava.util.Map<Class<?>, ").append(ROW_MAPPER).append("<?>> mappers = new java.util.HashMap<Class<?>, ")
+				.append(ROW_MAPPER).append("<?>>();\n");
+		for (Map.Entry<TypeElement, String> entry : mappers.entrySet()) {
+			code.append("\t\tmappers.put(").append(entry.getKey().getQualifiedName()).append(".class, new ")
+					.append(entry.getValue()).append("());\n");
+		}
+		code.append("\t\treturn mappers;\n");
+		code.append("\t}\n");
+		code.append("}\n");
+
+		TypeElement[] originating = mappers.keySet().toArray(new TypeElement[mappers.size()]);
+		writeSource(packageName, registryName, code, originating);
+		registries.add(packageName.isEmpty() ? registryName : packageName + "." + registryName);
+	}
+
+	/**
+	 * Writes the service file of the registries, keeping the ones listed by the
+	 * file already in the output, as written by a previous incremental
+	 * compilation of other classes.
+	 */
+	private void writeServiceFile() {
+		if (registries.isEmpty()) {
+			return;
+		}
+		String path = "META-INF/services/" + ROW_MAPPER_REGISTRY;
+		Set<String> all = new LinkedHashSet<String>();
+		try {
+			FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", path);
+			try (BufferedReader reader = new BufferedReader(existing.openReader(true))) {
+				for (String line = reader.readLine(); Objects.nonNull(line); line = reader.readLine()) {
+					int comment = line.indexOf('#');
+					String registry = (comment < 0 ? line : line.substring(0, comment)).trim();
+					if (!registry.isEmpty()) {
+						all.add(registry);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// no service file written yet
+		}
+		all.addAll(registries);
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+			try (PrintWriter writer = new PrintWriter(file.openWriter())) {
+				for (String registry : all) {
+					writer.println(registry);
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Could not write the row mapper registry service file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Gives the persistent fields of the DTO class, in declaration order, with the
+	 * same rules used by <code>TypeConverter</code>.
+	 */
+	private List<VariableElement> getPersistentFields(TypeElement dto) {
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+		for (VariableElement field : ElementFilter.fieldsIn(dto.getEnclosedElements())) {
+			Set<Modifier> modifiers = field.getModifiers();
+			if (!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.TRANSIENT) && !isTransient(field)) {
+				fields.add(field);
+			}
+		}
+		return fields;
+	}
+
+	private boolean isTransient(VariableElement field) {
+		for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+			String name = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+			if ("javax.persistence.Transient".equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasConstructor(TypeElement dto, List<VariableElement> fields) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(dto.getEnclosedElements())) {
+			if (constructor.getModifiers().contains(Modifier.PRIVATE)
+					|| constructor.getParameters().size() != fields.size()) {
+				continue;
+			}
+			boolean matches = true;
+			for (int i = 0; i < fields.size() && matches; i++) {
+				TypeMirror parameterType = processingEnv.getTypeUtils().erasure(constructor.getParameters().get(i).asType());
+				TypeMirror fieldType = processingEnv.getTypeUtils().erasure(fields.get(i).asType());
+				matches = processingEnv.getTypeUtils().isSameType(parameterType, fieldType);
+			}
+			if (matches) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gives the name of the erasure of the given type, as the declared, array and
+	 * type variable types are converted to their raw class.
+	 */
+	private String getRawTypeName(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return type.toString();
+		}
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private String getPackageName(TypeElement type) {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+	}
+
+	/**
+	 * Gives the name of the class without the package, with the names of the
+	 * enclosing classes separated by underscores.
+	 */
+	private String getFlatName(TypeElement type) {
+		String name = type.getSimpleName().toString();
+		Element enclosing = type.getEnclosingElement();
+		while (enclosing instanceof TypeElement) {
+			name = enclosing.getSimpleName() + "_" + name;
+			enclosing = enclosing.getEnclosingElement();
+		}
+		return name;
+	}
+
+	/**
+	 * Gives a class name not yet generated in the package, as classes annotated in
+	 * later processing rounds get a registry of their own.
+	 */
+	private String uniqueName(String packageName, String name) {
+		String candidate = name;
+		for (int i = 2; !generatedNames.add(packageName + "." + candidate); i++) {
+			candidate = name + i;
+		}
+		return candidate;
+	}
+
+	private void appendPackage(StringBuilder code, String packageName) {
+		if (!packageName.isEmpty()) {
+			code.append("package ").append(packageName).append(";\n\n");
+		}
+		code.append("/**\n * Generated by ").append(SqlResultProcessor.class.getName()).append(".\n */\n");
+	}
+
+	private void writeSource(String packageName, String className, StringBuilder code, Element... originating) {
+		String name = packageName.isEmpty() ? className : packageName + "." + className;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(name, originating).openWriter()) {
+			writer.write(code.toString());
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Could not write " + name + ": " + e.getMessage());
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
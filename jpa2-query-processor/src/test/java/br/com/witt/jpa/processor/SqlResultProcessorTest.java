@@ -0,0 +1,181 @@
+package br.com.witt.jpa.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import br.com.witt.jpa.util.Converter;
+import br.com.witt.jpa.util.RowMapper;
+import br.com.witt.jpa.util.RowMapperRegistry;
+
+class SqlResultProcessorTest {
+
+	private static final String SERVICE_FILE = "META-INF/services/br.com.witt.jpa.util.RowMapperRegistry";
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void generatesMapperWithConvertersResolvedOnce() throws Exception {
+		compile(dir, "dto.Summary", "package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class Summary {\n"
+				+ "\tpublic final Long id;\n\tpublic final String name;\n\tpublic final int count;\n"
+				+ "\tpublic Summary(Long id, String name, int count) {\n"
+				+ "\t\tthis.id = id;\n\t\tthis.name = name;\n\t\tthis.count = count;\n\t}\n}\n");
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, getClass().getClassLoader())) {
+			Class<?> mapperClass = loader.loadClass("dto.SummaryRowMapper");
+			List<Field> converters = new ArrayList<Field>();
+			for (Field field : mapperClass.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) && field.getType() == Converter.class) {
+					converters.add(field);
+				}
+			}
+			assertEquals(3, converters.size());
+
+			RowMapper<?> mapper = getRowMappers(loader).get(loader.loadClass("dto.Summary"));
+			Object summary = mapper.map(new Object[] { BigInteger.TEN, "Sales", new BigDecimal("3") });
+			assertEquals(10L, summary.getClass().getField("id").get(summary));
+			assertEquals("Sales", summary.getClass().getField("name").get(summary));
+			assertEquals(3, summary.getClass().getField("count").get(summary));
+		}
+	}
+
+	@Test
+	void mapsNullToTheDefaultValueOfPrimitiveFields() throws Exception {
+		compile(dir, "dto.Total", "package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class Total {\n"
+				+ "\tpublic final long sum;\n\tpublic final boolean known;\n"
+				+ "\tpublic Total(long sum, boolean known) {\n\t\tthis.sum = sum;\n\t\tthis.known = known;\n\t}\n}\n");
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, getClass().getClassLoader())) {
+			Object total = getRowMappers(loader).get(loader.loadClass("dto.Total")).map(new Object[] { null, null });
+			assertEquals(0L, total.getClass().getField("sum").get(total));
+			assertEquals(false, total.getClass().getField("known").get(total));
+		}
+	}
+
+	@Test
+	void convertsTypeVariableFieldsToTheirBounds() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> errors = compile(dir, "dto.Pair",
+				"package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class Pair<K, V extends Number> {\n"
+						+ "\tpublic final K key;\n\tpublic final V value;\n"
+						+ "\tpublic Pair(K key, V value) {\n\t\tthis.key = key;\n\t\tthis.value = value;\n\t}\n}\n");
+
+		assertEquals(0, errors.size(), errors.toString());
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, getClass().getClassLoader())) {
+			Object pair = getRowMappers(loader).get(loader.loadClass("dto.Pair"))
+					.map(new Object[] { "total", new BigDecimal("3") });
+			assertEquals("total", pair.getClass().getField("key").get(pair));
+			assertEquals(new BigDecimal("3"), pair.getClass().getField("value").get(pair));
+		}
+	}
+
+	@Test
+	void keepsTheRegistriesOfPreviousCompilations() throws Exception {
+		compile(dir, "dto.First", "package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class First {\n"
+				+ "\tprivate final String name;\n\tpublic First(String name) {\n\t\tthis.name = name;\n\t}\n}\n");
+		String first = readServiceFile(dir);
+		compile(dir, "dto.Second", "package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class Second {\n"
+				+ "\tprivate final String name;\n\tpublic Second(String name) {\n\t\tthis.name = name;\n\t}\n}\n");
+
+		List<String> registries = Arrays.asList(readServiceFile(dir).split("\\s+"));
+		assertEquals(2, registries.size(), registries.toString());
+		assertEquals(first, registries.get(0));
+	}
+
+	@Test
+	void namesRegistriesAfterTheirClasses(@TempDir Path other) throws Exception {
+		compile(dir, "dto.First", "package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class First {\n"
+				+ "\tprivate final String name;\n\tpublic First(String name) {\n\t\tthis.name = name;\n\t}\n}\n");
+		compile(other, "dto.Second", "package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class Second {\n"
+				+ "\tprivate final String name;\n\tpublic Second(String name) {\n\t\tthis.name = name;\n\t}\n}\n");
+
+		String first = readServiceFile(dir);
+		String second = readServiceFile(other);
+		assertTrue(first.startsWith("dto.SqlResultRowMapperRegistry_"), first);
+		assertTrue(second.startsWith("dto.SqlResultRowMapperRegistry_"), second);
+		assertNotEquals(first, second);
+	}
+
+	@Test
+	void rejectsClassesWithoutFieldsConstructor() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> errors = compile(dir, "dto.Broken",
+				"package dto;\n@br.com.witt.jpa.util.SqlResult\npublic class Broken {\n"
+						+ "\tprivate final String name;\n\tpublic Broken() {\n\t\tthis.name = null;\n\t}\n}\n");
+
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0).getMessage(Locale.ROOT).contains("constructor"));
+		assertFalse(Files.exists(dir.resolve(SERVICE_FILE)));
+	}
+
+	/**
+	 * Compiles the given source with the processor, to the given directory.
+	 * 
+	 * @return the errors reported
+	 */
+	private static List<Diagnostic<? extends JavaFileObject>> compile(Path output, String className, String code)
+			throws IOException, URISyntaxException {
+		Path source = output.resolve("src").resolve(className.replace('.', File.separatorChar) + ".java");
+		Files.createDirectories(source.getParent());
+		Files.write(source, code.getBytes(StandardCharsets.UTF_8));
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, Locale.ROOT,
+				StandardCharsets.UTF_8)) {
+			String classPath = new File(RowMapper.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+					.getPath();
+			JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+					Arrays.asList("-classpath", classPath, "-d", output.toString(), "-s", output.toString()), null,
+					files.getJavaFileObjects(source.toFile()));
+			task.setProcessors(Arrays.asList(new SqlResultProcessor()));
+			task.call();
+		}
+		List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic);
+			}
+		}
+		return errors;
+	}
+
+	private static String readServiceFile(Path output) throws IOException {
+		return new String(Files.readAllBytes(output.resolve(SERVICE_FILE)), StandardCharsets.UTF_8).trim();
+	}
+
+	private Map<Class<?>, RowMapper<?>> getRowMappers(ClassLoader loader) throws Exception {
+		String registryName = readServiceFile(dir);
+		RowMapperRegistry registry = (RowMapperRegistry) loader.loadClass(registryName).getDeclaredConstructor()
+				.newInstance();
+		return registry.getRowMappers();
+	}
+}
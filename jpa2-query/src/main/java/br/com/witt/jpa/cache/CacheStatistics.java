@@ -0,0 +1,111 @@
+package br.com.witt.jpa.cache;
+
+/**
+ * Snapshot of the counters of a {@link QueryResultCache}.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class CacheStatistics {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long expirationCount;
+	private final long invalidationCount;
+	private final long size;
+	private final long rows;
+
+	protected CacheStatistics(long hitCount, long missCount, long evictionCount, long expirationCount,
+			long invalidationCount, long size, long rows) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+		this.invalidationCount = invalidationCount;
+		this.size = size;
+		this.rows = rows;
+	}
+
+	/**
+	 * Gives the number of lookups that found a valid entry.
+	 * 
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Gives the number of lookups that executed the query.
+	 * 
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Gives the number of entries evicted to keep the cache within its limits.
+	 * 
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Gives the number of entries discarded because their time to live had
+	 * elapsed.
+	 * 
+	 * @return the expiration count
+	 */
+	public long getExpirationCount() {
+		return expirationCount;
+	}
+
+	/**
+	 * Gives the number of entries discarded because one of their tags was
+	 * invalidated.
+	 * 
+	 * @return the invalidation count
+	 */
+	public long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	/**
+	 * Gives the ratio of hits among all the lookups.
+	 * 
+	 * @return the hit ratio, between 0 and 1
+	 */
+	public double getHitRatio() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Gives the number of entries in the cache, including the ones not yet
+	 * discarded after expiring or being invalidated.
+	 * 
+	 * @return the number of entries
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gives the number of rows of all the results in the cache.
+	 * 
+	 * @return the number of rows
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics [hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+				+ ", expirations=" + expirationCount + ", invalidations=" + invalidationCount + ", size=" + size
+				+ ", rows=" + rows + "]";
+	}
+}
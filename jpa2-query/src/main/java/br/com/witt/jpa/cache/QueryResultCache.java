@@ -0,0 +1,321 @@
+package br.com.witt.jpa.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of query results, keyed by the query text and the bound parameters.
+ * The cache is bounded by the number of entries and by the total number of
+ * rows cached, evicting the least recently used entries when any of the limits
+ * is reached, and each entry expires after its time to live.<br>
+ * The entries are split among segments, each one with its own lock, so that
+ * concurrent queries seldom contend for the same lock. Each entry is tagged by
+ * the entities or tables of its query, and is discarded when any of its tags
+ * is invalidated, which happens when an update statement on a matching entity
+ * or table is executed through the query facades, and again when its
+ * transaction completes.<br>
+ * Only results that are safe to share among threads and persistence contexts,
+ * such as DTOs, scalars or reference data entities, should be cached.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class QueryResultCache {
+
+	private static final Pattern SOURCE_PATTERN = Pattern
+			.compile("\\b(?:from|join|update|into)\\s+([A-Za-z_$][\\w$.]*)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern TARGET_PATTERN = Pattern.compile(
+			"^\\s*(?:update|delete\\s+from|delete|insert\\s+into|merge\\s+into)\\s+([A-Za-z_$][\\w$.]*)",
+			Pattern.CASE_INSENSITIVE);
+
+	private final Segment[] segments;
+	private final Duration defaultTimeToLive;
+	private final Map<String, AtomicLong> tagVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param maxEntries        the maximum number of cached results
+	 * @param maxRows           the maximum number of rows of all the cached
+	 *                          results, as an approximation of the cache size
+	 * @param defaultTimeToLive the time to live of the entries of the queries that
+	 *                          do not inform one
+	 */
+	public QueryResultCache(int maxEntries, long maxRows, Duration defaultTimeToLive) {
+		if (maxEntries <= 0 || maxRows <= 0) {
+			throw new IllegalArgumentException("Cache limits must be positive");
+		}
+		this.defaultTimeToLive = Objects.requireNonNull(defaultTimeToLive, "Time to live cannot be null");
+		int count = 1;
+		while (count < 16 && count * 2 <= maxEntries) {
+			count *= 2;
+		}
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment((maxEntries + count - 1) / count, (maxRows + count - 1) / count);
+		}
+	}
+
+	/**
+	 * Gives the cached result for the key, or loads, caches and returns it, if it
+	 * is not cached or has expired.
+	 * 
+	 * @param <T>        the type of the result
+	 * @param key        the key, made of the query text, parameters and any other
+	 *                   setting that affects the result
+	 * @param timeToLive the time to live of the entry, or <code>null</code> for the
+	 *                   default time to live of this cache
+	 * @param tags       the tags of the entry, usually the names of the entities
+	 *                   or tables of the query
+	 * @param loader     the function that executes the query
+	 * @param weigher    the function that gives the number of rows of the result
+	 * @return the result
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Duration timeToLive, Collection<String> tags, Supplier<T> loader,
+			ToIntFunction<T> weigher) {
+		Segment segment = segmentFor(key);
+		long now = System.nanoTime();
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.map.get(key);
+			if (Objects.nonNull(entry)) {
+				if (now - entry.expiresAt >= 0) {
+					segment.remove(key);
+					expirations.increment();
+					entry = null;
+				} else if (!isCurrent(entry)) {
+					segment.remove(key);
+					invalidations.increment();
+					entry = null;
+				}
+			}
+		}
+		if (Objects.nonNull(entry)) {
+			hits.increment();
+			return (T) entry.value;
+		}
+
+		misses.increment();
+		String[] entryTags = normalize(tags);
+		long[] versions = new long[entryTags.length];
+		for (int i = 0; i < entryTags.length; i++) {
+			versions[i] = versionOf(entryTags[i]).get();
+		}
+		T value = loader.get();
+		long ttl = (Objects.isNull(timeToLive) ? defaultTimeToLive : timeToLive).toNanos();
+		Entry newEntry = new Entry(value, Math.max(1, weigher.applyAsInt(value)), System.nanoTime() + ttl, entryTags,
+				versions);
+		if (isCurrent(newEntry)) {
+			synchronized (segment) {
+				segment.put(key, newEntry);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Invalidates the entries with the given tag. Entries are discarded lazily, on
+	 * their next access or when evicted.
+	 * 
+	 * @param tag the tag, usually the name of an entity or table
+	 */
+	public void invalidate(String tag) {
+		versionOf(normalize(tag)).incrementAndGet();
+	}
+
+	/**
+	 * Invalidates the entries tagged by the target entity or table of the given
+	 * update, delete or insert statement.
+	 * 
+	 * @param statement the JPQL or SQL statement
+	 */
+	public void invalidateStatement(String statement) {
+		if (Objects.isNull(statement)) {
+			return;
+		}
+		Matcher matcher = TARGET_PATTERN.matcher(statement);
+		if (matcher.find()) {
+			for (String tag : expand(matcher.group(1))) {
+				invalidate(tag);
+			}
+		}
+	}
+
+	/**
+	 * Discards all the entries.
+	 */
+	public void invalidateAll() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gives a snapshot of the cache counters.
+	 * 
+	 * @return the cache statistics
+	 */
+	public CacheStatistics getStatistics() {
+		long size = 0;
+		long rows = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.map.size();
+				rows += segment.rows;
+			}
+		}
+		return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(),
+				size, rows);
+	}
+
+	/**
+	 * Gives the names of the entities or tables referenced by the from, join,
+	 * update and into clauses of a JPQL or SQL statement, to be used as tags of
+	 * its cached results.
+	 * 
+	 * @param statement the JPQL or SQL statement
+	 * @return the tags
+	 */
+	public static Set<String> extractTags(String statement) {
+		Set<String> tags = new LinkedHashSet<String>();
+		if (Objects.nonNull(statement)) {
+			Matcher matcher = SOURCE_PATTERN.matcher(statement);
+			while (matcher.find()) {
+				tags.addAll(expand(matcher.group(1)));
+			}
+		}
+		return tags;
+	}
+
+	/**
+	 * Gives the name and, if qualified by a schema, the name without the schema.
+	 */
+	private static Set<String> expand(String name) {
+		Set<String> names = new LinkedHashSet<String>();
+		names.add(normalize(name));
+		int dot = name.lastIndexOf('.');
+		if (dot >= 0 && dot < name.length() - 1) {
+			names.add(normalize(name.substring(dot + 1)));
+		}
+		return names;
+	}
+
+	private static String normalize(String tag) {
+		return tag.trim().toLowerCase();
+	}
+
+	private static String[] normalize(Collection<String> tags) {
+		if (Objects.isNull(tags)) {
+			return new String[0];
+		}
+		Set<String> normalized = new LinkedHashSet<String>();
+		for (String tag : tags) {
+			normalized.add(normalize(tag));
+		}
+		return normalized.toArray(new String[normalized.size()]);
+	}
+
+	private AtomicLong versionOf(String tag) {
+		AtomicLong version = tagVersions.get(tag);
+		if (Objects.isNull(version)) {
+			version = tagVersions.computeIfAbsent(tag, k -> new AtomicLong());
+		}
+		return version;
+	}
+
+	private boolean isCurrent(Entry entry) {
+		for (int i = 0; i < entry.tags.length; i++) {
+			if (versionOf(entry.tags[i]).get() != entry.versions[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (segments.length - 1)];
+	}
+
+	private static class Entry {
+
+		final Object value;
+		final int rows;
+		final long expiresAt;
+		final String[] tags;
+		final long[] versions;
+
+		Entry(Object value, int rows, long expiresAt, String[] tags, long[] versions) {
+			this.value = value;
+			this.rows = rows;
+			this.expiresAt = expiresAt;
+			this.tags = tags;
+			this.versions = versions;
+		}
+	}
+
+	/**
+	 * Part of the cache, with its share of the limits, guarded by its own monitor.
+	 */
+	private class Segment {
+
+		final LinkedHashMap<Object, Entry> map = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+		final int maxEntries;
+		final long maxRows;
+		long rows;
+
+		Segment(int maxEntries, long maxRows) {
+			this.maxEntries = maxEntries;
+			this.maxRows = maxRows;
+		}
+
+		void put(Object key, Entry entry) {
+			Entry previous = map.put(key, entry);
+			if (Objects.nonNull(previous)) {
+				rows -= previous.rows;
+			}
+			rows += entry.rows;
+			Iterator<Entry> eldest = map.values().iterator();
+			while ((map.size() > maxEntries || rows > maxRows) && eldest.hasNext()) {
+				Entry evicted = eldest.next();
+				eldest.remove();
+				rows -= evicted.rows;
+				evictions.increment();
+			}
+		}
+
+		void remove(Object key) {
+			Entry removed = map.remove(key);
+			if (Objects.nonNull(removed)) {
+				rows -= removed.rows;
+			}
+		}
+
+		void clear() {
+			map.clear();
+			rows = 0;
+		}
+	}
+}
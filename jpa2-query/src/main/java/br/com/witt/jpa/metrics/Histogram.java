@@ -0,0 +1,160 @@
+package br.com.witt.jpa.metrics;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values, such as latencies in nanoseconds
+ * or row counts. Values are counted in log-linear buckets: each power of two
+ * range is split in 32 linear sub-buckets, so that the values given by the
+ * percentiles are within about 3% of the recorded ones. The sub-buckets of
+ * each range are allocated on its first value, so that a histogram takes about
+ * 300 bytes per range in use, a few KB for the latencies of a query, and
+ * records without allocating once its ranges are in use.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int RANGES = 64 - SUB_BUCKET_BITS;
+
+	private final AtomicReferenceArray<AtomicLongArray> ranges = new AtomicReferenceArray<AtomicLongArray>(RANGES);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values are recorded as zero.
+	 * 
+	 * @param value the value
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int index = indexOf(value);
+		rangeOf(index / SUB_BUCKETS).incrementAndGet(index % SUB_BUCKETS);
+		count.increment();
+		sum.add(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Gives the number of values recorded.
+	 * 
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Gives the sum of the values recorded.
+	 * 
+	 * @return the sum
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Gives the mean of the values recorded.
+	 * 
+	 * @return the mean, or 0 if no value was recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Gives the largest value recorded.
+	 * 
+	 * @return the maximum, or 0 if no value was recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gives the value below or at which the given percentage of the recorded
+	 * values fall, rounded up to the upper bound of its bucket.
+	 * 
+	 * @param percentile the percentage, from 0 to 100
+	 * @return the value at the percentile, or 0 if no value was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		}
+		long[] snapshot = new long[RANGES * SUB_BUCKETS];
+		long total = 0;
+		for (int range = 0; range < RANGES; range++) {
+			AtomicLongArray counts = ranges.get(range);
+			for (int i = 0; Objects.nonNull(counts) && i < SUB_BUCKETS; i++) {
+				snapshot[range * SUB_BUCKETS + i] = counts.get(i);
+				total += snapshot[range * SUB_BUCKETS + i];
+			}
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private AtomicLongArray rangeOf(int range) {
+		AtomicLongArray counts = ranges.get(range);
+		if (Objects.isNull(counts)) {
+			ranges.compareAndSet(range, null, new AtomicLongArray(SUB_BUCKETS));
+			counts = ranges.get(range);
+		}
+		return counts;
+	}
+
+	/**
+	 * Gives the number of ranges whose sub-buckets are allocated.
+	 */
+	int getAllocatedRanges() {
+		int allocated = 0;
+		for (int range = 0; range < RANGES; range++) {
+			if (Objects.nonNull(ranges.get(range))) {
+				allocated++;
+			}
+		}
+		return allocated;
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
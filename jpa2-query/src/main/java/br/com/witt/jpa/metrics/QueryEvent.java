@@ -0,0 +1,190 @@
+package br.com.witt.jpa.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Measurements of one execution of a query, given to the
+ * {@link QueryListener}s.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class QueryEvent {
+
+	/**
+	 * Operation executed on the query. A {@link Operation#RESULT_STREAM} is
+	 * reported when its stream is closed, with the number of results read.
+	 */
+	public enum Operation {
+		SINGLE_RESULT, RESULT_LIST, RESULT_PAGE, SCALAR, UPDATE, RESULT_STREAM
+	}
+
+	private final String name;
+	private final String statement;
+	private final boolean nativeStatement;
+	private final String fingerprint;
+	private final Map<String, Object> parameters;
+	private final Operation operation;
+	private final long buildNanos;
+	private final long executeNanos;
+	private final long conversionNanos;
+	private final long totalNanos;
+	private final int rows;
+	private final boolean cacheHit;
+	private final Throwable error;
+
+	public QueryEvent(String name, String statement, boolean nativeStatement, String fingerprint,
+			Map<String, Object> parameters, Operation operation, long buildNanos, long executeNanos, long conversionNanos, long totalNanos, int rows,
+			boolean cacheHit, Throwable error) {
+		this.name = name;
+		this.statement = statement;
+		this.nativeStatement = nativeStatement;
+		this.fingerprint = fingerprint;
+		this.parameters = Collections.unmodifiableMap(parameters);
+		this.operation = operation;
+		this.buildNanos = buildNanos;
+		this.executeNanos = executeNanos;
+		this.conversionNanos = conversionNanos;
+		this.totalNanos = totalNanos;
+		this.rows = rows;
+		this.cacheHit = cacheHit;
+		this.error = error;
+	}
+
+	/**
+	 * Gives the name given to the query, if any.
+	 * 
+	 * @return the query name, or <code>null</code>
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gives the JPQL or SQL statement of the query. For criteria queries, it is
+	 * the JPQL rendered by the persistence provider, when available, or else a
+	 * description of the structure of the criteria tree.
+	 * 
+	 * @return the statement
+	 */
+	public String getStatement() {
+		return statement;
+	}
+
+	/**
+	 * Tells whether the statement is native SQL, rather than JPQL.
+	 * 
+	 * @return <code>true</code> for SQL queries
+	 */
+	public boolean isNativeStatement() {
+		return nativeStatement;
+	}
+
+	/**
+	 * Gives the fingerprint of the statement, the same for all the executions of
+	 * the same query shape, whatever the values of its parameters. For criteria
+	 * queries, it is the fingerprint of the JPQL rendered by the persistence
+	 * provider, when available, or else of the structure of the tree: the
+	 * selections, the roots and joins, and the shapes of the predicates.
+	 * 
+	 * @return the fingerprint
+	 * @see {@link QueryFingerprint#of(String)}
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Gives the name given to the query or, if none, its fingerprint.
+	 * 
+	 * @return the key of the query
+	 */
+	public String getKey() {
+		return Objects.nonNull(name) ? name : fingerprint;
+	}
+
+	/**
+	 * Gives the values of the parameters bound to the query.
+	 * 
+	 * @return the parameter values, by name
+	 */
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Gives the operation executed.
+	 * 
+	 * @return the operation
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Gives the time spent creating the provider query.
+	 * 
+	 * @return the build time, in nanoseconds
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * Gives the time spent executing the query in the database and reading its
+	 * results, including the entities, summed over the chunks of chunked queries.
+	 * 
+	 * @return the execution time, in nanoseconds
+	 */
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+
+	/**
+	 * Gives the time spent converting the rows of SQL queries to their result
+	 * class.
+	 * 
+	 * @return the conversion time, in nanoseconds
+	 */
+	public long getConversionNanos() {
+		return conversionNanos;
+	}
+
+	/**
+	 * Gives the time elapsed from the call of the operation to its return.
+	 * 
+	 * @return the total time, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gives the number of results returned, or of rows affected by an update.
+	 * 
+	 * @return the row count
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Tells whether the results came from the result cache, without executing the
+	 * query.
+	 * 
+	 * @return <code>true</code> on a cache hit
+	 */
+	public boolean isCacheHit() {
+		return cacheHit;
+	}
+
+	/**
+	 * Gives the exception thrown by the operation, if any.
+	 * 
+	 * @return the error, or <code>null</code> if the operation succeeded
+	 */
+	public Throwable getError() {
+		return error;
+	}
+}
@@ -0,0 +1,45 @@
+package br.com.witt.jpa.metrics;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization of JPQL and SQL statements into fingerprints, which are the
+ * same for all the statements of the same shape: literals and parameters are
+ * replaced by <code>?</code>, lists of them are collapsed into one, and the
+ * white space and letter case are normalized.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public final class QueryFingerprint {
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern NAMED_PARAMETER = Pattern.compile("(?<!:):[A-Za-z_]\\w*");
+	private static final Pattern POSITIONAL_PARAMETER = Pattern.compile("\\?\\d*");
+	private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	private static final Pattern WHITE_SPACE = Pattern.compile("\\s+");
+
+	private QueryFingerprint() {
+	}
+
+	/**
+	 * Gives the fingerprint of the given statement.
+	 * 
+	 * @param statement the JPQL or SQL statement
+	 * @return the fingerprint, or <code>null</code> if the statement is
+	 *         <code>null</code>
+	 */
+	public static String of(String statement) {
+		if (Objects.isNull(statement)) {
+			return null;
+		}
+		String fingerprint = STRING_LITERAL.matcher(statement).replaceAll("?");
+		fingerprint = NAMED_PARAMETER.matcher(fingerprint).replaceAll("?");
+		fingerprint = POSITIONAL_PARAMETER.matcher(fingerprint).replaceAll("?");
+		fingerprint = NUMBER_LITERAL.matcher(fingerprint).replaceAll("?");
+		fingerprint = PLACEHOLDER_LIST.matcher(fingerprint).replaceAll("(?)");
+		return WHITE_SPACE.matcher(fingerprint).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+	}
+}
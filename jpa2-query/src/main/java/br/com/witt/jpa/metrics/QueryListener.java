@@ -0,0 +1,22 @@
+package br.com.witt.jpa.metrics;
+
+/**
+ * Listener of the query executions made through the facades created by a
+ * {@link br.com.witt.jpa.query.JpaQueryFactory} where it is registered. It is
+ * notified after each execution, in the executing thread, so it must be fast
+ * and thread safe.
+ * 
+ * @see {@link QueryMetrics}
+ * 
+ * @author lucianowitt@gmail.com
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+	/**
+	 * Called after the execution of a query, successful or not.
+	 * 
+	 * @param event the execution measurements
+	 */
+	void queryExecuted(QueryEvent event);
+}
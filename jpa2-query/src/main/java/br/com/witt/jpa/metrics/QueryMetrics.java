@@ -0,0 +1,114 @@
+package br.com.witt.jpa.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link QueryListener} that keeps the statistics of the query executions, by
+ * query name or, for the queries without name, by fingerprint, in lock free
+ * histograms, so that the hot queries of an application can be found.<br>
+ * Example:
+ * 
+ * <pre>
+ * QueryMetrics metrics = new QueryMetrics();
+ * jpaQueryFactory.addQueryListener(metrics);
+ * ...
+ * for (QueryStatistics statistics : metrics.getTopByTotalTime(10)) {
+ * 	System.out.println(statistics.getKey() + " p99=" + statistics.getTotalTime().getValueAtPercentile(99));
+ * }
+ * </pre>
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class QueryMetrics implements QueryListener {
+
+	/**
+	 * Key of the statistics of the queries beyond the maximum number of queries.
+	 */
+	public static final String OTHER = "(other)";
+
+	private final int maxQueries;
+	private final Map<String, QueryStatistics> statistics = new ConcurrentHashMap<String, QueryStatistics>();
+
+	/**
+	 * Creates the metrics, keeping the statistics of up to 1000 distinct queries.
+	 */
+	public QueryMetrics() {
+		this(1000);
+	}
+
+	/**
+	 * Creates the metrics, keeping the statistics of up to the given number of
+	 * distinct queries. The executions of the queries beyond it are recorded
+	 * together, with the key {@link QueryMetrics#OTHER}.
+	 * 
+	 * @param maxQueries the maximum number of distinct queries
+	 */
+	public QueryMetrics(int maxQueries) {
+		if (maxQueries < 1) {
+			throw new IllegalArgumentException("Maximum number of queries must be positive");
+		}
+		this.maxQueries = maxQueries;
+	}
+
+	@Override
+	public void queryExecuted(QueryEvent event) {
+		String key = event.getKey();
+		if (Objects.isNull(key)) {
+			key = OTHER;
+		}
+		QueryStatistics queryStatistics = statistics.get(key);
+		if (Objects.isNull(queryStatistics)) {
+			if (statistics.size() >= maxQueries) {
+				key = OTHER;
+			}
+			String statement = OTHER.equals(key) ? null : event.getStatement();
+			queryStatistics = statistics.computeIfAbsent(key, k -> new QueryStatistics(k, statement));
+		}
+		queryStatistics.record(event);
+	}
+
+	/**
+	 * Gives the statistics of the queries, by query name or fingerprint.
+	 * 
+	 * @return the statistics, updated as the queries are executed
+	 */
+	public Map<String, QueryStatistics> getStatistics() {
+		return Collections.unmodifiableMap(statistics);
+	}
+
+	/**
+	 * Gives the statistics of the query with the given name or fingerprint.
+	 * 
+	 * @param key the query name or fingerprint
+	 * @return the statistics, or <code>null</code> if the query was not executed
+	 */
+	public QueryStatistics getStatistics(String key) {
+		return statistics.get(key);
+	}
+
+	/**
+	 * Gives the statistics of the queries that took the most time, adding all
+	 * their executions.
+	 * 
+	 * @param limit the maximum number of queries
+	 * @return the statistics, from the most to the least time consuming query
+	 */
+	public List<QueryStatistics> getTopByTotalTime(int limit) {
+		List<QueryStatistics> sorted = new ArrayList<QueryStatistics>(statistics.values());
+		sorted.sort(Comparator.comparingLong((QueryStatistics s) -> s.getTotalTime().getSum()).reversed());
+		return sorted.subList(0, Math.min(limit, sorted.size()));
+	}
+
+	/**
+	 * Discards all the statistics.
+	 */
+	public void reset() {
+		statistics.clear();
+	}
+}
@@ -0,0 +1,136 @@
+package br.com.witt.jpa.metrics;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of the executions of a query, kept by {@link QueryMetrics}
+ * by query name or fingerprint.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class QueryStatistics {
+
+	private final String key;
+	private final String statement;
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAdder cacheHitCount = new LongAdder();
+	private final Histogram buildTime = new Histogram();
+	private final Histogram executeTime = new Histogram();
+	private final Histogram conversionTime = new Histogram();
+	private final Histogram totalTime = new Histogram();
+	private final Histogram rows = new Histogram();
+
+	protected QueryStatistics(String key, String statement) {
+		this.key = key;
+		this.statement = statement;
+	}
+
+	void record(QueryEvent event) {
+		if (Objects.nonNull(event.getError())) {
+			errorCount.increment();
+		}
+		if (event.isCacheHit()) {
+			cacheHitCount.increment();
+		} else {
+			buildTime.record(event.getBuildNanos());
+			executeTime.record(event.getExecuteNanos());
+			conversionTime.record(event.getConversionNanos());
+		}
+		totalTime.record(event.getTotalNanos());
+		rows.record(event.getRows());
+	}
+
+	/**
+	 * Gives the name or fingerprint of the query.
+	 * 
+	 * @return the key of the query
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Gives the statement of the first recorded execution of the query.
+	 * 
+	 * @return the statement
+	 */
+	public String getStatement() {
+		return statement;
+	}
+
+	/**
+	 * Gives the number of executions recorded.
+	 * 
+	 * @return the execution count
+	 */
+	public long getCount() {
+		return totalTime.getCount();
+	}
+
+	/**
+	 * Gives the number of executions that threw an exception.
+	 * 
+	 * @return the error count
+	 */
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	/**
+	 * Gives the number of executions answered by the result cache.
+	 * 
+	 * @return the cache hit count
+	 */
+	public long getCacheHitCount() {
+		return cacheHitCount.sum();
+	}
+
+	/**
+	 * Gives the histogram of the times spent creating the provider query, in
+	 * nanoseconds, not including the cache hits.
+	 * 
+	 * @return the build time histogram
+	 */
+	public Histogram getBuildTime() {
+		return buildTime;
+	}
+
+	/**
+	 * Gives the histogram of the times spent executing the query, in nanoseconds,
+	 * not including the cache hits.
+	 * 
+	 * @return the execution time histogram
+	 */
+	public Histogram getExecuteTime() {
+		return executeTime;
+	}
+
+	/**
+	 * Gives the histogram of the times spent converting the rows, in nanoseconds,
+	 * not including the cache hits.
+	 * 
+	 * @return the conversion time histogram
+	 */
+	public Histogram getConversionTime() {
+		return conversionTime;
+	}
+
+	/**
+	 * Gives the histogram of the total times of the operations, in nanoseconds.
+	 * 
+	 * @return the total time histogram
+	 */
+	public Histogram getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Gives the histogram of the row counts.
+	 * 
+	 * @return the row count histogram
+	 */
+	public Histogram getRows() {
+		return rows;
+	}
+}
@@ -0,0 +1,227 @@
+package br.com.witt.jpa.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link QueryListener} that finds the N+1 query problems, counting the
+ * executions of each query shape, by fingerprint, within a scope, such as a
+ * request, and reporting the shapes executed more than a maximum number of
+ * times, with the call sites that executed them. The call sites are the first
+ * stack frames outside of this library.<br>
+ * Only the queries executed by the thread of an open scope, and not served by
+ * the result cache, are counted. By default, a warning is logged as soon as a
+ * shape exceeds the maximum; when failing, as in tests, the scope throws an
+ * {@link IllegalStateException} with all the repeated shapes when closed.<br>
+ * Example:
+ *
+ * <pre>
+ * RepeatedQueryDetector detector = new RepeatedQueryDetector(5).failing();
+ * jpaQueryFactory.addQueryListener(detector);
+ * try (RepeatedQueryDetector.Scope scope = detector.open()) {
+ * 	service.listDepartmentsWithEmployees();
+ * }
+ * </pre>
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class RepeatedQueryDetector implements QueryListener {
+
+	private static final String LIBRARY_PACKAGE = "br.com.witt.jpa.";
+	private static final int MAX_CALL_SITES = 10;
+
+	private final int maxExecutions;
+	private final ThreadLocal<Scope> scopes = new ThreadLocal<Scope>();
+	private Logger logger = Logger.getLogger(RepeatedQueryDetector.class.getName());
+	private boolean failing;
+
+	/**
+	 * Creates the detector of the query shapes executed more than the given
+	 * number of times in a scope.
+	 * 
+	 * @param maxExecutions the maximum number of executions of each shape
+	 */
+	public RepeatedQueryDetector(int maxExecutions) {
+		if (maxExecutions < 1) {
+			throw new IllegalArgumentException("Maximum number of executions must be positive");
+		}
+		this.maxExecutions = maxExecutions;
+	}
+
+	/**
+	 * Sets the logger of the warnings.
+	 * 
+	 * @param logger the logger
+	 * @return this {@link RepeatedQueryDetector} instance
+	 */
+	public RepeatedQueryDetector logger(Logger logger) {
+		this.logger = Objects.requireNonNull(logger, "Logger cannot be null");
+		return this;
+	}
+
+	/**
+	 * Makes the scopes throw an {@link IllegalStateException} when closed, if any
+	 * query shape was executed more than the maximum number of times, instead of
+	 * logging warnings.
+	 * 
+	 * @return this {@link RepeatedQueryDetector} instance
+	 */
+	public RepeatedQueryDetector failing() {
+		this.failing = true;
+		return this;
+	}
+
+	/**
+	 * Opens a scope in the current thread, which counts the queries executed by
+	 * the thread until it is closed. A scope opened within another one suspends
+	 * it until closed.
+	 * 
+	 * @return the scope
+	 */
+	public Scope open() {
+		Scope scope = new Scope(scopes.get());
+		scopes.set(scope);
+		return scope;
+	}
+
+	/**
+	 * Gives the scope open in the current thread, if any.
+	 * 
+	 * @return the scope, or <code>null</code>
+	 */
+	public Scope getCurrentScope() {
+		return scopes.get();
+	}
+
+	@Override
+	public void queryExecuted(QueryEvent event) {
+		Scope scope = scopes.get();
+		if (Objects.isNull(scope) || event.isCacheHit()) {
+			return;
+		}
+		Shape shape = scope.shapes.get(event.getFingerprint());
+		if (Objects.isNull(shape)) {
+			shape = new Shape(event.getKey());
+			scope.shapes.put(event.getFingerprint(), shape);
+		}
+		shape.executions++;
+		String callSite = findCallSite();
+		if (shape.callSites.containsKey(callSite) || shape.callSites.size() < MAX_CALL_SITES) {
+			shape.callSites.merge(callSite, 1, Integer::sum);
+		}
+		if (shape.executions == maxExecutions + 1 && !failing) {
+			logger.log(Level.WARNING, "Possible N+1 query problem: " + shape.describe());
+		}
+	}
+
+	/**
+	 * Gives the first frame of the stack of the current thread outside of this
+	 * library.
+	 */
+	private static String findCallSite() {
+		return StackWalker.getInstance()
+				.walk(frames -> frames.filter(frame -> !frame.getClassName().startsWith(LIBRARY_PACKAGE))
+						.findFirst().map(StackWalker.StackFrame::toStackTraceElement).map(String::valueOf)
+						.orElse("unknown"));
+	}
+
+	/**
+	 * Executions of the query shapes within a scope of a thread.
+	 */
+	public class Scope implements AutoCloseable {
+
+		private final Scope outer;
+		private final Map<String, Shape> shapes = new LinkedHashMap<String, Shape>();
+		private boolean closed;
+
+		private Scope(Scope outer) {
+			this.outer = outer;
+		}
+
+		/**
+		 * Gives the number of executions of each query shape in the scope.
+		 * 
+		 * @return the execution counts, by fingerprint
+		 */
+		public Map<String, Integer> getCounts() {
+			Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+			for (Map.Entry<String, Shape> entry : shapes.entrySet()) {
+				counts.put(entry.getKey(), entry.getValue().executions);
+			}
+			return Collections.unmodifiableMap(counts);
+		}
+
+		/**
+		 * Gives the descriptions of the query shapes executed more than the maximum
+		 * number of times in the scope, with their call sites.
+		 * 
+		 * @return the descriptions of the repeated shapes
+		 */
+		public List<String> getRepeatedQueries() {
+			List<String> repeated = new ArrayList<String>();
+			for (Shape shape : shapes.values()) {
+				if (shape.executions > maxExecutions) {
+					repeated.add(shape.describe());
+				}
+			}
+			return repeated;
+		}
+
+		/**
+		 * Closes the scope, resuming the outer one, if any.
+		 * 
+		 * @throws IllegalStateException if failing and a query shape was executed
+		 *                               more than the maximum number of times
+		 */
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (Objects.isNull(outer)) {
+				scopes.remove();
+			} else {
+				scopes.set(outer);
+			}
+			if (failing) {
+				List<String> repeated = getRepeatedQueries();
+				if (!repeated.isEmpty()) {
+					throw new IllegalStateException(
+							"Possible N+1 query problems, more than " + maxExecutions + " executions of:\n"
+									+ String.join("\n", repeated));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executions of a query shape.
+	 */
+	private static class Shape {
+
+		final String key;
+		final Map<String, Integer> callSites = new LinkedHashMap<String, Integer>();
+		int executions;
+
+		Shape(String key) {
+			this.key = key;
+		}
+
+		String describe() {
+			StringBuilder description = new StringBuilder(key).append(" executed ").append(executions)
+					.append(" times");
+			for (Map.Entry<String, Integer> callSite : callSites.entrySet()) {
+				description.append("\n\tat ").append(callSite.getKey()).append(" (").append(callSite.getValue())
+						.append(" times)");
+			}
+			return description.toString();
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package br.com.witt.jpa.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * {@link QueryListener} that logs the queries slower than a threshold, with
+ * their statement, parameters, row count and timings. The values of the
+ * parameters whose names look like secrets are redacted, and large collections
+ * and strings are cut short.<br>
+ * A share of the slow queries may be sampled, and the number of logged queries
+ * is limited per second, so that the log does not slow down the application
+ * further when the whole database is slow. The queries left out are counted
+ * and reported with the next logged one.<br>
+ * Optionally, the execution plans of the slow SQL queries are given by the
+ * database, with its <code>EXPLAIN</code> statement executed in a new
+ * {@link EntityManager}, by the given executor, and logged with the query.<br>
+ * Example:
+ *
+ * <pre>
+ * jpaQueryFactory.addQueryListener(new SlowQueryLog(Duration.ofMillis(500)).rateLimit(5)
+ * 		.explain(entityManagerFactory, executor));
+ * </pre>
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class SlowQueryLog implements QueryListener {
+
+	/**
+	 * Names of the parameters redacted by default.
+	 */
+	public static final Pattern SECRET_PARAMETERS = Pattern.compile("(?i).*(pass|pwd|secret|token|credential).*");
+
+	private static final String REDACTED = "***";
+	private static final Pattern READ = Pattern.compile("^[\\s(]*(?:select|with|values)\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern WRITE = Pattern.compile(
+			"\\bfor\\s+(?:no\\s+key\\s+update|key\\s+share|update|share)\\b|^[\\s(]*with\\b.*\\b(?:insert|update|delete|merge)\\b",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private static final Pattern POSITION = Pattern.compile("\\d+");
+
+	private final long thresholdNanos;
+	private Logger logger = Logger.getLogger(SlowQueryLog.class.getName());
+	private double sampleRate = 1;
+	private long permitNanos;
+	private long burstNanos;
+	private final AtomicLong allowedAt = new AtomicLong(System.nanoTime());
+	private Pattern redacted = SECRET_PARAMETERS;
+	private int maxElements = 10;
+	private int maxLength = 100;
+	private EntityManagerFactory explainFactory;
+	private Executor explainExecutor;
+	private String explainPrefix;
+	private final AtomicInteger explaining = new AtomicInteger();
+	private final LongAdder slowCount = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+
+	/**
+	 * Creates the log of the queries slower than the given threshold, logging up
+	 * to 10 queries per second.
+	 * 
+	 * @param threshold the minimum total time of the logged queries
+	 */
+	public SlowQueryLog(Duration threshold) {
+		this.thresholdNanos = Objects.requireNonNull(threshold, "Threshold cannot be null").toNanos();
+		rateLimit(10);
+	}
+
+	/**
+	 * Sets the logger of the slow queries, which are logged with the
+	 * {@link Level#WARNING} level.
+	 * 
+	 * @param logger the logger
+	 * @return this {@link SlowQueryLog} instance
+	 */
+	public SlowQueryLog logger(Logger logger) {
+		this.logger = Objects.requireNonNull(logger, "Logger cannot be null");
+		return this;
+	}
+
+	/**
+	 * Logs only the given share of the slow queries, chosen at random.
+	 * 
+	 * @param rate the share of slow queries logged, from 0 to 1
+	 * @return this {@link SlowQueryLog} instance
+	 */
+	public SlowQueryLog sample(double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new IllegalArgumentException("Sample rate must be between 0 and 1");
+		}
+		this.sampleRate = rate;
+		return this;
+	}
+
+	/**
+	 * Limits the number of queries logged per second, allowing bursts of the same
+	 * number of queries.
+	 * 
+	 * @param queriesPerSecond the maximum number of queries logged per second
+	 * @return this {@link SlowQueryLog} instance
+	 */
+	public SlowQueryLog rateLimit(int queriesPerSecond) {
+		if (queriesPerSecond < 1) {
+			throw new IllegalArgumentException("Rate limit must be positive");
+		}
+		this.permitNanos = TimeUnit.SECONDS.toNanos(1) / queriesPerSecond;
+		this.burstNanos = permitNanos * (queriesPerSecond - 1);
+		return this;
+	}
+
+	/**
+	 * Sets the names of the parameters whose values are not logged. The default
+	 * is {@link SlowQueryLog#SECRET_PARAMETERS}.
+	 * 
+	 * @param names the pattern of the names of the redacted parameters
+	 * @return this {@link SlowQueryLog} instance
+	 */
+	public SlowQueryLog redact(Pattern names) {
+		this.redacted = Objects.requireNonNull(names, "Pattern cannot be null");
+		return this;
+	}
+
+	/**
+	 * Sets how much of the values of the parameters is logged. The defaults are 10
+	 * elements and 100 characters.
+	 * 
+	 * @param maxElements the maximum number of elements logged of collections
+	 * @param maxLength   the maximum number of characters logged of each value
+	 * @return this {@link SlowQueryLog} instance
+	 */
+	public SlowQueryLog sampleParameters(int maxElements, int maxLength) {
+		if (maxElements < 0 || maxLength < 0) {
+			throw new IllegalArgumentException("Limits cannot be negative");
+		}
+		this.maxElements = maxElements;
+		this.maxLength = maxLength;
+		return this;
+	}
+
+	/**
+	 * Logs the slow SQL queries with their execution plans, given by the database
+	 * to the statement <code>EXPLAIN</code> followed by the SQL of the query.
+	 * 
+	 * @param entityManagerFactory the factory of the entity managers in which the
+	 *                             plans are requested
+	 * @param executor             the executor of the plan requests
+	 * @return this {@link SlowQueryLog} instance
+	 * @see {@link SlowQueryLog#explain(EntityManagerFactory, Executor, String)}
+	 */
+	public SlowQueryLog explain(EntityManagerFactory entityManagerFactory, Executor executor) {
+		return explain(entityManagerFactory, executor, "EXPLAIN ");
+	}
+
+	/**
+	 * Logs the slow SQL queries with their execution plans, given by the database
+	 * to the statement made of the given prefix followed by the SQL of the query,
+	 * such as <code>EXPLAIN ANALYZE </code>, which executes the query again. Only
+	 * one plan is requested at a time; the queries that are slow meanwhile are
+	 * logged without plan. Only the SQL queries that read are explained: failed
+	 * queries, updates, locking reads, and JPQL and criteria queries are always
+	 * logged without plan.
+	 * 
+	 * @param entityManagerFactory the factory of the entity managers in which the
+	 *                             plans are requested
+	 * @param executor             the executor of the plan requests
+	 * @param prefix               the prefix of the SQL of the query
+	 * @return this {@link SlowQueryLog} instance
+	 */
+	public SlowQueryLog explain(EntityManagerFactory entityManagerFactory, Executor executor, String prefix) {
+		this.explainFactory = Objects.requireNonNull(entityManagerFactory, "Entity manager factory cannot be null");
+		this.explainExecutor = Objects.requireNonNull(executor, "Executor cannot be null");
+		this.explainPrefix = Objects.requireNonNull(prefix, "Prefix cannot be null");
+		return this;
+	}
+
+	/**
+	 * Gives the number of queries slower than the threshold, logged or not.
+	 * 
+	 * @return the number of slow queries
+	 */
+	public long getSlowCount() {
+		return slowCount.sum();
+	}
+
+	@Override
+	public void queryExecuted(QueryEvent event) {
+		if (event.getTotalNanos() < thresholdNanos) {
+			return;
+		}
+		slowCount.increment();
+		if (ThreadLocalRandom.current().nextDouble() >= sampleRate || !acquire()) {
+			skipped.increment();
+			return;
+		}
+		String message = describe(event, skipped.sumThenReset());
+		if (Objects.nonNull(explainExecutor) && isExplainable(event) && explaining.compareAndSet(0, 1)) {
+			try {
+				explainExecutor.execute(() -> {
+					try {
+						logger.log(Level.WARNING, message + "\nplan:\n" + requestPlan(event));
+					} finally {
+						explaining.set(0);
+					}
+				});
+				return;
+			} catch (RejectedExecutionException e) {
+				explaining.set(0);
+			}
+		}
+		logger.log(Level.WARNING, message);
+	}
+
+	/**
+	 * Tells whether the plan of the query can be requested, as it is a read in
+	 * SQL that did not fail, so that explaining it, even with a prefix that
+	 * executes it again, changes nothing in the database.
+	 */
+	private static boolean isExplainable(QueryEvent event) {
+		return event.isNativeStatement() && Objects.isNull(event.getError())
+				&& event.getOperation() != QueryEvent.Operation.UPDATE && READ.matcher(event.getStatement()).find()
+				&& !WRITE.matcher(event.getStatement()).find();
+	}
+
+	/**
+	 * Takes a permit of the rate limit, if available, allowing a burst of up to a
+	 * second of permits.
+	 */
+	private boolean acquire() {
+		long now = System.nanoTime();
+		while (true) {
+			long allowed = allowedAt.get();
+			long next = allowed - now < 0 ? now : allowed;
+			if (next - now > burstNanos) {
+				return false;
+			}
+			if (allowedAt.compareAndSet(allowed, next + permitNanos)) {
+				return true;
+			}
+		}
+	}
+
+	private String describe(QueryEvent event, long skippedCount) {
+		StringBuilder message = new StringBuilder("Slow query: ");
+		message.append(millis(event.getTotalNanos())).append(" ms, ").append(event.getRows()).append(" rows, ")
+				.append(event.getOperation());
+		if (Objects.nonNull(event.getName())) {
+			message.append(", ").append(event.getName());
+		}
+		if (skippedCount > 0) {
+			message.append(" (").append(skippedCount).append(" slow queries not logged before it)");
+		}
+		message.append('\n').append(event.getStatement());
+		if (!event.getParameters().isEmpty()) {
+			message.append("\nparameters: {");
+			String separator = "";
+			for (Map.Entry<String, Object> entry : event.getParameters().entrySet()) {
+				message.append(separator).append(entry.getKey()).append('=');
+				if (redacted.matcher(entry.getKey()).matches()) {
+					message.append(REDACTED);
+				} else {
+					appendValue(message, entry.getValue());
+				}
+				separator = ", ";
+			}
+			message.append('}');
+		}
+		message.append("\nbuild ").append(millis(event.getBuildNanos())).append(" ms, execution ")
+				.append(millis(event.getExecuteNanos())).append(" ms, conversion ")
+				.append(millis(event.getConversionNanos())).append(" ms");
+		if (Objects.nonNull(event.getError())) {
+			message.append("\nfailed: ").append(event.getError());
+		}
+		return message.toString();
+	}
+
+	private void appendValue(StringBuilder message, Object value) {
+		if (value instanceof Collection || value instanceof Object[]) {
+			Collection<?> values = value instanceof Collection ? (Collection<?>) value
+					: Arrays.asList((Object[]) value);
+			message.append('[');
+			int count = 0;
+			for (Object element : values) {
+				if (count == maxElements) {
+					message.append(", ... (").append(values.size()).append(" values)");
+					break;
+				}
+				if (count++ > 0) {
+					message.append(", ");
+				}
+				message.append(cut(String.valueOf(element)));
+			}
+			message.append(']');
+		} else {
+			message.append(cut(String.valueOf(value)));
+		}
+	}
+
+	private String cut(String value) {
+		return value.length() <= maxLength ? value : value.substring(0, maxLength) + "...";
+	}
+
+	/**
+	 * Requests the execution plan of the SQL query to the database, with the same
+	 * parameters, binding the ones named by numbers to their positions, as the
+	 * <code>?</code> and <code>?1</code> parameters.
+	 */
+	private String requestPlan(QueryEvent event) {
+		EntityManager em = null;
+		try {
+			em = explainFactory.createEntityManager();
+			javax.persistence.Query query = em.createNativeQuery(explainPrefix + event.getStatement());
+			for (Map.Entry<String, Object> entry : event.getParameters().entrySet()) {
+				if (POSITION.matcher(entry.getKey()).matches()) {
+					query.setParameter(Integer.parseInt(entry.getKey()), entry.getValue());
+				} else {
+					query.setParameter(entry.getKey(), entry.getValue());
+				}
+			}
+			List<String> lines = new ArrayList<String>();
+			for (Object row : query.getResultList()) {
+				lines.add(row instanceof Object[] ? Arrays.toString((Object[]) row) : String.valueOf(row));
+			}
+			return String.join("\n", lines);
+		} catch (RuntimeException e) {
+			return "not available: " + e;
+		} finally {
+			if (Objects.nonNull(em) && em.isOpen()) {
+				em.close();
+			}
+		}
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+}
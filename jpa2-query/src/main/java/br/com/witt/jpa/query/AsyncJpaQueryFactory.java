@@ -0,0 +1,253 @@
+package br.com.witt.jpa.query;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+import br.com.witt.jpa.metrics.QueryListener;
+
+/**
+ * Asynchronous variant of {@link JpaQueryFactory}, that runs each query on an
+ * {@link Executor}, with an {@link EntityManager} of its own, created for the
+ * task and closed when it ends, so that independent queries run at the same
+ * time.<br>
+ * Example:
+ *
+ * <pre>
+ * AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(entityManagerFactory);
+ * CompletableFuture&lt;List&lt;Department&gt;&gt; departments = async
+ * 		.getResultList(f -&gt; f.createJpqlQuery("select d from Department d", Department.class));
+ * CompletableFuture&lt;Long&gt; employees = async.getScalar(f -&gt; f.createSqlQuery("select count(*) from employee"),
+ * 		Long.class);
+ * CompletableFuture.allOf(departments, employees).join();
+ * </pre>
+ *
+ * The queries must be created by the given function, with the given
+ * {@link JpaQueryFactory}, as they are bound to the entity manager of the task.
+ * Entities returned by the queries are detached, as the entity manager is
+ * closed before the future is completed.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class AsyncJpaQueryFactory implements AutoCloseable {
+
+	private final EntityManagerFactory entityManagerFactory;
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+	private QueryResultCache resultCache;
+	private final List<QueryListener> listeners = new CopyOnWriteArrayList<QueryListener>();
+
+	/**
+	 * Creates a new factory that runs the queries on the given executor.
+	 * 
+	 * @param entityManagerFactory the factory of the entity managers of the tasks
+	 * @param executor             the executor of the tasks
+	 */
+	public AsyncJpaQueryFactory(EntityManagerFactory entityManagerFactory, Executor executor) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "EntityManagerFactory cannot be null");
+		this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+		this.ownExecutor = null;
+	}
+
+	/**
+	 * Creates a new factory that runs the queries on an executor of its own, that
+	 * starts a virtual thread for each task when the runtime supports them (Java
+	 * 21 or newer), or uses a pool of as many daemon threads as processors
+	 * otherwise, queueing the tasks that find all of them busy. The executor is
+	 * shut down by {@link AsyncJpaQueryFactory#close()}.
+	 * 
+	 * @param entityManagerFactory the factory of the entity managers of the tasks
+	 */
+	public AsyncJpaQueryFactory(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "EntityManagerFactory cannot be null");
+		this.ownExecutor = createDefaultExecutor();
+		this.executor = ownExecutor;
+	}
+
+	/**
+	 * Creates a new factory that runs the queries on a pool of its own, with the
+	 * given number of daemon threads, queueing the tasks that find all of them
+	 * busy. As each running task holds a connection, the number should not exceed
+	 * the size of the connection pool. The pool is shut down by
+	 * {@link AsyncJpaQueryFactory#close()}.
+	 * 
+	 * @param entityManagerFactory the factory of the entity managers of the tasks
+	 * @param threads              the maximum number of queries run at the same
+	 *                             time
+	 */
+	public AsyncJpaQueryFactory(EntityManagerFactory entityManagerFactory, int threads) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "EntityManagerFactory cannot be null");
+		this.ownExecutor = createPool(threads);
+		this.executor = ownExecutor;
+	}
+
+	public QueryResultCache getResultCache() {
+		return resultCache;
+	}
+
+	public void setResultCache(QueryResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Registers a listener to be notified of the operations of the queries of all
+	 * the tasks.
+	 * 
+	 * @param listener the listener
+	 * @see {@link JpaQueryFactory#addQueryListener(QueryListener)}
+	 */
+	public void addQueryListener(QueryListener listener) {
+		listeners.add(Objects.requireNonNull(listener, "Listener cannot be null"));
+	}
+
+	public void removeQueryListener(QueryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Runs the given task with a {@link JpaQueryFactory} bound to a new
+	 * {@link EntityManager}, closed when the task ends.
+	 * 
+	 * @param <T>  the type of the task result
+	 * @param task the task
+	 * @return the future result of the task
+	 */
+	public <T> CompletableFuture<T> submit(Function<JpaQueryFactory, T> task) {
+		Objects.requireNonNull(task, "Task cannot be null");
+		return CompletableFuture.supplyAsync(() -> {
+			EntityManager em = entityManagerFactory.createEntityManager();
+			try {
+				JpaQueryFactory factory = new JpaQueryFactory(em);
+				factory.setResultCache(resultCache);
+				for (QueryListener listener : listeners) {
+					factory.addQueryListener(listener);
+				}
+				return task.apply(factory);
+			} finally {
+				em.close();
+			}
+		}, executor);
+	}
+
+	/**
+	 * Executes the query created by the given function and returns a list of
+	 * results.
+	 * 
+	 * @param <T>   the type of the results, resolved at runtime
+	 * @param query the function that creates the query, either a {@link Query} or
+	 *              a {@link CriteriaQuery}
+	 * @return the future list of results of the query execution
+	 * @see {@link Query#getResultList()}, {@link CriteriaQuery#getResultList()}
+	 */
+	public <T> CompletableFuture<List<T>> getResultList(Function<JpaQueryFactory, ?> query) {
+		return submit(f -> {
+			Object created = query.apply(f);
+			if (created instanceof CriteriaQuery) {
+				return ((CriteriaQuery) created).<T>getResultList();
+			}
+			return asQuery(created).<T>getResultList();
+		});
+	}
+
+	/**
+	 * Executes the query created by the given function and returns a single
+	 * result.
+	 * 
+	 * @param <T>   the type of the result, resolved at runtime
+	 * @param query the function that creates the query, either a {@link Query} or
+	 *              a {@link CriteriaQuery}
+	 * @return the future single result of the query execution
+	 * @see {@link Query#getSingleResult()}, {@link CriteriaQuery#getSingleResult()}
+	 */
+	public <T> CompletableFuture<T> getSingleResult(Function<JpaQueryFactory, ?> query) {
+		return submit(f -> {
+			Object created = query.apply(f);
+			if (created instanceof CriteriaQuery) {
+				return ((CriteriaQuery) created).<T>getSingleResult();
+			}
+			return asQuery(created).<T>getSingleResult();
+		});
+	}
+
+	/**
+	 * Executes the SQL query created by the given function and returns its scalar
+	 * result.
+	 * 
+	 * @param <T>         the type of the scalar
+	 * @param query       the function that creates the query
+	 * @param scalarClass the class of the scalar
+	 * @return the future scalar result of the query execution
+	 * @see {@link SqlQuery#getScalar(Class)}
+	 */
+	public <T> CompletableFuture<T> getScalar(Function<JpaQueryFactory, SqlQuery> query, Class<T> scalarClass) {
+		return submit(f -> query.apply(f).getScalar(scalarClass));
+	}
+
+	/**
+	 * Shuts down the executor created by this factory, if any. Executors given to
+	 * the constructor are left to their owners.
+	 */
+	@Override
+	public void close() {
+		if (Objects.nonNull(ownExecutor)) {
+			ownExecutor.shutdown();
+		}
+	}
+
+	private static Query asQuery(Object query) {
+		if (query instanceof Query) {
+			return (Query) query;
+		}
+		throw new IllegalArgumentException(
+				"Not a query: " + (Objects.isNull(query) ? "null" : query.getClass().getName()));
+	}
+
+	/**
+	 * Creates an executor that starts a virtual thread per task, found through
+	 * reflection so that the library still runs on Java 11, or a pool of as many
+	 * daemon threads as processors if virtual threads are not available.
+	 */
+	private static ExecutorService createDefaultExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return createPool(Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	/**
+	 * Creates a pool with the given number of daemon threads, which are stopped
+	 * when idle for a minute, and an unbounded queue for the waiting tasks.
+	 */
+	private static ExecutorService createPool(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "jpa-async-query-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
@@ -0,0 +1,111 @@
+package br.com.witt.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.persistence.Parameter;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.ParameterExpression;
+
+import br.com.witt.jpa.util.TypeConverter;
+
+/**
+ * Creates the parameters that replace the literal values of the predicates
+ * built by the helper methods of {@link CriteriaQuery} and
+ * {@link CriteriaSubquery}, so that equivalent queries share the same SQL
+ * statement, whatever the values.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+final class AutoParameters {
+
+	private static final String PREFIX = "autoParam";
+
+	private AutoParameters() {
+	}
+
+	/**
+	 * Creates a parameter for the given value, converted to the given type when
+	 * possible, and registers its value in the map of parameters to be bound.
+	 * 
+	 * @param cb         the criteria builder
+	 * @param parameters the values of the parameters of the query, by name
+	 * @param type       the type of the expression the value will be compared to,
+	 *                   which is also the type of the elements when the value is a
+	 *                   collection
+	 * @param value      the value
+	 * @return the parameter expression
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> ParameterExpression<T> bind(CriteriaBuilder cb, Map<String, Object> parameters, Class<?> type,
+			Object value) {
+		if (Objects.isNull(value)) {
+			throw new IllegalArgumentException("Parameter value cannot be null");
+		}
+		Object converted = value;
+		Class<?> parameterType = type;
+		if (value instanceof Collection) {
+			parameterType = Collection.class;
+			List<Object> elements = new ArrayList<Object>(((Collection<?>) value).size());
+			for (Object element : (Collection<?>) value) {
+				elements.add(convert(element, type));
+			}
+			converted = elements;
+		} else if (Objects.isNull(type) || Object.class == type) {
+			parameterType = value.getClass();
+		} else {
+			converted = convert(value, type);
+			if (type.isPrimitive() || !parameterType.isInstance(converted)) {
+				parameterType = converted.getClass();
+			}
+		}
+
+		String name;
+		int i = parameters.size();
+		do {
+			name = PREFIX + i++;
+		} while (parameters.containsKey(name));
+		parameters.put(name, converted);
+		return (ParameterExpression<T>) cb.parameter(parameterType, name);
+	}
+
+	/**
+	 * Binds to the query the values of the parameters it declares. The others are
+	 * skipped, as the values of the helpers whose predicates were replaced by a
+	 * later call to <code>where</code> are kept in the map, and the queries
+	 * derived from the query, as its count, may not use all of its parameters.
+	 * 
+	 * @param query      the query
+	 * @param parameters the values of the parameters, by name
+	 */
+	static void bindAll(javax.persistence.Query query, Map<String, Object> parameters) {
+		if (parameters.isEmpty()) {
+			return;
+		}
+		Set<String> declared = new HashSet<String>();
+		for (Parameter<?> parameter : query.getParameters()) {
+			declared.add(parameter.getName());
+		}
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			if (declared.contains(entry.getKey())) {
+				query.setParameter(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if (Objects.isNull(value) || Objects.isNull(type) || Object.class == type) {
+			return value;
+		}
+		try {
+			return TypeConverter.convertValue(value, type);
+		} catch (IllegalArgumentException e) {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package br.com.witt.jpa.query;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * Creates the predicates of the helper methods of {@link CriteriaQuery},
+ * {@link CriteriaSubquery} and {@link CriteriaBulkQuery}, comparing a path to
+ * values given by the parameters of {@link AutoParameters}.
+ *
+ * @author lucianowitt@gmail.com
+ */
+final class AutoPredicates {
+
+	private AutoPredicates() {
+	}
+
+	static Predicate equal(CriteriaBuilder cb, Map<String, Object> parameters, Path<?> x, Object value) {
+		if (Objects.isNull(value)) {
+			return cb.isNull(x);
+		}
+		return cb.equal(x, AutoParameters.bind(cb, parameters, x.getJavaType(), value));
+	}
+
+	static Predicate notEqual(CriteriaBuilder cb, Map<String, Object> parameters, Path<?> x, Object value) {
+		if (Objects.isNull(value)) {
+			return cb.isNotNull(x);
+		}
+		return cb.notEqual(x, AutoParameters.bind(cb, parameters, x.getJavaType(), value));
+	}
+
+	static Predicate like(CriteriaBuilder cb, Map<String, Object> parameters, Path<?> x, String pattern) {
+		return cb.like(x.as(String.class), AutoParameters.<String>bind(cb, parameters, String.class, pattern));
+	}
+
+	static Predicate notLike(CriteriaBuilder cb, Map<String, Object> parameters, Path<?> x, String pattern) {
+		return cb.notLike(x.as(String.class), AutoParameters.<String>bind(cb, parameters, String.class, pattern));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Predicate greaterThan(CriteriaBuilder cb, Map<String, Object> parameters, Path x, Comparable<?> value) {
+		return cb.greaterThan(x, (Expression) AutoParameters.bind(cb, parameters, x.getJavaType(), value));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Predicate greaterThanOrEqualTo(CriteriaBuilder cb, Map<String, Object> parameters, Path x,
+			Comparable<?> value) {
+		return cb.greaterThanOrEqualTo(x, (Expression) AutoParameters.bind(cb, parameters, x.getJavaType(), value));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Predicate lessThan(CriteriaBuilder cb, Map<String, Object> parameters, Path x, Comparable<?> value) {
+		return cb.lessThan(x, (Expression) AutoParameters.bind(cb, parameters, x.getJavaType(), value));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Predicate lessThanOrEqualTo(CriteriaBuilder cb, Map<String, Object> parameters, Path x,
+			Comparable<?> value) {
+		return cb.lessThanOrEqualTo(x, (Expression) AutoParameters.bind(cb, parameters, x.getJavaType(), value));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Predicate between(CriteriaBuilder cb, Map<String, Object> parameters, Path x, Comparable<?> lower,
+			Comparable<?> upper) {
+		return cb.between(x, (Expression) AutoParameters.bind(cb, parameters, x.getJavaType(), lower),
+				(Expression) AutoParameters.bind(cb, parameters, x.getJavaType(), upper));
+	}
+
+	static Predicate in(CriteriaBuilder cb, Map<String, Object> parameters, Path<?> x, Collection<?> values) {
+		return x.in(AutoParameters.bind(cb, parameters, x.getJavaType(), values));
+	}
+}
@@ -0,0 +1,268 @@
+package br.com.witt.jpa.query;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Loader that batches the lookups of single results by key, collecting the keys
+ * given to {@link BatchLoader#load(Object)} and fetching all of them with one
+ * query, which selects the results whose key is in the collected keys.<br>
+ * A loader created with a {@link JpaQueryFactory} fetches each key once for its
+ * lifetime, keeping the results, so it should be scoped to a request. A loader
+ * created with an {@link AsyncJpaQueryFactory}, which may be shared, keeps each
+ * key only until its batch is fetched, so that the loads of a key made while it
+ * is being fetched share the same query, and the later ones fetch it again.<br>
+ * Example:
+ *
+ * <pre>
+ * BatchLoader&lt;Long, Department&gt; departments = new BatchLoader&lt;Long, Department&gt;(jpaQueryFactory,
+ * 		(f, ids) -&gt; f.createJpqlQuery("select d from Department d where d.id in :ids", Department.class)
+ * 				.setParameter("ids", ids),
+ * 		Department::getId);
+ * for (Employee employee : employees) {
+ * 	departments.load(employee.getDepartmentId()).thenAccept(employee::setDepartment);
+ * }
+ * departments.dispatch();
+ * </pre>
+ *
+ * Large batches are split according to the {@link InListChunking} settings of
+ * the factory, if any.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class BatchLoader<K, V> {
+
+	private final Function<List<K>, CompletableFuture<List<?>>> fetcher;
+	private final Function<? super V, ? extends K> keyFunction;
+	private final Map<K, CompletableFuture<V>> futures = new HashMap<K, CompletableFuture<V>>();
+	private final Map<K, CompletableFuture<V>> pending = new LinkedHashMap<K, CompletableFuture<V>>();
+	private final Duration window;
+	private final ScheduledExecutorService scheduler;
+	/**
+	 * Whether the keys are discarded once their batch is fetched, instead of
+	 * being kept for the lifetime of the loader.
+	 */
+	private final boolean evictFetched;
+	private ScheduledFuture<?> scheduledDispatch;
+
+	/**
+	 * Creates a loader that fetches the collected keys when
+	 * {@link BatchLoader#dispatch()} is called, with the given factory, in the
+	 * calling thread.
+	 * 
+	 * @param factory     the query factory
+	 * @param query       the function that creates the query of the given keys,
+	 *                    either a {@link Query} or a {@link CriteriaQuery}
+	 * @param keyFunction the function that gives the key of a result
+	 */
+	public BatchLoader(JpaQueryFactory factory, BiFunction<JpaQueryFactory, List<K>, ?> query,
+			Function<? super V, ? extends K> keyFunction) {
+		Objects.requireNonNull(factory, "Factory cannot be null");
+		Objects.requireNonNull(query, "Query cannot be null");
+		this.fetcher = keys -> {
+			try {
+				return CompletableFuture.completedFuture(fetch(query.apply(factory, keys)));
+			} catch (RuntimeException e) {
+				CompletableFuture<List<?>> failed = new CompletableFuture<List<?>>();
+				failed.completeExceptionally(e);
+				return failed;
+			}
+		};
+		this.keyFunction = Objects.requireNonNull(keyFunction, "Key function cannot be null");
+		this.window = null;
+		this.scheduler = null;
+		this.evictFetched = false;
+	}
+
+	/**
+	 * Creates a loader that fetches the keys collected within the given time
+	 * window, counted from the first key of each batch, with the given
+	 * asynchronous factory. The loader may be shared by concurrent requests.
+	 * {@link BatchLoader#dispatch()} may still be called to fetch the collected
+	 * keys before the end of the window.
+	 * 
+	 * @param factory     the asynchronous query factory
+	 * @param query       the function that creates the query of the given keys,
+	 *                    either a {@link Query} or a {@link CriteriaQuery}
+	 * @param keyFunction the function that gives the key of a result
+	 * @param window      the time window
+	 * @param scheduler   the scheduler of the dispatches
+	 */
+	public BatchLoader(AsyncJpaQueryFactory factory, BiFunction<JpaQueryFactory, List<K>, ?> query,
+			Function<? super V, ? extends K> keyFunction, Duration window, ScheduledExecutorService scheduler) {
+		Objects.requireNonNull(factory, "Factory cannot be null");
+		Objects.requireNonNull(query, "Query cannot be null");
+		this.fetcher = keys -> factory.submit(f -> fetch(query.apply(f, keys)));
+		this.keyFunction = Objects.requireNonNull(keyFunction, "Key function cannot be null");
+		this.window = Objects.requireNonNull(window, "Window cannot be null");
+		this.scheduler = Objects.requireNonNull(scheduler, "Scheduler cannot be null");
+		this.evictFetched = true;
+	}
+
+	/**
+	 * Gives the future result of the given key, fetched by the next dispatch, or
+	 * the one already requested or, unless the loader discards the fetched keys,
+	 * already fetched.
+	 * 
+	 * @param key the key
+	 * @return the future result, completed with <code>null</code> if there is no
+	 *         result with the key
+	 */
+	public synchronized CompletableFuture<V> load(K key) {
+		Objects.requireNonNull(key, "Key cannot be null");
+		CompletableFuture<V> future = futures.get(key);
+		if (Objects.isNull(future)) {
+			future = new CompletableFuture<V>();
+			futures.put(key, future);
+			pending.put(key, future);
+			schedule();
+		}
+		return future;
+	}
+
+	/**
+	 * Gives the future results of the given keys, in the same order.
+	 * 
+	 * @param keys the keys
+	 * @return the future list of results, with <code>null</code> for the keys
+	 *         without result
+	 */
+	public CompletableFuture<List<V>> loadAll(Collection<K> keys) {
+		List<CompletableFuture<V>> loads = new ArrayList<CompletableFuture<V>>(keys.size());
+		for (K key : keys) {
+			loads.add(load(key));
+		}
+		return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()])).thenApply(v -> {
+			List<V> values = new ArrayList<V>(loads.size());
+			for (CompletableFuture<V> load : loads) {
+				values.add(load.join());
+			}
+			return values;
+		});
+	}
+
+	/**
+	 * Fetches the keys collected since the last dispatch with one query, and
+	 * completes their futures, cancelling the dispatch scheduled at the end of
+	 * their window, if any. If the results cannot be matched to their keys, all
+	 * the futures of the batch are completed with the error.
+	 * 
+	 * @return the future of the completion of the batch
+	 */
+	public CompletableFuture<Void> dispatch() {
+		Map<K, CompletableFuture<V>> batch;
+		synchronized (this) {
+			if (Objects.nonNull(scheduledDispatch)) {
+				scheduledDispatch.cancel(false);
+				scheduledDispatch = null;
+			}
+			if (pending.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			batch = new LinkedHashMap<K, CompletableFuture<V>>(pending);
+			pending.clear();
+		}
+		return fetcher.apply(new ArrayList<K>(batch.keySet())).handle((results, error) -> {
+			Throwable failure = error;
+			Map<K, V> byKey = null;
+			if (Objects.isNull(failure)) {
+				try {
+					byKey = byKey(results);
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+			}
+			if (Objects.nonNull(failure) || evictFetched) {
+				evict(batch);
+			}
+			for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+				if (Objects.nonNull(failure)) {
+					entry.getValue().completeExceptionally(failure);
+				} else {
+					entry.getValue().complete(byKey.get(entry.getKey()));
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Discards the fetched result of the given key, so that it is fetched again
+	 * by the next load.
+	 * 
+	 * @param key the key
+	 */
+	public synchronized void clear(K key) {
+		if (!pending.containsKey(key)) {
+			futures.remove(key);
+		}
+	}
+
+	/**
+	 * Discards all the fetched results.
+	 */
+	public synchronized void clearAll() {
+		futures.keySet().retainAll(pending.keySet());
+	}
+
+	/**
+	 * Discards the keys of the given batch, unless they were already cleared and
+	 * loaded again.
+	 */
+	private synchronized void evict(Map<K, CompletableFuture<V>> batch) {
+		for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+			futures.remove(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Gives the number of keys kept, either pending or fetched.
+	 */
+	synchronized int size() {
+		return futures.size();
+	}
+
+	/**
+	 * Maps the given results by their keys, keeping the first result of each key.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<K, V> byKey(List<?> results) {
+		Map<K, V> byKey = new HashMap<K, V>();
+		for (Object result : results) {
+			V value = (V) result;
+			byKey.putIfAbsent(keyFunction.apply(value), value);
+		}
+		return byKey;
+	}
+
+	private void schedule() {
+		if (Objects.nonNull(scheduler) && Objects.isNull(scheduledDispatch)) {
+			scheduledDispatch = scheduler.schedule(this::dispatch, window.toNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static List<?> fetch(Object query) {
+		if (query instanceof CriteriaQuery) {
+			return ((CriteriaQuery) query).getResultList();
+		} else if (query instanceof Query) {
+			return ((Query) query).getResultList();
+		}
+		throw new IllegalArgumentException(
+				"Not a query: " + (Objects.isNull(query) ? "null" : query.getClass().getName()));
+	}
+}
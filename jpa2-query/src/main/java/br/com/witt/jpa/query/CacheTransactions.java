@@ -0,0 +1,185 @@
+package br.com.witt.jpa.query;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+
+/**
+ * Invalidations of the {@link QueryResultCache} by the statements executed
+ * through the facades in the transaction of an entity manager. The entries are
+ * invalidated when the statement runs, and the entity manager bypasses the
+ * cache, neither reading nor storing results, until its transaction completes,
+ * as it reads changes the other ones do not see yet. At the completion, the
+ * entries are invalidated again, discarding the results the other entity
+ * managers cached meanwhile from the data before the commit.<br>
+ * The completion is observed by a synchronization registered with the
+ * Hibernate transaction of resource local entity managers, or with the
+ * <code>TransactionSynchronizationRegistry</code> of JTA. When none is
+ * available, the entries are invalidated again the next time the entity
+ * manager uses the cache out of a transaction. Changes made by the entity
+ * manager itself, as persisted or merged entities, are not tracked.
+ *
+ * @author lucianowitt@gmail.com
+ */
+final class CacheTransactions {
+
+	private static final String REGISTRY = "java:comp/TransactionSynchronizationRegistry";
+
+	private static final Map<EntityManager, Pending> PENDING = Collections
+			.synchronizedMap(new WeakHashMap<EntityManager, Pending>());
+
+	private CacheTransactions() {
+	}
+
+	/**
+	 * Invalidates the entries tagged by the target of the given statement.
+	 *
+	 * @param em        the entity manager that executed the statement
+	 * @param cache     the cache, or <code>null</code> if none
+	 * @param statement the update statement
+	 * @see {@link QueryResultCache#invalidateStatement(String)}
+	 */
+	static void invalidateStatement(EntityManager em, QueryResultCache cache, String statement) {
+		if (Objects.nonNull(cache)) {
+			invalidate(em, Arrays.asList(cache, "statement", statement), () -> cache.invalidateStatement(statement));
+		}
+	}
+
+	/**
+	 * Invalidates the entries tagged by the given tag.
+	 *
+	 * @param em    the entity manager that executed the statement
+	 * @param cache the cache, or <code>null</code> if none
+	 * @param tag   the entity or table updated
+	 * @see {@link QueryResultCache#invalidate(String)}
+	 */
+	static void invalidateTag(EntityManager em, QueryResultCache cache, String tag) {
+		if (Objects.nonNull(cache)) {
+			invalidate(em, Arrays.asList(cache, "tag", tag), () -> cache.invalidate(tag));
+		}
+	}
+
+	/**
+	 * Tells whether the given entity manager must bypass the cache, as it is
+	 * joined to a transaction that has executed statements through the facades.
+	 *
+	 * @param em the entity manager
+	 * @return <code>true</code> while the transaction is not completed
+	 */
+	static boolean isBypassed(EntityManager em) {
+		Pending pending = PENDING.get(em);
+		if (Objects.isNull(pending)) {
+			return false;
+		}
+		if (em.isJoinedToTransaction()) {
+			return true;
+		}
+		pending.afterCompletion(0);
+		return false;
+	}
+
+	/**
+	 * Runs the given invalidation and, in a transaction, keeps it to run again
+	 * at the completion.
+	 */
+	private static void invalidate(EntityManager em, List<Object> key, Runnable invalidation) {
+		invalidation.run();
+		if (!em.isJoinedToTransaction()) {
+			return;
+		}
+		Pending pending;
+		boolean created = false;
+		synchronized (PENDING) {
+			pending = PENDING.get(em);
+			if (Objects.isNull(pending)) {
+				pending = new Pending();
+				PENDING.put(em, pending);
+				created = true;
+			}
+		}
+		pending.add(key, invalidation);
+		if (created) {
+			register(em, pending);
+		}
+	}
+
+	/**
+	 * Registers the given synchronization with the Hibernate transaction of a
+	 * resource local entity manager or with the JTA registry, when available.
+	 */
+	private static void register(EntityManager em, Synchronization synchronization) {
+		EntityTransaction transaction;
+		try {
+			transaction = em.getTransaction();
+		} catch (IllegalStateException e) {
+			try {
+				TransactionSynchronizationRegistry registry = (TransactionSynchronizationRegistry) new InitialContext()
+						.lookup(REGISTRY);
+				registry.registerInterposedSynchronization(synchronization);
+			} catch (NamingException | IllegalStateException | ClassCastException ex) {
+				// the invalidations run again on the next use out of the transaction
+			}
+			return;
+		}
+		try {
+			ClassLoader loader = transaction.getClass().getClassLoader();
+			Class<?> transactionClass = Class.forName("org.hibernate.Transaction", false, loader);
+			if (transactionClass.isInstance(transaction)) {
+				transactionClass.getMethod("registerSynchronization", Synchronization.class).invoke(transaction,
+						synchronization);
+			}
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+				| InvocationTargetException e) {
+			// the invalidations run again on the next use out of the transaction
+		}
+	}
+
+	/**
+	 * Invalidations of a transaction, run again once at its completion. It keeps
+	 * no reference to the entity manager, the key of its entry.
+	 */
+	private static class Pending implements Synchronization {
+
+		private final Map<List<Object>, Runnable> invalidations = new LinkedHashMap<List<Object>, Runnable>();
+
+		synchronized void add(List<Object> key, Runnable invalidation) {
+			invalidations.putIfAbsent(key, invalidation);
+		}
+
+		@Override
+		public void beforeCompletion() {
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			boolean removed;
+			synchronized (PENDING) {
+				removed = PENDING.values().remove(this);
+			}
+			if (removed) {
+				List<Runnable> runs;
+				synchronized (this) {
+					runs = new ArrayList<Runnable>(invalidations.values());
+				}
+				for (Runnable invalidation : runs) {
+					invalidation.run();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package br.com.witt.jpa.query;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Loop of the chunked processing of {@link Query#forEachChunk(int, Consumer)}
+ * and {@link CriteriaQuery#forEachChunk(int, Consumer, javax.persistence.criteria.Order...)}.
+ */
+final class ChunkedProcessing {
+
+	/**
+	 * Prepares the fetch of the chunk that follows the previous one.
+	 */
+	@FunctionalInterface
+	interface ChunkFetcher<T> {
+
+		/**
+		 * Prepares the fetch of the next chunk. It is called by the calling
+		 * thread, which is the only one to use the query, while the fetch it
+		 * gives may be run by the executor.
+		 * 
+		 * @param em       the entity manager to fetch the chunk with, or
+		 *                 <code>null</code> for the one of the query
+		 * @param previous the previous chunk, or <code>null</code> for the first
+		 *                 chunk
+		 * @param offset   the number of results already fetched
+		 * @return the fetch of the chunk
+		 */
+		Supplier<List<T>> prepare(EntityManager em, List<T> previous, int offset);
+	}
+
+	private ChunkedProcessing() {
+	}
+
+	/**
+	 * Fetches the chunks one after the other and performs the action for each one,
+	 * flushing, when joined to a transaction, and clearing the entity manager
+	 * after each chunk. With an executor, the next chunk is fetched in a new
+	 * entity manager while the action processes the current one, which is
+	 * rejected in a transaction, since the changes to the detached results of the
+	 * chunks would not be flushed. The fetches are prepared in the calling thread
+	 * and only run by the executor.
+	 */
+	static <T> void forEachChunk(Supplier<EntityManager> em, int chunkSize, Consumer<List<T>> action,
+			Executor executor, ChunkFetcher<T> fetcher) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		Objects.requireNonNull(action, "Action cannot be null");
+		CompletableFuture<List<T>> next = null;
+		if (Objects.nonNull(executor) && em.get().isJoinedToTransaction()) {
+			throw new IllegalStateException(
+					"Chunks fetched by an executor are detached, so their changes would not be flushed by the transaction");
+		}
+		if (Objects.nonNull(executor)) {
+			next = prefetch(em.get().getEntityManagerFactory(), executor, fetcher, null, 0);
+		}
+		List<T> previous = null;
+		int offset = 0;
+		while (true) {
+			List<T> chunk = Objects.isNull(next) ? fetcher.prepare(null, previous, offset).get() : join(next);
+			if (chunk.isEmpty()) {
+				return;
+			}
+			offset += chunk.size();
+			boolean last = chunk.size() < chunkSize;
+			if (Objects.nonNull(executor) && !last) {
+				next = prefetch(em.get().getEntityManagerFactory(), executor, fetcher, chunk, offset);
+			}
+			action.accept(chunk);
+			EntityManager current = em.get();
+			if (current.isJoinedToTransaction()) {
+				current.flush();
+			}
+			current.clear();
+			if (last) {
+				return;
+			}
+			previous = chunk;
+		}
+	}
+
+	private static <T> CompletableFuture<List<T>> prefetch(EntityManagerFactory emf, Executor executor,
+			ChunkFetcher<T> fetcher, List<T> previous, int offset) {
+		EntityManager fetchEm = emf.createEntityManager();
+		try {
+			Supplier<List<T>> fetch = fetcher.prepare(fetchEm, previous, offset);
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return fetch.get();
+				} finally {
+					fetchEm.close();
+				}
+			}, executor);
+		} catch (RuntimeException e) {
+			fetchEm.close();
+			throw e;
+		}
+	}
+
+	private static <T> List<T> join(CompletableFuture<List<T>> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
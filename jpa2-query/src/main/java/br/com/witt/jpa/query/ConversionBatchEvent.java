@@ -0,0 +1,40 @@
+package br.com.witt.jpa.query;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of the conversion of a list of SQL results to
+ * instances of the result class by a {@link br.com.witt.jpa.util.RowMapper}
+ * of the {@link br.com.witt.jpa.util.TypeConverter}. The duration of the event
+ * is the time of the conversion of the whole list.
+ *
+ * @see {@link QueryExecutionEvent}
+ *
+ * @author lucianowitt@gmail.com
+ */
+@Name(ConversionBatchEvent.NAME)
+@Label("JPA Result Conversion")
+@Description("Conversion of a list of SQL results to a result class")
+@Category({ "JPA", "Query" })
+@StackTrace(false)
+public final class ConversionBatchEvent extends Event {
+
+	/**
+	 * Name of the event type.
+	 */
+	public static final String NAME = "br.com.witt.jpa.ConversionBatch";
+
+	@Label("Result Class")
+	Class<?> resultClass;
+
+	@Label("Rows")
+	int rows;
+
+	ConversionBatchEvent() {
+	}
+}
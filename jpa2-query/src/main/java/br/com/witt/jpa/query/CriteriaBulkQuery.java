@@ -0,0 +1,522 @@
+package br.com.witt.jpa.query;
+
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CommonAbstractCriteria;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+/**
+ * Base of the facades for easy and fluent JPA 2.1 bulk update and delete
+ * building and executing, {@link CriteriaUpdateQuery} and
+ * {@link CriteriaDeleteQuery}. The statements are executed directly in the
+ * database, without loading the entities, so the entities already managed by
+ * the entity manager do not see their changes.
+ *
+ * @param <Q> the type of the facade
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public abstract class CriteriaBulkQuery<Q extends CriteriaBulkQuery<Q>> {
+
+	private static final String BATCH_LOWER = "batchLower";
+	private static final String BATCH_UPPER = "batchUpper";
+	private static final String BATCH_AFTER = "batchAfter";
+
+	protected EntityManager em;
+	protected CriteriaBuilder cb;
+	private Root<?> root;
+	private String alias;
+	private Map<String, Object> hints;
+	private Map<String, Object> parameters;
+	private Predicate[] restrictions;
+
+	/**
+	 * Cache set by the {@link JpaQueryFactory}, whose entries tagged by the target
+	 * entity are invalidated by the execution of each statement, and again at the
+	 * completion of its transaction.
+	 */
+	QueryResultCache resultCache;
+
+	protected CriteriaBulkQuery(EntityManager em) {
+		this.em = em;
+	}
+
+	/**
+	 * Gives the criteria of the statement.
+	 * 
+	 * @return the {@link javax.persistence.criteria.CriteriaUpdate} or
+	 *         {@link javax.persistence.criteria.CriteriaDelete}
+	 */
+	protected abstract CommonAbstractCriteria getCriteria();
+
+	/**
+	 * Sets the restrictions of the where clause of the criteria.
+	 * 
+	 * @param restrictions the restrictions
+	 */
+	protected abstract void applyWhere(Predicate... restrictions);
+
+	/**
+	 * Creates the query that executes the criteria.
+	 * 
+	 * @return the query
+	 */
+	protected abstract javax.persistence.Query createQuery();
+
+	/**
+	 * Initializes the facade with the root of the criteria and its alias.
+	 * 
+	 * @param root  the root of the criteria
+	 * @param alias the alias of the root, or <code>null</code>
+	 */
+	protected void init(Root<?> root, String alias) {
+		this.root = root;
+		this.alias = Objects.isNull(alias) || alias.trim().isEmpty() ? "e000" : alias.trim();
+		root.alias(this.alias);
+		hints = new HashMap<String, Object>();
+		parameters = new LinkedHashMap<String, Object>();
+		restrictions = new Predicate[0];
+	}
+
+	/**
+	 * Gives access to the {@link CriteriaBuilder} used to build the criteria.
+	 * 
+	 * @return the {@link CriteriaBuilder}
+	 */
+	public CriteriaBuilder cb() {
+		return cb;
+	}
+
+	/**
+	 * Gives the root of the criteria, the target entity of the statement.
+	 * 
+	 * @return the root
+	 */
+	public Root<?> getRoot() {
+		return root;
+	}
+
+	/**
+	 * Creates a new empty list of {@link Predicate}.
+	 * 
+	 * @return the list
+	 */
+	public List<Predicate> newRestrictions() {
+		return new ArrayList<Predicate>();
+	}
+
+	/**
+	 * Specifies the restrictions for the where clause. If more than one is
+	 * informed, they will be all arguments of a conjunction (AND operator)
+	 * predicate.
+	 * 
+	 * @param restrictions the criteria restrictions
+	 * @return this instance
+	 */
+	public Q where(List<Predicate> restrictions) {
+		return where(restrictions.toArray(new Predicate[restrictions.size()]));
+	}
+
+	/**
+	 * Specifies the restrictions for the where clause. If more than one is
+	 * informed, they will be all arguments of a conjunction (AND operator)
+	 * predicate.
+	 * 
+	 * @param restrictions the criteria restrictions
+	 * @return this instance
+	 */
+	public Q where(Predicate... restrictions) {
+		this.restrictions = restrictions.clone();
+		applyWhere(restrictions);
+		return self();
+	}
+
+	/**
+	 * Creates a parameter bound to the given value, to be used in the statement
+	 * expressions in place of a literal.
+	 * 
+	 * @param <T>   the type of the parameter
+	 * @param type  the class of the parameter
+	 * @param value the parameter value
+	 * @return the parameter expression
+	 */
+	public <T> Expression<T> param(Class<T> type, T value) {
+		return AutoParameters.bind(cb, parameters, type, value);
+	}
+
+	/**
+	 * Creates an equality predicate between the attribute of the given path and a
+	 * parameter bound to the given value, or an is null predicate if the value is
+	 * <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#equal(Expression, Expression)}
+	 */
+	public Predicate equal(String path, Object value) {
+		return AutoPredicates.equal(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates an inequality predicate between the attribute of the given path and
+	 * a parameter bound to the given value, or an is not null predicate if the
+	 * value is <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#notEqual(Expression, Expression)}
+	 */
+	public Predicate notEqual(String path, Object value) {
+		return AutoPredicates.notEqual(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path matches
+	 * the pattern, given by a bound parameter.
+	 * 
+	 * @param path    the attribute path, as in
+	 *                {@link CriteriaBulkQuery#get(String)}
+	 * @param pattern the pattern
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#like(Expression, Expression)}
+	 */
+	public Predicate like(String path, String pattern) {
+		return AutoPredicates.like(cb, parameters, get(path), pattern);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path does not
+	 * match the pattern, given by a bound parameter.
+	 * 
+	 * @param path    the attribute path, as in
+	 *                {@link CriteriaBulkQuery#get(String)}
+	 * @param pattern the pattern
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#notLike(Expression, Expression)}
+	 */
+	public Predicate notLike(String path, String pattern) {
+		return AutoPredicates.notLike(cb, parameters, get(path), pattern);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * greater than the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#greaterThan(Expression, Expression)}
+	 */
+	public Predicate greaterThan(String path, Comparable<?> value) {
+		return AutoPredicates.greaterThan(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * greater than or equal to the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#greaterThanOrEqualTo(Expression, Expression)}
+	 */
+	public Predicate greaterThanOrEqualTo(String path, Comparable<?> value) {
+		return AutoPredicates.greaterThanOrEqualTo(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is less
+	 * than the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#lessThan(Expression, Expression)}
+	 */
+	public Predicate lessThan(String path, Comparable<?> value) {
+		return AutoPredicates.lessThan(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is less
+	 * than or equal to the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#lessThanOrEqualTo(Expression, Expression)}
+	 */
+	public Predicate lessThanOrEqualTo(String path, Comparable<?> value) {
+		return AutoPredicates.lessThanOrEqualTo(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * between the values, given by bound parameters.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param lower the lower bound
+	 * @param upper the upper bound
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#between(Expression, Expression, Expression)}
+	 */
+	public Predicate between(String path, Comparable<?> lower, Comparable<?> upper) {
+		return AutoPredicates.between(cb, parameters, get(path), lower, upper);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is in
+	 * the collection of values, given by a bound parameter.
+	 * 
+	 * @param path   the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param values the values
+	 * @return the predicate
+	 * @see {@link Expression#in(Expression...)}
+	 */
+	public Predicate in(String path, Collection<?> values) {
+		return AutoPredicates.in(cb, parameters, get(path), values);
+	}
+
+	/**
+	 * Creates a subquery, to be used in the where clause, whose parameters are
+	 * bound by this statement.
+	 * 
+	 * @param <T>         the type of the subquery result
+	 * @param resultClass the class of the subquery result
+	 * @return the subquery
+	 * @see {@link CommonAbstractCriteria#subquery(Class)}
+	 */
+	public <T> CriteriaSubquery<T> newSubquery(Class<T> resultClass) {
+		Subquery<T> subquery = getCriteria().subquery(resultClass);
+		return new CriteriaSubquery<T>(cb, subquery, parameters);
+	}
+
+	/**
+	 * Creates a {@link Path} to an attribute of the target entity.
+	 * 
+	 * @param path string path in the format
+	 *             <code>{alias}.{attribute}.{attribute}...</code>, where the
+	 *             alias part is optional
+	 * @return the {@link Path}
+	 */
+	public Path<?> get(String path) {
+		if (Objects.isNull(path) || path.trim().isEmpty()) {
+			throw new IllegalArgumentException("Path cannot be null");
+		}
+		String[] pathParts = path.trim().split("\\.");
+		int i = pathParts.length > 1 && pathParts[0].equals(alias) ? 1 : 0;
+		Path<?> result = root;
+		for (; i < pathParts.length; i++) {
+			result = result.get(pathParts[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Binds the given value to the parameter with the given name.
+	 * 
+	 * @param name  parameter name
+	 * @param value parameter value
+	 * @return this instance
+	 * @see {@link javax.persistence.Query#setParameter(String, Object)}
+	 */
+	public Q setParameter(String name, Object value) {
+		parameters.put(name, value);
+		return self();
+	}
+
+	/**
+	 * Sets a query hint.
+	 * 
+	 * @param name  hint name
+	 * @param value hint value
+	 * @see {@link javax.persistence.Query#setHint(String, Object)}
+	 */
+	public void setHint(String name, Object value) {
+		hints.put(name, value);
+	}
+
+	/**
+	 * Executes the statement.
+	 * 
+	 * @return the number of entities updated or deleted
+	 * @see {@link javax.persistence.Query#executeUpdate()}
+	 */
+	public int executeUpdate() {
+		applyWhere(restrictions);
+		int count = bind(createQuery()).executeUpdate();
+		invalidateCache();
+		return count;
+	}
+
+	/**
+	 * Executes the statement in batches of at most <code>batchSize</code> target
+	 * entities, in the order of their numeric ids, so that each batch locks a
+	 * bounded number of rows. The entity manager must be joined to a transaction,
+	 * in which all the batches are executed.
+	 * 
+	 * @param batchSize the maximum number of entities of each batch
+	 * @return the number of entities updated or deleted
+	 * @see {@link CriteriaBulkQuery#executeUpdate(int, boolean)}
+	 */
+	public int executeUpdate(int batchSize) {
+		return executeUpdate(batchSize, false);
+	}
+
+	/**
+	 * Executes the statement in batches of at most <code>batchSize</code> target
+	 * entities, in the order of their numeric ids, so that each batch locks a
+	 * bounded number of rows. The ids of each batch are read first, following the
+	 * ids of all the target entities after the last id of the previous batch, and
+	 * the batch is restricted to the range from its first to its last id, besides
+	 * the restrictions of the statement. The restrictions are applied by the
+	 * statement alone, as its criteria cannot be executed as a query, so a
+	 * statement restricted to a few entities of a large table still executes a
+	 * batch for each <code>batchSize</code> entities of the table.
+	 * <p>
+	 * When <code>commitEachBatch</code>, the entity manager must be resource local
+	 * and not joined to a transaction: each batch is read, executed and committed
+	 * in its own transaction, and the batches already committed are kept if a
+	 * later one fails. Otherwise, the entity manager must be joined to a
+	 * transaction, in which all the batches are executed.
+	 * 
+	 * @param batchSize       the maximum number of entities of each batch
+	 * @param commitEachBatch whether each batch is committed in its own
+	 *                        transaction
+	 * @return the number of entities updated or deleted
+	 * @throws IllegalStateException if the entity manager is not joined to a
+	 *                               transaction and the batches are not committed,
+	 *                               or the other way around
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public int executeUpdate(int batchSize, boolean commitEachBatch) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		if (commitEachBatch == em.isJoinedToTransaction()) {
+			throw new IllegalStateException(commitEachBatch ? "Batches cannot be committed in the current transaction"
+					: "Batches require an active transaction");
+		}
+		SingularAttribute<?, ?> idAttribute = getIdAttribute();
+		Class<?> idType = wrap(idAttribute.getJavaType());
+		javax.persistence.criteria.CriteriaQuery<Object> firstIds = createIdQuery(idAttribute.getName(), idType, false);
+		javax.persistence.criteria.CriteriaQuery<Object> nextIds = createIdQuery(idAttribute.getName(), idType, true);
+		Path id = root.get(idAttribute.getName());
+		Predicate[] batchRestrictions = Arrays.copyOf(restrictions, restrictions.length + 1);
+		batchRestrictions[restrictions.length] = cb.between(id, (Expression) cb.parameter(idType, BATCH_LOWER),
+				(Expression) cb.parameter(idType, BATCH_UPPER));
+		applyWhere(batchRestrictions);
+		int total = 0;
+		Object last = null;
+		try {
+			for (;;) {
+				EntityTransaction transaction = commitEachBatch ? em.getTransaction() : null;
+				if (commitEachBatch) {
+					transaction.begin();
+				}
+				try {
+					TypedQuery<Object> idQuery = em.createQuery(Objects.isNull(last) ? firstIds : nextIds);
+					if (Objects.nonNull(last)) {
+						idQuery.setParameter(BATCH_AFTER, last);
+					}
+					List<Object> ids = idQuery.setMaxResults(batchSize).getResultList();
+					if (!ids.isEmpty()) {
+						last = ids.get(ids.size() - 1);
+						javax.persistence.Query batch = bind(createQuery());
+						batch.setParameter(BATCH_LOWER, ids.get(0));
+						batch.setParameter(BATCH_UPPER, last);
+						total += batch.executeUpdate();
+						invalidateCache();
+					}
+					if (commitEachBatch) {
+						transaction.commit();
+					}
+					if (ids.size() < batchSize) {
+						return total;
+					}
+				} catch (RuntimeException e) {
+					if (commitEachBatch && transaction.isActive()) {
+						transaction.rollback();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			applyWhere(restrictions);
+		}
+	}
+
+	/**
+	 * Creates the query of the ids of a batch, ordered, restricted for the
+	 * batches after the first to the ids after the last one of the previous
+	 * batch.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private javax.persistence.criteria.CriteriaQuery<Object> createIdQuery(String id, Class<?> idType, boolean after) {
+		javax.persistence.criteria.CriteriaQuery idQuery = cb.createQuery(idType);
+		Path idPath = idQuery.from(root.getJavaType()).get(id);
+		if (after) {
+			idQuery.where(cb.greaterThan(idPath, (Expression) cb.parameter(idType, BATCH_AFTER)));
+		}
+		return idQuery.select(idPath).orderBy(cb.asc(idPath));
+	}
+
+	private SingularAttribute<?, ?> getIdAttribute() {
+		EntityType<?> model = em.getMetamodel().entity(root.getJavaType());
+		SingularAttribute<?, ?> id = null;
+		if (model.hasSingleIdAttribute()) {
+			id = model.getId(model.getIdType().getJavaType());
+		}
+		if (Objects.isNull(id) || !Number.class.isAssignableFrom(wrap(id.getJavaType()))) {
+			throw new IllegalStateException("Batches require a single numeric id in " + model.getName());
+		}
+		return id;
+	}
+
+	private javax.persistence.Query bind(javax.persistence.Query query) {
+		for (Map.Entry<String, Object> hint : hints.entrySet()) {
+			query.setHint(hint.getKey(), hint.getValue());
+		}
+		AutoParameters.bindAll(query, parameters);
+		return query;
+	}
+
+	private void invalidateCache() {
+		if (Objects.nonNull(resultCache)) {
+			CacheTransactions.invalidateTag(em, resultCache, em.getMetamodel().entity(root.getJavaType()).getName());
+		}
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return type;
+		}
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Q self() {
+		return (Q) this;
+	}
+}
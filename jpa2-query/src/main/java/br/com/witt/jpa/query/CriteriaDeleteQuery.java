@@ -0,0 +1,66 @@
+package br.com.witt.jpa.query;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CommonAbstractCriteria;
+import javax.persistence.criteria.CriteriaDelete;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * Facade for easy and fluent JPA 2.1 bulk delete building and executing.<br>
+ * Example:
+ * 
+ * <pre>
+ * CriteriaDeleteQuery d = jpaQueryFactory.createCriteriaDelete(AuditLog.class, "a");
+ * d.where(d.lessThan("a.createdAt", limit));
+ * int deleted = d.executeUpdate(10000);
+ * </pre>
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public class CriteriaDeleteQuery extends CriteriaBulkQuery<CriteriaDeleteQuery> {
+
+	private CriteriaDelete<?> delete;
+
+	protected CriteriaDeleteQuery(EntityManager em) {
+		super(em);
+	}
+
+	/**
+	 * Creates a new delete of the given entity class, with the given alias.
+	 * 
+	 * @param entityClass the entity class (table) to delete from
+	 * @param alias       the entity class (table) alias, optional
+	 * @return this {@link CriteriaDeleteQuery} instance
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected CriteriaDeleteQuery newQuery(Class<?> entityClass, String alias) {
+		cb = em.getCriteriaBuilder();
+		delete = cb.createCriteriaDelete(entityClass);
+		init(delete.from((Class) entityClass), alias);
+		return this;
+	}
+
+	/**
+	 * Gives the underlying {@link CriteriaDelete}.
+	 * 
+	 * @return the criteria delete
+	 */
+	public CriteriaDelete<?> getCriteriaDelete() {
+		return delete;
+	}
+
+	@Override
+	protected CommonAbstractCriteria getCriteria() {
+		return delete;
+	}
+
+	@Override
+	protected void applyWhere(Predicate... restrictions) {
+		delete.where(restrictions);
+	}
+
+	@Override
+	protected javax.persistence.Query createQuery() {
+		return em.createQuery(delete);
+	}
+}
@@ -0,0 +1,1760 @@
+package br.com.witt.jpa.query;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceException;
+import javax.persistence.Subgraph;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.Attribute;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+import br.com.witt.jpa.metrics.QueryEvent.Operation;
+import br.com.witt.jpa.metrics.QueryFingerprint;
+import br.com.witt.jpa.metrics.QueryListener;
+import br.com.witt.jpa.util.TypeConverter;
+
+/**
+ * Facade for easy and fluent JPA 2.1 criteria query building and executing.<br>
+ * Example:
+ * 
+ * <pre>
+ * CriteriaQuery q = new CriteriaQuery(entityManager);
+ * q.newQuery(MyEntity.class).from(MyEntity.class).selectDistinct();
+ * q.where(q.cb().equal(q.get("id"), myEntityId));
+ * MyEntity myEntity = q.getSingleResult();
+ * </pre>
+ * 
+ * @author lucianowitt@gmail.com
+ * 
+ */
+public class CriteriaQuery {
+
+	private EntityManager em;
+	private CriteriaBuilder cb;
+	private javax.persistence.criteria.CriteriaQuery<?> query;
+	private Predicate[] restrictions = new Predicate[0];
+	private Map<String, From<?, ?>> entities;
+	private Map<String, Object> hints;
+	private Map<String, Object> parameters;
+	private Integer firstResult;
+	private Integer maxResults;
+	private InListChunking inListChunking;
+	private FlushModeType flushMode;
+
+	/**
+	 * Cache set by the {@link JpaQueryFactory}, used when the query is
+	 * {@link CriteriaQuery#cacheable(String, Duration, String...)}.
+	 */
+	QueryResultCache resultCache;
+	/**
+	 * Replicas the query was routed to by the {@link JpaQueryFactory}, with the
+	 * index of the chosen replica.
+	 */
+	ReadReplicas replicas;
+	int replica = -1;
+	/**
+	 * Listeners set by the {@link JpaQueryFactory}, notified of each operation.
+	 */
+	List<QueryListener> listeners = Collections.emptyList();
+
+	private String cacheName;
+	private Duration cacheTimeToLive;
+	private Set<String> cacheTags;
+	private String name;
+	private String statement;
+	private String shape;
+	private String fingerprint;
+	private QueryProbe probe;
+
+	protected CriteriaQuery(EntityManager em) {
+		this.em = em;
+	}
+
+	/**
+	 * Creates a new query with the informed result class.
+	 * 
+	 * @param resultClass the class of the query result
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	protected CriteriaQuery newQuery(Class<?> resultClass) {
+		cb = em.getCriteriaBuilder();
+		if (Objects.isNull(resultClass)) {
+			query = cb.createQuery();
+		} else {
+			query = cb.createQuery(resultClass);
+		}
+		entities = new LinkedHashMap<String, From<?, ?>>();
+		hints = new HashMap<String, Object>();
+		parameters = new LinkedHashMap<String, Object>();
+		return this;
+	}
+
+	/**
+	 * Creates a new query to return a scalar, as no result class is informed.
+	 * 
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	protected CriteriaQuery newQuery() {
+		return newQuery(null);
+	}
+
+	/**
+	 * Gives access to the {@link CriteriaBuilder} used to build the
+	 * {@link javax.persistence.criteria.CriteriaQuery}.
+	 * 
+	 * @return the {@link CriteriaBuilder}
+	 */
+	public CriteriaBuilder cb() {
+		return cb;
+	}
+
+	/**
+	 * Adds an entity class (table) to the from clause of the query, with the given
+	 * alias.
+	 * 
+	 * @param entityClass the entity class (table)
+	 * @param alias       the entity class (table) alias
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#from(Class)}
+	 */
+	public CriteriaQuery from(Class<?> entityClass, String alias) {
+		alias = getEntityAlias(alias);
+		Root<?> root = query.from(entityClass);
+		changed();
+		root.alias(alias);
+		entities.put(alias, root);
+		return this;
+	}
+
+	/**
+	 * Adds an entity class (table) to the from clause of the query. If there will
+	 * be more than one entity class (table) in the query, it is recommended to give
+	 * it an alias by calling {@link CriteriaQuery#from(Class, String)} instead.
+	 * 
+	 * @param entityClass the entity class (table)
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery from(Class<?> entityClass) {
+		return from(entityClass, null);
+	}
+
+	/**
+	 * Creates a join, of the join type informed, with the given path. The path
+	 * should have the format <code>{alias}.{attribute}</code>. The alias part is
+	 * optional if there is only one entity class (table) in the from clause and it
+	 * is the path source.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @param type  the join type
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.From#join(String,JoinType)}
+	 */
+	public CriteriaQuery join(String path, String alias, JoinType type) {
+		alias = getEntityAlias(alias);
+		String[] pathParts = splitJoinPath(path);
+		From<?, ?> from = getJoinSource(pathParts);
+		Join<?, ?> join = from.join(pathParts[pathParts.length - 1], type);
+		changed();
+		join.alias(alias);
+		entities.put(alias, join);
+		return this;
+	}
+
+	/**
+	 * Creates an inner join with the given path. The path should have the format
+	 * <code>{alias}.{attribute}</code>. The alias part is optional if there is only
+	 * one entity class (table) in the from clause and it is the path source.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery innerJoin(String path, String alias) {
+		return join(path, alias, JoinType.INNER);
+	}
+
+	/**
+	 * Creates a left outer join with the given path. The path should have the
+	 * format <code>{alias}.{attribute}</code>. The alias part is optional if there
+	 * is only one entity class (table) in the from clause and it is the path
+	 * source.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery leftJoin(String path, String alias) {
+		return join(path, alias, JoinType.LEFT);
+	}
+
+	/**
+	 * Creates a right outer join with the given path. The path should have the
+	 * format <code>{alias}.{attribute}</code>. The alias part is optional if there
+	 * is only one entity class (table) in the from clause and it is the path
+	 * source.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery rightJoin(String path, String alias) {
+		return join(path, alias, JoinType.RIGHT);
+	}
+
+	/**
+	 * Creates a fetch join, of the join type informed, with the given path, so
+	 * that the associated entities are loaded by the same query as the results.
+	 * The path should have the format <code>{alias}.{attribute}</code>. The alias
+	 * part is optional if there is only one entity class (table) in the from
+	 * clause and it is the path source. When the persistence provider implements
+	 * fetches as joins, as Hibernate does, the alias can be used in paths given
+	 * to {@link CriteriaQuery#get(String)}, in further joins and fetches.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @param type  the join type
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.FetchParent#fetch(String, JoinType)}
+	 */
+	public CriteriaQuery fetch(String path, String alias, JoinType type) {
+		alias = getEntityAlias(alias);
+		String[] pathParts = splitJoinPath(path);
+		From<?, ?> from = getJoinSource(pathParts);
+		Fetch<?, ?> fetch = from.fetch(pathParts[pathParts.length - 1], type);
+		changed();
+		if (fetch instanceof From) {
+			From<?, ?> fetchFrom = (From<?, ?>) fetch;
+			fetchFrom.alias(alias);
+			entities.put(alias, fetchFrom);
+		}
+		return this;
+	}
+
+	/**
+	 * Creates an inner fetch join with the given path.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link CriteriaQuery#fetch(String, String, JoinType)}
+	 */
+	public CriteriaQuery innerFetch(String path, String alias) {
+		return fetch(path, alias, JoinType.INNER);
+	}
+
+	/**
+	 * Creates a left outer fetch join with the given path.
+	 * 
+	 * @param path  the path from the source entity (table) to the target entity
+	 *              (table)
+	 * @param alias the target entity (table) alias
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link CriteriaQuery#fetch(String, String, JoinType)}
+	 */
+	public CriteriaQuery leftFetch(String path, String alias) {
+		return fetch(path, alias, JoinType.LEFT);
+	}
+
+	/**
+	 * Sets the entity graph to be loaded by the query: the attributes of the graph
+	 * are fetched along with the results, and the other attributes keep their
+	 * mapped fetch type.
+	 * 
+	 * @param graph the entity graph
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery setLoadGraph(EntityGraph<?> graph) {
+		setHint(ProviderHints.LOAD_GRAPH, graph);
+		return this;
+	}
+
+	/**
+	 * Sets the named entity graph to be loaded by the query.
+	 * 
+	 * @param graphName the name of the entity graph
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link CriteriaQuery#setLoadGraph(EntityGraph)}
+	 */
+	public CriteriaQuery setLoadGraph(String graphName) {
+		return setLoadGraph(em.getEntityGraph(graphName));
+	}
+
+	/**
+	 * Sets the entity graph to be fetched by the query: the attributes of the
+	 * graph are fetched along with the results, and the other attributes are
+	 * treated as lazy.
+	 * 
+	 * @param graph the entity graph
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery setFetchGraph(EntityGraph<?> graph) {
+		setHint(ProviderHints.FETCH_GRAPH, graph);
+		return this;
+	}
+
+	/**
+	 * Sets the named entity graph to be fetched by the query.
+	 * 
+	 * @param graphName the name of the entity graph
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link CriteriaQuery#setFetchGraph(EntityGraph)}
+	 */
+	public CriteriaQuery setFetchGraph(String graphName) {
+		return setFetchGraph(em.getEntityGraph(graphName));
+	}
+
+	/**
+	 * Creates an entity graph of the first entity class of the from clause, with
+	 * the given attribute paths, in the format
+	 * <code>{attribute}.{attribute}...</code>, so that
+	 * <code>"department.manager"</code> adds the department attribute and, in its
+	 * subgraph, the manager attribute.
+	 * 
+	 * @param attributePaths the attribute paths
+	 * @return the entity graph, to be given to
+	 *         {@link CriteriaQuery#setLoadGraph(EntityGraph)} or
+	 *         {@link CriteriaQuery#setFetchGraph(EntityGraph)}
+	 */
+	public EntityGraph<?> createEntityGraph(String... attributePaths) {
+		if (Objects.isNull(entities) || entities.isEmpty()) {
+			throw new IllegalArgumentException("No entity in from clause");
+		}
+		EntityGraph<?> graph = em.createEntityGraph(entities.values().iterator().next().getJavaType());
+		Map<String, Subgraph<?>> subgraphs = new HashMap<String, Subgraph<?>>();
+		for (String attributePath : attributePaths) {
+			String[] parts = attributePath.trim().split("\\.");
+			Subgraph<?> subgraph = null;
+			String prefix = "";
+			for (int i = 0; i < parts.length - 1; i++) {
+				prefix = prefix + "." + parts[i];
+				Subgraph<?> child = subgraphs.get(prefix);
+				if (Objects.isNull(child)) {
+					child = Objects.isNull(subgraph) ? graph.addSubgraph(parts[i]) : subgraph.addSubgraph(parts[i]);
+					subgraphs.put(prefix, child);
+				}
+				subgraph = child;
+			}
+			if (Objects.isNull(subgraph)) {
+				graph.addAttributeNodes(parts[parts.length - 1]);
+			} else {
+				subgraph.addAttributeNodes(parts[parts.length - 1]);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Specifies the list of selections to be returned by the query.
+	 * 
+	 * @param selections the list of selections.
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#multiselect(List)}
+	 */
+	public CriteriaQuery select(List<Selection<?>> selections) {
+		return select(selections.toArray(new Selection<?>[selections.size()]));
+	}
+
+	/**
+	 * Specifies one or more selections to be returned by the query.
+	 * 
+	 * @param selections one or more selections.
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#multiselect(Selection...)}
+	 */
+	public CriteriaQuery select(Selection<?>... selections) {
+		query.multiselect(selections);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Selects the persistent fields of the given DTO class, that is, the non
+	 * static and non transient fields not annotated with
+	 * {@link javax.persistence.Transient}, and returns one instance of the class
+	 * per row, created with its constructor that receives those fields as
+	 * arguments, in the order they are declared. Only the columns of the fields
+	 * are read, and the instances are not managed by the entity manager.<br>
+	 * Each field receives the path given by its {@link ProjectionPath}
+	 * annotation, or else the attribute with the same name of the first entity of
+	 * the from clause. The query must have been created with the DTO class or
+	 * with no result class.
+	 * 
+	 * @param dtoClass the DTO class
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link CriteriaBuilder#construct(Class, Selection...)}
+	 */
+	public CriteriaQuery selectDto(Class<?> dtoClass) {
+		return selectDto(dtoClass, Collections.<String, String>emptyMap());
+	}
+
+	/**
+	 * Selects the persistent fields of the given DTO class, as
+	 * {@link CriteriaQuery#selectDto(Class)}, with the paths of the given mapping
+	 * taking precedence over the {@link ProjectionPath} annotations and the field
+	 * names.
+	 * 
+	 * @param dtoClass the DTO class
+	 * @param paths    the paths of the query, by field name
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link CriteriaBuilder#construct(Class, Selection...)}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public CriteriaQuery selectDto(Class<?> dtoClass, Map<String, String> paths) {
+		Objects.requireNonNull(dtoClass, "DTO class cannot be null");
+		if (!query.getResultType().isAssignableFrom(dtoClass)) {
+			throw new IllegalStateException("The query result class " + query.getResultType().getName()
+					+ " does not accept instances of " + dtoClass.getName());
+		}
+		List<Field> fields = TypeConverter.getResultFields(dtoClass);
+		Selection<?>[] selections = new Selection<?>[fields.size()];
+		for (int i = 0; i < selections.length; i++) {
+			Field field = fields.get(i);
+			String path = paths.get(field.getName());
+			if (Objects.isNull(path)) {
+				ProjectionPath annotation = field.getAnnotation(ProjectionPath.class);
+				path = Objects.isNull(annotation) ? field.getName() : annotation.value();
+			}
+			Path<?> selection = get(path);
+			Class<?> fieldType = wrap(field.getType());
+			if (!fieldType.isAssignableFrom(wrap(selection.getJavaType()))) {
+				selections[i] = selection.as(fieldType);
+			} else {
+				selections[i] = selection;
+			}
+		}
+		((javax.persistence.criteria.CriteriaQuery) query).select(cb.construct(dtoClass, selections));
+		changed();
+		return this;
+	}
+
+	/**
+	 * Specifies that duplicated results will be discarded. The same as the method
+	 * {@link CriteriaQuery#distinct()}, but with a name that sounds better when no
+	 * selection will be informed.
+	 * 
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery selectDistinct() {
+		return distinct();
+	}
+
+	/**
+	 * Specifies that duplicated results will be discarded.
+	 * 
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#distinct(boolean)}
+	 */
+	public CriteriaQuery distinct() {
+		query.distinct(true);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Specifies the expression to be counted.
+	 * 
+	 * @param x the expression to be counted
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaBuilder#count(Expression)}
+	 */
+	public CriteriaQuery count(Expression<?> x) {
+		return select(cb.count(x));
+	}
+
+	/**
+	 * Specifies the expression to be counted, and that duplicated results wont be
+	 * considered.
+	 * 
+	 * @param x the expression to be counted
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaBuilder#countDistinct(Expression)}
+	 */
+	public CriteriaQuery countDistinct(Expression<?> x) {
+		return select(cb.countDistinct(x));
+	}
+
+	/**
+	 * Convenience method to create a new list of predicates to later pass to the
+	 * {@link CriteriaQuery#where(Predicate...)} method. Use the
+	 * {@link CriteriaBuilder} to create predicates to add to this list.
+	 * 
+	 * @return new list of restrictions (predicates)
+	 * @see {@link CriteriaQuery#cb()}
+	 */
+	public List<Predicate> newRestrictions() {
+		return new ArrayList<Predicate>();
+	}
+	
+	/**
+	 * Specifies the restrictions for the where clause. If more than one is
+	 * informed, they will be all arguments of a conjunction (AND operator)
+	 * predicate.
+	 * 
+	 * @param restrictions the criteria restrictions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#where(Predicate...)}
+	 */
+	public CriteriaQuery where(List<Predicate> restrictions) {
+		return where(restrictions.toArray(new Predicate[restrictions.size()]));
+	}
+
+	/**
+	 * Specifies the restrictions for the where clause. If more than one is
+	 * informed, they will be all arguments of a conjunction (AND operator)
+	 * predicate.
+	 * 
+	 * @param restrictions the criteria restrictions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#where(Predicate...)}
+	 */
+	public CriteriaQuery where(Predicate... restrictions) {
+		query.where(restrictions);
+		changed();
+		this.restrictions = Objects.isNull(restrictions) ? new Predicate[0] : restrictions.clone();
+		return this;
+	}
+
+	/**
+	 * Creates a parameter bound to the given value, to be used in the query
+	 * expressions in place of a literal, so that the value is not inlined in the
+	 * SQL statement and equivalent queries share the same statement.
+	 * 
+	 * @param <T>   the type of the parameter
+	 * @param type  the class of the parameter
+	 * @param value the parameter value
+	 * @return the parameter expression
+	 */
+	public <T> Expression<T> param(Class<T> type, T value) {
+		return AutoParameters.bind(cb, parameters, type, value);
+	}
+
+	/**
+	 * Creates an equality predicate between the attribute of the given path and a
+	 * parameter bound to the given value, or an is null predicate if the value is
+	 * <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#equal(Expression, Expression)}
+	 */
+	public Predicate equal(String path, Object value) {
+		return AutoPredicates.equal(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates an inequality predicate between the attribute of the given path and
+	 * a parameter bound to the given value, or an is not null predicate if the
+	 * value is <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#notEqual(Expression, Expression)}
+	 */
+	public Predicate notEqual(String path, Object value) {
+		return AutoPredicates.notEqual(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path matches
+	 * the pattern, given by a bound parameter.
+	 * 
+	 * @param path    the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param pattern the pattern
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#like(Expression, Expression)}
+	 */
+	public Predicate like(String path, String pattern) {
+		return AutoPredicates.like(cb, parameters, get(path), pattern);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path does not
+	 * match the pattern, given by a bound parameter.
+	 * 
+	 * @param path    the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param pattern the pattern
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#notLike(Expression, Expression)}
+	 */
+	public Predicate notLike(String path, String pattern) {
+		return AutoPredicates.notLike(cb, parameters, get(path), pattern);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * greater than the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#greaterThan(Expression, Expression)}
+	 */
+	public Predicate greaterThan(String path, Comparable<?> value) {
+		return AutoPredicates.greaterThan(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * greater than or equal to the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#greaterThanOrEqualTo(Expression, Expression)}
+	 */
+	public Predicate greaterThanOrEqualTo(String path, Comparable<?> value) {
+		return AutoPredicates.greaterThanOrEqualTo(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is less
+	 * than the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#lessThan(Expression, Expression)}
+	 */
+	public Predicate lessThan(String path, Comparable<?> value) {
+		return AutoPredicates.lessThan(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is less
+	 * than or equal to the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#lessThanOrEqualTo(Expression, Expression)}
+	 */
+	public Predicate lessThanOrEqualTo(String path, Comparable<?> value) {
+		return AutoPredicates.lessThanOrEqualTo(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * between the values, given by bound parameters.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param lower the lower bound
+	 * @param upper the upper bound
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#between(Expression, Expression, Expression)}
+	 */
+	public Predicate between(String path, Comparable<?> lower, Comparable<?> upper) {
+		return AutoPredicates.between(cb, parameters, get(path), lower, upper);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is in
+	 * the collection of values, given by a single bound parameter.
+	 * 
+	 * @param path   the attribute path, as in {@link CriteriaQuery#get(String)}
+	 * @param values the values
+	 * @return the predicate
+	 * @see {@link Expression#in(Expression)}
+	 */
+	public Predicate in(String path, Collection<?> values) {
+		return AutoPredicates.in(cb, parameters, get(path), values);
+	}
+
+	/**
+	 * Specifies the group by expressions.
+	 * 
+	 * @param e list of group by expressions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#groupBy(List))}
+	 */
+	public CriteriaQuery groupBy(List<Expression<?>> e) {
+		query.groupBy(e);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Specifies the group by expressions.
+	 * 
+	 * @param e one or more group by expressions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#groupBy(Expression...)}
+	 */
+	public CriteriaQuery groupBy(Expression<?>... e) {
+		query.groupBy(e);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Specifies the restrictions for the having clause. If more than one is
+	 * informed, they will be all arguments of a conjunction (AND operator)
+	 * predicate.
+	 * 
+	 * @param restrictions the criteria restrictions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#having(Predicate...)}
+	 */
+	public CriteriaQuery having(Predicate... restrictions) {
+		query.having(restrictions);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Specifies the query ordering.
+	 * 
+	 * @param o list of {@link Order} expressions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#orderBy(List)}
+	 */
+	public CriteriaQuery orderBy(List<Order> o) {
+		query.orderBy(o);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Specifies the query ordering.
+	 * 
+	 * @param o one or more {@link Order} expressions
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.criteria.CriteriaQuery#orderBy(Order...)}
+	 */
+	public CriteriaQuery orderBy(Order... o) {
+		query.orderBy(o);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Creates a new subquery with the informed result class.
+	 * 
+	 * @param <T>         the type of the subquery result, resolved at runtime
+	 * @param resultClass the class of the subquery result
+	 * @return the {@link CriteriaSubquery} instance
+	 * @see {@link javax.persistence.criteria.CommonAbstractCriteria#subquery(Class)}
+	 */
+	public <T> CriteriaSubquery<T> newSubquery(Class<T> resultClass) {
+		Subquery<T> subquery = query.subquery(resultClass);
+		return new CriteriaSubquery<T>(cb, subquery, parameters);
+	}
+
+	/**
+	 * Creates a {@link Path} to an entity attribute.
+	 * 
+	 * @param path string path in the format
+	 *             <code>{alias}.{attribute}.{attribute}...</code>
+	 * @return the {@link Path}
+	 */
+	public Path<?> get(String path) {
+		From<?, ?> from = null;
+		checkPath(path);
+		String[] pathParts = path.trim().split("\\.");
+		int i;
+		if (pathParts.length == 1) {
+			from = entities.values().iterator().next();
+			i = 0;
+		} else {
+			from = entities.get(pathParts[0]);
+			if (Objects.isNull(from)) {
+				throw new IllegalArgumentException("No entity found in from clause whith the alias " + pathParts[0]);
+			}
+			i = 1;
+		}
+		Path<?> result = from;
+		for (; i < pathParts.length; i++) {
+			result = result.get(pathParts[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a string expression of concatenated string expressions.
+	 * 
+	 * @param parts the string expression to concatenate
+	 * @return the concatenated string expression
+	 * @see {@link CriteriaBuilder#concat(Expression, Expression)}
+	 */
+	@SuppressWarnings("unchecked")
+	public Expression<String> concat(Expression<String>... parts) {
+		if (parts == null || parts.length == 0) {
+			return null;
+		}
+		Expression<String> e = parts[0];
+		if (parts.length > 1) {
+			for (int i = 1; i < parts.length; i++) {
+				e = cb.concat(e, parts[i]);
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Creates a named parameter, to be used in the query expressions and bound with
+	 * {@link CriteriaQuery#setParameter(String, Object)}.
+	 * 
+	 * @param <T>  the type of the parameter
+	 * @param type the class of the parameter
+	 * @param name the parameter name
+	 * @return the parameter expression
+	 * @see {@link CriteriaBuilder#parameter(Class, String)}
+	 */
+	public <T> ParameterExpression<T> parameter(Class<T> type, String name) {
+		return cb.parameter(type, name);
+	}
+
+	/**
+	 * Binds the given value to the parameter with the given name.
+	 * 
+	 * @param name  parameter name
+	 * @param value parameter value
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.TypedQuery#setParameter(String, Object)}
+	 */
+	public CriteriaQuery setParameter(String name, Object value) {
+		parameters.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Sets a query property or hint.
+	 * 
+	 * @param name  property/hint name
+	 * @param value property/hint value
+	 * @see {@link javax.persistence.TypedQuery#setHint(String, Object)}
+	 */
+	public void setHint(String name, Object value) {
+		hints.put(name, value);
+	}
+
+	/**
+	 * Executes the query and returns a single result.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the single result of the query execution
+	 * @see {@link javax.persistence.TypedQuery#getSingleResult()}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getSingleResult() {
+		return (T) measured(Operation.SINGLE_RESULT, () -> cached("single", 0, 0, () -> routed(() -> {
+			TypedQuery<?> typedQuery = getTypedQuery();
+			return executing(() -> typedQuery.getSingleResult());
+		}), r -> 1));
+	}
+
+	/**
+	 * Executes the query and returns a list of results.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the list of results of the query execution
+	 * @see {@link javax.persistence.TypedQuery#getResultList()}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getResultList() {
+		return (List<T>) measured(Operation.RESULT_LIST,
+				() -> cached("list", 0, 0, () -> routed(this::executeResultList), List::size));
+	}
+
+	/**
+	 * Executes the query and returns a stream of results, read from the database as
+	 * they are consumed when the persistence provider supports it. The stream
+	 * should be closed after use, to release the underlying cursor.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the stream of results of the query execution
+	 * @see {@link javax.persistence.TypedQuery#getResultStream()}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Stream<T> getResultStream() {
+		return measuredStream(() -> (Stream<T>) routed(() -> {
+			TypedQuery<?> typedQuery = getTypedQuery();
+			return executing(() -> typedQuery.getResultStream());
+		}));
+	}
+
+	/**
+	 * Executes the query and performs the given action for each result, as it is
+	 * read from the database, closing the underlying cursor at the end.
+	 * 
+	 * @param <T>    the type of the result, resolved at runtime
+	 * @param action the action to be performed for each result
+	 * @see {@link CriteriaQuery#getResultStream()}
+	 */
+	public <T> void forEach(Consumer<T> action) {
+		try (Stream<T> stream = getResultStream()) {
+			stream.forEach(action);
+		}
+	}
+
+	/**
+	 * Sets the number of rows the JDBC driver should fetch from the database at a
+	 * time, for the persistence providers that support it.
+	 * 
+	 * @param fetchSize the number of rows
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery setFetchSize(int fetchSize) {
+		String hint = ProviderHints.of(em).fetchSize;
+		if (Objects.nonNull(hint)) {
+			setHint(hint, fetchSize);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets how large collections given to <code>in</code> predicates, such as the
+	 * ones created by {@link CriteriaQuery#in(String, Collection)}, are split when
+	 * the list of results is fetched.
+	 * 
+	 * @param inListChunking the chunking settings, or <code>null</code> to never
+	 *                       split collections
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery setInListChunking(InListChunking inListChunking) {
+		this.inListChunking = inListChunking;
+		return this;
+	}
+
+	/**
+	 * Names the query, so that its executions are reported to the
+	 * {@link QueryListener}s under the name instead of the fingerprint of its
+	 * statement.
+	 * 
+	 * @param name the query name
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery setName(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Marks the query as read only: the pending changes of the entity manager are
+	 * not flushed before its execution, nor before its count, and the entities it
+	 * returns are loaded in read only mode, for the persistence providers that
+	 * support it, so that they are neither snapshotted nor dirty checked. Changes
+	 * made to the returned entities are not saved.
+	 * 
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.TypedQuery#setFlushMode(FlushModeType)}
+	 */
+	public CriteriaQuery readOnly() {
+		flushMode = FlushModeType.COMMIT;
+		String hint = ProviderHints.of(em).readOnly;
+		if (Objects.nonNull(hint)) {
+			setHint(hint, true);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the position of the first result to be retrieved.
+	 * 
+	 * @param firstResult the position of the first result, starting at 0
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.TypedQuery#setFirstResult(int)}
+	 */
+	public CriteriaQuery setFirstResult(int firstResult) {
+		this.firstResult = firstResult;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of results to be retrieved.
+	 * 
+	 * @param maxResults the maximum number of results
+	 * @return this {@link CriteriaQuery} instance
+	 * @see {@link javax.persistence.TypedQuery#setMaxResults(int)}
+	 */
+	public CriteriaQuery setMaxResults(int maxResults) {
+		this.maxResults = maxResults;
+		return this;
+	}
+
+	/**
+	 * Executes the query and returns a page of results.
+	 * 
+	 * @param <T>        the type of the results, resolved at runtime
+	 * @param pageNumber the number of the page
+	 * @param pageSize   the size of the page
+	 * @return a page of results
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getResultPage(int pageNumber, int pageSize) {
+		return (List<T>) measured(Operation.RESULT_PAGE, () -> cached("page", pageNumber, pageSize, () -> routed(() -> {
+			TypedQuery<?> typedQuery = getTypedQuery();
+			typedQuery.setFirstResult((pageNumber - 1) * pageSize);
+			typedQuery.setMaxResults(pageSize);
+			return executing(() -> typedQuery.getResultList());
+		}), List::size));
+	}
+
+	/**
+	 * Executes the query and returns a page of results, along with the total number
+	 * of results, counted by a query derived from this one, with the same roots,
+	 * joins and restrictions, but without ordering.
+	 * 
+	 * @throws IllegalStateException if the query is grouped or has fetches, as
+	 *                               in {@link CriteriaQuery#getResultCount()}
+	 * 
+	 * @param <T>        the type of the results, resolved at runtime
+	 * @param pageNumber the number of the page
+	 * @param pageSize   the size of the page
+	 * @return a page of results, with the total
+	 */
+	public <T> Page<T> getPage(int pageNumber, int pageSize) {
+		List<T> content = getResultPage(pageNumber, pageSize);
+		long total = getResultCount();
+		return new Page<T>(content, pageNumber, pageSize, total, (long) pageNumber * pageSize < total);
+	}
+
+	/**
+	 * Executes the query and returns a page of results, along with the total number
+	 * of results. The count query is run at the same time as the page query, with
+	 * the given executor, in a new {@link EntityManager} created by the factory of
+	 * the one of this query, so it does not see changes not yet committed by the
+	 * current transaction. The count query is created by the calling thread, so
+	 * the tree of this query is not shared with the thread of the executor.
+	 * 
+	 * @param <T>        the type of the results, resolved at runtime
+	 * @param pageNumber the number of the page
+	 * @param pageSize   the size of the page
+	 * @param executor   the executor of the count query
+	 * @return a page of results, with the total
+	 * @see {@link CriteriaQuery#getPage(int, int)}
+	 */
+	public <T> Page<T> getPage(int pageNumber, int pageSize, Executor executor) {
+		EntityManager countEm = em.getEntityManagerFactory().createEntityManager();
+		CompletableFuture<Long> count;
+		try {
+			TypedQuery<Long> countQuery = createCountQuery(countEm);
+			count = CompletableFuture.supplyAsync(() -> {
+				try {
+					return countQuery.getSingleResult();
+				} finally {
+					countEm.close();
+				}
+			}, executor);
+		} catch (RuntimeException e) {
+			countEm.close();
+			throw e;
+		}
+		List<T> content = getResultPage(pageNumber, pageSize);
+		long total;
+		try {
+			total = count.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		return new Page<T>(content, pageNumber, pageSize, total, (long) pageNumber * pageSize < total);
+	}
+
+	/**
+	 * Executes the query and returns a page of results without counting the total
+	 * number of results. One result more than the page size is fetched, to tell
+	 * whether there is a next page.
+	 * 
+	 * @param <T>        the type of the results, resolved at runtime
+	 * @param pageNumber the number of the page
+	 * @param pageSize   the size of the page
+	 * @return a page of results, without the total
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Page<T> getSlice(int pageNumber, int pageSize) {
+		List<T> content = (List<T>) measured(Operation.RESULT_PAGE,
+				() -> cached("slice", pageNumber, pageSize, () -> routed(() -> {
+					TypedQuery<?> typedQuery = getTypedQuery();
+					typedQuery.setFirstResult((pageNumber - 1) * pageSize);
+					typedQuery.setMaxResults(pageSize + 1);
+					return executing(() -> typedQuery.getResultList());
+				}), List::size));
+		boolean next = content.size() > pageSize;
+		if (next) {
+			content = new ArrayList<T>(content.subList(0, pageSize));
+		}
+		return new Page<T>(content, pageNumber, pageSize, null, next);
+	}
+
+	/**
+	 * Counts the results of the query, with a query derived from this one, with the
+	 * same roots, joins and restrictions, but without ordering. If the query is
+	 * distinct, the distinct instances of the first root are counted. Queries with
+	 * fetches cannot be counted, as the owners of the fetched associations would
+	 * not be selected; fetch the associations with an entity graph instead, as
+	 * {@link CriteriaQuery#setFetchGraph(EntityGraph)}.
+	 * 
+	 * @return the number of results
+	 * @throws IllegalStateException if the query is grouped or has fetches
+	 */
+	public long getResultCount() {
+		return routed(() -> createCountQuery(em).getSingleResult());
+	}
+
+	/**
+	 * Executes the query and returns a page of results using keyset (seek)
+	 * pagination: instead of skipping the results of the previous pages, it
+	 * restricts the query to the results that come after the last one of the
+	 * previous page, according to the given ordering keys, which replace the query
+	 * ordering. The keys must uniquely identify each result, so the last key
+	 * should usually be the entity id, and must be paths of the root entity
+	 * returned by the query, so that their values can be read from the last
+	 * result of the page.
+	 * 
+	 * @param <T>               the type of the results, resolved at runtime
+	 * @param continuationToken the token returned with the previous page, or
+	 *                          <code>null</code> for the first page
+	 * @param pageSize          the size of the page
+	 * @param keys              the ordering keys, created with
+	 *                          {@link CriteriaBuilder#asc(Expression)} or
+	 *                          {@link CriteriaBuilder#desc(Expression)} on paths
+	 *                          given by {@link CriteriaQuery#get(String)}
+	 * @return a page of results, with the token to fetch the next page
+	 */
+	public <T> KeysetPage<T> getKeysetPage(String continuationToken, int pageSize, Order... keys) {
+		Object[] lastKeyValues = null;
+		if (Objects.nonNull(continuationToken)) {
+			Class<?>[] types = new Class<?>[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				types[i] = keys[i].getExpression().getJavaType();
+			}
+			lastKeyValues = KeysetToken.decode(continuationToken, types);
+		}
+		return getKeysetPageAfter(lastKeyValues, pageSize, keys);
+	}
+
+	/**
+	 * Executes the query and returns a page of results using keyset (seek)
+	 * pagination, starting after the result with the given ordering key values.
+	 * 
+	 * @param <T>           the type of the results, resolved at runtime
+	 * @param lastKeyValues the key values of the last result of the previous page,
+	 *                      or <code>null</code> for the first page
+	 * @param pageSize      the size of the page
+	 * @param keys          the ordering keys
+	 * @return a page of results, with the token to fetch the next page
+	 * @see {@link CriteriaQuery#getKeysetPage(String, int, Order...)}
+	 */
+	public <T> KeysetPage<T> getKeysetPageAfter(Object[] lastKeyValues, int pageSize, Order... keys) {
+		if (Objects.isNull(keys) || keys.length == 0) {
+			throw new IllegalArgumentException("Keyset pagination requires at least one ordering key");
+		}
+		if (Objects.nonNull(lastKeyValues) && lastKeyValues.length != keys.length) {
+			throw new IllegalArgumentException("Wrong number of key values");
+		}
+
+		List<T> resultList = routed(() -> fetchChunk(createKeysetQuery(em, keys, lastKeyValues, pageSize + 1)));
+		if (resultList.size() <= pageSize) {
+			return new KeysetPage<T>(resultList, null, null);
+		}
+		resultList = resultList.subList(0, pageSize);
+		Object[] keyValues = getKeyValues(resultList.get(pageSize - 1), keys);
+		return new KeysetPage<T>(resultList, keyValues, KeysetToken.encode(keyValues));
+	}
+
+	/**
+	 * Executes the query in chunks of the given size and performs the given action
+	 * for each chunk. With ordering keys, the chunks are fetched with keyset
+	 * pagination, as {@link CriteriaQuery#getKeysetPageAfter(Object[], int, Order...)},
+	 * so each chunk costs the same regardless of its position; otherwise, they are
+	 * fetched by offset, and the query should be ordered by a unique key, so that
+	 * the pages are stable. After each chunk, the entity manager is flushed, when
+	 * joined to a transaction, and cleared, so that the results of the previous
+	 * chunks are detached and the memory used does not grow with the number of
+	 * results.
+	 * 
+	 * @param <T>       the type of the results, resolved at runtime
+	 * @param chunkSize the number of results of each chunk
+	 * @param action    the action to be performed for each chunk
+	 * @param keys      the ordering keys, which must identify the results, or none
+	 *                  to page by offset
+	 */
+	public <T> void forEachChunk(int chunkSize, Consumer<List<T>> action, Order... keys) {
+		forEachChunk(chunkSize, action, null, keys);
+	}
+
+	/**
+	 * Executes the query in chunks of the given size, as
+	 * {@link CriteriaQuery#forEachChunk(int, Consumer, Order...)}, fetching the next
+	 * chunk with the given executor, in a new {@link EntityManager}, while the
+	 * action processes the current one. The results given to the action are
+	 * detached, so changes to them are not flushed, and the entity manager cannot
+	 * be joined to a transaction; to change them, merge them in another entity
+	 * manager. The queries of the fetches are created by the calling thread, so
+	 * the query is not shared with the thread of the executor.
+	 * 
+	 * @param <T>       the type of the results, resolved at runtime
+	 * @param chunkSize the number of results of each chunk
+	 * @param action    the action to be performed for each chunk
+	 * @param executor  the executor of the fetches, or <code>null</code> to fetch
+	 *                  the chunks in the calling thread
+	 * @param keys      the ordering keys, which must identify the results, or none
+	 *                  to page by offset
+	 * @throws IllegalStateException if an executor is given and the entity
+	 *                               manager is joined to a transaction
+	 */
+	public <T> void forEachChunk(int chunkSize, Consumer<List<T>> action, Executor executor, Order... keys) {
+		if (Objects.nonNull(firstResult) || Objects.nonNull(maxResults)) {
+			throw new IllegalStateException("Queries with first or max results cannot be processed in chunks");
+		}
+		boolean keyset = Objects.nonNull(keys) && keys.length > 0;
+		ChunkedProcessing.<T>forEachChunk(() -> em, chunkSize, action, executor, (fetchEm, previous, offset) -> {
+			Object[] after = keyset && Objects.nonNull(previous) ? getKeyValues(previous.get(previous.size() - 1), keys)
+					: null;
+			if (Objects.isNull(fetchEm)) {
+				return () -> routed(() -> fetchChunk(keyset ? createKeysetQuery(em, keys, after, chunkSize)
+						: createChunkQuery(em, offset, chunkSize)));
+			}
+			TypedQuery<?> typedQuery = keyset ? createKeysetQuery(fetchEm, keys, after, chunkSize)
+					: createChunkQuery(fetchEm, offset, chunkSize);
+			return () -> fetchChunk(typedQuery);
+		});
+	}
+
+	private TypedQuery<?> createChunkQuery(EntityManager em, int offset, int chunkSize) {
+		TypedQuery<?> typedQuery = createTypedQuery(em, parameters);
+		typedQuery.setFirstResult(offset);
+		typedQuery.setMaxResults(chunkSize);
+		return typedQuery;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> fetchChunk(TypedQuery<?> typedQuery) {
+		return new ArrayList<T>((List<T>) typedQuery.getResultList());
+	}
+
+	/**
+	 * Creates, in the given entity manager, the query of the results that follow
+	 * the given key values, ordered by the keys, binding the key values to the
+	 * parameters of the keyset predicate. It is created from the tree of this
+	 * query itself, restricted by the keyset predicate and ordered by the keys
+	 * only while the typed query is created, in the calling thread: its
+	 * restrictions and ordering are restored right after, even if the creation
+	 * fails.
+	 */
+	private TypedQuery<?> createKeysetQuery(EntityManager em, Order[] keys, Object[] lastKeyValues, int maxResults) {
+		List<Order> orders = new ArrayList<Order>(query.getOrderList());
+		List<ParameterExpression<Object>> keyParameters = new ArrayList<ParameterExpression<Object>>();
+		TypedQuery<?> typedQuery;
+		try {
+			if (Objects.nonNull(lastKeyValues)) {
+				Predicate[] where = Arrays.copyOf(restrictions, restrictions.length + 1);
+				where[restrictions.length] = keysetPredicate(cb, keys, keyParameters);
+				query.where(where);
+			}
+			query.orderBy(keys);
+			typedQuery = createTypedQuery(em, parameters);
+		} finally {
+			query.where(restrictions);
+			query.orderBy(orders);
+		}
+		for (int i = 0; i < keyParameters.size(); i++) {
+			typedQuery.setParameter(keyParameters.get(i), lastKeyValues[i]);
+		}
+		typedQuery.setMaxResults(maxResults);
+		return typedQuery;
+	}
+
+	/**
+	 * Creates the predicate <code>(k1, k2, ...) &gt; (v1, v2, ...)</code>, expanded
+	 * as <code>k1 &gt; v1 or (k1 = v1 and k2 &gt; v2) or ...</code>, with
+	 * <code>&lt;</code> instead of <code>&gt;</code> for descending keys, adding
+	 * the parameters of the values to the given list.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Predicate keysetPredicate(CriteriaBuilder cb, Order[] keys,
+			List<ParameterExpression<Object>> parameters) {
+		List<Predicate> alternatives = new ArrayList<Predicate>();
+		List<Predicate> equalities = new ArrayList<Predicate>();
+		for (int i = 0; i < keys.length; i++) {
+			Expression key = keys[i].getExpression();
+			ParameterExpression<Object> parameter = (ParameterExpression<Object>) cb.parameter(key.getJavaType());
+			parameters.add(parameter);
+			Expression value = parameter;
+			Predicate comparison = keys[i].isAscending() ? cb.greaterThan(key, value) : cb.lessThan(key, value);
+			List<Predicate> conjunction = new ArrayList<Predicate>(equalities);
+			conjunction.add(comparison);
+			alternatives.add(cb.and(conjunction.toArray(new Predicate[conjunction.size()])));
+			equalities.add(cb.equal(key, value));
+		}
+		return cb.or(alternatives.toArray(new Predicate[alternatives.size()]));
+	}
+
+	/**
+	 * Reads the values of the ordering keys from a result, following the attributes
+	 * of the key paths from the root entity.
+	 */
+	private Object[] getKeyValues(Object result, Order[] keys) {
+		Object[] values = new Object[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			Expression<?> key = keys[i].getExpression();
+			if (!(key instanceof Path)) {
+				throw new IllegalArgumentException("Keyset pagination keys must be paths");
+			}
+			List<Attribute<?, ?>> attributes = new ArrayList<Attribute<?, ?>>();
+			Path<?> path = (Path<?>) key;
+			while (Objects.nonNull(path.getParentPath())) {
+				if (!(path.getModel() instanceof Attribute)) {
+					throw new IllegalArgumentException("Keyset pagination keys must be attribute paths");
+				}
+				attributes.add(0, (Attribute<?, ?>) path.getModel());
+				path = path.getParentPath();
+			}
+			if (!path.getJavaType().isInstance(result)) {
+				throw new IllegalStateException("Keyset pagination keys must be paths of the entity returned by the query;"
+						+ " use getKeysetPageAfter with the key values instead");
+			}
+			Object value = result;
+			for (Attribute<?, ?> attribute : attributes) {
+				value = readAttribute(value, attribute);
+			}
+			values[i] = value;
+		}
+		return values;
+	}
+
+	private Object readAttribute(Object object, Attribute<?, ?> attribute) {
+		if (Objects.isNull(object)) {
+			return null;
+		}
+		Member member = attribute.getJavaMember();
+		try {
+			if (member instanceof Method) {
+				Method method = (Method) member;
+				method.trySetAccessible();
+				return method.invoke(object);
+			} else if (member instanceof Field) {
+				Field field = (Field) member;
+				field.trySetAccessible();
+				return field.get(object);
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not read the attribute " + attribute.getName(), e);
+		}
+		throw new IllegalStateException("Could not read the attribute " + attribute.getName());
+	}
+
+	/**
+	 * Creates the count query in the given entity manager, binding the parameters
+	 * shared with this query. It is created from the tree of this query itself,
+	 * with the count of the first root as selection and no ordering, which are
+	 * restored as soon as the typed query is created, in the calling thread, so
+	 * that the count has exactly the roots, joins and restrictions of this query,
+	 * however they were built.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private TypedQuery<Long> createCountQuery(EntityManager em) {
+		if (!query.getGroupList().isEmpty()) {
+			throw new IllegalStateException("Count of grouped queries is not supported");
+		}
+		if (query.getRoots().isEmpty()) {
+			throw new IllegalStateException("No entity in from clause");
+		}
+		for (Root<?> root : query.getRoots()) {
+			if (hasFetches(root)) {
+				throw new IllegalStateException(
+						"Count of queries with fetches is not supported; fetch the associations with an entity graph");
+			}
+		}
+		Root<?> root = query.getRoots().iterator().next();
+		Selection<?> selection = query.getSelection();
+		boolean distinct = query.isDistinct();
+		List<Order> orders = new ArrayList<Order>(query.getOrderList());
+		TypedQuery<Long> typedQuery;
+		try {
+			((javax.persistence.criteria.CriteriaQuery) query).select(distinct ? cb.countDistinct(root) : cb.count(root));
+			query.distinct(false);
+			query.orderBy(Collections.<Order>emptyList());
+			typedQuery = (TypedQuery<Long>) em.createQuery(query);
+		} finally {
+			((javax.persistence.criteria.CriteriaQuery) query).select(selection);
+			query.distinct(distinct);
+			query.orderBy(orders);
+		}
+		AutoParameters.bindAll(typedQuery, parameters);
+		if (Objects.nonNull(flushMode)) {
+			typedQuery.setFlushMode(flushMode);
+		}
+		return typedQuery;
+	}
+
+	private static boolean hasFetches(From<?, ?> from) {
+		if (!from.getFetches().isEmpty()) {
+			return true;
+		}
+		for (Join<?, ?> join : from.getJoins()) {
+			if (hasFetches(join)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks the query results to be kept in the result cache of the
+	 * {@link JpaQueryFactory}, keyed by the given name, the bound parameters, the
+	 * values given to the predicate helpers, such as
+	 * {@link CriteriaQuery#equal(String, Object)}, and the page limits. As the
+	 * criteria tree itself is not part of the key, the name must identify the
+	 * shape of the query, including any literal given directly to the
+	 * {@link CriteriaBuilder}.<br>
+	 * The entries are tagged by the names of the entities of the from and join
+	 * clauses, and by the given tags, so that they are discarded when an update on
+	 * any of them is executed through {@link Query#executeUpdate()}, and again
+	 * when its transaction completes. While the entity manager is joined to a
+	 * transaction that executed such an update, the cache is bypassed. Has no
+	 * effect if the factory has no cache. Only results that are safe to share,
+	 * such as DTOs, scalars or reference data entities, should be cached.
+	 * 
+	 * @param name       the name of the query
+	 * @param timeToLive the time to live of the results, or <code>null</code> for
+	 *                   the default time to live of the cache
+	 * @param tags       additional tags of the results
+	 * @return this {@link CriteriaQuery} instance
+	 */
+	public CriteriaQuery cacheable(String name, Duration timeToLive, String... tags) {
+		cacheName = Objects.requireNonNull(name, "Name cannot be null");
+		cacheTimeToLive = timeToLive;
+		cacheTags = new LinkedHashSet<String>(Arrays.asList(tags));
+		return this;
+	}
+
+	/**
+	 * Gives the names of the entities of the from and join clauses.
+	 */
+	Set<String> getEntityNames() {
+		Set<String> names = new LinkedHashSet<String>();
+		for (From<?, ?> from : entities.values()) {
+			Class<?> type = from.getJavaType();
+			try {
+				names.add(em.getMetamodel().entity(type).getName());
+			} catch (IllegalArgumentException e) {
+				names.add(type.getSimpleName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Gives the result from the cache, when the query is cacheable, or from the
+	 * loader. Cached lists are copied to unmodifiable lists.
+	 */
+	@SuppressWarnings("unchecked")
+	private <R> R cached(String kind, int pageNumber, int pageSize, Supplier<R> loader, ToIntFunction<R> weigher) {
+		if (Objects.isNull(cacheName) || Objects.isNull(resultCache) || CacheTransactions.isBypassed(em)) {
+			return loader.get();
+		}
+		Set<String> tags = new LinkedHashSet<String>(cacheTags);
+		tags.addAll(getEntityNames());
+		List<Object> key = Arrays.asList(kind, cacheName, query.getResultType(), new TreeMap<String, Object>(parameters),
+				pageNumber, pageSize, firstResult, maxResults);
+		Supplier<R> copyingLoader = () -> {
+			R result = loader.get();
+			if (result instanceof List) {
+				return (R) Collections.unmodifiableList(new ArrayList<Object>((List<?>) result));
+			}
+			return result;
+		};
+		return resultCache.get(key, cacheTimeToLive, tags, copyingLoader, weigher);
+	}
+
+	/**
+	 * Executes the given operation and, when the {@link JpaQueryFactory} has
+	 * {@link QueryListener}s or the {@link QueryExecutionEvent} is enabled in Java
+	 * Flight Recorder, measures it and notifies them. Operations called by a
+	 * measured one are measured as part of it.
+	 */
+	private <R> R measured(Operation operation, Supplier<R> execution) {
+		if (Objects.nonNull(probe)) {
+			return execution.get();
+		}
+		QueryExecutionEvent recorded = new QueryExecutionEvent();
+		if (listeners.isEmpty() && !recorded.isEnabled()) {
+			return execution.get();
+		}
+		probe = new QueryProbe(0, recorded);
+		R result = null;
+		Throwable error = null;
+		try {
+			result = execution.get();
+			return result;
+		} catch (RuntimeException | Error e) {
+			error = e;
+			throw e;
+		} finally {
+			QueryProbe finished = probe;
+			probe = null;
+			updateFingerprint();
+			finished.finish(listeners, name, shape, false, fingerprint, new LinkedHashMap<String, Object>(parameters),
+					operation, result, error);
+		}
+	}
+
+	/**
+	 * Opens the stream of results with the given function and, when the
+	 * operation is measured as in {@link CriteriaQuery#measured}, measures its
+	 * consumption, notifying the listeners when the stream is closed, with the
+	 * number of results read.
+	 */
+	private <T> Stream<T> measuredStream(Supplier<Stream<T>> opening) {
+		if (Objects.nonNull(probe)) {
+			return opening.get();
+		}
+		QueryExecutionEvent recorded = new QueryExecutionEvent();
+		if (listeners.isEmpty() && !recorded.isEnabled()) {
+			return opening.get();
+		}
+		QueryProbe streaming = new QueryProbe(0, recorded);
+		Map<String, Object> parameterValues = new LinkedHashMap<String, Object>(parameters);
+		Stream<T> stream;
+		probe = streaming;
+		try {
+			stream = opening.get();
+		} catch (RuntimeException | Error e) {
+			updateFingerprint();
+			streaming.finish(listeners, name, shape, false, fingerprint, parameterValues, Operation.RESULT_STREAM, null,
+					e);
+			throw e;
+		} finally {
+			probe = null;
+		}
+		updateFingerprint();
+		return streaming.finishOnClose(stream, listeners, name, shape, false, fingerprint, parameterValues);
+	}
+
+	/**
+	 * Gives the fingerprint of the statement rendered by the persistence provider,
+	 * when available, or else of the structure of the tree, keeping the one given
+	 * to the listeners in <code>shape</code>.
+	 */
+	private void updateFingerprint() {
+		if (Objects.isNull(fingerprint) || Objects.nonNull(statement) && shape != statement) {
+			shape = Objects.isNull(statement) ? CriteriaShape.of(query) : statement;
+			fingerprint = QueryFingerprint.of(shape);
+		}
+	}
+
+	/**
+	 * Discards the statement and the fingerprint of the query after a change of
+	 * its tree, so that they are given again by its next measured operation.
+	 */
+	private void changed() {
+		statement = null;
+		shape = null;
+		fingerprint = null;
+	}
+
+	private <R> R executing(Supplier<R> execution) {
+		QueryProbe current = probe;
+		return Objects.isNull(current) ? execution.get() : current.execute(execution);
+	}
+
+	/**
+	 * Gives the JPQL rendered by the persistence provider for the typed query,
+	 * when it exposes it, as Hibernate does.
+	 */
+	private static String renderStatement(TypedQuery<?> typedQuery) {
+		try {
+			Object rendered = typedQuery.getClass().getMethod("getQueryString").invoke(typedQuery);
+			return rendered instanceof String ? (String) rendered : null;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Routes the query to the given replica, whose entity manager the query was
+	 * built with.
+	 */
+	void routeTo(ReadReplicas replicas, int replica) {
+		this.replicas = replicas;
+		this.replica = replica;
+	}
+
+	/**
+	 * Executes the query on the replica it was routed to by the
+	 * {@link JpaQueryFactory}, if any, counting it as outstanding on the replica.
+	 * If the replica cannot be reached, it is left out of the balancing for a
+	 * while, so that the next queries are built on the primary database or on
+	 * another replica. The failure is thrown, as the tree of the query belongs to
+	 * the replica and cannot be executed on the primary database.
+	 */
+	private <R> R routed(Supplier<R> execution) {
+		if (replica < 0) {
+			return execution.get();
+		}
+		int current = replica;
+		replicas.acquire(current);
+		try {
+			return execution.get();
+		} catch (PersistenceException e) {
+			if (ReadReplicas.isConnectionFailure(e)) {
+				replicas.markFailed(current);
+			}
+			throw e;
+		} finally {
+			replicas.release(current);
+		}
+	}
+
+	/**
+	 * Executes the query, splitting the largest collection parameter in chunks
+	 * when it exceeds the chunk size of the {@link InListChunking} settings.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<?> executeResultList() {
+		String name = Objects.isNull(inListChunking) ? null : inListChunking.findParameter(parameters);
+		if (Objects.isNull(name)) {
+			TypedQuery<?> typedQuery = getTypedQuery();
+			return executing(() -> typedQuery.getResultList());
+		}
+		if (Objects.nonNull(firstResult) || Objects.nonNull(maxResults)) {
+			throw new IllegalStateException("Queries with first or max results cannot be chunked");
+		}
+		return inListChunking.execute(em, (Collection<?>) parameters.get(name), (chunkEm, chunk) -> {
+			Map<String, Object> chunkParameters = new LinkedHashMap<String, Object>(parameters);
+			chunkParameters.put(name, chunk);
+			return getTypedQuery(chunkEm, chunkParameters);
+		}, typedQuery -> executing(() -> (List<Object>) typedQuery.getResultList()));
+	}
+
+	TypedQuery<?> getTypedQuery() {
+		return getTypedQuery(em, parameters);
+	}
+
+	/**
+	 * Creates the typed query in the given entity manager, measuring it as the
+	 * build time of the current operation, if measured.
+	 */
+	private TypedQuery<?> getTypedQuery(EntityManager em, Map<String, Object> parameters) {
+		QueryProbe current = probe;
+		if (Objects.isNull(current)) {
+			return createTypedQuery(em, parameters);
+		}
+		TypedQuery<?> typedQuery = current.build(() -> createTypedQuery(em, parameters));
+		if (Objects.isNull(statement)) {
+			statement = renderStatement(typedQuery);
+		}
+		return typedQuery;
+	}
+
+	private TypedQuery<?> createTypedQuery(EntityManager em, Map<String, Object> parameters) {
+		return createTypedQuery(em, query, parameters);
+	}
+
+	private TypedQuery<?> createTypedQuery(EntityManager em, javax.persistence.criteria.CriteriaQuery<?> criteria,
+			Map<String, Object> parameters) {
+		TypedQuery<?> typedQuery = em.createQuery(criteria);
+		for (Map.Entry<String, Object> entry : hints.entrySet()) {
+			typedQuery.setHint(entry.getKey(), entry.getValue());
+		}
+		AutoParameters.bindAll(typedQuery, parameters);
+		if (Objects.nonNull(firstResult)) {
+			typedQuery.setFirstResult(firstResult);
+		}
+		if (Objects.nonNull(maxResults)) {
+			typedQuery.setMaxResults(maxResults);
+		}
+		if (Objects.nonNull(flushMode)) {
+			typedQuery.setFlushMode(flushMode);
+		}
+		return typedQuery;
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return type;
+		}
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	private String[] splitJoinPath(String path) {
+		checkPath(path);
+		String[] pathParts = path.trim().split("\\.");
+		if (pathParts.length > 2) {
+			throw new IllegalArgumentException("Invalid join path");
+		}
+		return pathParts;
+	}
+
+	/**
+	 * Gives the entity the join path starts from: the one with the alias of the
+	 * path, or the first one of the from clause if the path has no alias.
+	 */
+	private From<?, ?> getJoinSource(String[] pathParts) {
+		if (pathParts.length == 1) {
+			return entities.values().iterator().next();
+		}
+		From<?, ?> from = entities.get(pathParts[0]);
+		if (Objects.isNull(from)) {
+			throw new IllegalArgumentException("No entity found in from clause whith the alias " + pathParts[0]);
+		}
+		return from;
+	}
+
+	private String getEntityAlias(String alias) {
+		if (Objects.isNull(alias) || alias.trim().isEmpty()) {
+			alias = String.format("e%03d", entities.size());
+		}
+		return alias.trim();
+	}
+
+	private void checkPath(String path) {
+		if (Objects.isNull(entities) || entities.isEmpty()) {
+			throw new IllegalArgumentException("No entity in from clause");
+		}
+		if (Objects.isNull(path) || path.trim().isEmpty()) {
+			throw new IllegalArgumentException("Path cannot be null");
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package br.com.witt.jpa.query;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Parameter;
+import javax.persistence.TypedQuery;
+
+/**
+ * Shape of a criteria query defined once and compiled on its first execution,
+ * so that the following executions skip building the criteria tree and
+ * rendering it to the query language. The values that change between
+ * executions must be given by parameters created with
+ * {@link CriteriaQuery#parameter(Class, String)}, and bound to the query
+ * returned by {@link JpaQueryFactory#createQuery(CriteriaQueryTemplate)}.<br>
+ * Example:
+ * 
+ * <pre>
+ * static final CriteriaQueryTemplate ACTIVE_BY_NAME = new CriteriaQueryTemplate("Department.activeByName",
+ * 		Department.class, q -&gt; {
+ * 			q.from(Department.class);
+ * 			q.where(q.cb().like(q.get("name").as(String.class), q.parameter(String.class, "name")),
+ * 					q.cb().equal(q.get("active"), Boolean.TRUE));
+ * 		});
+ * 
+ * List&lt;Department&gt; departments = jpaQueryFactory.createQuery(ACTIVE_BY_NAME)
+ * 		.setParameter("name", "%" + name + "%").getResultList();
+ * </pre>
+ * 
+ * The compiled query is registered as a named query of the
+ * {@link EntityManagerFactory}, with the template name, which must be unique
+ * among the templates, prefixed by {@link CriteriaQueryTemplate#NAME_PREFIX},
+ * so that it does not replace the named queries of the application.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public class CriteriaQueryTemplate {
+
+	/**
+	 * Prefix of the names with which the templates are registered as named
+	 * queries.
+	 */
+	public static final String NAME_PREFIX = CriteriaQueryTemplate.class.getName() + ":";
+
+	private final String name;
+	private final Class<?> resultClass;
+	private final Consumer<CriteriaQuery> definition;
+	private final Set<EntityManagerFactory> compiled = Collections
+			.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<EntityManagerFactory, Boolean>()));
+	private volatile Map<String, Object> boundParameters = Collections.emptyMap();
+	private volatile Set<String> entityNames = Collections.emptySet();
+
+	/**
+	 * Creates a new template.
+	 * 
+	 * @param name        the unique name of the query
+	 * @param resultClass the class of the query result, or <code>null</code> for
+	 *                    scalar queries
+	 * @param definition  the function that builds the query, given a new
+	 *                    {@link CriteriaQuery}
+	 */
+	public CriteriaQueryTemplate(String name, Class<?> resultClass, Consumer<CriteriaQuery> definition) {
+		this.name = Objects.requireNonNull(name, "Name cannot be null");
+		this.resultClass = resultClass;
+		this.definition = Objects.requireNonNull(definition, "Definition cannot be null");
+	}
+
+	/**
+	 * Gives the name of the query.
+	 * 
+	 * @return the query name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gives the class of the query result.
+	 * 
+	 * @return the result class, or <code>null</code> for scalar queries
+	 */
+	public Class<?> getResultClass() {
+		return resultClass;
+	}
+
+	/**
+	 * Creates a query from this template, compiling it on the first call for the
+	 * factory of the given {@link EntityManager}.
+	 * 
+	 * @param em the entity manager
+	 * @return the query, with the values bound in the definition already set
+	 */
+	protected JpqlQuery createQuery(EntityManager em) {
+		compile(em);
+		JpqlQuery query = new JpqlQuery(em).newNamedQuery(NAME_PREFIX + name, resultClass);
+		query.sourceTags = entityNames;
+		query.template = this;
+		for (Map.Entry<String, Object> entry : boundParameters.entrySet()) {
+			query.setParameter(entry.getKey(), entry.getValue());
+		}
+		return query;
+	}
+
+	void compile(EntityManager em) {
+		EntityManagerFactory emf = em.getEntityManagerFactory();
+		if (compiled.contains(emf)) {
+			return;
+		}
+		synchronized (this) {
+			if (compiled.contains(emf)) {
+				return;
+			}
+			CriteriaQuery criteriaQuery = new CriteriaQuery(em).newQuery(resultClass);
+			definition.accept(criteriaQuery);
+			TypedQuery<?> typedQuery = criteriaQuery.getTypedQuery();
+			boundParameters = getBoundParameters(typedQuery);
+			entityNames = Collections.unmodifiableSet(criteriaQuery.getEntityNames());
+			emf.addNamedQuery(NAME_PREFIX + name, typedQuery);
+			compiled.add(emf);
+		}
+	}
+
+	/**
+	 * Gives the named parameters bound when the query was built, including the
+	 * ones some providers create for the literals of the criteria, as the bindings
+	 * are not kept by the named query.
+	 */
+	private static Map<String, Object> getBoundParameters(TypedQuery<?> typedQuery) {
+		javax.persistence.Query query = typedQuery.unwrap(javax.persistence.Query.class);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		for (Parameter<?> parameter : query.getParameters()) {
+			if (Objects.nonNull(parameter.getName()) && query.isBound(parameter)) {
+				parameters.put(parameter.getName(), query.getParameterValue(parameter));
+			}
+		}
+		return parameters;
+	}
+}
@@ -0,0 +1,175 @@
+package br.com.witt.jpa.query;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.Attribute;
+
+/**
+ * Describes the structure of a criteria tree, for the fingerprint of its query
+ * when the persistence provider does not render it: the selections, the roots
+ * with their joins and fetches, and the shapes of the restrictions, groupings
+ * and orderings, as far as the criteria API gives them back, with parameters
+ * replaced by <code>?</code>. The expressions that do not give back their
+ * arguments, as the comparisons, are described by their classes, so queries
+ * that differ only in their values have the same description.
+ *
+ * @author lucianowitt@gmail.com
+ */
+final class CriteriaShape {
+
+	private final StringBuilder description = new StringBuilder();
+	private final Map<From<?, ?>, String> names = new IdentityHashMap<From<?, ?>, String>();
+
+	private CriteriaShape() {
+	}
+
+	/**
+	 * Describes the structure of the given query.
+	 * 
+	 * @param query the query
+	 * @return the description
+	 */
+	static String of(javax.persistence.criteria.CriteriaQuery<?> query) {
+		CriteriaShape shape = new CriteriaShape();
+		shape.query(query, query.getOrderList());
+		return shape.description.toString();
+	}
+
+	private void query(AbstractQuery<?> query, List<Order> orders) {
+		for (Root<?> root : query.getRoots()) {
+			name(root);
+		}
+		description.append("select ");
+		if (query.isDistinct()) {
+			description.append("distinct ");
+		}
+		Selection<?> selection = query.getSelection();
+		if (Objects.isNull(selection)) {
+			all(query.getRoots(), ", ");
+		} else {
+			value(selection);
+		}
+		description.append(" from ");
+		String separator = "";
+		for (Root<?> root : query.getRoots()) {
+			description.append(separator).append(root.getJavaType().getSimpleName()).append(' ');
+			value(root);
+			joins(root);
+			separator = ", ";
+		}
+		clause(" where ", query.getRestriction());
+		if (!query.getGroupList().isEmpty()) {
+			description.append(" group by ");
+			all(query.getGroupList(), ", ");
+		}
+		clause(" having ", query.getGroupRestriction());
+		if (Objects.nonNull(orders) && !orders.isEmpty()) {
+			description.append(" order by ");
+			all(orders, ", ");
+		}
+	}
+
+	/**
+	 * Names the given from and its joins by their order in the tree, as the
+	 * aliases may be generated by the persistence provider when rendering it.
+	 */
+	private void name(From<?, ?> from) {
+		names.put(from, "f" + names.size());
+		for (Join<?, ?> join : from.getJoins()) {
+			name(join);
+		}
+	}
+
+	private void joins(From<?, ?> from) {
+		for (Join<?, ?> join : from.getJoins()) {
+			description.append(' ').append(join.getJoinType()).append(" join ")
+					.append(join.getAttribute().getName()).append(' ');
+			value(join);
+			joins(join);
+		}
+		fetches(from.getFetches());
+	}
+
+	private void fetches(Collection<? extends Fetch<?, ?>> fetches) {
+		for (Fetch<?, ?> fetch : fetches) {
+			description.append(' ').append(fetch.getJoinType()).append(" fetch ")
+					.append(fetch.getAttribute().getName());
+			fetches(fetch.getFetches());
+		}
+	}
+
+	private void clause(String keyword, Predicate predicate) {
+		if (Objects.nonNull(predicate)) {
+			description.append(keyword);
+			value(predicate);
+		}
+	}
+
+	private void all(Collection<?> values, String separator) {
+		String current = "";
+		for (Object value : values) {
+			description.append(current);
+			value(value);
+			current = separator;
+		}
+	}
+
+	/**
+	 * Describes an expression by what it gives back of itself.
+	 */
+	private void value(Object value) {
+		if (value instanceof Collection) {
+			all((Collection<?>) value, ", ");
+		} else if (value instanceof From) {
+			String name = names.get(value);
+			description.append(Objects.isNull(name) ? ((From<?, ?>) value).getJavaType().getSimpleName() : name);
+		} else if (value instanceof Path && ((Path<?>) value).getModel() instanceof Attribute) {
+			Path<?> path = (Path<?>) value;
+			value(path.getParentPath());
+			description.append('.').append(((Attribute<?, ?>) path.getModel()).getName());
+		} else if (value instanceof Subquery) {
+			description.append('(');
+			query((Subquery<?>) value, null);
+			description.append(')');
+		} else if (value instanceof ParameterExpression) {
+			description.append('?');
+		} else if (value instanceof Predicate) {
+			Predicate predicate = (Predicate) value;
+			if (predicate.isNegated()) {
+				description.append("not ");
+			}
+			if (predicate.getExpressions().isEmpty()) {
+				description.append(value.getClass().getSimpleName());
+			} else {
+				description.append(predicate.getOperator()).append('(');
+				all(predicate.getExpressions(), ", ");
+				description.append(')');
+			}
+		} else if (value instanceof Selection && ((Selection<?>) value).isCompoundSelection()) {
+			description.append('(');
+			all(((Selection<?>) value).getCompoundSelectionItems(), ", ");
+			description.append(')');
+		} else if (value instanceof Order) {
+			Order order = (Order) value;
+			value(order.getExpression());
+			description.append(order.isAscending() ? " asc" : " desc");
+		} else {
+			description.append(value.getClass().getSimpleName());
+		}
+	}
+}
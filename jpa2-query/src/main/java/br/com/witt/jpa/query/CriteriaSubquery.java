@@ -1,6 +1,7 @@
 package br.com.witt.jpa.query;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,11 +29,25 @@ public class CriteriaSubquery<T> {
 	private CriteriaBuilder cb;
 	private Subquery<T> query;
 	private Map<String, From<?, ?>> entities;
+	private Map<String, Object> parameters;
 
 	protected CriteriaSubquery(CriteriaBuilder cb, Subquery<T> query) {
+		this(cb, query, new LinkedHashMap<String, Object>());
+	}
+
+	/**
+	 * Creates a subquery whose parameters are bound by the enclosing query.
+	 * 
+	 * @param cb         the criteria builder
+	 * @param query      the subquery
+	 * @param parameters the values of the parameters of the enclosing query, by
+	 *                   name
+	 */
+	protected CriteriaSubquery(CriteriaBuilder cb, Subquery<T> query, Map<String, Object> parameters) {
 		this.cb = cb;
 		this.query = query;
 		this.entities = new LinkedHashMap<String, From<?, ?>>();
+		this.parameters = parameters;
 	}
 
 	/**
@@ -242,6 +257,153 @@ public class CriteriaSubquery<T> {
 		return this;
 	}
 
+	/**
+	 * Creates a parameter bound to the given value, to be used in the query
+	 * expressions in place of a literal, so that the value is not inlined in the
+	 * SQL statement and equivalent queries share the same statement.
+	 * 
+	 * @param <G>   the type of the parameter
+	 * @param type  the class of the parameter
+	 * @param value the parameter value
+	 * @return the parameter expression
+	 */
+	public <G> Expression<G> param(Class<G> type, G value) {
+		return AutoParameters.bind(cb, parameters, type, value);
+	}
+
+	/**
+	 * Creates an equality predicate between the attribute of the given path and a
+	 * parameter bound to the given value, or an is null predicate if the value is
+	 * <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#equal(Expression, Expression)}
+	 */
+	public Predicate equal(String path, Object value) {
+		return AutoPredicates.equal(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates an inequality predicate between the attribute of the given path and
+	 * a parameter bound to the given value, or an is not null predicate if the
+	 * value is <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#notEqual(Expression, Expression)}
+	 */
+	public Predicate notEqual(String path, Object value) {
+		return AutoPredicates.notEqual(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path matches
+	 * the pattern, given by a bound parameter.
+	 * 
+	 * @param path    the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param pattern the pattern
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#like(Expression, Expression)}
+	 */
+	public Predicate like(String path, String pattern) {
+		return AutoPredicates.like(cb, parameters, get(path), pattern);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path does not
+	 * match the pattern, given by a bound parameter.
+	 * 
+	 * @param path    the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param pattern the pattern
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#notLike(Expression, Expression)}
+	 */
+	public Predicate notLike(String path, String pattern) {
+		return AutoPredicates.notLike(cb, parameters, get(path), pattern);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * greater than the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#greaterThan(Expression, Expression)}
+	 */
+	public Predicate greaterThan(String path, Comparable<?> value) {
+		return AutoPredicates.greaterThan(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * greater than or equal to the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#greaterThanOrEqualTo(Expression, Expression)}
+	 */
+	public Predicate greaterThanOrEqualTo(String path, Comparable<?> value) {
+		return AutoPredicates.greaterThanOrEqualTo(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is less
+	 * than the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#lessThan(Expression, Expression)}
+	 */
+	public Predicate lessThan(String path, Comparable<?> value) {
+		return AutoPredicates.lessThan(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is less
+	 * than or equal to the value, given by a bound parameter.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param value the value
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#lessThanOrEqualTo(Expression, Expression)}
+	 */
+	public Predicate lessThanOrEqualTo(String path, Comparable<?> value) {
+		return AutoPredicates.lessThanOrEqualTo(cb, parameters, get(path), value);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is
+	 * between the values, given by bound parameters.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param lower the lower bound
+	 * @param upper the upper bound
+	 * @return the predicate
+	 * @see {@link CriteriaBuilder#between(Expression, Expression, Expression)}
+	 */
+	public Predicate between(String path, Comparable<?> lower, Comparable<?> upper) {
+		return AutoPredicates.between(cb, parameters, get(path), lower, upper);
+	}
+
+	/**
+	 * Creates a predicate testing whether the attribute of the given path is in
+	 * the collection of values, given by a single bound parameter.
+	 * 
+	 * @param path   the attribute path, as in {@link CriteriaSubquery#get(String)}
+	 * @param values the values
+	 * @return the predicate
+	 * @see {@link Expression#in(Expression)}
+	 */
+	public Predicate in(String path, Collection<?> values) {
+		return AutoPredicates.in(cb, parameters, get(path), values);
+	}
+
 	/**
 	 * Specifies the group by expressions.
 	 * 
@@ -344,7 +506,7 @@ public class CriteriaSubquery<T> {
 	 */
 	public <E> CriteriaSubquery<E> newSubquery(Class<E> resultClass) {
 		Subquery<E> subquery = query.subquery(resultClass);
-		return new CriteriaSubquery<E>(cb, subquery);
+		return new CriteriaSubquery<E>(cb, subquery, parameters);
 	}
 
 	private String getEntityAlias(String alias) {
@@ -0,0 +1,108 @@
+package br.com.witt.jpa.query;
+
+import java.util.Objects;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CommonAbstractCriteria;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * Facade for easy and fluent JPA 2.1 bulk update building and executing.<br>
+ * Example:
+ * 
+ * <pre>
+ * CriteriaUpdateQuery u = jpaQueryFactory.createCriteriaUpdate(Employee.class, "e");
+ * u.set("e.active", false).where(u.lessThan("e.lastLogin", limit));
+ * int updated = u.executeUpdate(10000);
+ * </pre>
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public class CriteriaUpdateQuery extends CriteriaBulkQuery<CriteriaUpdateQuery> {
+
+	private CriteriaUpdate<?> update;
+
+	protected CriteriaUpdateQuery(EntityManager em) {
+		super(em);
+	}
+
+	/**
+	 * Creates a new update of the given entity class, with the given alias.
+	 * 
+	 * @param entityClass the entity class (table) to update
+	 * @param alias       the entity class (table) alias, optional
+	 * @return this {@link CriteriaUpdateQuery} instance
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected CriteriaUpdateQuery newQuery(Class<?> entityClass, String alias) {
+		cb = em.getCriteriaBuilder();
+		update = cb.createCriteriaUpdate(entityClass);
+		init(update.from((Class) entityClass), alias);
+		return this;
+	}
+
+	/**
+	 * Sets the attribute of the given path to a parameter bound to the given
+	 * value, or to <code>null</code>.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the value
+	 * @return this {@link CriteriaUpdateQuery} instance
+	 * @see {@link CriteriaUpdate#set(Path, Expression)}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public CriteriaUpdateQuery set(String path, Object value) {
+		Path x = get(path);
+		if (Objects.isNull(value)) {
+			assign(x, cb.nullLiteral(x.getJavaType()));
+		} else {
+			assign(x, param(x.getJavaType(), value));
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the attribute of the given path to the given expression.
+	 * 
+	 * @param path  the attribute path, as in {@link CriteriaBulkQuery#get(String)}
+	 * @param value the expression
+	 * @return this {@link CriteriaUpdateQuery} instance
+	 * @see {@link CriteriaUpdate#set(Path, Expression)}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public CriteriaUpdateQuery set(String path, Expression<?> value) {
+		assign((Path) get(path), (Expression) value);
+		return this;
+	}
+
+	/**
+	 * Gives the underlying {@link CriteriaUpdate}.
+	 * 
+	 * @return the criteria update
+	 */
+	public CriteriaUpdate<?> getCriteriaUpdate() {
+		return update;
+	}
+
+	private <Y> void assign(Path<Y> path, Expression<? extends Y> value) {
+		update.set(path, value);
+	}
+
+	@Override
+	protected CommonAbstractCriteria getCriteria() {
+		return update;
+	}
+
+	@Override
+	protected void applyWhere(Predicate... restrictions) {
+		update.where(restrictions);
+	}
+
+	@Override
+	protected javax.persistence.Query createQuery() {
+		return em.createQuery(update);
+	}
+}
@@ -0,0 +1,274 @@
+package br.com.witt.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Settings of the splitting of large collections bound to <code>in</code>
+ * parameters. When a query has a collection parameter with more elements than
+ * the chunk size, it is executed once for each chunk of the collection, and the
+ * results are merged. Each chunk is padded, by repeating its last element, to
+ * the smallest bucket size that fits it, so that the database sees only a few
+ * distinct statements and reuses their plans.<br>
+ * Example:
+ *
+ * <pre>
+ * List&lt;Employee&gt; employees = jpaQueryFactory
+ * 		.createJpqlQuery("select e from Employee e where e.id in :ids order by e.id", Employee.class)
+ * 		.setInListChunking(new InListChunking(1000).parallel(executor).sorted(Comparator.comparing(Employee::getId)))
+ * 		.setParameter("ids", ids).getResultList();
+ * </pre>
+ *
+ * Only the largest collection parameter is split, and only list queries are
+ * chunked. Queries with first or max results cannot be chunked, as the limits
+ * would apply to each chunk.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class InListChunking {
+
+	private final int chunkSize;
+	private int[] buckets;
+	private Executor executor;
+	private boolean distinct;
+	private Comparator<Object> comparator;
+
+	/**
+	 * Creates the settings with the given chunk size, executing the chunks one
+	 * after the other, and with the bucket sizes of an eighth, a quarter, a half
+	 * and the whole chunk size.
+	 * 
+	 * @param chunkSize the maximum number of elements of each chunk
+	 */
+	public InListChunking(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.chunkSize = chunkSize;
+		this.buckets = defaultBuckets(chunkSize);
+	}
+
+	/**
+	 * Sets the sizes to which the chunks are padded. The chunk size is always
+	 * added as the largest bucket.
+	 * 
+	 * @param sizes the bucket sizes
+	 * @return this {@link InListChunking} instance
+	 */
+	public InListChunking buckets(int... sizes) {
+		int[] sorted = Arrays.stream(sizes).filter(size -> size > 0 && size < chunkSize).distinct().sorted()
+				.toArray();
+		buckets = Arrays.copyOf(sorted, sorted.length + 1);
+		buckets[sorted.length] = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Executes the chunks at the same time, with the given executor, each one in
+	 * a new {@link EntityManager} created by the factory of the one of the query.
+	 * The queries of the chunks are all created by the calling thread, so the
+	 * threads of the executor only execute them. The entities returned are
+	 * detached, and the chunks do not see changes not yet committed by the
+	 * current transaction.
+	 * 
+	 * @param executor the executor of the chunks
+	 * @return this {@link InListChunking} instance
+	 */
+	public InListChunking parallel(Executor executor) {
+		this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+		return this;
+	}
+
+	/**
+	 * Removes the duplicate results, according to their <code>equals</code>
+	 * method, keeping the first occurrence.
+	 * 
+	 * @return this {@link InListChunking} instance
+	 */
+	public InListChunking distinct() {
+		this.distinct = true;
+		return this;
+	}
+
+	/**
+	 * Sorts the merged results. The results of each chunk are sorted, which takes
+	 * linear time when the query is ordered the same way, and then merged.
+	 * 
+	 * @param comparator the order of the results
+	 * @return this {@link InListChunking} instance
+	 */
+	@SuppressWarnings("unchecked")
+	public InListChunking sorted(Comparator<?> comparator) {
+		this.comparator = (Comparator<Object>) Objects.requireNonNull(comparator, "Comparator cannot be null");
+		return this;
+	}
+
+	/**
+	 * Gives the maximum number of elements of each chunk.
+	 * 
+	 * @return the chunk size
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Finds the name of the largest collection parameter that must be split.
+	 * 
+	 * @param parameters the values of the parameters, by name
+	 * @return the parameter name, or <code>null</code> if no parameter exceeds the
+	 *         chunk size
+	 */
+	String findParameter(Map<String, Object> parameters) {
+		String name = null;
+		int size = chunkSize;
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			if (entry.getValue() instanceof Collection && ((Collection<?>) entry.getValue()).size() > size) {
+				name = entry.getKey();
+				size = ((Collection<?>) entry.getValue()).size();
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Splits the distinct values in chunks, padded to the bucket sizes.
+	 */
+	List<List<Object>> split(Collection<?> values) {
+		List<Object> distinctValues = new ArrayList<Object>(new LinkedHashSet<Object>(values));
+		List<List<Object>> chunks = new ArrayList<List<Object>>();
+		for (int start = 0; start < distinctValues.size(); start += chunkSize) {
+			List<Object> chunk = new ArrayList<Object>(
+					distinctValues.subList(start, Math.min(start + chunkSize, distinctValues.size())));
+			int bucket = bucketFor(chunk.size());
+			Object last = chunk.get(chunk.size() - 1);
+			while (chunk.size() < bucket) {
+				chunk.add(last);
+			}
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	/**
+	 * Executes the query for each chunk of the values, sequentially, in the given
+	 * {@link EntityManager}, or in parallel, in new entity managers, and merges
+	 * the results. The queries of all the chunks are created by the calling
+	 * thread, before any is executed, so that the parallel executions share
+	 * nothing but the queries they are given.
+	 * 
+	 * @param em          the entity manager of the query
+	 * @param values      the values of the collection parameter
+	 * @param preparation the function that creates the query of a chunk, in the
+	 *                    given entity manager
+	 * @param execution   the function that executes the query of a chunk
+	 * @return the merged results
+	 */
+	<Q, T> List<T> execute(EntityManager em, Collection<?> values,
+			BiFunction<EntityManager, List<Object>, Q> preparation, Function<Q, List<T>> execution) {
+		List<List<Object>> chunks = split(values);
+		List<List<T>> partials = new ArrayList<List<T>>(chunks.size());
+		if (Objects.isNull(executor) || chunks.size() == 1) {
+			for (List<Object> chunk : chunks) {
+				partials.add(execution.apply(preparation.apply(em, chunk)));
+			}
+			return merge(partials);
+		}
+		EntityManagerFactory emf = em.getEntityManagerFactory();
+		List<EntityManager> chunkEms = new ArrayList<EntityManager>(chunks.size());
+		try {
+			List<Q> queries = new ArrayList<Q>(chunks.size());
+			for (List<Object> chunk : chunks) {
+				EntityManager chunkEm = emf.createEntityManager();
+				chunkEms.add(chunkEm);
+				queries.add(preparation.apply(chunkEm, chunk));
+			}
+			partials.addAll(executeAll(queries, execution));
+		} finally {
+			for (EntityManager chunkEm : chunkEms) {
+				chunkEm.close();
+			}
+		}
+		return merge(partials);
+	}
+
+	/**
+	 * Executes the queries with the executor, waiting for all of them to finish,
+	 * even when one fails, so that no entity manager is closed while in use.
+	 */
+	private <Q, T> List<List<T>> executeAll(List<Q> queries, Function<Q, List<T>> execution) {
+		List<CompletableFuture<List<T>>> futures = new ArrayList<CompletableFuture<List<T>>>(queries.size());
+		RuntimeException failure = null;
+		try {
+			for (Q query : queries) {
+				futures.add(CompletableFuture.supplyAsync(() -> execution.apply(query), executor));
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		List<List<T>> partials = new ArrayList<List<T>>(futures.size());
+		for (CompletableFuture<List<T>> future : futures) {
+			try {
+				partials.add(future.join());
+			} catch (CompletionException e) {
+				if (Objects.isNull(failure)) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				}
+			}
+		}
+		if (Objects.nonNull(failure)) {
+			throw failure;
+		}
+		return partials;
+	}
+
+	private <T> List<T> merge(List<List<T>> partials) {
+		List<T> merged;
+		if (Objects.nonNull(comparator)) {
+			List<List<T>> sortedPartials = new ArrayList<List<T>>(partials.size());
+			for (List<T> partial : partials) {
+				List<T> sortedPartial = new ArrayList<T>(partial);
+				sortedPartial.sort(comparator);
+				sortedPartials.add(sortedPartial);
+			}
+			merged = ShardedJpaQueryFactory.merge(sortedPartials, comparator, 0, Integer.MAX_VALUE);
+		} else {
+			merged = new ArrayList<T>();
+			for (List<T> partial : partials) {
+				merged.addAll(partial);
+			}
+		}
+		if (distinct) {
+			merged = new ArrayList<T>(new LinkedHashSet<T>(merged));
+		}
+		return merged;
+	}
+
+	private int bucketFor(int size) {
+		for (int bucket : buckets) {
+			if (bucket >= size) {
+				return bucket;
+			}
+		}
+		return chunkSize;
+	}
+
+	private static int[] defaultBuckets(int chunkSize) {
+		return Arrays.stream(new int[] { chunkSize / 8, chunkSize / 4, chunkSize / 2, chunkSize })
+				.filter(size -> size > 0).distinct().toArray();
+	}
+}
@@ -0,0 +1,266 @@
+package br.com.witt.jpa.query;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+import br.com.witt.jpa.metrics.QueryListener;
+
+public class JpaQueryFactory implements AutoCloseable {
+
+	private static final Pattern READ_STATEMENT = Pattern.compile("^[\\s(]*(?:select|with|from)\\b",
+			Pattern.CASE_INSENSITIVE);
+	/**
+	 * Locking reads, and common table expressions that insert, update or delete,
+	 * which must go to the primary database.
+	 */
+	private static final Pattern WRITE_STATEMENT = Pattern.compile(
+			"\\bfor\\s+(?:no\\s+key\\s+update|key\\s+share|update|share)\\b|\\block\\s+in\\s+share\\s+mode\\b"
+					+ "|^[\\s(]*with\\b.*\\b(?:insert|update|delete|merge)\\b",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private EntityManager entityManager;
+	private QueryResultCache resultCache;
+	private InListChunking inListChunking;
+	private final List<QueryListener> listeners = new CopyOnWriteArrayList<QueryListener>();
+	private ReadReplicas replicas;
+	private EntityManager[] replicaManagers;
+
+	public JpaQueryFactory(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Creates a factory that routes the criteria queries, the named queries of
+	 * {@link CriteriaQueryTemplate}s and the JPQL and SQL select statements to the
+	 * given read replicas, and all the other statements to the given primary
+	 * entity manager. While the primary entity manager is joined to a
+	 * transaction, all the queries go to it, so that they see the changes of the
+	 * transaction. Select statements that lock or change rows, such as
+	 * <code>select ... for update</code>, also go to the primary entity manager.
+	 * <p>
+	 * The factory keeps an entity manager for each replica, created on first use
+	 * and closed by {@link JpaQueryFactory#close()}, so, like the primary entity
+	 * manager, the factory must not be shared by threads. The entity manager of a
+	 * replica is cleared whenever a query is created on it, so the entities
+	 * returned by a query routed to a replica are detached once the next query is
+	 * routed to the same replica: their lazy associations must be fetched by the
+	 * query, and their changes are never written.
+	 * 
+	 * @param entityManager the entity manager of the primary database
+	 * @param replicas      the read replicas
+	 */
+	public JpaQueryFactory(EntityManager entityManager, ReadReplicas replicas) {
+		this.entityManager = entityManager;
+		this.replicas = Objects.requireNonNull(replicas, "Replicas cannot be null");
+		this.replicaManagers = new EntityManager[replicas.size()];
+	}
+
+	public QueryResultCache getResultCache() {
+		return resultCache;
+	}
+
+	public void setResultCache(QueryResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	public InListChunking getInListChunking() {
+		return inListChunking;
+	}
+
+	public void setInListChunking(InListChunking inListChunking) {
+		this.inListChunking = inListChunking;
+	}
+
+	/**
+	 * Registers a listener to be notified of the operations of the queries created
+	 * by this factory.
+	 * 
+	 * @param listener the listener
+	 */
+	public void addQueryListener(QueryListener listener) {
+		listeners.add(Objects.requireNonNull(listener, "Listener cannot be null"));
+	}
+
+	public void removeQueryListener(QueryListener listener) {
+		listeners.remove(listener);
+	}
+
+	public List<QueryListener> getQueryListeners() {
+		return Collections.unmodifiableList(listeners);
+	}
+
+	public CriteriaQuery createCriteriaQuery() {
+		return configure(route(true, em -> new CriteriaQuery(em).newQuery(), JpaQueryFactory::routeTo));
+	}
+
+	public CriteriaQuery createCriteriaQuery(Class<?> resultClass) {
+		return configure(route(true, em -> new CriteriaQuery(em).newQuery(resultClass), JpaQueryFactory::routeTo));
+	}
+
+	public JpqlQuery createJpqlQuery(String jpql) {
+		long start = System.nanoTime();
+		return configure(route(isRead(jpql), em -> new JpqlQuery(em).newQuery(jpql), JpqlQuery::routeTo), start);
+	}
+
+	public JpqlQuery createJpqlQuery(String jpql, Class<?> resultClass) {
+		long start = System.nanoTime();
+		return configure(route(isRead(jpql), em -> new JpqlQuery(em).newQuery(jpql, resultClass), JpqlQuery::routeTo),
+				start);
+	}
+
+	public SqlQuery createSqlQuery(String sql) {
+		long start = System.nanoTime();
+		return configure(route(isRead(sql), em -> new SqlQuery(em).newQuery(sql), SqlQuery::routeTo), start);
+	}
+
+	public SqlQuery createSqlQuery(String sql, Class<?> resultClass) {
+		long start = System.nanoTime();
+		return configure(route(isRead(sql), em -> new SqlQuery(em).newQuery(sql, resultClass), SqlQuery::routeTo),
+				start);
+	}
+
+	public JpqlQuery createQuery(CriteriaQueryTemplate template) {
+		long start = System.nanoTime();
+		return configure(route(true, em -> template.createQuery(em), JpqlQuery::routeTo), start);
+	}
+
+	public SqlBatch createSqlBatch(String sql) {
+		SqlBatch batch = new SqlBatch(entityManager, sql);
+		batch.resultCache = resultCache;
+		return batch;
+	}
+
+	public CriteriaUpdateQuery createCriteriaUpdate(Class<?> entityClass) {
+		return configure(new CriteriaUpdateQuery(entityManager).newQuery(entityClass, null));
+	}
+
+	public CriteriaUpdateQuery createCriteriaUpdate(Class<?> entityClass, String alias) {
+		return configure(new CriteriaUpdateQuery(entityManager).newQuery(entityClass, alias));
+	}
+
+	public CriteriaDeleteQuery createCriteriaDelete(Class<?> entityClass) {
+		return configure(new CriteriaDeleteQuery(entityManager).newQuery(entityClass, null));
+	}
+
+	public CriteriaDeleteQuery createCriteriaDelete(Class<?> entityClass, String alias) {
+		return configure(new CriteriaDeleteQuery(entityManager).newQuery(entityClass, alias));
+	}
+
+	/**
+	 * Closes the entity managers of the read replicas. The primary entity manager
+	 * is left to its owner.
+	 */
+	@Override
+	public void close() {
+		if (Objects.isNull(replicaManagers)) {
+			return;
+		}
+		for (int i = 0; i < replicaManagers.length; i++) {
+			if (Objects.nonNull(replicaManagers[i]) && replicaManagers[i].isOpen()) {
+				replicaManagers[i].close();
+			}
+			replicaManagers[i] = null;
+		}
+	}
+
+	/**
+	 * Creates the query in the entity manager of a replica, if it is a read and
+	 * there is one available, or else in the primary entity manager.
+	 */
+	private <Q> Q route(boolean read, Function<EntityManager, Q> creator, Routing<Q> routing) {
+		int replica = selectReplica(read);
+		if (replica >= 0) {
+			try {
+				Q query = creator.apply(getReplicaManager(replica));
+				routing.routeTo(query, replicas, replica, entityManager);
+				return query;
+			} catch (PersistenceException e) {
+				if (!ReadReplicas.isConnectionFailure(e)) {
+					throw e;
+				}
+				replicas.markFailed(replica);
+			}
+		}
+		return creator.apply(entityManager);
+	}
+
+	private int selectReplica(boolean read) {
+		if (!read || Objects.isNull(replicas) || entityManager.isJoinedToTransaction()) {
+			return -1;
+		}
+		return replicas.select();
+	}
+
+	/**
+	 * Gives the entity manager of the given replica, cleared of the entities read
+	 * by the previous queries, so that it does not grow with the life of the
+	 * factory.
+	 */
+	private EntityManager getReplicaManager(int replica) {
+		EntityManager replicaManager = replicaManagers[replica];
+		if (Objects.isNull(replicaManager)) {
+			replicaManager = replicas.get(replica).createEntityManager();
+			replicaManagers[replica] = replicaManager;
+		} else {
+			replicaManager.clear();
+		}
+		return replicaManager;
+	}
+
+	/**
+	 * Tells whether the statement only reads, that is, whether it is a select
+	 * statement that neither locks nor changes rows.
+	 */
+	static boolean isRead(String statement) {
+		return Objects.nonNull(statement) && READ_STATEMENT.matcher(statement).find()
+				&& !WRITE_STATEMENT.matcher(statement).find();
+	}
+
+	private <Q extends Query> Q configure(Q query, long start) {
+		query.resultCache = resultCache;
+		query.setInListChunking(inListChunking);
+		query.buildNanos = System.nanoTime() - start;
+		if (!listeners.isEmpty()) {
+			query.listeners = listeners;
+		}
+		return query;
+	}
+
+	private CriteriaQuery configure(CriteriaQuery query) {
+		query.resultCache = resultCache;
+		query.setInListChunking(inListChunking);
+		if (!listeners.isEmpty()) {
+			query.listeners = listeners;
+		}
+		return query;
+	}
+
+	private <Q extends CriteriaBulkQuery<Q>> Q configure(Q query) {
+		query.resultCache = resultCache;
+		return query;
+	}
+
+	/**
+	 * Routes a criteria query, which is not moved to the primary entity manager
+	 * when the replica fails, as its tree belongs to the replica.
+	 */
+	private static void routeTo(CriteriaQuery query, ReadReplicas replicas, int replica, EntityManager primary) {
+		query.routeTo(replicas, replica);
+	}
+
+	/**
+	 * Routes a query created in the entity manager of a replica.
+	 */
+	private interface Routing<Q> {
+
+		void routeTo(Q query, ReadReplicas replicas, int replica, EntityManager primary);
+	}
+}
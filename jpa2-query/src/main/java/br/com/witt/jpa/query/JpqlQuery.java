@@ -0,0 +1,83 @@
+package br.com.witt.jpa.query;
+
+import java.util.Objects;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Facade for easy and fluent JPA 2.1 JPQL query building and executing.
+ * 
+ * @author lucianowitt@gmail.com
+ *
+ */
+public class JpqlQuery extends Query {
+
+	private boolean named;
+	/**
+	 * Template of the named query, compiled again when the query is moved to
+	 * another {@link EntityManagerFactory}.
+	 */
+	CriteriaQueryTemplate template;
+
+	protected JpqlQuery(EntityManager em) {
+		super(em);
+	}
+
+	/**
+	 * Creates a new query with the informed result class.
+	 * 
+	 * @param jpql        JPQL string
+	 * @param resultClass the class of the query result
+	 * @return this {@link JpqlQuery} instance
+	 */
+	protected JpqlQuery newQuery(String jpql, Class<?> resultClass) {
+		this.resultClass = resultClass;
+		this.queryString = jpql;
+		this.named = false;
+		query = createQuery(em);
+		return this;
+	}
+
+	/**
+	 * Creates a new query from the named query with the informed result class.
+	 * 
+	 * @param name        the name of the query
+	 * @param resultClass the class of the query result
+	 * @return this {@link JpqlQuery} instance
+	 */
+	protected JpqlQuery newNamedQuery(String name, Class<?> resultClass) {
+		this.resultClass = resultClass;
+		this.queryString = name;
+		this.named = true;
+		query = createQuery(em);
+		return this;
+	}
+
+	/**
+	 * Creates a new query to return a scalar, as no result class is informed.
+	 * 
+	 * @param jpql JPQL string
+	 * @return this {@link JpqlQuery} instance
+	 */
+	protected JpqlQuery newQuery(String jpql) {
+		return newQuery(jpql, null);
+	}
+
+	@Override
+	protected javax.persistence.Query createQuery(EntityManager em) {
+		if (named) {
+			if (Objects.nonNull(template)) {
+				template.compile(em);
+			}
+			if (Objects.isNull(resultClass)) {
+				return em.createNamedQuery(queryString);
+			}
+			return em.createNamedQuery(queryString, resultClass);
+		}
+		if (Objects.isNull(resultClass)) {
+			return em.createQuery(queryString);
+		}
+		return em.createQuery(queryString, resultClass);
+	}
+}
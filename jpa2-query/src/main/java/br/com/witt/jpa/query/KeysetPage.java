@@ -0,0 +1,64 @@
+package br.com.witt.jpa.query;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Page of results of a keyset (seek) paginated query, with the token to be
+ * informed to fetch the next page.
+ * 
+ * @param <T> the type of the results
+ * 
+ * @see {@link CriteriaQuery#getKeysetPage(String, int, javax.persistence.criteria.Order...)}
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public class KeysetPage<T> {
+
+	private final List<T> content;
+	private final Object[] lastKeyValues;
+	private final String continuationToken;
+
+	protected KeysetPage(List<T> content, Object[] lastKeyValues, String continuationToken) {
+		this.content = content;
+		this.lastKeyValues = lastKeyValues;
+		this.continuationToken = continuationToken;
+	}
+
+	/**
+	 * Gives the results of this page.
+	 * 
+	 * @return the list of results
+	 */
+	public List<T> getContent() {
+		return content;
+	}
+
+	/**
+	 * Gives the values of the ordering keys of the last result of this page.
+	 * 
+	 * @return the key values, or <code>null</code> if there is no next page
+	 */
+	public Object[] getLastKeyValues() {
+		return lastKeyValues;
+	}
+
+	/**
+	 * Gives the opaque token to be informed to fetch the next page.
+	 * 
+	 * @return the continuation token, or <code>null</code> if there is no next
+	 *         page
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	/**
+	 * Tells whether there is a page after this one.
+	 * 
+	 * @return <code>true</code> if there are more results
+	 */
+	public boolean hasNext() {
+		return Objects.nonNull(continuationToken);
+	}
+}
@@ -0,0 +1,76 @@
+package br.com.witt.jpa.query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+import br.com.witt.jpa.util.TypeConverter;
+
+/**
+ * Encoder and decoder of the continuation tokens of keyset paginated queries.
+ * The token carries only the text form of the key values, which are converted
+ * back to the types of the ordering expressions when decoded, so that no class
+ * information is ever read from it.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+final class KeysetToken {
+
+	private KeysetToken() {
+	}
+
+	/**
+	 * Encodes the key values in a token.
+	 * 
+	 * @param values the key values
+	 * @return the token
+	 */
+	static String encode(Object[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (Object value : values) {
+			String text = toText(value);
+			sb.append(text.length()).append(':').append(text);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes the key values of a token.
+	 * 
+	 * @param token the token
+	 * @param types the types of the key values
+	 * @return the key values
+	 */
+	static Object[] decode(String token, Class<?>[] types) {
+		try {
+			String text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			Object[] values = new Object[types.length];
+			int pos = 0;
+			for (int i = 0; i < types.length; i++) {
+				int separator = text.indexOf(':', pos);
+				int length = Integer.parseInt(text.substring(pos, separator));
+				pos = separator + 1 + length;
+				values[i] = TypeConverter.convertValue(text.substring(separator + 1, pos), types[i]);
+			}
+			if (pos != text.length()) {
+				throw new IllegalArgumentException("Wrong number of keys");
+			}
+			return values;
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		}
+	}
+
+	private static String toText(Object value) {
+		if (Objects.isNull(value)) {
+			throw new IllegalArgumentException("Keyset pagination keys cannot be null");
+		} else if (value instanceof Date) {
+			return TypeConverter.convertValue(value, LocalDateTime.class).toString();
+		} else if (value instanceof Enum) {
+			return ((Enum<?>) value).name();
+		}
+		return value.toString();
+	}
+}
@@ -0,0 +1,100 @@
+package br.com.witt.jpa.query;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Page of results of a query, with the total number of results when it was
+ * counted.
+ * 
+ * @param <T> the type of the results
+ * 
+ * @see {@link CriteriaQuery#getPage(int, int)},
+ *      {@link CriteriaQuery#getSlice(int, int)}
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public class Page<T> {
+
+	private final List<T> content;
+	private final int pageNumber;
+	private final int pageSize;
+	private final Long totalElements;
+	private final boolean next;
+
+	protected Page(List<T> content, int pageNumber, int pageSize, Long totalElements, boolean next) {
+		this.content = content;
+		this.pageNumber = pageNumber;
+		this.pageSize = pageSize;
+		this.totalElements = totalElements;
+		this.next = next;
+	}
+
+	/**
+	 * Gives the results of this page.
+	 * 
+	 * @return the list of results
+	 */
+	public List<T> getContent() {
+		return content;
+	}
+
+	/**
+	 * Gives the number of this page, starting at 1.
+	 * 
+	 * @return the page number
+	 */
+	public int getPageNumber() {
+		return pageNumber;
+	}
+
+	/**
+	 * Gives the requested size of the pages.
+	 * 
+	 * @return the page size
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Gives the total number of results of the query.
+	 * 
+	 * @return the total number of results, or <code>null</code> if the results
+	 *         were not counted
+	 */
+	public Long getTotalElements() {
+		return totalElements;
+	}
+
+	/**
+	 * Gives the total number of pages of the query.
+	 * 
+	 * @return the total number of pages, or <code>null</code> if the results were
+	 *         not counted
+	 */
+	public Long getTotalPages() {
+		if (Objects.isNull(totalElements)) {
+			return null;
+		}
+		return (totalElements + pageSize - 1) / pageSize;
+	}
+
+	/**
+	 * Tells whether there is a page after this one.
+	 * 
+	 * @return <code>true</code> if there are more results
+	 */
+	public boolean hasNext() {
+		return next;
+	}
+
+	/**
+	 * Tells whether there is a page before this one.
+	 * 
+	 * @return <code>true</code> if this is not the first page
+	 */
+	public boolean hasPrevious() {
+		return pageNumber > 1;
+	}
+}
@@ -0,0 +1,30 @@
+package br.com.witt.jpa.query;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field of a DTO class selected with
+ * {@link CriteriaQuery#selectDto(Class)} to the path of the query whose value
+ * it receives, in the format accepted by {@link CriteriaQuery#get(String)}.
+ * Fields without this annotation receive the attribute with the same name of
+ * the first entity of the from clause.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ProjectionPath {
+
+	/**
+	 * The path of the query, in the format
+	 * <code>{alias}.{attribute}.{attribute}...</code>
+	 * 
+	 * @return the path
+	 */
+	String value();
+}
@@ -0,0 +1,89 @@
+package br.com.witt.jpa.query;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Names of the standard and vendor specific query hints set by the facades.
+ * The vendor specific hints are set only for the persistence provider of the
+ * entity manager, detected once for each entity manager factory, as some
+ * providers log the hints they do not recognize.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+final class ProviderHints {
+
+	static final String LOAD_GRAPH = "javax.persistence.loadgraph";
+	static final String FETCH_GRAPH = "javax.persistence.fetchgraph";
+
+	static final String HIBERNATE_FETCH_SIZE = "org.hibernate.fetchSize";
+	static final String ECLIPSELINK_FETCH_SIZE = "eclipselink.jdbc.fetch-size";
+
+	static final String HIBERNATE_READ_ONLY = "org.hibernate.readOnly";
+	static final String ECLIPSELINK_READ_ONLY = "eclipselink.read-only";
+
+	private static final Map<EntityManagerFactory, Provider> PROVIDERS = Collections
+			.synchronizedMap(new WeakHashMap<EntityManagerFactory, Provider>());
+
+	/**
+	 * Persistence providers with vendor specific hints, recognized by the package
+	 * of their classes and the prefix of their properties.
+	 */
+	enum Provider {
+		HIBERNATE("org.hibernate.", "hibernate.", HIBERNATE_FETCH_SIZE, HIBERNATE_READ_ONLY),
+		ECLIPSELINK("org.eclipse.persistence.", "eclipselink.", ECLIPSELINK_FETCH_SIZE, ECLIPSELINK_READ_ONLY),
+		OTHER(null, null, null, null);
+
+		private final String packageName;
+		private final String propertyPrefix;
+		final String fetchSize;
+		final String readOnly;
+
+		Provider(String packageName, String propertyPrefix, String fetchSize, String readOnly) {
+			this.packageName = packageName;
+			this.propertyPrefix = propertyPrefix;
+			this.fetchSize = fetchSize;
+			this.readOnly = readOnly;
+		}
+	}
+
+	private ProviderHints() {
+	}
+
+	/**
+	 * Gives the persistence provider of the given entity manager.
+	 * 
+	 * @param em the entity manager
+	 * @return the provider, {@link Provider#OTHER} if it has no vendor specific
+	 *         hints
+	 */
+	static Provider of(EntityManager em) {
+		return PROVIDERS.computeIfAbsent(em.getEntityManagerFactory(), ProviderHints::detect);
+	}
+
+	/**
+	 * Detects the provider of the given factory by the package of its class, or
+	 * else, as for the proxies of containers, by the prefixes of its properties.
+	 */
+	private static Provider detect(EntityManagerFactory emf) {
+		String className = emf.getClass().getName();
+		for (Provider provider : Provider.values()) {
+			if (Objects.nonNull(provider.packageName) && className.startsWith(provider.packageName)) {
+				return provider;
+			}
+		}
+		for (String property : emf.getProperties().keySet()) {
+			for (Provider provider : Provider.values()) {
+				if (Objects.nonNull(provider.propertyPrefix) && property.startsWith(provider.propertyPrefix)) {
+					return provider;
+				}
+			}
+		}
+		return Provider.OTHER;
+	}
+}
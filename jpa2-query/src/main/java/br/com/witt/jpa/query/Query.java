@@ -0,0 +1,786 @@
+package br.com.witt.jpa.query;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceException;
+import javax.persistence.TemporalType;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+import br.com.witt.jpa.metrics.QueryEvent.Operation;
+import br.com.witt.jpa.metrics.QueryFingerprint;
+import br.com.witt.jpa.metrics.QueryListener;
+
+/**
+ * Facade for easy and fluent JPA 2.1 SQL and JPQL query building and
+ * executing.<br>
+ * 
+ * @see {@link SqlQuery}, {@link JpqlQuery}
+ * 
+ * @author lucianowitt@gmail.com
+ * 
+ */
+public abstract class Query {
+
+	protected EntityManager em;
+	protected javax.persistence.Query query;
+	protected Class<?> resultClass;
+	protected String queryString;
+
+	/**
+	 * Cache set by the {@link JpaQueryFactory}, used when the query is
+	 * {@link Query#cacheable(Duration, String...)}.
+	 */
+	QueryResultCache resultCache;
+	/**
+	 * Tags added to the ones extracted from the query string, such as the entities
+	 * of a {@link CriteriaQueryTemplate}.
+	 */
+	Set<String> sourceTags = Collections.emptySet();
+	/**
+	 * Replicas the query was routed to by the {@link JpaQueryFactory}, with the
+	 * index of the chosen replica, and the primary entity manager to fall back to.
+	 */
+	ReadReplicas replicas;
+	int replica = -1;
+	EntityManager primary;
+	/**
+	 * Listeners set by the {@link JpaQueryFactory}, notified of each operation,
+	 * and the time the factory took to create the query, reported by the first
+	 * one.
+	 */
+	List<QueryListener> listeners = Collections.emptyList();
+	long buildNanos;
+
+	private final Map<String, Object> parameters = new TreeMap<String, Object>();
+	private final Map<String, Object> hints = new LinkedHashMap<String, Object>();
+	private InListChunking inListChunking;
+	private FlushModeType flushMode;
+	private boolean cacheable;
+	private Duration cacheTimeToLive;
+	private Set<String> cacheTags;
+	private String name;
+	private String fingerprint;
+	private QueryProbe probe;
+
+	public Query(EntityManager em) {
+		this.em = em;
+	}
+
+	/**
+	 * Binds the given value to the parameter with the given name.
+	 * 
+	 * @param name  parameter name
+	 * @param value parameter value
+	 * @return this {@link Query} instance
+	 * @see {@link javax.persistence.Query#setParameter(String, Object)}
+	 */
+	public Query setParameter(String name, Object value) {
+		query.setParameter(name, value);
+		parameters.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Binds the given {@link Calendar} instance to the parameter with the given
+	 * name.
+	 * 
+	 * @param name  parameter name
+	 * @param value parameter value
+	 * @param type
+	 * @return this {@link Query} instance
+	 * @see {@link javax.persistence.Query#setParameter(String, Calendar, TemporalType)}
+	 */
+	public Query setParameter(String name, Calendar value, TemporalType type) {
+		query.setParameter(name, value, type);
+		parameters.put(name, new TemporalValue(value, type));
+		return this;
+	}
+
+	/**
+	 * Binds the given {@link Date} instance to the parameter with the given name.
+	 * 
+	 * @param name  parameter name
+	 * @param value parameter value
+	 * @param type
+	 * @return this {@link Query} instance
+	 * @see {@link javax.persistence.Query#setParameter(String, Date, TemporalType)}
+	 */
+	public Query setParameter(String name, Date value, TemporalType type) {
+		query.setParameter(name, value, type);
+		parameters.put(name, new TemporalValue(value, type));
+		return this;
+	}
+
+	/**
+	 * Sets a query property or hint.
+	 * 
+	 * @param name  property/hint name
+	 * @param value property/hint value
+	 * @see {@link javax.persistence.Query#setHint(String, Object)}
+	 */
+	public void setHint(String name, Object value) {
+		query.setHint(name, value);
+		hints.put(name, value);
+	}
+
+	/**
+	 * Sets how large collections bound to <code>in</code> parameters are split
+	 * when the list of results is fetched.
+	 * 
+	 * @param inListChunking the chunking settings, or <code>null</code> to never
+	 *                       split collections
+	 * @return this {@link Query} instance
+	 */
+	public Query setInListChunking(InListChunking inListChunking) {
+		this.inListChunking = inListChunking;
+		return this;
+	}
+
+	/**
+	 * Marks the query results to be kept in the result cache of the
+	 * {@link JpaQueryFactory}, keyed by the query string, the bound parameters and
+	 * the page limits. The entries are tagged by the entities or tables of the
+	 * from and join clauses of the query, and by the given tags, so that they are
+	 * discarded when an update on any of them is executed through
+	 * {@link Query#executeUpdate()}, and again when its transaction completes.
+	 * While the entity manager is joined to a transaction that executed such an
+	 * update, the cache is bypassed. Has no effect if the factory has no cache.
+	 * <br>
+	 * Only results that are safe to share, such as DTOs, scalars or reference data
+	 * entities, should be cached, as cached lists are returned to all callers.
+	 * 
+	 * @param timeToLive the time to live of the results, or <code>null</code> for
+	 *                   the default time to live of the cache
+	 * @param tags       additional tags of the results
+	 * @return this {@link Query} instance
+	 */
+	public Query cacheable(Duration timeToLive, String... tags) {
+		cacheable = true;
+		cacheTimeToLive = timeToLive;
+		cacheTags = new LinkedHashSet<String>(Arrays.asList(tags));
+		cacheTags.addAll(sourceTags);
+		cacheTags.addAll(QueryResultCache.extractTags(queryString));
+		return this;
+	}
+
+	/**
+	 * Executes the query and returns a single result.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the single result of the query execution
+	 * @see {@link javax.persistence.Query#getSingleResult()}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getSingleResult() {
+		return (T) measured(Operation.SINGLE_RESULT,
+				() -> cached("single", () -> routed(this::fetchSingleResult), r -> 1));
+	}
+
+	/**
+	 * Executes the query and returns a list of results.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the list of results of the query execution
+	 * @see {@link javax.persistence.Query#getResultList()}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getResultList() {
+		return (List<T>) measured(Operation.RESULT_LIST, () -> {
+			if (isCached()) {
+				return cached("list",
+						() -> Collections.unmodifiableList(new ArrayList<Object>(routed(this::executeResultList))),
+						List::size);
+			}
+			return routed(this::executeResultList);
+		});
+	}
+
+	/**
+	 * Executes the query, bypassing the result cache, and returns a single result.
+	 * 
+	 * @return the single result of the query execution
+	 */
+	protected Object fetchSingleResult() {
+		return executing(() -> query.getSingleResult());
+	}
+
+	/**
+	 * Executes the given query, which is this query or a chunk of it, bypassing
+	 * the result cache, and returns a list of results.
+	 * 
+	 * @param query the query to be executed
+	 * @return the list of results of the query execution
+	 */
+	protected List<?> fetchResultList(javax.persistence.Query query) {
+		return executing(() -> query.getResultList());
+	}
+
+	/**
+	 * Executes the query, splitting the largest collection parameter in chunks
+	 * when it exceeds the chunk size of the {@link InListChunking} settings.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<?> executeResultList() {
+		String name = Objects.isNull(inListChunking) ? null : inListChunking.findParameter(parameters);
+		if (Objects.isNull(name)) {
+			return fetchResultList(query);
+		}
+		if (query.getFirstResult() > 0 || query.getMaxResults() != Integer.MAX_VALUE) {
+			throw new IllegalStateException("Queries with first or max results cannot be chunked");
+		}
+		return inListChunking.execute(em, (Collection<?>) parameters.get(name), (chunkEm, chunk) -> {
+			javax.persistence.Query chunkQuery = createQuery(chunkEm);
+			if (Objects.isNull(chunkQuery)) {
+				throw new IllegalStateException("Query cannot be created again to be chunked");
+			}
+			bind(chunkQuery, name, chunk);
+			return chunkQuery;
+		}, chunkQuery -> (List<Object>) fetchResultList(chunkQuery));
+	}
+
+	/**
+	 * Gives the result from the cache, when the query is cacheable, or from the
+	 * loader.
+	 * 
+	 * @param <R>     the type of the result
+	 * @param kind    the kind of execution, part of the cache key
+	 * @param loader  the function that executes the query
+	 * @param weigher the function that gives the number of rows of the result
+	 * @return the result
+	 */
+	protected <R> R cached(String kind, Supplier<R> loader, ToIntFunction<R> weigher) {
+		if (!isCached()) {
+			return loader.get();
+		}
+		List<Object> key = Arrays.asList(kind, queryString, resultClass, new TreeMap<String, Object>(parameters),
+				query.getFirstResult(), query.getMaxResults());
+		return resultCache.get(key, cacheTimeToLive, cacheTags, loader, weigher);
+	}
+
+	/**
+	 * Executes the given operation and, when the {@link JpaQueryFactory} has
+	 * {@link QueryListener}s or the {@link QueryExecutionEvent} is enabled in Java
+	 * Flight Recorder, measures it and notifies them. Operations called by a
+	 * measured one are measured as part of it.
+	 * 
+	 * @param <R>       the type of the result
+	 * @param operation the operation
+	 * @param execution the function that executes the operation
+	 * @return the result
+	 */
+	protected <R> R measured(Operation operation, Supplier<R> execution) {
+		if (Objects.nonNull(probe)) {
+			return execution.get();
+		}
+		QueryExecutionEvent recorded = new QueryExecutionEvent();
+		if (listeners.isEmpty() && !recorded.isEnabled()) {
+			return execution.get();
+		}
+		probe = new QueryProbe(buildNanos, recorded);
+		buildNanos = 0;
+		R result = null;
+		Throwable error = null;
+		try {
+			result = execution.get();
+			return result;
+		} catch (RuntimeException | Error e) {
+			error = e;
+			throw e;
+		} finally {
+			QueryProbe finished = probe;
+			probe = null;
+			if (Objects.isNull(fingerprint)) {
+				fingerprint = QueryFingerprint.of(queryString);
+			}
+			finished.finish(listeners, name, queryString, isNativeQuery(), fingerprint, getParameterValues(), operation,
+					result, error);
+		}
+	}
+
+	/**
+	 * Opens the stream of results with the given function and, when the
+	 * operation is measured as in {@link Query#measured(Operation, Supplier)},
+	 * measures its consumption, notifying the listeners when the stream is
+	 * closed, with the number of results read.
+	 * 
+	 * @param <T>     the type of the results
+	 * @param opening the function that opens the stream
+	 * @return the stream of results
+	 */
+	protected <T> Stream<T> measuredStream(Supplier<Stream<T>> opening) {
+		if (Objects.nonNull(probe)) {
+			return opening.get();
+		}
+		QueryExecutionEvent recorded = new QueryExecutionEvent();
+		if (listeners.isEmpty() && !recorded.isEnabled()) {
+			return opening.get();
+		}
+		QueryProbe streaming = new QueryProbe(buildNanos, recorded);
+		buildNanos = 0;
+		if (Objects.isNull(fingerprint)) {
+			fingerprint = QueryFingerprint.of(queryString);
+		}
+		Map<String, Object> parameterValues = getParameterValues();
+		Stream<T> stream;
+		probe = streaming;
+		try {
+			stream = opening.get();
+		} catch (RuntimeException | Error e) {
+			streaming.finish(listeners, name, queryString, isNativeQuery(), fingerprint, parameterValues,
+					Operation.RESULT_STREAM, null, e);
+			throw e;
+		} finally {
+			probe = null;
+		}
+		return streaming.finishOnClose(stream, listeners, name, queryString, isNativeQuery(), fingerprint,
+				parameterValues);
+	}
+
+	/**
+	 * Executes the given function, that runs the query in the database, measuring
+	 * it as the execution time of the current operation, if measured.
+	 * 
+	 * @param <R>       the type of the result
+	 * @param execution the function that executes the query
+	 * @return the result
+	 */
+	protected <R> R executing(Supplier<R> execution) {
+		QueryProbe current = probe;
+		return Objects.isNull(current) ? execution.get() : current.execute(execution);
+	}
+
+	/**
+	 * Executes the given function, that converts the query results, measuring it
+	 * as the conversion time of the current operation, if measured.
+	 * 
+	 * @param <R>        the type of the result
+	 * @param conversion the function that converts the results
+	 * @return the result
+	 */
+	protected <R> R converting(Supplier<R> conversion) {
+		QueryProbe current = probe;
+		return Objects.isNull(current) ? conversion.get() : current.convert(conversion);
+	}
+
+	private Map<String, Object> getParameterValues() {
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			Object value = entry.getValue();
+			values.put(entry.getKey(), value instanceof TemporalValue ? ((TemporalValue) value).value : value);
+		}
+		return values;
+	}
+
+	/**
+	 * Routes the query to the given replica, falling back to the given primary
+	 * entity manager if the replica fails.
+	 */
+	void routeTo(ReadReplicas replicas, int replica, EntityManager primary) {
+		this.replicas = replicas;
+		this.replica = replica;
+		this.primary = primary;
+	}
+
+	/**
+	 * Executes the query on the replica it was routed to by the
+	 * {@link JpaQueryFactory}, if any, counting it as outstanding on the replica.
+	 * If the replica cannot be reached, it is left out of the balancing for a
+	 * while, and the query is created again and executed on the primary database.
+	 * Other failures are thrown as they are.
+	 * 
+	 * @param <R>       the type of the result
+	 * @param execution the function that executes the query
+	 * @return the result
+	 */
+	protected <R> R routed(Supplier<R> execution) {
+		if (replica < 0) {
+			return execution.get();
+		}
+		int current = replica;
+		replicas.acquire(current);
+		try {
+			return execution.get();
+		} catch (PersistenceException e) {
+			if (!ReadReplicas.isConnectionFailure(e)) {
+				throw e;
+			}
+			replicas.markFailed(current);
+			if (!moveToPrimary()) {
+				throw e;
+			}
+		} finally {
+			replicas.release(current);
+		}
+		return execution.get();
+	}
+
+	/**
+	 * Creates the underlying query in the given {@link EntityManager}, from the
+	 * query string and result class, so that a query routed to a replica can be
+	 * moved to the primary database.
+	 * 
+	 * @param em the entity manager
+	 * @return the query, or <code>null</code> if it cannot be created again
+	 */
+	protected javax.persistence.Query createQuery(EntityManager em) {
+		return null;
+	}
+
+	/**
+	 * Tells whether the query string is native SQL.
+	 */
+	boolean isNativeQuery() {
+		return false;
+	}
+
+	/**
+	 * Creates the query again in the primary entity manager, with the same
+	 * parameters, hints and limits.
+	 * 
+	 * @return <code>false</code> if the query could not be created again
+	 */
+	private boolean moveToPrimary() {
+		javax.persistence.Query recreated = createQuery(primary);
+		if (Objects.isNull(recreated)) {
+			return false;
+		}
+		bind(recreated, null, null);
+		recreated.setFirstResult(query.getFirstResult());
+		if (query.getMaxResults() != Integer.MAX_VALUE) {
+			recreated.setMaxResults(query.getMaxResults());
+		}
+		query = recreated;
+		em = primary;
+		replica = -1;
+		return true;
+	}
+
+	/**
+	 * Binds the recorded parameters and hints to a query created again, replacing
+	 * the value of the given parameter, if any.
+	 */
+	private void bind(javax.persistence.Query target, String replacedName, Object replacedValue) {
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			if (entry.getKey().equals(replacedName)) {
+				target.setParameter(entry.getKey(), replacedValue);
+			} else if (entry.getValue() instanceof TemporalValue) {
+				((TemporalValue) entry.getValue()).bind(target, entry.getKey());
+			} else {
+				target.setParameter(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<String, Object> entry : hints.entrySet()) {
+			target.setHint(entry.getKey(), entry.getValue());
+		}
+		if (Objects.nonNull(flushMode)) {
+			target.setFlushMode(flushMode);
+		}
+	}
+
+	private boolean isCached() {
+		return cacheable && Objects.nonNull(resultCache) && Objects.nonNull(queryString)
+				&& !CacheTransactions.isBypassed(em);
+	}
+
+	/**
+	 * Executes the query and returns a stream of results, read from the database as
+	 * they are consumed when the persistence provider supports it. The stream
+	 * should be closed after use, to release the underlying cursor.<br>
+	 * Only the opening of the stream falls back to the primary database when the
+	 * replica the query was routed to cannot be reached; the failures while the
+	 * results are read are thrown to the consumer.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the stream of results of the query execution
+	 * @see {@link javax.persistence.Query#getResultStream()}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Stream<T> getResultStream() {
+		return measuredStream(() -> (Stream<T>) routed(() -> executing(() -> query.getResultStream())));
+	}
+
+	/**
+	 * Executes the query and performs the given action for each result, as it is
+	 * read from the database, closing the underlying cursor at the end.
+	 * 
+	 * @param <T>    the type of the result, resolved at runtime
+	 * @param action the action to be performed for each result
+	 * @see {@link Query#getResultStream()}
+	 */
+	public <T> void forEach(Consumer<T> action) {
+		try (Stream<T> stream = getResultStream()) {
+			stream.forEach(action);
+		}
+	}
+
+	/**
+	 * Executes the query in chunks of the given size, paging through the results
+	 * by offset, and performs the given action for each chunk. After each chunk,
+	 * the entity manager is flushed, when joined to a transaction, and cleared, so
+	 * that the results of the previous chunks are detached and the memory used
+	 * does not grow with the number of results. The query should be ordered by a
+	 * unique key, so that the pages are stable.
+	 * 
+	 * @param <T>       the type of the results, resolved at runtime
+	 * @param chunkSize the number of results of each chunk
+	 * @param action    the action to be performed for each chunk
+	 */
+	public <T> void forEachChunk(int chunkSize, Consumer<List<T>> action) {
+		forEachChunk(chunkSize, action, null);
+	}
+
+	/**
+	 * Executes the query in chunks of the given size, as
+	 * {@link Query#forEachChunk(int, Consumer)}, fetching the next chunk with the
+	 * given executor, in a new {@link EntityManager}, while the action processes
+	 * the current one. The results given to the action are detached, so changes
+	 * to them are not flushed, and the entity manager cannot be joined to a
+	 * transaction; to change them, merge them in another entity manager.
+	 * 
+	 * @param <T>       the type of the results, resolved at runtime
+	 * @param chunkSize the number of results of each chunk
+	 * @param action    the action to be performed for each chunk
+	 * @param executor  the executor of the fetches, or <code>null</code> to fetch
+	 *                  the chunks in the calling thread
+	 * @throws IllegalStateException if an executor is given and the entity
+	 *                               manager is joined to a transaction
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void forEachChunk(int chunkSize, Consumer<List<T>> action, Executor executor) {
+		if (query.getFirstResult() > 0 || query.getMaxResults() != Integer.MAX_VALUE) {
+			throw new IllegalStateException("Queries with first or max results cannot be processed in chunks");
+		}
+		try {
+			ChunkedProcessing.<T>forEachChunk(() -> em, chunkSize, action, executor, (fetchEm, previous, offset) -> {
+				if (Objects.isNull(fetchEm)) {
+					return () -> (List<T>) routed(() -> fetchChunk(query, offset, chunkSize));
+				}
+				javax.persistence.Query chunkQuery = createQuery(fetchEm);
+				if (Objects.isNull(chunkQuery)) {
+					throw new IllegalStateException("Query cannot be created again to be prefetched");
+				}
+				bind(chunkQuery, null, null);
+				return () -> (List<T>) fetchChunk(chunkQuery, offset, chunkSize);
+			});
+		} finally {
+			query.setFirstResult(0);
+			query.setMaxResults(Integer.MAX_VALUE);
+		}
+	}
+
+	private List<?> fetchChunk(javax.persistence.Query chunkQuery, int offset, int chunkSize) {
+		chunkQuery.setFirstResult(offset);
+		chunkQuery.setMaxResults(chunkSize);
+		return new ArrayList<Object>(fetchResultList(chunkQuery));
+	}
+
+	/**
+	 * Sets the number of rows the JDBC driver should fetch from the database at a
+	 * time, for the persistence providers that support it.
+	 * 
+	 * @param fetchSize the number of rows
+	 * @return this {@link Query} instance
+	 */
+	public Query setFetchSize(int fetchSize) {
+		String hint = ProviderHints.of(em).fetchSize;
+		if (Objects.nonNull(hint)) {
+			setHint(hint, fetchSize);
+		}
+		return this;
+	}
+
+	/**
+	 * Names the query, so that its executions are reported to the
+	 * {@link QueryListener}s under the name instead of the fingerprint of its
+	 * statement.
+	 * 
+	 * @param name the query name
+	 * @return this {@link Query} instance
+	 */
+	public Query setName(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Marks the query as read only: the pending changes of the entity manager are
+	 * not flushed before its execution, and the entities it returns are loaded in
+	 * read only mode, for the persistence providers that support it, so that they
+	 * are neither snapshotted nor dirty checked. Changes made to the returned
+	 * entities are not saved.
+	 * 
+	 * @return this {@link Query} instance
+	 * @see {@link javax.persistence.Query#setFlushMode(FlushModeType)}
+	 */
+	public Query readOnly() {
+		flushMode = FlushModeType.COMMIT;
+		query.setFlushMode(flushMode);
+		String hint = ProviderHints.of(em).readOnly;
+		if (Objects.nonNull(hint)) {
+			setHint(hint, true);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the position of the first result to be retrieved.
+	 * 
+	 * @param firstResult the position of the first result, starting at 0
+	 * @return this {@link Query} instance
+	 * @see {@link javax.persistence.Query#setFirstResult(int)}
+	 */
+	public Query setFirstResult(int firstResult) {
+		query.setFirstResult(firstResult);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of results to be retrieved.
+	 * 
+	 * @param maxResults the maximum number of results
+	 * @return this {@link Query} instance
+	 * @see {@link javax.persistence.Query#setMaxResults(int)}
+	 */
+	public Query setMaxResults(int maxResults) {
+		query.setMaxResults(maxResults);
+		return this;
+	}
+
+	/**
+	 * Sets the entity graph to be loaded by the query: the attributes of the graph
+	 * are fetched along with the results, and the other attributes keep their
+	 * mapped fetch type.
+	 * 
+	 * @param graph the entity graph
+	 * @return this {@link Query} instance
+	 */
+	public Query setLoadGraph(EntityGraph<?> graph) {
+		setHint(ProviderHints.LOAD_GRAPH, graph);
+		return this;
+	}
+
+	/**
+	 * Sets the named entity graph to be loaded by the query.
+	 * 
+	 * @param graphName the name of the entity graph
+	 * @return this {@link Query} instance
+	 * @see {@link Query#setLoadGraph(EntityGraph)}
+	 */
+	public Query setLoadGraph(String graphName) {
+		return setLoadGraph(em.getEntityGraph(graphName));
+	}
+
+	/**
+	 * Sets the entity graph to be fetched by the query: the attributes of the
+	 * graph are fetched along with the results, and the other attributes are
+	 * treated as lazy.
+	 * 
+	 * @param graph the entity graph
+	 * @return this {@link Query} instance
+	 */
+	public Query setFetchGraph(EntityGraph<?> graph) {
+		setHint(ProviderHints.FETCH_GRAPH, graph);
+		return this;
+	}
+
+	/**
+	 * Sets the named entity graph to be fetched by the query.
+	 * 
+	 * @param graphName the name of the entity graph
+	 * @return this {@link Query} instance
+	 * @see {@link Query#setFetchGraph(EntityGraph)}
+	 */
+	public Query setFetchGraph(String graphName) {
+		return setFetchGraph(em.getEntityGraph(graphName));
+	}
+
+	/**
+	 * Executes the query and returns a page of results.
+	 * 
+	 * @param <T>        the type of the results, resolved at runtime
+	 * @param pageNumber the number of the page
+	 * @param pageSize   the size of the page
+	 * @return a page of results
+	 */
+	public <T> List<T> getResultPage(int pageNumber, int pageSize) {
+		return measured(Operation.RESULT_PAGE, () -> {
+			query.setFirstResult((pageNumber - 1) * pageSize);
+			query.setMaxResults(pageSize);
+			return getResultList();
+		});
+	}
+
+	/**
+	 * Executes an update command.
+	 * 
+	 * @return the number of entites affected.
+	 * @see {@link javax.persistence.Query#executeUpdate()}
+	 */
+	public int executeUpdate() {
+		return measured(Operation.UPDATE, () -> {
+			if (replica >= 0 && !moveToPrimary()) {
+				throw new IllegalStateException("Update query routed to a read replica");
+			}
+			int count = executing(() -> query.executeUpdate());
+			CacheTransactions.invalidateStatement(em, resultCache, queryString);
+			return count;
+		});
+	}
+
+	/**
+	 * Value of a temporal parameter, along with its {@link TemporalType}.
+	 */
+	private static class TemporalValue {
+
+		final Object value;
+		final TemporalType type;
+
+		TemporalValue(Object value, TemporalType type) {
+			this.value = value;
+			this.type = type;
+		}
+
+		void bind(javax.persistence.Query query, String name) {
+			if (value instanceof Calendar) {
+				query.setParameter(name, (Calendar) value, type);
+			} else {
+				query.setParameter(name, (Date) value, type);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TemporalValue)) {
+				return false;
+			}
+			TemporalValue other = (TemporalValue) obj;
+			return Objects.equals(value, other.value) && type == other.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(value, type);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package br.com.witt.jpa.query;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of an operation of a query created by a
+ * {@link JpaQueryFactory}, such as {@link Query#getResultList()} or
+ * {@link CriteriaQuery#getResultPage(int, int)}. The duration of the event is
+ * the time of the whole operation, and the thread is the one that called it.
+ * While the event is disabled, the operations are not measured.<br>
+ * Example, reading a recording:
+ *
+ * <pre>
+ * for (RecordedEvent event : RecordingFile.readAllEvents(path)) {
+ * 	if (event.getEventType().getName().equals(QueryExecutionEvent.NAME)) {
+ * 		System.out.println(event.getString("fingerprint") + " " + event.getDuration().toMillis() + "ms");
+ * 	}
+ * }
+ * </pre>
+ *
+ * @see {@link ConversionBatchEvent}
+ *
+ * @author lucianowitt@gmail.com
+ */
+@Name(QueryExecutionEvent.NAME)
+@Label("JPA Query Execution")
+@Description("Operation of a query created by a JpaQueryFactory")
+@Category({ "JPA", "Query" })
+@StackTrace(false)
+public final class QueryExecutionEvent extends Event {
+
+	/**
+	 * Name of the event type.
+	 */
+	public static final String NAME = "br.com.witt.jpa.QueryExecution";
+
+	@Label("Name")
+	@Description("Name given to the query, if any")
+	String name;
+
+	@Label("Fingerprint")
+	@Description("Statement with the literals and parameters replaced by placeholders")
+	String fingerprint;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Rows")
+	@Description("Number of results returned or rows updated")
+	int rows;
+
+	@Label("Build Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long buildTime;
+
+	@Label("Execution Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long executionTime;
+
+	@Label("Conversion Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long conversionTime;
+
+	@Label("Cache Hit")
+	boolean cacheHit;
+
+	@Label("Error")
+	@Description("Class of the exception thrown by the operation, if any")
+	String error;
+
+	QueryExecutionEvent() {
+	}
+}
@@ -0,0 +1,136 @@
+package br.com.witt.jpa.query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import br.com.witt.jpa.metrics.QueryEvent;
+import br.com.witt.jpa.metrics.QueryListener;
+
+/**
+ * Measurement of one operation of a query, splitting its time in building,
+ * executing and converting, and notifying the {@link QueryListener}s at the
+ * end. The parts may be measured by several threads, as in the parallel chunks
+ * of an {@link InListChunking}. The operation is also recorded as a
+ * {@link QueryExecutionEvent} while Java Flight Recorder has it enabled.
+ */
+final class QueryProbe {
+
+	private static final Logger LOGGER = Logger.getLogger(QueryProbe.class.getName());
+
+	private final long start = System.nanoTime();
+	private final LongAdder buildNanos = new LongAdder();
+	private final LongAdder executeNanos = new LongAdder();
+	private final LongAdder conversionNanos = new LongAdder();
+	private final QueryExecutionEvent recorded;
+	private volatile boolean executed;
+
+	/**
+	 * Creates a probe for an operation of a query built in the given time,
+	 * beginning the given flight recorder event.
+	 */
+	QueryProbe(long buildNanos, QueryExecutionEvent recorded) {
+		this.buildNanos.add(buildNanos);
+		this.recorded = recorded;
+		recorded.begin();
+	}
+
+	<R> R build(Supplier<R> building) {
+		long begin = System.nanoTime();
+		try {
+			return building.get();
+		} finally {
+			buildNanos.add(System.nanoTime() - begin);
+		}
+	}
+
+	<R> R execute(Supplier<R> execution) {
+		long begin = System.nanoTime();
+		try {
+			return execution.get();
+		} finally {
+			executeNanos.add(System.nanoTime() - begin);
+			executed = true;
+		}
+	}
+
+	<R> R convert(Supplier<R> conversion) {
+		long begin = System.nanoTime();
+		try {
+			return conversion.get();
+		} finally {
+			conversionNanos.add(System.nanoTime() - begin);
+		}
+	}
+
+	/**
+	 * Creates the event of the finished operation and notifies the listeners,
+	 * which cannot make the operation fail, and commits the flight recorder
+	 * event, if enabled.
+	 */
+	void finish(List<QueryListener> listeners, String name, String statement, boolean nativeStatement,
+			String fingerprint, Map<String, Object> parameters, QueryEvent.Operation operation, Object result,
+			Throwable error) {
+		int rows;
+		if (result instanceof List) {
+			rows = ((List<?>) result).size();
+		} else if (operation == QueryEvent.Operation.UPDATE && result instanceof Integer) {
+			rows = (Integer) result;
+		} else {
+			rows = Objects.isNull(result) ? 0 : 1;
+		}
+		finish(listeners, name, statement, nativeStatement, fingerprint, parameters, operation, rows, error);
+	}
+
+	/**
+	 * Counts the results read from the given stream, and finishes the operation
+	 * with their number when the stream is closed. The stream is read through a
+	 * stream of its own, as the streams of some providers, as Hibernate, do not
+	 * run the close handlers added to them.
+	 */
+	<T> Stream<T> finishOnClose(Stream<T> stream, List<QueryListener> listeners, String name, String statement,
+			boolean nativeStatement, String fingerprint, Map<String, Object> parameters) {
+		AtomicInteger rows = new AtomicInteger();
+		return StreamSupport.stream(stream.spliterator(), stream.isParallel()).onClose(stream::close).peek(result -> rows.incrementAndGet()).onClose(() -> finish(listeners, name, statement,
+				nativeStatement, fingerprint, parameters, QueryEvent.Operation.RESULT_STREAM, rows.get(), null));
+	}
+
+	private void finish(List<QueryListener> listeners, String name, String statement, boolean nativeStatement,
+			String fingerprint, Map<String, Object> parameters, QueryEvent.Operation operation, int rows,
+			Throwable error) {
+		long totalNanos = System.nanoTime() - start;
+		boolean cacheHit = !executed && Objects.isNull(error);
+		recorded.end();
+		if (recorded.shouldCommit()) {
+			recorded.name = name;
+			recorded.fingerprint = fingerprint;
+			recorded.operation = operation.name();
+			recorded.rows = rows;
+			recorded.buildTime = buildNanos.sum();
+			recorded.executionTime = executeNanos.sum();
+			recorded.conversionTime = conversionNanos.sum();
+			recorded.cacheHit = cacheHit;
+			recorded.error = Objects.isNull(error) ? null : error.getClass().getName();
+			recorded.commit();
+		}
+		if (listeners.isEmpty()) {
+			return;
+		}
+		QueryEvent event = new QueryEvent(name, statement, nativeStatement, fingerprint, parameters, operation, buildNanos.sum(),
+				executeNanos.sum(), conversionNanos.sum(), totalNanos, rows, cacheHit, error);
+		for (QueryListener listener : listeners) {
+			try {
+				listener.queryExecuted(event);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Query listener failed", e);
+			}
+		}
+	}
+}
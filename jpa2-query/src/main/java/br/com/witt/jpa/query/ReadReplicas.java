@@ -0,0 +1,182 @@
+package br.com.witt.jpa.query;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Read replicas of a database, one {@link EntityManagerFactory} each, to which
+ * a {@link JpaQueryFactory} routes the read only queries. An instance should be
+ * shared by all the factories of the application, so that the balancing takes
+ * all the queries into account.<br>
+ * A replica that cannot be reached is left out of the balancing for the retry
+ * delay. The JPQL and SQL queries routed to it are created again and executed
+ * on the primary database, while the failure of a criteria query, whose tree
+ * belongs to the replica, is thrown. Errors of the statements themselves are
+ * always thrown, and leave the replica in the balancing.
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class ReadReplicas {
+
+	/**
+	 * Strategy to choose the replica of each query.
+	 */
+	public enum Balancing {
+		/**
+		 * Each query goes to the next replica, in turn.
+		 */
+		ROUND_ROBIN,
+		/**
+		 * Each query goes to the replica with the least queries being executed.
+		 */
+		LEAST_OUTSTANDING
+	}
+
+	private final List<EntityManagerFactory> replicas;
+	private final Balancing balancing;
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicIntegerArray outstanding;
+	private final AtomicLongArray unavailableUntil;
+	private volatile long retryDelay = Duration.ofSeconds(30).toNanos();
+
+	/**
+	 * Creates a new set of replicas.
+	 * 
+	 * @param balancing the strategy to choose the replica of each query
+	 * @param replicas  the factories of the entity managers of the replicas
+	 */
+	public ReadReplicas(Balancing balancing, List<EntityManagerFactory> replicas) {
+		if (Objects.isNull(replicas) || replicas.isEmpty()) {
+			throw new IllegalArgumentException("No replica informed");
+		}
+		this.balancing = Objects.requireNonNull(balancing, "Balancing cannot be null");
+		this.replicas = Collections.unmodifiableList(new ArrayList<EntityManagerFactory>(replicas));
+		this.outstanding = new AtomicIntegerArray(replicas.size());
+		this.unavailableUntil = new AtomicLongArray(replicas.size());
+	}
+
+	/**
+	 * Sets for how long a replica that failed a query is left out of the
+	 * balancing. The default is 30 seconds.
+	 * 
+	 * @param retryDelay the retry delay
+	 */
+	public void setRetryDelay(Duration retryDelay) {
+		this.retryDelay = retryDelay.toNanos();
+	}
+
+	/**
+	 * Gives the number of replicas.
+	 * 
+	 * @return the number of replicas
+	 */
+	public int size() {
+		return replicas.size();
+	}
+
+	/**
+	 * Gives the number of queries being executed on the given replica.
+	 * 
+	 * @param replica the index of the replica
+	 * @return the number of queries
+	 */
+	public int getOutstanding(int replica) {
+		return outstanding.get(replica);
+	}
+
+	/**
+	 * Tells whether the given replica is taking queries, that is, it has not
+	 * failed a query within the retry delay.
+	 * 
+	 * @param replica the index of the replica
+	 * @return <code>true</code> if the replica is available
+	 */
+	public boolean isAvailable(int replica) {
+		long until = unavailableUntil.get(replica);
+		return until == 0 || System.nanoTime() - until >= 0;
+	}
+
+	EntityManagerFactory get(int replica) {
+		return replicas.get(replica);
+	}
+
+	/**
+	 * Chooses the replica of the next query.
+	 * 
+	 * @return the index of the replica, or -1 if no replica is available
+	 */
+	int select() {
+		int size = replicas.size();
+		if (balancing == Balancing.ROUND_ROBIN) {
+			int start = Math.floorMod(next.getAndIncrement(), size);
+			for (int i = 0; i < size; i++) {
+				int replica = (start + i) % size;
+				if (isAvailable(replica)) {
+					return replica;
+				}
+			}
+			return -1;
+		}
+		int selected = -1;
+		int least = Integer.MAX_VALUE;
+		int start = Math.floorMod(next.getAndIncrement(), size);
+		for (int i = 0; i < size; i++) {
+			int replica = (start + i) % size;
+			int count = outstanding.get(replica);
+			if (count < least && isAvailable(replica)) {
+				selected = replica;
+				least = count;
+			}
+		}
+		return selected;
+	}
+
+	void acquire(int replica) {
+		outstanding.incrementAndGet(replica);
+	}
+
+	void release(int replica) {
+		outstanding.decrementAndGet(replica);
+	}
+
+	void markFailed(int replica) {
+		unavailableUntil.set(replica, System.nanoTime() + retryDelay);
+	}
+
+	/**
+	 * Tells whether the given failure is a failure to reach the database, rather
+	 * than an error of the statement, looking among its causes for a connection
+	 * exception or a SQL state of the connection exception class, 08.
+	 * 
+	 * @param failure the failure of a query
+	 * @return <code>true</code> if the connection to the database failed
+	 */
+	static boolean isConnectionFailure(Throwable failure) {
+		for (Throwable cause = failure; Objects.nonNull(cause); cause = cause.getCause()) {
+			if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException) {
+				return true;
+			}
+			if (cause instanceof SQLException) {
+				String state = ((SQLException) cause).getSQLState();
+				if (Objects.nonNull(state) && state.startsWith("08")) {
+					return true;
+				}
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+}
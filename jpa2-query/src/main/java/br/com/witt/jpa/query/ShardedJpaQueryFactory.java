@@ -0,0 +1,260 @@
+package br.com.witt.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Facade that runs the same query on several shards, one
+ * {@link EntityManagerFactory} each, in parallel, and merges the results.<br>
+ * For ordered listings, the query given must be ordered the same way as the
+ * given {@link Comparator}, and the limit of the requested page is pushed down
+ * to each shard, so that a page costs at most the number of shards times the
+ * page size rows, which are then merged by a k-way merge of the sorted partial
+ * results, stopping at the end of the page.<br>
+ * Example:
+ *
+ * <pre>
+ * ShardedJpaQueryFactory shards = new ShardedJpaQueryFactory(Arrays.asList(emf1, emf2, emf3), executor);
+ * List&lt;Department&gt; departments = shards.getResultPage(f -&gt; {
+ * 	CriteriaQuery q = f.createCriteriaQuery(Department.class).from(Department.class, "d");
+ * 	return q.orderBy(q.cb().asc(q.get("d.name")));
+ * }, Comparator.comparing(Department::getName), 1, 20);
+ * </pre>
+ *
+ * @author lucianowitt@gmail.com
+ */
+public class ShardedJpaQueryFactory {
+
+	private final List<AsyncJpaQueryFactory> shards;
+
+	/**
+	 * Creates a new facade over the given shards.
+	 * 
+	 * @param shards   the factories of the entity managers of the shards
+	 * @param executor the executor of the queries on the shards
+	 */
+	public ShardedJpaQueryFactory(List<EntityManagerFactory> shards, Executor executor) {
+		if (Objects.isNull(shards) || shards.isEmpty()) {
+			throw new IllegalArgumentException("No shard informed");
+		}
+		List<AsyncJpaQueryFactory> factories = new ArrayList<AsyncJpaQueryFactory>(shards.size());
+		for (EntityManagerFactory shard : shards) {
+			factories.add(new AsyncJpaQueryFactory(shard, executor));
+		}
+		this.shards = Collections.unmodifiableList(factories);
+	}
+
+	/**
+	 * Gives the number of shards.
+	 * 
+	 * @return the number of shards
+	 */
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * Runs the given task on all the shards, in parallel.
+	 * 
+	 * @param <T>  the type of the task result
+	 * @param task the task
+	 * @return the results of the task, in the order of the shards
+	 */
+	public <T> List<T> submit(Function<JpaQueryFactory, T> task) {
+		List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(shards.size());
+		for (AsyncJpaQueryFactory shard : shards) {
+			futures.add(shard.submit(task));
+		}
+		List<T> results = new ArrayList<T>(futures.size());
+		try {
+			for (CompletableFuture<T> future : futures) {
+				results.add(future.join());
+			}
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		return results;
+	}
+
+	/**
+	 * Executes the query created by the given function on all the shards and
+	 * returns all the results, merged in the order given by the comparator, which
+	 * must be the same order of the query.
+	 * 
+	 * @param <T>        the type of the results
+	 * @param query      the function that creates the query, either a
+	 *                   {@link Query} or a {@link CriteriaQuery}
+	 * @param comparator the order of the results
+	 * @return the merged list of results
+	 */
+	public <T> List<T> getResultList(Function<JpaQueryFactory, ?> query, Comparator<? super T> comparator) {
+		return merge(this.<T>fetch(query, -1), comparator, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Executes the query created by the given function on all the shards and
+	 * returns the first results, in the order given by the comparator, which must
+	 * be the same order of the query. Each shard is limited to the maximum number
+	 * of results.
+	 * 
+	 * @param <T>        the type of the results
+	 * @param query      the function that creates the query, either a
+	 *                   {@link Query} or a {@link CriteriaQuery}
+	 * @param comparator the order of the results
+	 * @param maxResults the maximum number of results
+	 * @return the merged list of results
+	 */
+	public <T> List<T> getResultList(Function<JpaQueryFactory, ?> query, Comparator<? super T> comparator,
+			int maxResults) {
+		return merge(this.<T>fetch(query, maxResults), comparator, 0, maxResults);
+	}
+
+	/**
+	 * Executes the query created by the given function on all the shards and
+	 * returns a page of results, in the order given by the comparator, which must
+	 * be the same order of the query. Each shard is limited to the results up to
+	 * the end of the page, as any of them may belong to the page.
+	 * 
+	 * @param <T>        the type of the results
+	 * @param query      the function that creates the query, either a
+	 *                   {@link Query} or a {@link CriteriaQuery}
+	 * @param comparator the order of the results
+	 * @param pageNumber the number of the page
+	 * @param pageSize   the size of the page
+	 * @return the page of results
+	 */
+	public <T> List<T> getResultPage(Function<JpaQueryFactory, ?> query, Comparator<? super T> comparator,
+			int pageNumber, int pageSize) {
+		if (pageNumber < 1 || pageSize < 1) {
+			throw new IllegalArgumentException("Page number and size must be positive");
+		}
+		int firstResult = (pageNumber - 1) * pageSize;
+		return merge(this.<T>fetch(query, firstResult + pageSize), comparator, firstResult, pageSize);
+	}
+
+	/**
+	 * Counts the results of the query created by the given function on all the
+	 * shards, adding the counts. Criteria queries are counted with
+	 * {@link CriteriaQuery#getResultCount()}, and other queries must return a
+	 * single number, such as a <code>count</code> query.
+	 * 
+	 * @param query the function that creates the query
+	 * @return the sum of the counts of the shards
+	 */
+	public long getResultCount(Function<JpaQueryFactory, ?> query) {
+		long total = 0;
+		for (Number count : submit(f -> count(query.apply(f)))) {
+			total += count.longValue();
+		}
+		return total;
+	}
+
+	private static Number count(Object query) {
+		if (query instanceof CriteriaQuery) {
+			return ((CriteriaQuery) query).getResultCount();
+		} else if (query instanceof SqlQuery) {
+			return ((SqlQuery) query).getScalar(Long.class);
+		} else if (query instanceof Query) {
+			return ((Query) query).getSingleResult();
+		}
+		throw notAQuery(query);
+	}
+
+	/**
+	 * Executes the query on all the shards, limited to the given number of
+	 * results, if not negative.
+	 */
+	private <T> List<List<T>> fetch(Function<JpaQueryFactory, ?> query, int maxResults) {
+		return submit(f -> {
+			Object created = query.apply(f);
+			if (created instanceof CriteriaQuery) {
+				CriteriaQuery criteriaQuery = (CriteriaQuery) created;
+				if (maxResults >= 0) {
+					criteriaQuery.setMaxResults(maxResults);
+				}
+				return criteriaQuery.<T>getResultList();
+			} else if (created instanceof Query) {
+				Query jpaQuery = (Query) created;
+				if (maxResults >= 0) {
+					jpaQuery.setMaxResults(maxResults);
+				}
+				return jpaQuery.<T>getResultList();
+			}
+			throw notAQuery(created);
+		});
+	}
+
+	/**
+	 * Merges the sorted partial results, skipping the first results and stopping
+	 * as soon as the limit is reached, without sorting all the results.
+	 */
+	static <T> List<T> merge(List<List<T>> partials, Comparator<? super T> comparator, int skip, int limit) {
+		Objects.requireNonNull(comparator, "Comparator cannot be null");
+		PriorityQueue<Cursor<T>> heads = new PriorityQueue<Cursor<T>>(Math.max(1, partials.size()),
+				(a, b) -> {
+					int result = comparator.compare(a.head, b.head);
+					return result != 0 ? result : Integer.compare(a.shard, b.shard);
+				});
+		for (int i = 0; i < partials.size(); i++) {
+			Iterator<T> iterator = partials.get(i).iterator();
+			if (iterator.hasNext()) {
+				heads.add(new Cursor<T>(i, iterator));
+			}
+		}
+		List<T> merged = new ArrayList<T>();
+		int position = 0;
+		while (!heads.isEmpty() && merged.size() < limit) {
+			Cursor<T> cursor = heads.poll();
+			if (position++ >= skip) {
+				merged.add(cursor.head);
+			}
+			if (cursor.advance()) {
+				heads.add(cursor);
+			}
+		}
+		return merged;
+	}
+
+	private static IllegalArgumentException notAQuery(Object query) {
+		return new IllegalArgumentException(
+				"Not a query: " + (Objects.isNull(query) ? "null" : query.getClass().getName()));
+	}
+
+	/**
+	 * Current position on the sorted results of a shard.
+	 */
+	private static class Cursor<T> {
+
+		final int shard;
+		final Iterator<T> iterator;
+		T head;
+
+		Cursor(int shard, Iterator<T> iterator) {
+			this.shard = shard;
+			this.iterator = iterator;
+			this.head = iterator.next();
+		}
+
+		boolean advance() {
+			if (iterator.hasNext()) {
+				head = iterator.next();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package br.com.witt.jpa.query;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+
+/**
+ * Executes a SQL insert, update or delete statement once for each row of
+ * parameters, sending the executions to the database in JDBC batches, through
+ * the connection of the {@link EntityManager}, so that loading many rows costs
+ * one round trip per batch instead of one per row.<br>
+ * The statement may have named parameters, as <code>:name</code>, or
+ * positional ones, as <code>?</code> or <code>?1</code>. Each row is a
+ * {@link Map} of the values by parameter name, an array of the values in the
+ * order of the positional parameters, or an object whose fields have the names
+ * of the parameters.<br>
+ * Example:
+ * 
+ * <pre>
+ * int[] counts = jpaQueryFactory.createSqlBatch("insert into employee (id, name) values (:id, :name)")
+ * 		.setBatchSize(1000).execute(employees);
+ * </pre>
+ * 
+ * The pending changes of the entity manager are flushed before the first batch.
+ * When a clear interval is set, the entity manager is also flushed and cleared
+ * after every clear interval batches, so that entities loaded while producing
+ * the rows do not accumulate.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public class SqlBatch {
+
+	/**
+	 * Parameter fields of the row classes, by name, computed on the first batch of
+	 * each class.
+	 */
+	private static final ClassValue<Map<String, Field>> FIELDS = new ClassValue<Map<String, Field>>() {
+		@Override
+		protected Map<String, Field> computeValue(Class<?> type) {
+			Map<String, Field> fields = new HashMap<String, Field>();
+			for (Class<?> c = type; Objects.nonNull(c) && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !fields.containsKey(field.getName())) {
+						field.trySetAccessible();
+						fields.put(field.getName(), field);
+					}
+				}
+			}
+			return fields;
+		}
+	};
+
+	private final EntityManager em;
+	private final String sql;
+	private final String jdbcSql;
+	private final String[] parameterNames;
+	private int batchSize = 500;
+	private int clearInterval;
+
+	/**
+	 * Cache set by the {@link JpaQueryFactory}, whose entries tagged by the target
+	 * table are invalidated by a successful execution, and again at the completion
+	 * of its transaction.
+	 */
+	QueryResultCache resultCache;
+
+	protected SqlBatch(EntityManager em, String sql) {
+		if (Objects.isNull(sql) || sql.trim().isEmpty()) {
+			throw new IllegalArgumentException("SQL cannot be null");
+		}
+		this.em = em;
+		this.sql = sql;
+		List<String> names = new ArrayList<String>();
+		this.jdbcSql = parse(sql, names);
+		this.parameterNames = names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Sets the number of rows sent to the database in each batch. The default is
+	 * 500.
+	 * 
+	 * @param batchSize the number of rows of each batch
+	 * @return this {@link SqlBatch} instance
+	 */
+	public SqlBatch setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Sets after how many batches the entity manager is flushed and cleared, or 0
+	 * to never clear it, the default. Clearing detaches all the entities managed by
+	 * the entity manager, including the ones of the caller.
+	 * 
+	 * @param clearInterval the number of batches between clears
+	 * @return this {@link SqlBatch} instance
+	 */
+	public SqlBatch setClearInterval(int clearInterval) {
+		if (clearInterval < 0) {
+			throw new IllegalArgumentException("Clear interval cannot be negative");
+		}
+		this.clearInterval = clearInterval;
+		return this;
+	}
+
+	/**
+	 * Executes the statement for each row of parameters.
+	 * 
+	 * @param rows the rows of parameters
+	 * @return the number of rows affected by each batch, or
+	 *         {@link Statement#SUCCESS_NO_INFO} for the batches whose counts the
+	 *         driver did not report
+	 */
+	public int[] execute(Iterable<?> rows) {
+		Objects.requireNonNull(rows, "Rows cannot be null");
+		if (em.isJoinedToTransaction()) {
+			em.flush();
+		}
+		List<Integer> counts = new ArrayList<Integer>();
+		withConnection(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(jdbcSql)) {
+				int pending = 0;
+				for (Object row : rows) {
+					bind(statement, row);
+					statement.addBatch();
+					if (++pending == batchSize) {
+						counts.add(sum(statement.executeBatch()));
+						pending = 0;
+						afterBatch(counts.size());
+					}
+				}
+				if (pending > 0) {
+					counts.add(sum(statement.executeBatch()));
+				}
+			}
+		});
+		if (!counts.isEmpty()) {
+			CacheTransactions.invalidateStatement(em, resultCache, sql);
+		}
+		int[] result = new int[counts.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Executes the statement for each row of parameters, and closes the stream.
+	 * 
+	 * @param <R>  the type of the rows
+	 * @param rows the rows of parameters
+	 * @return the number of rows affected by each batch
+	 * @see {@link SqlBatch#execute(Iterable)}
+	 */
+	public <R> int[] execute(Stream<R> rows) {
+		Iterable<R> iterable = rows::iterator;
+		try {
+			return execute(iterable);
+		} finally {
+			rows.close();
+		}
+	}
+
+	private void afterBatch(int batches) {
+		if (clearInterval > 0 && batches % clearInterval == 0) {
+			if (em.isJoinedToTransaction()) {
+				em.flush();
+			}
+			em.clear();
+		}
+	}
+
+	private void bind(PreparedStatement statement, Object row) throws SQLException {
+		for (int i = 0; i < parameterNames.length; i++) {
+			Object value = getValue(row, parameterNames[i]);
+			if (Objects.isNull(value)) {
+				statement.setObject(i + 1, null);
+			} else if (value instanceof Enum) {
+				statement.setObject(i + 1, ((Enum<?>) value).name());
+			} else if (value.getClass() == java.util.Date.class) {
+				statement.setObject(i + 1, new Timestamp(((java.util.Date) value).getTime()));
+			} else {
+				statement.setObject(i + 1, value);
+			}
+		}
+	}
+
+	private static Object getValue(Object row, String name) {
+		boolean positional = Character.isDigit(name.charAt(0));
+		if (row instanceof Object[] && positional) {
+			Object[] values = (Object[]) row;
+			int position = Integer.parseInt(name);
+			if (position > values.length) {
+				throw new IllegalArgumentException("No value for the parameter " + position);
+			}
+			return values[position - 1];
+		} else if (row instanceof Map) {
+			Map<?, ?> values = (Map<?, ?>) row;
+			if (!values.containsKey(name)) {
+				throw new IllegalArgumentException("No value for the parameter " + name);
+			}
+			return values.get(name);
+		} else if (Objects.nonNull(row) && !positional) {
+			Field field = FIELDS.get(row.getClass()).get(name);
+			if (Objects.isNull(field)) {
+				throw new IllegalArgumentException("No field for the parameter " + name + " in " + row.getClass().getName());
+			}
+			try {
+				return field.get(row);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		throw new IllegalArgumentException("Invalid row for the parameter " + name + ": " + row);
+	}
+
+	private static int sum(int[] counts) {
+		int sum = 0;
+		for (int count : counts) {
+			if (count == Statement.SUCCESS_NO_INFO) {
+				return Statement.SUCCESS_NO_INFO;
+			}
+			sum += count;
+		}
+		return sum;
+	}
+
+	/**
+	 * Replaces the named and numbered parameters by JDBC placeholders, skipping
+	 * literals, quoted identifiers, comments and <code>::</code> casts, and
+	 * collects the parameter names, or positions, in order.
+	 */
+	static String parse(String sql, List<String> names) {
+		StringBuilder jdbcSql = new StringBuilder(sql.length());
+		int length = sql.length();
+		int position = 0;
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			int end = i + 1;
+			if (c == '\'' || c == '"') {
+				end = sql.indexOf(c, i + 1);
+				end = end < 0 ? length : end + 1;
+			} else if (c == '-' && sql.startsWith("--", i)) {
+				end = sql.indexOf('\n', i);
+				end = end < 0 ? length : end + 1;
+			} else if (c == '/' && sql.startsWith("/*", i)) {
+				end = sql.indexOf("*/", i + 2);
+				end = end < 0 ? length : end + 2;
+			} else if (c == ':' && sql.startsWith("::", i)) {
+				end = i + 2;
+			} else if (c == ':' && end < length && Character.isJavaIdentifierStart(sql.charAt(end))) {
+				while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+					end++;
+				}
+				names.add(sql.substring(i + 1, end));
+				jdbcSql.append('?');
+				i = end;
+				continue;
+			} else if (c == '?') {
+				while (end < length && Character.isDigit(sql.charAt(end))) {
+					end++;
+				}
+				names.add(end > i + 1 ? sql.substring(i + 1, end) : String.valueOf(++position));
+				jdbcSql.append('?');
+				i = end;
+				continue;
+			}
+			jdbcSql.append(sql, i, end);
+			i = end;
+		}
+		return jdbcSql.toString();
+	}
+
+	/**
+	 * Runs the given work with the JDBC connection of the entity manager, given by
+	 * {@link EntityManager#unwrap(Class)} or, with Hibernate, by
+	 * <code>Session.doWork</code>.
+	 */
+	private void withConnection(ConnectionWork work) {
+		Connection connection = null;
+		try {
+			connection = em.unwrap(Connection.class);
+		} catch (PersistenceException e) {
+			// the provider does not expose the connection this way
+		}
+		if (Objects.nonNull(connection)) {
+			work.run(connection);
+			return;
+		}
+		try {
+			ClassLoader loader = em.getDelegate().getClass().getClassLoader();
+			Class<?> sessionClass = Class.forName("org.hibernate.Session", false, loader);
+			Class<?> workClass = Class.forName("org.hibernate.jdbc.Work", false, loader);
+			InvocationHandler handler = (proxy, method, args) -> {
+				if ("execute".equals(method.getName())) {
+					work.run((Connection) args[0]);
+					return null;
+				} else if ("equals".equals(method.getName())) {
+					return proxy == args[0];
+				} else if ("hashCode".equals(method.getName())) {
+					return System.identityHashCode(proxy);
+				}
+				return "SqlBatch[" + sql + "]";
+			};
+			Object hibernateWork = Proxy.newProxyInstance(loader, new Class<?>[] { workClass }, handler);
+			sessionClass.getMethod("doWork", workClass).invoke(em.unwrap(sessionClass), hibernateWork);
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException("The JDBC connection of the entity manager is not accessible", e);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new PersistenceException(e.getCause());
+		}
+	}
+
+	/**
+	 * Work done with a JDBC connection.
+	 */
+	@FunctionalInterface
+	private interface ConnectionWork {
+
+		void execute(Connection connection) throws SQLException;
+
+		default void run(Connection connection) {
+			try {
+				execute(connection);
+			} catch (SQLException e) {
+				throw new PersistenceException(e);
+			}
+		}
+	}
+}
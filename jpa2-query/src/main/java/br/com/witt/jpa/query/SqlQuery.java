@@ -0,0 +1,179 @@
+package br.com.witt.jpa.query;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import br.com.witt.jpa.metrics.QueryEvent.Operation;
+import br.com.witt.jpa.util.RowMapper;
+import br.com.witt.jpa.util.TypeConverter;
+
+/**
+ * Facade for easy and fluent JPA 2.1 SQL query building and executing.
+ * 
+ * @author lucianowitt@gmail.com
+ *
+ */
+public class SqlQuery extends Query {
+
+	protected SqlQuery(EntityManager em) {
+		super(em);
+	}
+
+	/**
+	 * Creates a new query with the informed result class.
+	 * 
+	 * @param sql         SQL string
+	 * @param resultClass the class of the query result
+	 * @return this {@link SqlQuery} instance
+	 */
+	protected SqlQuery newQuery(String sql, Class<?> resultClass) {
+		this.resultClass = resultClass;
+		this.queryString = sql;
+		query = createQuery(em);
+		return this;
+	}
+
+	/**
+	 * Creates a new query to return a scalar, as no result class is informed.
+	 * 
+	 * @param sql SQL string
+	 * @return this {@link SqlQuery} instance
+	 */
+	protected SqlQuery newQuery(String sql) {
+		return newQuery(sql, null);
+	}
+
+	/**
+	 * Marks the query results to be kept in the result cache, including the
+	 * scalars given by {@link SqlQuery#getScalar(Class)}.
+	 * 
+	 * @param timeToLive the time to live of the results, or <code>null</code> for
+	 *                   the default time to live of the cache
+	 * @param tags       additional tags of the results
+	 * @return this {@link SqlQuery} instance
+	 * @see {@link Query#cacheable(Duration, String...)}
+	 */
+	@Override
+	public SqlQuery cacheable(Duration timeToLive, String... tags) {
+		super.cacheable(timeToLive, tags);
+		return this;
+	}
+
+	/**
+	 * Marks the query as read only, so that the pending changes of the entity
+	 * manager are not flushed before its execution.
+	 * 
+	 * @return this {@link SqlQuery} instance
+	 * @see {@link Query#readOnly()}
+	 */
+	@Override
+	public SqlQuery readOnly() {
+		super.readOnly();
+		return this;
+	}
+
+	/**
+	 * Names the query, so that its executions are reported to the listeners under
+	 * the name instead of the fingerprint of its statement.
+	 * 
+	 * @param name the query name
+	 * @return this {@link SqlQuery} instance
+	 * @see {@link Query#setName(String)}
+	 */
+	@Override
+	public SqlQuery setName(String name) {
+		super.setName(name);
+		return this;
+	}
+
+	/**
+	 * 
+	 * 
+	 * @param <T>
+	 * @param scalarClass
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getScalar(Class<T> scalarClass) {
+		return (T) measured(Operation.SCALAR, () -> cached("scalar:" + scalarClass.getName(), () -> routed(() -> {
+			Object result = executing(() -> query.getSingleResult());
+			return converting(() -> TypeConverter.convertValue(result, scalarClass));
+		}), r -> 1));
+	}
+
+	@Override
+	protected javax.persistence.Query createQuery(EntityManager em) {
+		return em.createNativeQuery(queryString);
+	}
+
+	@Override
+	boolean isNativeQuery() {
+		return true;
+	}
+
+	@Override
+	protected Object fetchSingleResult() {
+		if (Objects.isNull(resultClass)) {
+			return executing(() -> query.getSingleResult());
+		} else {
+			Object[] result = (Object[]) executing(() -> query.getSingleResult());
+			return converting(() -> TypeConverter.convert(result, resultClass));
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected List<?> fetchResultList(javax.persistence.Query query) {
+		if (Objects.isNull(resultClass)) {
+			return executing(() -> query.getResultList());
+		} else {
+			List<Object[]> resultList = executing(() -> query.getResultList());
+			return converting(() -> {
+				ConversionBatchEvent recorded = new ConversionBatchEvent();
+				recorded.begin();
+				RowMapper<Object> mapper = TypeConverter.getRowMapper(resultClass);
+				List<Object> convertedList = new ArrayList<Object>(resultList.size());
+				for (Object[] result : resultList) {
+					convertedList.add(mapper.map(result));
+				}
+				recorded.end();
+				if (recorded.shouldCommit()) {
+					recorded.resultClass = resultClass;
+					recorded.rows = convertedList.size();
+					recorded.commit();
+				}
+				return convertedList;
+			});
+		}
+	}
+
+	/**
+	 * Executes the query and returns a stream of results. When a result class is
+	 * informed, each row is converted as it is consumed.<br>
+	 * Only the opening of the stream falls back to the primary database when the
+	 * replica the query was routed to cannot be reached; the failures while the
+	 * results are read are thrown to the consumer.
+	 * 
+	 * @param <T> the type of the result, resolved at runtime
+	 * @return the stream of results of the query execution
+	 * @see {@link javax.persistence.Query#getResultStream()}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> Stream<T> getResultStream() {
+		if (Objects.isNull(resultClass)) {
+			return measuredStream(() -> routed(() -> executing(() -> query.getResultStream())));
+		} else {
+			RowMapper<T> mapper = TypeConverter.getRowMapper(resultClass);
+			return measuredStream(() -> {
+				Stream<Object[]> resultStream = routed(() -> executing(() -> query.getResultStream()));
+				return resultStream.map(mapper::map);
+			});
+		}
+	}
+}
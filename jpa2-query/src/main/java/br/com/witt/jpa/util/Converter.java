@@ -0,0 +1,24 @@
+package br.com.witt.jpa.util;
+
+/**
+ * Converts a value of a source type, as returned by the persistence provider
+ * or the JDBC driver, to a target type, as expected by a DTO or a scalar query.
+ * Custom converters are registered with
+ * {@link TypeConverter#registerConverter(Class, Class, Converter)}.
+ *
+ * @param <S> the source type
+ * @param <T> the target type
+ * 
+ * @author lucianowitt@gmail.com
+ */
+@FunctionalInterface
+public interface Converter<S, T> {
+
+	/**
+	 * Converts the given value.
+	 * 
+	 * @param value the value to be converted, never <code>null</code>
+	 * @return the converted value
+	 */
+	T convert(S value);
+}
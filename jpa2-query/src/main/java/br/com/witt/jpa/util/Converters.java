@@ -0,0 +1,317 @@
+package br.com.witt.jpa.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Built-in converters used by {@link TypeConverter} when no custom converter is
+ * registered for a pair of source and target types.
+ *
+ * @author lucianowitt@gmail.com
+ */
+class Converters {
+
+	/**
+	 * Format of the date and time strings, with optional time and fraction of
+	 * second. The formatter is immutable and thread safe.
+	 */
+	static final DateTimeFormatter DATE_TIME_FORMAT = new DateTimeFormatterBuilder()
+			.append(DateTimeFormatter.ISO_LOCAL_DATE)
+			.optionalStart().appendLiteral(' ').append(DateTimeFormatter.ISO_LOCAL_TIME).optionalEnd()
+			.optionalStart().appendLiteral('T').append(DateTimeFormatter.ISO_LOCAL_TIME).optionalEnd()
+			.parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+			.toFormatter();
+
+	private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+
+	static {
+		WRAPPERS.put(boolean.class, Boolean.class);
+		WRAPPERS.put(byte.class, Byte.class);
+		WRAPPERS.put(char.class, Character.class);
+		WRAPPERS.put(short.class, Short.class);
+		WRAPPERS.put(int.class, Integer.class);
+		WRAPPERS.put(long.class, Long.class);
+		WRAPPERS.put(float.class, Float.class);
+		WRAPPERS.put(double.class, Double.class);
+	}
+
+	private Converters() {
+	}
+
+	/**
+	 * Gives the wrapper class of a primitive type, or the type itself if it is not
+	 * primitive.
+	 */
+	static Class<?> wrap(Class<?> type) {
+		return type.isPrimitive() ? WRAPPERS.get(type) : type;
+	}
+
+	/**
+	 * Finds the built-in converter from the source type to the target type. There
+	 * is no conversion of binary values and arrays, other than char arrays, to
+	 * strings, as their charset is unknown.
+	 * 
+	 * @param source the source type
+	 * @param target the target type, not primitive
+	 * @return the converter, or <code>null</code> if there is no built-in
+	 *         conversion between the types
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Converter<Object, ?> find(Class<?> source, Class<?> target) {
+		if (String.class == target) {
+			if (Clob.class.isAssignableFrom(source)) {
+				return Converters::clobToString;
+			} else if (char[].class == source) {
+				return v -> new String((char[]) v);
+			} else if (source.isArray() || Blob.class.isAssignableFrom(source)) {
+				return null;
+			}
+			return Object::toString;
+		}
+
+		if (Long.class == target) {
+			return number(source, v -> Long.valueOf(v.longValue()), v -> Long.valueOf(v.trim()));
+		}
+		if (Integer.class == target) {
+			return number(source, v -> Integer.valueOf(v.intValue()), v -> Integer.valueOf(v.trim()));
+		}
+		if (Short.class == target) {
+			return number(source, v -> Short.valueOf(v.shortValue()), v -> Short.valueOf(v.trim()));
+		}
+		if (Byte.class == target) {
+			return number(source, v -> Byte.valueOf(v.byteValue()), v -> Byte.valueOf(v.trim()));
+		}
+		if (Double.class == target) {
+			return number(source, v -> Double.valueOf(v.doubleValue()), v -> Double.valueOf(v.trim()));
+		}
+		if (Float.class == target) {
+			return number(source, v -> Float.valueOf(v.floatValue()), v -> Float.valueOf(v.trim()));
+		}
+		if (BigDecimal.class == target) {
+			if (BigInteger.class.isAssignableFrom(source)) {
+				return v -> new BigDecimal((BigInteger) v);
+			} else if (Long.class == source || Integer.class == source || Short.class == source || Byte.class == source) {
+				return v -> BigDecimal.valueOf(((Number) v).longValue());
+			}
+			return v -> new BigDecimal(v.toString().trim());
+		}
+		if (BigInteger.class == target) {
+			if (BigDecimal.class.isAssignableFrom(source)) {
+				return v -> ((BigDecimal) v).toBigInteger();
+			}
+			return number(source, v -> BigInteger.valueOf(v.longValue()), v -> new BigInteger(v.trim()));
+		}
+		if (Boolean.class == target) {
+			if (Number.class.isAssignableFrom(source)) {
+				return v -> Boolean.valueOf(((Number) v).doubleValue() != 0);
+			}
+			return v -> parseBoolean(v.toString());
+		}
+		if (Character.class == target) {
+			return v -> parseCharacter(v.toString());
+		}
+		if (target.isEnum()) {
+			Object[] constants = target.getEnumConstants();
+			if (Number.class.isAssignableFrom(source)) {
+				return v -> {
+					long ordinal = ((Number) v).longValue();
+					if (ordinal < 0 || ordinal >= constants.length) {
+						throw new IllegalArgumentException(
+								"Invalid ordinal " + v + " of " + target.getName() + ", which has " + constants.length
+										+ " constants");
+					}
+					return constants[(int) ordinal];
+				};
+			}
+			return v -> Enum.valueOf((Class) target, v.toString().trim());
+		}
+		if (UUID.class == target) {
+			if (byte[].class == source) {
+				return v -> {
+					if (((byte[]) v).length != 16) {
+						throw new IllegalArgumentException(
+								"Invalid UUID of " + ((byte[]) v).length + " bytes, instead of 16");
+					}
+					ByteBuffer buffer = ByteBuffer.wrap((byte[]) v);
+					return new UUID(buffer.getLong(), buffer.getLong());
+				};
+			}
+			return v -> UUID.fromString(v.toString().trim());
+		}
+		return findTemporal(source, target);
+	}
+
+	private static Converter<Object, ?> findTemporal(Class<?> source, Class<?> target) {
+		if (Date.class == target) {
+			if (Date.class.isAssignableFrom(source)) {
+				return v -> new Date(((Date) v).getTime());
+			}
+			return v -> Date.from(toInstant(v));
+		}
+		if (Timestamp.class == target) {
+			return v -> Timestamp.from(toInstant(v));
+		}
+		if (java.sql.Date.class == target) {
+			return v -> java.sql.Date.valueOf(toLocalDate(v));
+		}
+		if (Time.class == target) {
+			return v -> Time.valueOf(toLocalTime(v));
+		}
+		if (Instant.class == target) {
+			return Converters::toInstant;
+		}
+		if (LocalDateTime.class == target) {
+			return Converters::toLocalDateTime;
+		}
+		if (LocalDate.class == target) {
+			return Converters::toLocalDate;
+		}
+		if (LocalTime.class == target) {
+			return Converters::toLocalTime;
+		}
+		if (OffsetDateTime.class == target) {
+			if (ZonedDateTime.class == source) {
+				return v -> ((ZonedDateTime) v).toOffsetDateTime();
+			}
+			return v -> toZonedDateTime(v).toOffsetDateTime();
+		}
+		if (ZonedDateTime.class == target) {
+			return Converters::toZonedDateTime;
+		}
+		return null;
+	}
+
+	private static <T> Converter<Object, T> number(Class<?> source, Converter<Number, T> fromNumber,
+			Converter<String, T> fromString) {
+		if (Number.class.isAssignableFrom(source)) {
+			return v -> fromNumber.convert((Number) v);
+		}
+		return v -> fromString.convert(v.toString());
+	}
+
+	private static Boolean parseBoolean(String value) {
+		switch (value.trim().toLowerCase()) {
+		case "true":
+		case "t":
+		case "1":
+		case "y":
+		case "yes":
+			return Boolean.TRUE;
+		case "false":
+		case "f":
+		case "0":
+		case "n":
+		case "no":
+			return Boolean.FALSE;
+		default:
+			throw new IllegalArgumentException("Invalid boolean value: " + value);
+		}
+	}
+
+	private static Character parseCharacter(String value) {
+		if (value.length() != 1) {
+			throw new IllegalArgumentException("Invalid character value: " + value);
+		}
+		return Character.valueOf(value.charAt(0));
+	}
+
+	private static String clobToString(Object value) {
+		Clob clob = (Clob) value;
+		try {
+			return clob.getSubString(1, (int) clob.length());
+		} catch (SQLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static LocalDateTime toLocalDateTime(Object value) {
+		if (value instanceof LocalDateTime) {
+			return (LocalDateTime) value;
+		} else if (value instanceof Timestamp) {
+			return ((Timestamp) value).toLocalDateTime();
+		} else if (value instanceof java.sql.Date) {
+			return ((java.sql.Date) value).toLocalDate().atStartOfDay();
+		} else if (value instanceof Date) {
+			return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Date) value).getTime()), ZoneId.systemDefault());
+		} else if (value instanceof LocalDate) {
+			return ((LocalDate) value).atStartOfDay();
+		} else if (value instanceof Instant) {
+			return LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault());
+		} else if (value instanceof OffsetDateTime) {
+			return ((OffsetDateTime) value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+		} else if (value instanceof ZonedDateTime) {
+			return ((ZonedDateTime) value).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+		} else if (value instanceof CharSequence) {
+			return LocalDateTime.parse(value.toString().trim(), DATE_TIME_FORMAT);
+		}
+		throw cannotConvert(value, LocalDateTime.class);
+	}
+
+	private static LocalDate toLocalDate(Object value) {
+		if (value instanceof java.sql.Date) {
+			return ((java.sql.Date) value).toLocalDate();
+		} else if (value instanceof LocalDateTime) {
+			return ((LocalDateTime) value).toLocalDate();
+		}
+		return toLocalDateTime(value).toLocalDate();
+	}
+
+	private static LocalTime toLocalTime(Object value) {
+		if (value instanceof Time) {
+			return ((Time) value).toLocalTime();
+		} else if (value instanceof CharSequence && value.toString().trim().length() <= 12) {
+			return LocalTime.parse(value.toString().trim());
+		}
+		return toLocalDateTime(value).toLocalTime();
+	}
+
+	private static Instant toInstant(Object value) {
+		if (value instanceof Instant) {
+			return (Instant) value;
+		} else if (value instanceof Timestamp) {
+			return ((Timestamp) value).toInstant();
+		} else if (value instanceof Date && !(value instanceof java.sql.Date) && !(value instanceof Time)) {
+			return Instant.ofEpochMilli(((Date) value).getTime());
+		} else if (value instanceof Number) {
+			return Instant.ofEpochMilli(((Number) value).longValue());
+		}
+		return toZonedDateTime(value).toInstant();
+	}
+
+	private static ZonedDateTime toZonedDateTime(Object value) {
+		if (value instanceof ZonedDateTime) {
+			return (ZonedDateTime) value;
+		} else if (value instanceof OffsetDateTime) {
+			return ((OffsetDateTime) value).toZonedDateTime();
+		} else if (value instanceof Instant) {
+			return ((Instant) value).atZone(ZoneId.systemDefault());
+		}
+		return toLocalDateTime(value).atZone(ZoneId.systemDefault());
+	}
+
+	static IllegalArgumentException cannotConvert(Object value, Class<?> type) {
+		String source = Objects.isNull(value) ? "null" : value.getClass().getName();
+		return new IllegalArgumentException("Cannot convert " + source + " to " + type.getName());
+	}
+}
@@ -0,0 +1,22 @@
+package br.com.witt.jpa.util;
+
+/**
+ * Maps a row of a SQL query result, given as an array of column values, to an
+ * instance of a DTO class.
+ *
+ * @param <T> the type of the DTO
+ * 
+ * @author lucianowitt@gmail.com
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	/**
+	 * Creates the DTO instance for the given row.
+	 * 
+	 * @param row the column values, in the same order as declared in the SQL
+	 *            statement
+	 * @return the DTO instance
+	 */
+	T map(Object[] row);
+}
@@ -0,0 +1,22 @@
+package br.com.witt.jpa.util;
+
+import java.util.Map;
+
+/**
+ * Service provider of {@link RowMapper} instances for DTO classes, looked up by
+ * {@link TypeConverter} through the {@link java.util.ServiceLoader} mechanism.
+ * Implementations are usually generated by the
+ * <code>jpa2-query-processor</code> annotation processor for the classes
+ * annotated with {@link SqlResult}.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+public interface RowMapperRegistry {
+
+	/**
+	 * Gives the row mappers provided by this registry.
+	 * 
+	 * @return the row mappers, by DTO class
+	 */
+	Map<Class<?>, RowMapper<?>> getRowMappers();
+}
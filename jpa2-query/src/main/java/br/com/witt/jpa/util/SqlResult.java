@@ -0,0 +1,26 @@
+package br.com.witt.jpa.util;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a DTO class used as result class of SQL queries. When the
+ * <code>jpa2-query-processor</code> annotation processor is in the compiler
+ * path, it generates at compile time a {@link RowMapper} for each class with
+ * this annotation, and a {@link RowMapperRegistry} through which
+ * {@link TypeConverter} finds them, so that no reflection is needed to convert
+ * the query results.<br>
+ * The same rules of {@link TypeConverter#convert(Object[], Class)} apply: the
+ * class must have a non private constructor with all its persistent fields as
+ * arguments, in the order they are declared.
+ * 
+ * @author lucianowitt@gmail.com
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface SqlResult {
+}
@@ -0,0 +1,398 @@
+package br.com.witt.jpa.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.Transient;
+
+/**
+ * Converter used in SQL query result conversions.
+ * 
+ * @author lucianowtt@gmail.com
+ *
+ */
+public class TypeConverter {
+
+	/**
+	 * System property that, when set to <code>false</code>, disables the method
+	 * handle based instantiation of DTOs, making all conversions go through
+	 * reflection.
+	 */
+	public static final String METHOD_HANDLES_PROPERTY = "br.com.witt.jpa.util.TypeConverter.methodHandles";
+
+	private static volatile boolean methodHandlesEnabled = Boolean
+			.parseBoolean(System.getProperty(METHOD_HANDLES_PROPERTY, "true"));
+
+	/**
+	 * Custom converters, by source type and target type.
+	 */
+	private static final Map<Class<?>, Map<Class<?>, Converter<Object, ?>>> REGISTERED = new ConcurrentHashMap<Class<?>, Map<Class<?>, Converter<Object, ?>>>();
+
+	/**
+	 * Converters already resolved, by source type and target type.
+	 */
+	private static final Map<Class<?>, Map<Class<?>, Converter<Object, ?>>> RESOLVED = new ConcurrentHashMap<Class<?>, Map<Class<?>, Converter<Object, ?>>>();
+
+	/**
+	 * Persistent fields of the DTO classes, in declaration order, computed on the
+	 * first use of each class.
+	 */
+	private static final ClassValue<List<Field>> FIELDS = new ClassValue<List<Field>>() {
+		@Override
+		protected List<Field> computeValue(Class<?> type) {
+			List<Field> fields = new ArrayList<Field>();
+			for (Field field : type.getDeclaredFields()) {
+				int mod = field.getModifiers();
+				if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod) && !field.isAnnotationPresent(Transient.class)) {
+					fields.add(field);
+				}
+			}
+			return Collections.unmodifiableList(fields);
+		}
+	};
+
+	/**
+	 * Row mappers of the DTO classes, computed on the first conversion of each
+	 * class and reused by all the following ones. Mappers provided by a
+	 * {@link RowMapperRegistry} take precedence over the reflective mapping plans.
+	 */
+	private static final ClassValue<RowMapper<?>> MAPPERS = new ClassValue<RowMapper<?>>() {
+		@Override
+		protected RowMapper<?> computeValue(Class<?> type) {
+			RowMapper<?> mapper = GeneratedMappers.MAPPERS.get(type);
+			if (Objects.nonNull(mapper)) {
+				return mapper;
+			}
+			return new ResultMapping(type);
+		}
+	};
+
+	/**
+	 * Converts an array of objects to an instance of the given DTO class. The class
+	 * must have a constructor with all the columns returned by the query as
+	 * arguments, in the same order as declared in the SQL statement, and with
+	 * compatible types. The <code>null</code> values of primitive fields are
+	 * replaced by their default values.
+	 * 
+	 * @param <T>         the type of the DTO to be returned, resolved at runtime
+	 * @param result      the query result
+	 * @param resultClass the class of the DTO to be returned
+	 * @return the DTO instance
+	 */
+	public static <T> T convert(Object[] result, Class<?> resultClass) {
+		return TypeConverter.<T>getRowMapper(resultClass).map(result);
+	}
+
+	/**
+	 * Gives the {@link RowMapper} that converts arrays of objects to instances of
+	 * the given DTO class, with the same rules as
+	 * {@link TypeConverter#convert(Object[], Class)}. The mapper is built once for
+	 * each class and should be reused for all the rows of a result. If a
+	 * {@link RowMapperRegistry} provides a mapper for the class, such as the ones
+	 * generated for classes annotated with {@link SqlResult}, that mapper is used.
+	 * 
+	 * @param <T>         the type of the DTO, resolved at runtime
+	 * @param resultClass the class of the DTO
+	 * @return the row mapper
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> getRowMapper(Class<?> resultClass) {
+		return (RowMapper<T>) MAPPERS.get(resultClass);
+	}
+
+	/**
+	 * Gives the persistent fields of the given DTO class, that is, its non static
+	 * and non transient fields not annotated with {@link Transient}, in the order
+	 * they are declared, which is the order of the arguments of the constructor
+	 * the DTOs are created with.
+	 * 
+	 * @param resultClass the class of the DTO
+	 * @return the unmodifiable list of fields
+	 */
+	public static List<Field> getResultFields(Class<?> resultClass) {
+		return FIELDS.get(resultClass);
+	}
+
+	/**
+	 * Enables or disables the method handle based instantiation of DTOs. When
+	 * disabled, or when the DTO constructor is not accessible through method
+	 * handles, the instances are created through reflection. Useful to compare
+	 * both strategies.
+	 * 
+	 * @param enabled <code>true</code> to use method handles when possible
+	 * @see {@link TypeConverter#METHOD_HANDLES_PROPERTY}
+	 */
+	public static void setMethodHandlesEnabled(boolean enabled) {
+		methodHandlesEnabled = enabled;
+	}
+
+	/**
+	 * Tells whether the method handle based instantiation of DTOs is enabled.
+	 * 
+	 * @return <code>true</code> if method handles are used when possible
+	 */
+	public static boolean isMethodHandlesEnabled() {
+		return methodHandlesEnabled;
+	}
+
+	/**
+	 * Converts an object to the expected type, if compatible.
+	 * 
+	 * @param object the object to be converted
+	 * @param type   the expected resulting type
+	 * @return the resulting instance of the expected type
+	 * @throws IllegalArgumentException if there is no conversion from the object
+	 *                                  type to the expected type
+	 */
+	public static Object convertValue(Object object, Class<?> type) {
+		if (Objects.isNull(object)) {
+			return null;
+		}
+		return getConverter(object.getClass(), type).convert(object);
+	}
+
+	/**
+	 * Gives the converter from the source type to the target type. The converter
+	 * is resolved on the first call for each pair of types, and cached. Converters
+	 * registered with {@link TypeConverter#registerConverter(Class, Class, Converter)}
+	 * for the source type, or for any of its supertypes, take precedence over the
+	 * built-in ones.
+	 * 
+	 * @param source the source type
+	 * @param target the target type
+	 * @return the converter
+	 * @throws IllegalArgumentException if there is no conversion from the source
+	 *                                  type to the target type
+	 */
+	public static Converter<Object, ?> getConverter(Class<?> source, Class<?> target) {
+		Map<Class<?>, Converter<Object, ?>> converters = RESOLVED.get(source);
+		if (Objects.isNull(converters)) {
+			converters = RESOLVED.computeIfAbsent(source, k -> new ConcurrentHashMap<Class<?>, Converter<Object, ?>>());
+		}
+		Converter<Object, ?> converter = converters.get(target);
+		if (Objects.isNull(converter)) {
+			converter = resolveConverter(source, target);
+			converters.put(target, converter);
+		}
+		return converter;
+	}
+
+	/**
+	 * Gives a converter of the values of a result column to the given type, which
+	 * keeps the converter resolved for the last source type seen, as the values
+	 * of a column usually are all of the same type. Unlike the other converters,
+	 * it accepts <code>null</code>, converted to <code>null</code>, or to the
+	 * default value of a primitive type, as the JDBC getters do. The mappers
+	 * generated for the classes annotated with {@link SqlResult} keep one for
+	 * each column.
+	 * 
+	 * @param type the type of the column values
+	 * @return the column converter
+	 */
+	public static Converter<Object, ?> getColumnConverter(Class<?> type) {
+		return new ColumnConverter(type);
+	}
+
+	/**
+	 * Registers a custom converter from the source type to the target type. The
+	 * converter is also used for subtypes of the source type, unless a more
+	 * specific one is registered. Converters should be registered on application
+	 * startup, as the ones already bound to the row mappers of the DTO classes are
+	 * not replaced.
+	 * 
+	 * @param <S>       the source type
+	 * @param <T>       the target type
+	 * @param source    the source type
+	 * @param target    the target type
+	 * @param converter the converter
+	 */
+	@SuppressWarnings("unchecked")
+	public static <S, T> void registerConverter(Class<S> source, Class<T> target, Converter<? super S, ? extends T> converter) {
+		Objects.requireNonNull(converter, "Converter cannot be null");
+		REGISTERED.computeIfAbsent(Converters.wrap(source), k -> new ConcurrentHashMap<Class<?>, Converter<Object, ?>>())
+				.put(Converters.wrap(target), (Converter<Object, ?>) converter);
+		RESOLVED.clear();
+	}
+
+	private static Converter<Object, ?> resolveConverter(Class<?> source, Class<?> target) {
+		Class<?> wrappedTarget = Converters.wrap(target);
+		Converter<Object, ?> converter = findRegistered(source, wrappedTarget);
+		if (Objects.isNull(converter)) {
+			if (wrappedTarget.isAssignableFrom(source)) {
+				converter = value -> value;
+			} else {
+				converter = Converters.find(source, wrappedTarget);
+			}
+		}
+		if (Objects.isNull(converter)) {
+			converter = value -> {
+				throw Converters.cannotConvert(value, target);
+			};
+		}
+		return converter;
+	}
+
+	private static Converter<Object, ?> findRegistered(Class<?> source, Class<?> target) {
+		if (REGISTERED.isEmpty()) {
+			return null;
+		}
+		for (Class<?> type = source; Objects.nonNull(type); type = type.getSuperclass()) {
+			Converter<Object, ?> converter = getRegistered(type, target);
+			if (Objects.isNull(converter)) {
+				for (Class<?> iface : type.getInterfaces()) {
+					converter = getRegistered(iface, target);
+					if (Objects.nonNull(converter)) {
+						break;
+					}
+				}
+			}
+			if (Objects.nonNull(converter)) {
+				return converter;
+			}
+		}
+		return null;
+	}
+
+	private static Converter<Object, ?> getRegistered(Class<?> source, Class<?> target) {
+		Map<Class<?>, Converter<Object, ?>> converters = REGISTERED.get(source);
+		return Objects.isNull(converters) ? null : converters.get(target);
+	}
+
+	/**
+	 * Row mappers provided by the {@link RowMapperRegistry} implementations found
+	 * by the {@link ServiceLoader}, loaded once, on first use.
+	 */
+	private static class GeneratedMappers {
+
+		static final Map<Class<?>, RowMapper<?>> MAPPERS = load();
+
+		private static Map<Class<?>, RowMapper<?>> load() {
+			Map<Class<?>, RowMapper<?>> mappers = new HashMap<Class<?>, RowMapper<?>>();
+			for (RowMapperRegistry registry : ServiceLoader.load(RowMapperRegistry.class)) {
+				mappers.putAll(registry.getRowMappers());
+			}
+			return mappers;
+		}
+	}
+
+	/**
+	 * Mapping plan of a DTO class: the persistent fields, in declaration order, and
+	 * the constructor that receives them as arguments. The constructor is invoked
+	 * through a method handle that takes the arguments as an array, or through
+	 * reflection if the handle could not be created.
+	 */
+	private static class ResultMapping implements RowMapper<Object> {
+
+		private final Class<?>[] columnTypes;
+		private final ColumnConverter[] columnConverters;
+		private final Constructor<?> constructor;
+		private final MethodHandle instantiator;
+
+		ResultMapping(Class<?> resultClass) {
+			List<Class<?>> types = new ArrayList<Class<?>>();
+			for (Field field : getResultFields(resultClass)) {
+				types.add(field.getType());
+			}
+			columnTypes = types.toArray(new Class<?>[types.size()]);
+			columnConverters = new ColumnConverter[columnTypes.length];
+			for (int i = 0; i < columnTypes.length; i++) {
+				columnConverters[i] = new ColumnConverter(columnTypes[i]);
+			}
+			try {
+				constructor = resultClass.getDeclaredConstructor(columnTypes);
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			}
+			instantiator = createInstantiator(constructor);
+			if (Objects.isNull(instantiator)) {
+				constructor.trySetAccessible();
+			}
+		}
+
+		private static MethodHandle createInstantiator(Constructor<?> constructor) {
+			try {
+				int count = constructor.getParameterCount();
+				return MethodHandles.lookup().unreflectConstructor(constructor)
+						.asType(MethodType.genericMethodType(count))
+						.asSpreader(Object[].class, count);
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public Object map(Object[] result) {
+			if (columnTypes.length > result.length) {
+				throw new IllegalArgumentException("Wrong number of columns");
+			}
+			Object[] args = new Object[columnTypes.length];
+			for (int i = 0; i < columnTypes.length; i++) {
+				args[i] = columnConverters[i].convert(result[i]);
+			}
+			try {
+				if (methodHandlesEnabled && Objects.nonNull(instantiator)) {
+					return (Object) instantiator.invokeExact(args);
+				}
+				return constructor.newInstance(args);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Converter of a column of a mapping plan. Keeps the converter resolved for the
+	 * last source type seen, as the values of a column usually are all of the same
+	 * type, so that the converters lookup is skipped for the following rows.
+	 */
+	private static class ColumnConverter implements Converter<Object, Object> {
+
+		private final Class<?> type;
+		private final Object nullValue;
+		private volatile Binding binding;
+
+		ColumnConverter(Class<?> type) {
+			this.type = type;
+			this.nullValue = type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+		}
+
+		@Override
+		public Object convert(Object value) {
+			if (Objects.isNull(value)) {
+				return nullValue;
+			}
+			Binding current = binding;
+			if (Objects.isNull(current) || current.source != value.getClass()) {
+				current = new Binding(value.getClass(), getConverter(value.getClass(), type));
+				binding = current;
+			}
+			return current.converter.convert(value);
+		}
+	}
+
+	private static class Binding {
+
+		final Class<?> source;
+		final Converter<Object, ?> converter;
+
+		Binding(Class<?> source, Converter<Object, ?> converter) {
+			this.source = source;
+			this.converter = converter;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package br.com.witt.jpa.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class QueryResultCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	/**
+	 * Gives the cached value of the key, counting the loads, with the given tags
+	 * and a weight of one row.
+	 */
+	private Object get(QueryResultCache cache, Object key, Duration timeToLive, String... tags) {
+		return cache.get(key, timeToLive, Arrays.asList(tags), () -> {
+			loads.incrementAndGet();
+			return "value of " + key;
+		}, value -> 1);
+	}
+
+	@Test
+	void loadsEachKeyOnce() {
+		QueryResultCache cache = new QueryResultCache(10, 100, Duration.ofMinutes(1));
+
+		assertEquals("value of a", get(cache, "a", null));
+		assertEquals("value of a", get(cache, "a", null));
+
+		assertEquals(1, loads.get());
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(1, statistics.getHitCount());
+		assertEquals(1, statistics.getMissCount());
+		assertEquals(1, statistics.getSize());
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntries() {
+		QueryResultCache cache = new QueryResultCache(3, 100, Duration.ofMinutes(1));
+
+		get(cache, 0, null);
+		get(cache, 2, null);
+		get(cache, 0, null);
+		get(cache, 4, null);
+		get(cache, 0, null);
+		get(cache, 2, null);
+
+		assertEquals(4, loads.get());
+		assertEquals(2, cache.getStatistics().getEvictionCount());
+	}
+
+	@Test
+	void evictsEntriesWhenTheRowsExceedTheLimit() {
+		QueryResultCache cache = new QueryResultCache(1, 3, Duration.ofMinutes(1));
+		List<Integer> twoRows = Arrays.asList(1, 2);
+
+		cache.get("a", null, null, () -> twoRows, List::size);
+		cache.get("b", null, null, () -> twoRows, List::size);
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(1, statistics.getEvictionCount());
+		assertEquals(1, statistics.getSize());
+		assertEquals(2, statistics.getRows());
+	}
+
+	@Test
+	void expiresEntriesAfterTheirTimeToLive() {
+		QueryResultCache cache = new QueryResultCache(10, 100, Duration.ofMinutes(1));
+
+		get(cache, "a", Duration.ZERO);
+		get(cache, "a", Duration.ZERO);
+		get(cache, "b", null);
+		get(cache, "b", null);
+
+		assertEquals(3, loads.get());
+		assertEquals(1, cache.getStatistics().getExpirationCount());
+	}
+
+	@Test
+	void discardsEntriesOfInvalidatedTags() {
+		QueryResultCache cache = new QueryResultCache(10, 100, Duration.ofMinutes(1));
+		get(cache, "a", null, "Department");
+		get(cache, "b", null, "Employee");
+		get(cache, "c", null, "employee");
+
+		cache.invalidate("DEPARTMENT");
+		cache.invalidateStatement("delete from app.Employee where id = 1");
+		get(cache, "a", null, "Department");
+		get(cache, "b", null, "Employee");
+		get(cache, "c", null, "employee");
+
+		assertEquals(6, loads.get());
+		assertEquals(3, cache.getStatistics().getInvalidationCount());
+	}
+
+	@Test
+	void doesNotCacheResultsInvalidatedWhileLoading() {
+		QueryResultCache cache = new QueryResultCache(10, 100, Duration.ofMinutes(1));
+
+		cache.get("a", null, Collections.singleton("Department"), () -> {
+			cache.invalidate("Department");
+			return "stale";
+		}, value -> 1);
+
+		assertEquals(0, cache.getStatistics().getSize());
+	}
+
+	@Test
+	void discardsAllEntries() {
+		QueryResultCache cache = new QueryResultCache(10, 100, Duration.ofMinutes(1));
+		get(cache, "a", null);
+		get(cache, "b", null);
+
+		cache.invalidateAll();
+
+		assertEquals(0, cache.getStatistics().getSize());
+		assertEquals(0, cache.getStatistics().getRows());
+	}
+
+	@Test
+	void extractsTheTagsOfStatements() {
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("department", "app.employee", "employee")),
+				QueryResultCache.extractTags("select d from Department d join app.Employee e on e.department = d"));
+	}
+
+	@Test
+	void rejectsInvalidLimits() {
+		assertThrows(IllegalArgumentException.class, () -> new QueryResultCache(0, 10, Duration.ZERO));
+		assertThrows(IllegalArgumentException.class, () -> new QueryResultCache(10, 0, Duration.ZERO));
+		assertThrows(NullPointerException.class, () -> new QueryResultCache(10, 10, null));
+	}
+}
@@ -0,0 +1,64 @@
+package br.com.witt.jpa.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+	@Test
+	void countsTheValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(10);
+		histogram.record(20);
+		histogram.record(-5);
+
+		assertEquals(3, histogram.getCount());
+		assertEquals(30, histogram.getSum());
+		assertEquals(10.0, histogram.getMean());
+		assertEquals(20, histogram.getMax());
+	}
+
+	@Test
+	void givesThePercentilesWithinTheBucketPrecision() {
+		Histogram histogram = new Histogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		long median = histogram.getValueAtPercentile(50);
+		long p99 = histogram.getValueAtPercentile(99);
+
+		assertTrue(Math.abs(median - 500000) <= 500000 / 32, String.valueOf(median));
+		assertTrue(Math.abs(p99 - 990000) <= 990000 / 32, String.valueOf(p99));
+		assertEquals(1000000, histogram.getValueAtPercentile(100));
+		assertTrue(Math.abs(histogram.getValueAtPercentile(0) - 1000) <= 1000 / 32);
+		assertEquals(0, new Histogram().getValueAtPercentile(50));
+		assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+	}
+
+	@Test
+	void mapsTheValuesToTheBucketsAroundThem() {
+		for (long value : new long[] { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE }) {
+			int index = Histogram.indexOf(value);
+			assertTrue(value <= Histogram.upperBoundOf(index), String.valueOf(value));
+			assertTrue(index == 0 || value > Histogram.upperBoundOf(index - 1), String.valueOf(value));
+		}
+	}
+
+	@Test
+	void allocatesOnlyTheRangesInUse() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getAllocatedRanges());
+
+		for (long value = 1 << 20; value < 2 << 20; value += 1000) {
+			histogram.record(value);
+		}
+
+		assertEquals(1, histogram.getAllocatedRanges());
+		histogram.record(5);
+		assertEquals(2, histogram.getAllocatedRanges());
+	}
+}
@@ -0,0 +1,33 @@
+package br.com.witt.jpa.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class QueryFingerprintTest {
+
+	@Test
+	void replacesTheLiteralsAndParameters() {
+		assertEquals("select e from employee e where e.name = ? and e.salary > ? and e.id = ? or e.id = ?",
+				QueryFingerprint.of("select e from Employee e where e.name = 'it''s' and e.salary > 10.5"
+						+ " and e.id = :id or e.id = ?1"));
+	}
+
+	@Test
+	void collapsesTheListsAndWhiteSpace() {
+		String fingerprint = QueryFingerprint.of("select *  from t\n where id in (1, 2, 3) and x in (:a,:b)");
+
+		assertEquals("select * from t where id in (?) and x in (?)", fingerprint);
+		assertEquals(fingerprint, QueryFingerprint.of("SELECT * FROM t WHERE id IN (?) AND x IN (?, ?, ?)"));
+	}
+
+	@Test
+	void keepsTheCastsAndIdentifiers() {
+		assertEquals("select a::text from t1 where b2 = ?", QueryFingerprint.of("select a::text from t1 where b2 = 7"));
+		assertNotEquals(QueryFingerprint.of("select a from t where b = 1"),
+				QueryFingerprint.of("select a from t where c = 1"));
+		assertNull(QueryFingerprint.of(null));
+	}
+}
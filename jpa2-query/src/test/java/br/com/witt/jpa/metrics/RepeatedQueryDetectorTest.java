@@ -0,0 +1,142 @@
+package br.com.witt.jpa.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.metrics.QueryEvent.Operation;
+import br.com.witt.jpa.query.JpaQueryFactory;
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class RepeatedQueryDetectorTest extends JpaTestSupport {
+
+	private final List<String> warnings = new ArrayList<String>();
+	private final Logger logger = Logger.getLogger(RepeatedQueryDetectorTest.class.getName());
+	private final Handler handler = new Handler() {
+
+		@Override
+		public void publish(LogRecord record) {
+			warnings.add(record.getMessage());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@BeforeEach
+	void captureLog() {
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+	}
+
+	@AfterEach
+	void releaseLog() {
+		logger.removeHandler(handler);
+	}
+
+	@Test
+	void warnsOnceWhenAShapeIsRepeated() {
+		RepeatedQueryDetector detector = new RepeatedQueryDetector(3).logger(logger);
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.addQueryListener(detector);
+
+		try (RepeatedQueryDetector.Scope scope = detector.open()) {
+			for (long department = 1; department <= 5; department++) {
+				employees(factory, department);
+			}
+			factory.createJpqlQuery("select count(e) from Employee e").getSingleResult();
+
+			assertEquals(2, scope.getCounts().size());
+			assertEquals(Integer.valueOf(5), scope.getCounts().values().iterator().next());
+			List<String> repeated = scope.getRepeatedQueries();
+			assertEquals(1, repeated.size());
+			assertTrue(repeated.get(0).contains("executed 5 times\n\tat "), repeated.get(0));
+		}
+
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0).startsWith("Possible N+1 query problem: "), warnings.get(0));
+		assertTrue(warnings.get(0).contains("executed 4 times"), warnings.get(0));
+	}
+
+	@Test
+	void failsTheScopeWithTheRepeatedShapes() {
+		RepeatedQueryDetector detector = new RepeatedQueryDetector(1).logger(logger).failing();
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.addQueryListener(detector);
+
+		RepeatedQueryDetector.Scope scope = detector.open();
+		employees(factory, 1);
+		employees(factory, 2);
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, scope::close);
+		assertTrue(e.getMessage().contains("more than 1 executions"), e.getMessage());
+		assertTrue(warnings.isEmpty());
+		assertNull(detector.getCurrentScope());
+		scope.close();
+	}
+
+	@Test
+	void countsOnlyTheQueriesOfTheScopeThread() {
+		RepeatedQueryDetector detector = new RepeatedQueryDetector(1).logger(logger);
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.addQueryListener(detector);
+		employees(factory, 1);
+
+		try (RepeatedQueryDetector.Scope scope = detector.open()) {
+			CompletableFuture.runAsync(() -> detector.queryExecuted(event("select 1", false))).join();
+			detector.queryExecuted(event("select 2", true));
+
+			assertTrue(scope.getCounts().isEmpty());
+		}
+	}
+
+	@Test
+	void suspendsTheOuterScopeWhileTheInnerOneIsOpen() {
+		RepeatedQueryDetector detector = new RepeatedQueryDetector(1).logger(logger);
+
+		try (RepeatedQueryDetector.Scope outer = detector.open()) {
+			detector.queryExecuted(event("select 1", false));
+			try (RepeatedQueryDetector.Scope inner = detector.open()) {
+				detector.queryExecuted(event("select 2", false));
+				assertSame(inner, detector.getCurrentScope());
+				assertEquals(Collections.singleton("select ?"), inner.getCounts().keySet());
+				assertEquals(Integer.valueOf(1), outer.getCounts().get("select ?"));
+			}
+			assertSame(outer, detector.getCurrentScope());
+			detector.queryExecuted(event("select 3", false));
+			assertEquals(Integer.valueOf(2), outer.getCounts().get("select ?"));
+		}
+		assertNull(detector.getCurrentScope());
+		assertThrows(IllegalArgumentException.class, () -> new RepeatedQueryDetector(0));
+	}
+
+	private static List<Employee> employees(JpaQueryFactory factory, long department) {
+		return factory.createJpqlQuery("select e from Employee e where e.department.id = :id", Employee.class)
+				.setParameter("id", department).getResultList();
+	}
+
+	private static QueryEvent event(String sql, boolean cacheHit) {
+		return new QueryEvent(null, sql, true, QueryFingerprint.of(sql), Collections.<String, Object>emptyMap(),
+				Operation.RESULT_LIST, 0, 0, 0, 0, 1, cacheHit, null);
+	}
+}
@@ -0,0 +1,152 @@
+package br.com.witt.jpa.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.metrics.QueryEvent.Operation;
+import br.com.witt.jpa.query.JpaQueryFactory;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class SlowQueryLogTest extends JpaTestSupport {
+
+	private final List<String> messages = new ArrayList<String>();
+	private final Logger logger = Logger.getLogger(SlowQueryLogTest.class.getName());
+	private final Handler handler = new Handler() {
+
+		@Override
+		public void publish(LogRecord record) {
+			messages.add(record.getMessage());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@BeforeEach
+	void captureLog() {
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+	}
+
+	@AfterEach
+	void releaseLog() {
+		logger.removeHandler(handler);
+	}
+
+	@Test
+	void logsTheSlowQueriesWithTheirParameters() {
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		SlowQueryLog log = new SlowQueryLog(Duration.ZERO).logger(logger).sampleParameters(2, 5);
+		factory.addQueryListener(log);
+
+		factory.createSqlQuery("select * from Department where name = :userPassword or name in (:names)")
+				.setParameter("userPassword", "dept1").setParameter("names", Arrays.asList("dept2", "dept3", "dept4"))
+				.getResultList();
+
+		assertEquals(1, log.getSlowCount());
+		String message = messages.get(0);
+		assertTrue(message.startsWith("Slow query: "), message);
+		assertTrue(message.contains("userPassword=***"), message);
+		assertTrue(message.contains("names=[dept2, dept3, ... (3 values)]"), message);
+		assertFalse(message.contains("plan:"), message);
+	}
+
+	@Test
+	void leavesOutTheQueriesFasterThanTheThreshold() {
+		SlowQueryLog log = new SlowQueryLog(Duration.ofMinutes(1)).logger(logger);
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.addQueryListener(log);
+
+		factory.createJpqlQuery("select d from Department d").getResultList();
+
+		assertEquals(0, log.getSlowCount());
+		assertTrue(messages.isEmpty());
+	}
+
+	@Test
+	void limitsTheLoggedQueries() {
+		SlowQueryLog sampled = new SlowQueryLog(Duration.ZERO).logger(logger).sample(0);
+		SlowQueryLog limited = new SlowQueryLog(Duration.ZERO).logger(logger).rateLimit(1);
+
+		for (int i = 0; i < 3; i++) {
+			sampled.queryExecuted(event("select 1", Collections.<String, Object>emptyMap(), Operation.SCALAR));
+			limited.queryExecuted(event("select 1", Collections.<String, Object>emptyMap(), Operation.SCALAR));
+		}
+
+		assertEquals(3, sampled.getSlowCount());
+		assertEquals(3, limited.getSlowCount());
+		assertEquals(1, messages.size());
+	}
+
+	@Test
+	void explainsTheReadsWithPositionalParameters() {
+		SlowQueryLog log = new SlowQueryLog(Duration.ZERO).logger(logger).explain(getEntityManagerFactory(),
+				Runnable::run);
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		parameters.put("1", 3L);
+		parameters.put("2", "dept3");
+
+		log.queryExecuted(event("select * from Department where id = ? and name = ?", parameters, Operation.RESULT_LIST));
+
+		String message = messages.get(0);
+		assertTrue(message.contains("\nplan:\n"), message);
+		assertFalse(message.contains("not available"), message);
+		assertTrue(message.toUpperCase().contains("DEPARTMENT"), message);
+	}
+
+	@Test
+	void explainsTheReadsWithNamedParameters() {
+		SlowQueryLog log = new SlowQueryLog(Duration.ZERO).logger(logger).explain(getEntityManagerFactory(),
+				Runnable::run);
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.addQueryListener(log);
+
+		factory.createSqlQuery("select * from Department where id = :id").setParameter("id", 3L).getResultList();
+
+		assertTrue(messages.get(0).contains("\nplan:\n"), messages.get(0));
+		assertFalse(messages.get(0).contains("not available"), messages.get(0));
+	}
+
+	@Test
+	void doesNotExplainUpdatesNorLockingReads() {
+		SlowQueryLog log = new SlowQueryLog(Duration.ZERO).logger(logger).explain(getEntityManagerFactory(),
+				Runnable::run);
+		Map<String, Object> parameters = Collections.<String, Object>singletonMap("1", 3L);
+
+		log.queryExecuted(event("update Department set name = 'x' where id = ?", parameters, Operation.UPDATE));
+		log.queryExecuted(event("select * from Department where id = ? for update", parameters, Operation.RESULT_LIST));
+		log.queryExecuted(event("with t as (delete from Department where id = ?) select 1", parameters,
+				Operation.SCALAR));
+
+		assertEquals(3, messages.size());
+		for (String message : messages) {
+			assertFalse(message.contains("plan:"), message);
+		}
+	}
+
+	private static QueryEvent event(String sql, Map<String, Object> parameters, Operation operation) {
+		return new QueryEvent(null, sql, true, QueryFingerprint.of(sql), parameters, operation, 0, 1000000, 0,
+				1000000, 1, false, null);
+	}
+}
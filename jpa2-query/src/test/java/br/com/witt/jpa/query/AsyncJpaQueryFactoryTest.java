@@ -0,0 +1,92 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.PersistenceUnitUtil;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class AsyncJpaQueryFactoryTest extends JpaTestSupport {
+
+	@Test
+	void runsTheQueriesInEntityManagersOfTheirOwn() {
+		try (AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(getEntityManagerFactory(), 2)) {
+			CompletableFuture<List<Department>> departments = async
+					.getResultList(f -> f.createJpqlQuery("select d from Department d order by d.id", Department.class));
+			CompletableFuture<Department> department = async.getSingleResult(f -> {
+				CriteriaQuery query = f.createCriteriaQuery(Department.class).from(Department.class);
+				return query.where(query.equal("id", 7L));
+			});
+			CompletableFuture<Long> employees = async.getScalar(f -> f.createSqlQuery("select count(*) from Employee"),
+					Long.class);
+
+			assertEquals(DEPARTMENTS, departments.join().size());
+			assertEquals(Long.valueOf(7), department.join().getId());
+			assertEquals(DEPARTMENTS * EMPLOYEES, employees.join().longValue());
+			PersistenceUnitUtil util = getEntityManagerFactory().getPersistenceUnitUtil();
+			assertFalse(util.isLoaded(department.join(), "employees"));
+		}
+	}
+
+	@Test
+	void boundsTheQueriesRunAtTheSameTime() {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger highest = new AtomicInteger();
+		try (AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(getEntityManagerFactory(), 2)) {
+			List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(async.submit(f -> {
+					highest.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(20);
+						return f.createSqlQuery("select count(*) from Department").getScalar(Long.class);
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					} finally {
+						running.decrementAndGet();
+					}
+				}));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+		}
+
+		assertTrue(highest.get() <= 2, "Up to 2 queries expected, but " + highest.get() + " ran at the same time");
+	}
+
+	@Test
+	void rejectsTasksAfterClosed() {
+		AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(getEntityManagerFactory(), 1);
+		async.close();
+
+		assertThrows(RejectedExecutionException.class, () -> async.submit(f -> null));
+	}
+
+	@Test
+	void completesExceptionallyWithTheQueryErrors() {
+		try (AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(getEntityManagerFactory(), 1)) {
+			CompletableFuture<Object> future = async.getSingleResult(f -> "not a query");
+
+			CompletionException e = assertThrows(CompletionException.class, () -> future.join());
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	@Test
+	void rejectsInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new AsyncJpaQueryFactory(getEntityManagerFactory(), 0));
+		assertThrows(NullPointerException.class, () -> new AsyncJpaQueryFactory(null, 1));
+	}
+}
@@ -0,0 +1,178 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class BatchLoaderTest extends JpaTestSupport {
+
+	private final List<List<Long>> batches = new ArrayList<List<Long>>();
+	private ScheduledExecutorService scheduler;
+
+	@BeforeEach
+	void createScheduler() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@AfterEach
+	void shutdownScheduler() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void fetchesTheCollectedKeysWithOneQuery() {
+		BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(new JpaQueryFactory(em),
+				this::departments, Department::getId);
+
+		CompletableFuture<Department> first = loader.load(1L);
+		CompletableFuture<Department> second = loader.load(2L);
+		CompletableFuture<Department> missing = loader.load(99L);
+		assertSame(first, loader.load(1L));
+		assertFalse(first.isDone());
+		loader.dispatch().join();
+
+		assertEquals(Arrays.asList(Arrays.asList(1L, 2L, 99L)), batches);
+		assertEquals(Long.valueOf(1), first.join().getId());
+		assertEquals(Long.valueOf(2), second.join().getId());
+		assertNull(missing.join());
+	}
+
+	@Test
+	void keepsTheFetchedKeysUntilCleared() {
+		BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(new JpaQueryFactory(em),
+				this::departments, Department::getId);
+		CompletableFuture<Department> first = loader.load(1L);
+		loader.load(2L);
+		loader.dispatch().join();
+
+		assertSame(first, loader.load(1L));
+		assertEquals(2, loader.size());
+
+		loader.clear(1L);
+		loader.load(1L);
+		loader.dispatch().join();
+		assertEquals(Arrays.asList(1L), batches.get(1));
+
+		loader.clearAll();
+		assertEquals(0, loader.size());
+	}
+
+	@Test
+	void givesTheResultsInTheOrderOfTheKeys() {
+		BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(new JpaQueryFactory(em),
+				this::departments, Department::getId);
+
+		CompletableFuture<List<Department>> departments = loader.loadAll(Arrays.asList(3L, 1L, 2L));
+		loader.dispatch();
+
+		List<Long> ids = new ArrayList<Long>();
+		for (Department department : departments.join()) {
+			ids.add(department.getId());
+		}
+		assertEquals(Arrays.asList(3L, 1L, 2L), ids);
+	}
+
+	@Test
+	void discardsTheKeysOfAFailedBatch() {
+		BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(new JpaQueryFactory(em),
+				(f, ids) -> "not a query", Department::getId);
+
+		CompletableFuture<Department> failed = loader.load(1L);
+		loader.dispatch().join();
+
+		CompletionException e = assertThrows(CompletionException.class, () -> failed.join());
+		assertTrue(e.getCause() instanceof IllegalArgumentException);
+		assertEquals(0, loader.size());
+	}
+
+	@Test
+	void completesTheBatchWithTheErrorOfItsKeys() {
+		BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(new JpaQueryFactory(em),
+				this::departments, d -> {
+					if (d.getId() == 2L) {
+						throw new IllegalStateException("No key");
+					}
+					return d.getId();
+				});
+		BatchLoader<Long, Department> names = new BatchLoader<Long, Department>(new JpaQueryFactory(em),
+				(f, ids) -> f.createJpqlQuery("select d.name from Department d where d.id in :ids")
+						.setParameter("ids", ids),
+				Department::getId);
+
+		CompletableFuture<Department> first = loader.load(1L);
+		CompletableFuture<Department> second = loader.load(2L);
+		CompletableFuture<Department> name = names.load(1L);
+		loader.dispatch().join();
+		names.dispatch().join();
+
+		for (CompletableFuture<Department> future : Arrays.asList(first, second)) {
+			CompletionException e = assertThrows(CompletionException.class, () -> future.join());
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		CompletionException e = assertThrows(CompletionException.class, () -> name.join());
+		assertTrue(e.getCause() instanceof ClassCastException);
+		assertEquals(0, loader.size());
+		assertEquals(0, names.size());
+	}
+
+	@Test
+	void cancelsTheScheduledDispatchOfTheBatchesDispatched() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+		executor.setRemoveOnCancelPolicy(true);
+		try (AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(getEntityManagerFactory(), 1)) {
+			BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(async, this::departments,
+					Department::getId, Duration.ofHours(1), executor);
+
+			CompletableFuture<Department> department = loader.load(6L);
+			assertEquals(1, executor.getQueue().size());
+			loader.dispatch().join();
+
+			assertEquals(Long.valueOf(6), department.join().getId());
+			assertTrue(executor.getQueue().isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void fetchesTheKeysOfTheWindowAndDiscardsThem() {
+		try (AsyncJpaQueryFactory async = new AsyncJpaQueryFactory(getEntityManagerFactory(), 1)) {
+			BatchLoader<Long, Department> loader = new BatchLoader<Long, Department>(async, this::departments,
+					Department::getId, Duration.ofMillis(50), scheduler);
+
+			List<Department> departments = loader.loadAll(Arrays.asList(4L, 5L)).join();
+
+			assertEquals(Long.valueOf(5), departments.get(1).getId());
+			assertEquals(0, loader.size());
+			assertEquals(Long.valueOf(4), loader.load(4L).join().getId());
+			assertEquals(Arrays.asList(Arrays.asList(4L, 5L), Arrays.asList(4L)), batches);
+			assertEquals(0, loader.size());
+		}
+	}
+
+	private synchronized Object departments(JpaQueryFactory factory, List<Long> ids) {
+		batches.add(ids);
+		return factory.createJpqlQuery("select d from Department d where d.id in :ids", Department.class)
+				.setParameter("ids", ids);
+	}
+}
@@ -0,0 +1,103 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class ChunkedProcessingTest extends JpaTestSupport {
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	void createExecutor() {
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@AfterEach
+	void restoreData() {
+		executor.shutdownNow();
+		if (em.getTransaction().isActive()) {
+			em.getTransaction().rollback();
+		}
+		seed();
+	}
+
+	@Test
+	void flushesAndClearsAfterEachChunk() {
+		List<Integer> sizes = new ArrayList<Integer>();
+		List<Department> processed = new ArrayList<Department>();
+		em.getTransaction().begin();
+
+		new JpaQueryFactory(em).createJpqlQuery("select d from Department d order by d.id", Department.class)
+				.<Department>forEachChunk(7, chunk -> {
+					sizes.add(chunk.size());
+					for (Department department : chunk) {
+						assertTrue(em.contains(department));
+						department.setName("changed");
+					}
+					processed.addAll(chunk);
+				});
+		em.getTransaction().commit();
+
+		assertEquals(List.of(7, 7, 7, 7, 2), sizes);
+		assertFalse(em.contains(processed.get(0)));
+		assertEquals(Long.valueOf(DEPARTMENTS),
+				em.createQuery("select count(d) from Department d where d.name = 'changed'", Long.class)
+						.getSingleResult());
+	}
+
+	@Test
+	void givesDetachedChunksFetchedByTheExecutor() {
+		List<Long> ids = new ArrayList<Long>();
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+		query.orderBy(query.cb().asc(query.get("id")));
+
+		query.<Department>forEachChunk(8, chunk -> {
+			for (Department department : chunk) {
+				ids.add(department.getId());
+				assertFalse(em.contains(department));
+			}
+		}, executor);
+
+		assertEquals(DEPARTMENTS, ids.size());
+		assertEquals(Long.valueOf(DEPARTMENTS), ids.get(DEPARTMENTS - 1));
+	}
+
+	@Test
+	void rejectsTheExecutorInATransaction() {
+		Query query = new JpaQueryFactory(em).createJpqlQuery("select d from Department d order by d.id",
+				Department.class);
+		em.getTransaction().begin();
+
+		assertThrows(IllegalStateException.class, () -> query.forEachChunk(5, chunk -> {
+		}, executor));
+		assertThrows(IllegalStateException.class,
+				() -> new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class)
+						.forEachChunk(5, chunk -> {
+						}, executor));
+	}
+
+	@Test
+	void rejectsInvalidChunks() {
+		Query query = new JpaQueryFactory(em).createJpqlQuery("select d from Department d", Department.class);
+
+		assertThrows(IllegalArgumentException.class, () -> query.forEachChunk(0, chunk -> {
+		}));
+		query.setMaxResults(3);
+		assertThrows(IllegalStateException.class, () -> query.forEachChunk(2, chunk -> {
+		}));
+	}
+}
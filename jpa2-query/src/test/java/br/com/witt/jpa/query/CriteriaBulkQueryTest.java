@@ -0,0 +1,90 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaBulkQueryTest extends JpaTestSupport {
+
+	@AfterEach
+	void restoreData() {
+		seed();
+	}
+
+	@Test
+	void updatesTheRestrictedEntitiesInBatches() {
+		em.getTransaction().begin();
+		CriteriaUpdateQuery update = new JpaQueryFactory(em).createCriteriaUpdate(Employee.class, "e").set("salary", 0);
+		update.where(update.equal("name", "emp1"), update.greaterThan("salary", 2010));
+
+		int updated = update.executeUpdate(3);
+		em.getTransaction().commit();
+
+		assertEquals(20, updated);
+		List<Long> ids = em.createQuery("select e.id from Employee e where e.salary = 0 order by e.id", Long.class)
+				.getResultList();
+		assertEquals(20, ids.size());
+		assertEquals(Long.valueOf(1101), ids.get(0));
+		assertEquals(Long.valueOf(3001), ids.get(19));
+	}
+
+	@Test
+	void updatesInBatchesWithEveryKindOfRestriction() {
+		em.getTransaction().begin();
+		CriteriaUpdateQuery update = new JpaQueryFactory(em).createCriteriaUpdate(Employee.class).set("salary", 0);
+		CriteriaBuilder cb = update.cb();
+		update.where(update.get("name").in(Arrays.asList("emp0", "emp2")), cb.isNotNull(update.get("department")),
+				cb.isNull(update.get("name")).not(), cb.not(cb.equal(update.get("salary"), 1004)));
+
+		int updated = update.executeUpdate(7);
+		em.getTransaction().commit();
+
+		assertEquals(2 * DEPARTMENTS - 1, updated);
+		assertEquals(Long.valueOf(2 * DEPARTMENTS - 1),
+				em.createQuery("select count(e) from Employee e where e.salary = 0", Long.class).getSingleResult());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void commitsEachBatchOfTheSubqueryRestriction() {
+		CriteriaDeleteQuery delete = new JpaQueryFactory(em).createCriteriaDelete(Employee.class);
+		CriteriaSubquery<Integer> highest = delete.newSubquery(Integer.class).from(Employee.class, "s");
+		highest.select(highest.cb().max((Expression<Integer>) highest.get("s.salary")))
+				.where(highest.equal("s.name", "emp1"));
+		delete.where(delete.cb().greaterThan((Expression<Integer>) delete.get("salary"), highest.getSubquery()));
+
+		int deleted = delete.executeUpdate(4, true);
+
+		assertEquals(DEPARTMENTS, deleted);
+		assertEquals(Long.valueOf(DEPARTMENTS * EMPLOYEES - deleted),
+				em.createQuery("select count(e) from Employee e", Long.class).getSingleResult());
+	}
+
+	@Test
+	void requiresTheTransactionOfTheBatches() {
+		CriteriaDeleteQuery delete = new JpaQueryFactory(em).createCriteriaDelete(Employee.class);
+		delete.where(delete.equal("name", "emp0"));
+
+		assertThrows(IllegalStateException.class, () -> delete.executeUpdate(10));
+		em.getTransaction().begin();
+		try {
+			assertThrows(IllegalStateException.class, () -> delete.executeUpdate(10, true));
+			assertThrows(IllegalArgumentException.class, () -> delete.executeUpdate(0));
+		} finally {
+			em.getTransaction().rollback();
+		}
+		assertEquals(Long.valueOf(DEPARTMENTS * EMPLOYEES),
+				em.createQuery("select count(e) from Employee e", Long.class).getSingleResult());
+	}
+}
@@ -0,0 +1,119 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.JoinType;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaQueryCountTest extends JpaTestSupport {
+
+	private CriteriaQuery departmentsWithWellPaidEmployees() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class, "d")
+				.innerJoin("d.employees", "e");
+		return query.where(query.equal("d.active", true), query.greaterThan("e.salary", 2010));
+	}
+
+	@Test
+	void countsTheRowsOfJoinsWithRestrictions() {
+		CriteriaQuery query = departmentsWithWellPaidEmployees();
+
+		long count = query.getResultCount();
+
+		assertEquals(query.getResultList().size(), count);
+		assertEquals(25, count);
+	}
+
+	@Test
+	void countsTheDistinctRootsOfDistinctQueries() {
+		CriteriaQuery query = departmentsWithWellPaidEmployees().distinct();
+
+		long count = query.getResultCount();
+
+		assertEquals(query.getResultList().size(), count);
+		assertEquals(DEPARTMENTS / 2, count);
+	}
+
+	@Test
+	void countsEveryKindOfRestriction() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class, "d")
+				.innerJoin("d.employees", "e");
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		query.where(query.get("d.id").in(Arrays.asList(1L, 2L, 3L, 4L)).not(), query.get("e.name").isNotNull(),
+				query.get("d.name").isNull().not(), builder.greaterThan(query.get("e.salary").as(Integer.class), 2010),
+				query.cb().in(query.get("d.active").as(Boolean.class)).value(true));
+
+		assertEquals(query.getResultList().size(), query.getResultCount());
+		assertEquals(23, query.getResultCount());
+		assertEquals(23, query.getResultList().size());
+	}
+
+	@Test
+	void keepsTheSelectionAndOrderingOfTheQuery() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery().from(Department.class, "d");
+		query.select(query.get("d.id"), query.get("d.name")).distinct().orderBy(query.cb().desc(query.get("d.id")));
+
+		assertEquals(DEPARTMENTS, query.getResultCount());
+		List<Object[]> rows = query.getResultList();
+		assertEquals(DEPARTMENTS, rows.size());
+		assertEquals(Long.valueOf(DEPARTMENTS), rows.get(0)[0]);
+	}
+
+	@Test
+	void rejectsQueriesWithFetches() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class, "d")
+				.fetch("d.employees", "e", JoinType.LEFT).distinct();
+		query.where(query.lessThanOrEqualTo("e.salary", 1005));
+
+		assertThrows(IllegalStateException.class, () -> query.getResultCount());
+		assertEquals(5, query.getResultList().size());
+	}
+
+	@Test
+	void countsSubqueryRestrictions() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class, "d");
+		CriteriaSubquery<Long> subquery = query.newSubquery(Long.class).from(Employee.class, "e");
+		subquery.select(query.cb().max(subquery.get("e.department.id").as(Long.class)))
+				.where(subquery.greaterThan("e.salary", 3025));
+		query.where(query.cb().equal(query.get("d.id"), subquery.getSubquery()));
+
+		assertEquals(query.getResultList().size(), query.getResultCount());
+		assertEquals(1, query.getResultCount());
+	}
+
+	@Test
+	void countsInAnotherThreadWithoutSharingTheQuery() {
+		CriteriaQuery query = departmentsWithWellPaidEmployees();
+		query.orderBy(query.cb().asc(query.get("d.id")));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (int i = 1; i <= 3; i++) {
+				Page<Department> page = query.getPage(i, 10, executor);
+				assertEquals(25, page.getTotalElements().longValue());
+				assertTrue(page.getContent().size() <= 10);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void rejectsGroupedQueries() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery().from(Department.class);
+		query.select(query.get("active"), query.cb().count(query.get("id"))).groupBy(query.get("active"));
+
+		assertThrows(IllegalStateException.class, () -> query.getResultCount());
+	}
+}
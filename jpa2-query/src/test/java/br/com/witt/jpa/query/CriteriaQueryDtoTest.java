@@ -0,0 +1,88 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaQueryDtoTest extends JpaTestSupport {
+
+	public static class DepartmentName {
+
+		static final String KIND = "department";
+
+		private final Long id;
+		private final String name;
+		private transient String label;
+
+		public DepartmentName(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	public static class EmployeeSummary {
+
+		private final String name;
+		@ProjectionPath("d.name")
+		private final String department;
+		private final Long salary;
+
+		public EmployeeSummary(String name, String department, Long salary) {
+			this.name = name;
+			this.department = department;
+			this.salary = salary;
+		}
+	}
+
+	@Test
+	void selectsThePersistentFieldsByName() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(DepartmentName.class)
+				.from(Department.class, "d").selectDto(DepartmentName.class);
+		query.orderBy(query.cb().asc(query.get("d.id")));
+
+		List<DepartmentName> names = query.getResultList();
+
+		assertEquals(DEPARTMENTS, names.size());
+		assertEquals(Long.valueOf(2), names.get(1).id);
+		assertEquals("dept2", names.get(1).name);
+	}
+
+	@Test
+	void selectsTheAnnotatedPathsConvertedToTheFieldTypes() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery().from(Employee.class, "e")
+				.innerJoin("e.department", "d").selectDto(EmployeeSummary.class);
+		query.where(query.equal("e.id", 302L));
+
+		EmployeeSummary summary = query.getSingleResult();
+
+		assertEquals("emp2", summary.name);
+		assertEquals("dept3", summary.department);
+		assertEquals(Long.valueOf(3003), summary.salary);
+	}
+
+	@Test
+	void prefersTheGivenPaths() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery().from(Department.class, "d")
+				.selectDto(DepartmentName.class, Collections.singletonMap("name", "d.name"));
+		query.where(query.equal("d.id", 9L));
+
+		DepartmentName name = query.getSingleResult();
+
+		assertEquals("dept2", name.name);
+	}
+
+	@Test
+	void rejectsDtosTheResultClassDoesNotAccept() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+
+		assertThrows(IllegalStateException.class, () -> query.selectDto(DepartmentName.class));
+	}
+}
@@ -0,0 +1,103 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaQueryFetchTest extends JpaTestSupport {
+
+	private final PersistenceUnitUtil util = getEntityManagerFactory().getPersistenceUnitUtil();
+
+	@Test
+	void leavesTheLazyAssociationsUnloaded() {
+		List<Employee> employees = new JpaQueryFactory(em).createCriteriaQuery(Employee.class).from(Employee.class)
+				.getResultList();
+
+		assertEquals(DEPARTMENTS * EMPLOYEES, employees.size());
+		assertFalse(util.isLoaded(employees.get(0), "department"));
+	}
+
+	@Test
+	void fetchesTheAssociationsWithTheResults() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Employee.class).from(Employee.class, "e")
+				.innerFetch("e.department", "d");
+		query.where(query.equal("d.name", "dept2"));
+
+		List<Employee> employees = query.getResultList();
+
+		assertEquals(EMPLOYEES * 5, employees.size());
+		for (Employee employee : employees) {
+			assertTrue(util.isLoaded(employee, "department"));
+			assertEquals("dept2", employee.getDepartment().getName());
+		}
+	}
+
+	@Test
+	void fetchesCollectionsFilteredByTheirAlias() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class)
+				.from(Department.class, "d").leftFetch("d.employees", "e").distinct();
+		query.where(query.greaterThan("e.salary", 3025));
+
+		List<Department> departments = query.getResultList();
+
+		assertEquals(5, departments.size());
+		for (Department department : departments) {
+			assertTrue(util.isLoaded(department, "employees"));
+		}
+	}
+
+	@Test
+	void loadsTheEntityGraphsOfTheFirstRoot() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class, "d");
+		query.where(query.equal("d.id", 1L));
+		EntityGraph<?> graph = query.createEntityGraph("employees");
+
+		Department department = query.setLoadGraph(graph).getSingleResult();
+
+		assertTrue(util.isLoaded(department, "employees"));
+		assertEquals(EMPLOYEES, department.getEmployees().size());
+	}
+
+	@Test
+	void createsSubgraphsOfNestedAttributes() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Employee.class).from(Employee.class, "e");
+		query.where(query.equal("e.id", 100L));
+
+		Employee employee = query.setFetchGraph(query.createEntityGraph("department.employees")).getSingleResult();
+
+		assertTrue(util.isLoaded(employee, "department"));
+		assertTrue(util.isLoaded(employee.getDepartment(), "employees"));
+	}
+
+	@Test
+	void loadsTheEntityGraphsOfJpqlQueries() {
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		EntityGraph<?> graph = em.createEntityGraph(Employee.class);
+		graph.addAttributeNodes("department");
+
+		List<Employee> employees = factory.createJpqlQuery("select e from Employee e where e.id < 200", Employee.class)
+				.setLoadGraph(graph).getResultList();
+
+		assertEquals(EMPLOYEES, employees.size());
+		assertTrue(util.isLoaded(employees.get(0), "department"));
+	}
+
+	@Test
+	void rejectsGraphsWithoutEntities() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery();
+
+		assertThrows(IllegalArgumentException.class, () -> query.createEntityGraph("employees"));
+	}
+}
@@ -0,0 +1,154 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaQueryKeysetTest extends JpaTestSupport {
+
+	private CriteriaQuery activeDepartments() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+		return query.where(query.equal("active", true));
+	}
+
+	private static List<Long> ids(List<Department> departments) {
+		return departments.stream().map(Department::getId).collect(Collectors.toList());
+	}
+
+	@Test
+	void pagesThroughTheResultsWithContinuationTokens() {
+		CriteriaQuery query = activeDepartments();
+		Order id = query.cb().asc(query.get("id"));
+		List<Long> ids = new ArrayList<Long>();
+
+		KeysetPage<Department> page = query.getKeysetPage(null, 4, id);
+		ids.addAll(ids(page.getContent()));
+		while (page.hasNext()) {
+			page = query.getKeysetPage(page.getContinuationToken(), 4, id);
+			ids.addAll(ids(page.getContent()));
+		}
+
+		assertEquals(DEPARTMENTS / 2, ids.size());
+		assertEquals(Long.valueOf(2), ids.get(0));
+		assertEquals(Long.valueOf(DEPARTMENTS), ids.get(ids.size() - 1));
+		assertNull(page.getContinuationToken());
+	}
+
+	@Test
+	void ordersByMixedKeys() {
+		CriteriaQuery query = activeDepartments();
+		Order[] keys = { query.cb().desc(query.get("name")), query.cb().asc(query.get("id")) };
+		List<Long> expected = ids(query.orderBy(keys).getResultList());
+		List<Long> ids = new ArrayList<Long>();
+
+		KeysetPage<Department> page = query.getKeysetPageAfter(null, 4, keys);
+		ids.addAll(ids(page.getContent()));
+		while (page.hasNext()) {
+			page = query.getKeysetPageAfter(page.getLastKeyValues(), 4, keys);
+			ids.addAll(ids(page.getContent()));
+		}
+
+		assertEquals(expected, ids);
+	}
+
+	@Test
+	void leavesTheQueryUnchanged() {
+		CriteriaQuery query = activeDepartments();
+		query.orderBy(query.cb().desc(query.get("id")));
+
+		KeysetPage<Department> page = query.getKeysetPage(null, 4, query.cb().asc(query.get("id")));
+		query.getKeysetPage(page.getContinuationToken(), 4, query.cb().asc(query.get("id")));
+		List<Department> departments = query.getResultList();
+
+		assertEquals(DEPARTMENTS / 2, departments.size());
+		assertEquals(Long.valueOf(DEPARTMENTS), departments.get(0).getId());
+	}
+
+	@Test
+	void fetchesTheChunksWithAnExecutor() {
+		CriteriaQuery query = activeDepartments();
+		query.orderBy(query.cb().desc(query.get("id")));
+		List<Long> keysetIds = new ArrayList<Long>();
+		List<Long> offsetIds = new ArrayList<Long>();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			query.<Department>forEachChunk(4, chunk -> keysetIds.addAll(ids(chunk)), executor,
+					query.cb().asc(query.get("id")));
+			query.<Department>forEachChunk(4, chunk -> offsetIds.addAll(ids(chunk)), executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(DEPARTMENTS / 2, keysetIds.size());
+		assertEquals(Long.valueOf(2), keysetIds.get(0));
+		assertEquals(DEPARTMENTS / 2, offsetIds.size());
+		assertEquals(Long.valueOf(DEPARTMENTS), offsetIds.get(0));
+		assertEquals(Long.valueOf(DEPARTMENTS), query.<Department>getResultList().get(0).getId());
+	}
+
+	@Test
+	void pagesQueriesWithEveryKindOfRestriction() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+		CriteriaBuilder cb = query.cb();
+		Expression<Long> id = query.get("id").as(Long.class);
+		query.where(query.get("id").in(Arrays.asList(2L, 4L)).not(), query.get("name").isNotNull(),
+				query.get("name").isNull().not(), cb.in(id).value(6L).not(),
+				cb.equal(cb.selectCase().when(cb.isTrue(query.get("active").as(Boolean.class)), 1).otherwise(0), 1),
+				em.getCriteriaBuilder().lessThanOrEqualTo(id, 20L));
+		List<Long> ids = new ArrayList<Long>();
+		List<Long> chunkIds = new ArrayList<Long>();
+
+		assertSame(em.getCriteriaBuilder(), cb);
+		KeysetPage<Department> page = query.getKeysetPage(null, 3, cb.asc(id));
+		ids.addAll(ids(page.getContent()));
+		while (page.hasNext()) {
+			page = query.getKeysetPage(page.getContinuationToken(), 3, cb.asc(id));
+			ids.addAll(ids(page.getContent()));
+		}
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			query.<Department>forEachChunk(3, chunk -> chunkIds.addAll(ids(chunk)), executor, cb.asc(id));
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(Arrays.asList(8L, 10L, 12L, 14L, 16L, 18L, 20L), ids);
+		assertEquals(ids, chunkIds);
+		assertEquals(7, query.getResultList().size());
+	}
+
+	@Test
+	void restoresTheQueryWhenThePageFails() {
+		CriteriaQuery query = activeDepartments();
+
+		assertThrows(IllegalArgumentException.class,
+				() -> query.getKeysetPageAfter(new Object[] { "x" }, 4, query.cb().asc(query.get("id"))));
+		assertEquals(DEPARTMENTS / 2, query.getResultList().size());
+	}
+
+	@Test
+	void requiresKeys() {
+		CriteriaQuery query = activeDepartments();
+
+		assertThrows(IllegalArgumentException.class, () -> query.getKeysetPage(null, 4));
+		assertFalse(query.getResultList().isEmpty());
+	}
+}
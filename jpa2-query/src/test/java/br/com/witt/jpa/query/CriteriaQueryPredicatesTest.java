@@ -0,0 +1,126 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.Parameter;
+import javax.persistence.TypedQuery;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaQueryPredicatesTest extends JpaTestSupport {
+
+	private CriteriaQuery departments() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class, "d");
+		return query.orderBy(query.cb().asc(query.get("d.id")));
+	}
+
+	private static List<Long> ids(List<Department> departments) {
+		return departments.stream().map(Department::getId).collect(Collectors.toList());
+	}
+
+	@Test
+	void convertsTheValuesToTheTypesOfTheAttributes() {
+		CriteriaQuery query = departments();
+
+		query.where(query.equal("d.id", "3"));
+
+		assertEquals(Arrays.asList(3L), ids(query.getResultList()));
+	}
+
+	@Test
+	void comparesWithNullsAsIsNullPredicates() {
+		CriteriaQuery query = departments();
+
+		assertEquals(0, query.where(query.equal("d.name", null)).getResultList().size());
+		assertEquals(DEPARTMENTS, query.where(query.notEqual("d.name", null)).getResultList().size());
+	}
+
+	@Test
+	void comparesRanges() {
+		CriteriaQuery query = departments();
+
+		assertEquals(Arrays.asList(28L, 29L, 30L), ids(query.where(query.greaterThan("d.id", 27)).getResultList()));
+		assertEquals(Arrays.asList(1L, 2L), ids(query.where(query.lessThanOrEqualTo("d.id", 2)).getResultList()));
+		assertEquals(Arrays.asList(5L, 6L), ids(query.where(query.between("d.id", 5, 6)).getResultList()));
+		assertEquals(Arrays.asList(1L), ids(query.where(query.lessThan("d.id", 2L)).getResultList()));
+		assertEquals(DEPARTMENTS, query.where(query.greaterThanOrEqualTo("d.id", 1)).getResultList().size());
+	}
+
+	@Test
+	void matchesPatterns() {
+		CriteriaQuery query = departments();
+
+		assertEquals(Arrays.asList(6L, 13L, 20L, 27L), ids(query.where(query.like("d.name", "%6")).getResultList()));
+		assertEquals(DEPARTMENTS - 4, query.where(query.notLike("d.name", "%6")).getResultList().size());
+	}
+
+	@Test
+	void matchesCollections() {
+		CriteriaQuery query = departments();
+
+		query.where(query.in("d.id", Arrays.asList(3, "4", 5L)));
+
+		assertEquals(Arrays.asList(3L, 4L, 5L), ids(query.getResultList()));
+	}
+
+	@Test
+	void bindsTheValuesAsParameters() {
+		CriteriaQuery first = departments();
+		first.where(first.equal("d.name", "dept1"), first.greaterThan("d.id", 5));
+		CriteriaQuery second = departments();
+		second.where(second.equal("d.name", "dept2"), second.greaterThan("d.id", 6));
+
+		TypedQuery<?> typedQuery = first.getTypedQuery();
+
+		assertEquals(statement(typedQuery), statement(second.getTypedQuery()));
+		List<String> names = typedQuery.getParameters().stream().map(Parameter::getName).sorted()
+				.collect(Collectors.toList());
+		assertEquals(Arrays.asList("autoParam0", "autoParam1"), names);
+		assertEquals("dept1", typedQuery.getParameterValue("autoParam0"));
+		assertEquals(5L, typedQuery.getParameterValue("autoParam1"));
+	}
+
+	@Test
+	void bindsOnlyTheParametersOfTheLastRestrictions() {
+		CriteriaQuery query = departments();
+		query.where(query.equal("d.name", "dept1"));
+
+		query.where(query.greaterThan("d.id", 28));
+
+		assertEquals(Arrays.asList(29L, 30L), ids(query.getResultList()));
+		assertEquals(2, query.getResultCount());
+	}
+
+	@Test
+	void sharesTheParametersWithSubqueries() {
+		CriteriaQuery query = departments();
+		CriteriaSubquery<Long> subquery = query.newSubquery(Long.class).from(Employee.class, "e");
+		subquery.select(query.cb().max(subquery.get("e.salary").as(Long.class)))
+				.where(subquery.equal("e.department.id", 30));
+
+		query.where(query.lessThan("d.id", 3), query.cb().greaterThan(query.cb().literal(3031L), subquery.getSubquery()));
+
+		assertEquals(Arrays.asList(1L, 2L), ids(query.getResultList()));
+	}
+
+	@Test
+	void rejectsNullValuesOfOtherPredicates() {
+		CriteriaQuery query = departments();
+
+		assertThrows(IllegalArgumentException.class, () -> query.like("d.name", null));
+		assertThrows(IllegalArgumentException.class, () -> query.in("d.id", null));
+	}
+
+	private static String statement(TypedQuery<?> typedQuery) {
+		return typedQuery.unwrap(org.hibernate.query.Query.class).getQueryString();
+	}
+}
@@ -0,0 +1,78 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class CriteriaQueryTemplateTest extends JpaTestSupport {
+
+	private static final AtomicInteger DEFINITIONS = new AtomicInteger();
+
+	private static final CriteriaQueryTemplate ACTIVE_BY_NAME = new CriteriaQueryTemplate(
+			"CriteriaQueryTemplateTest.activeByName", Department.class, q -> {
+				DEFINITIONS.incrementAndGet();
+				q.from(Department.class);
+				q.where(q.cb().like(q.get("name").as(String.class), q.parameter(String.class, "name")),
+						q.equal("active", true));
+				q.orderBy(q.cb().asc(q.get("id")));
+			});
+
+	@Test
+	void compilesOncePerFactory() {
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+
+		List<Department> dept2 = factory.createQuery(ACTIVE_BY_NAME).setParameter("name", "dept2").getResultList();
+		List<Department> dept4 = factory.createQuery(ACTIVE_BY_NAME).setParameter("name", "dept4").getResultList();
+
+		assertEquals(1, DEFINITIONS.get());
+		assertEquals(3, dept2.size());
+		assertEquals(Long.valueOf(2), dept2.get(0).getId());
+		assertEquals(Long.valueOf(30), dept2.get(2).getId());
+		assertEquals(2, dept4.size());
+		assertEquals(Long.valueOf(4), dept4.get(0).getId());
+	}
+
+	@Test
+	void keepsTheValuesBoundByTheDefinition() {
+		List<Department> departments = new JpaQueryFactory(em).createQuery(ACTIVE_BY_NAME).setParameter("name", "%")
+				.getResultList();
+
+		assertEquals(DEPARTMENTS / 2, departments.size());
+		assertTrue(departments.stream().allMatch(Department::getActive));
+	}
+
+	@Test
+	void tagsTheQueriesWithTheirEntities() {
+		JpqlQuery query = new JpaQueryFactory(em).createQuery(ACTIVE_BY_NAME);
+
+		assertTrue(query.sourceTags.contains("Department"), query.sourceTags.toString());
+	}
+
+	@Test
+	void keepsTheNamedQueriesOfTheApplication() {
+		String name = "CriteriaQueryTemplateTest.byId";
+		getEntityManagerFactory().addNamedQuery(name,
+				em.createQuery("select d from Department d where d.id = :id", Department.class));
+		CriteriaQueryTemplate template = new CriteriaQueryTemplate(name, Department.class,
+				q -> q.from(Department.class));
+
+		assertEquals(DEPARTMENTS, new JpaQueryFactory(em).createQuery(template).getResultList().size());
+		assertEquals(Long.valueOf(3),
+				em.createNamedQuery(name, Department.class).setParameter("id", 3L).getSingleResult().getId());
+	}
+
+	@Test
+	void requiresNameAndDefinition() {
+		assertThrows(NullPointerException.class, () -> new CriteriaQueryTemplate(null, Department.class, q -> {
+		}));
+		assertThrows(NullPointerException.class, () -> new CriteriaQueryTemplate("name", Department.class, null));
+	}
+}
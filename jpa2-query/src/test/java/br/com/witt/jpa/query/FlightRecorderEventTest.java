@@ -0,0 +1,128 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.PersistenceException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class FlightRecorderEventTest extends JpaTestSupport {
+
+	static class DepartmentName {
+
+		private final Long id;
+		private final String name;
+
+		DepartmentName(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	private Recording recording;
+
+	@BeforeEach
+	void startRecording() {
+		recording = new Recording();
+		recording.enable(QueryExecutionEvent.class).withoutThreshold();
+		recording.enable(ConversionBatchEvent.class).withoutThreshold();
+		recording.start();
+	}
+
+	@AfterEach
+	void closeRecording() {
+		recording.close();
+	}
+
+	@Test
+	void recordsTheOperationsOfTheQueries() throws IOException {
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.createJpqlQuery("select d from Department d where d.active = true", Department.class)
+				.setName("active").getResultList();
+		CriteriaQuery query = factory.createCriteriaQuery(Department.class).from(Department.class, "d");
+		query.where(query.equal("d.id", 3L)).getSingleResult();
+
+		List<RecordedEvent> events = stop(QueryExecutionEvent.NAME);
+
+		assertEquals(2, events.size());
+		RecordedEvent named = events.get(0);
+		assertEquals("active", named.getString("name"));
+		assertEquals("RESULT_LIST", named.getString("operation"));
+		assertEquals(DEPARTMENTS / 2, named.getInt("rows"));
+		assertTrue(named.getLong("executionTime") > 0);
+		assertEquals(Thread.currentThread().getName(), named.getThread().getJavaName());
+		RecordedEvent criteria = events.get(1);
+		assertEquals("SINGLE_RESULT", criteria.getString("operation"));
+		assertTrue(criteria.getString("fingerprint").contains("d.id=?"), criteria.getString("fingerprint"));
+		assertNull(criteria.getString("error"));
+	}
+
+	@Test
+	void recordsTheErrorOfFailedOperations() throws IOException {
+		assertThrows(PersistenceException.class,
+				() -> new JpaQueryFactory(em).createSqlQuery("select * from Missing").getResultList());
+
+		List<RecordedEvent> events = stop(QueryExecutionEvent.NAME);
+
+		assertEquals(1, events.size());
+		assertTrue(events.get(0).getString("error").endsWith("Exception"), events.get(0).getString("error"));
+	}
+
+	@Test
+	void recordsTheConversionsOfSqlResults() throws IOException {
+		List<DepartmentName> names = new JpaQueryFactory(em)
+				.createSqlQuery("select id, name from Department where id <= 4 order by id", DepartmentName.class)
+				.getResultList();
+
+		List<RecordedEvent> events = stop(ConversionBatchEvent.NAME);
+
+		assertEquals("dept4", names.get(3).name);
+		assertEquals(1, events.size());
+		assertEquals(4, events.get(0).getInt("rows"));
+		assertEquals(DepartmentName.class.getName(), events.get(0).getClass("resultClass").getName());
+	}
+
+	@Test
+	void recordsNothingWhileDisabled() throws IOException {
+		recording.disable(QueryExecutionEvent.class);
+
+		new JpaQueryFactory(em).createJpqlQuery("select d from Department d", Department.class).getResultList();
+
+		assertEquals(0, stop(QueryExecutionEvent.NAME).size());
+	}
+
+	private List<RecordedEvent> stop(String eventName) throws IOException {
+		recording.stop();
+		Path file = Files.createTempFile("queries", ".jfr");
+		try {
+			recording.dump(file);
+			List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				if (event.getEventType().getName().equals(eventName)) {
+					events.add(event);
+				}
+			}
+			events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+			return events;
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class InListChunkingTest extends JpaTestSupport {
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	void createExecutor() {
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@AfterEach
+	void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void splitsTheDistinctValuesPaddedToTheBuckets() {
+		InListChunking chunking = new InListChunking(8);
+
+		List<List<Object>> chunks = chunking.split(Arrays.asList(1, 2, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11));
+
+		assertEquals(2, chunks.size());
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8), chunks.get(0));
+		assertEquals(Arrays.asList(9, 10, 11, 11), chunks.get(1));
+		assertEquals(Arrays.asList(1, 2, 3, 3), new InListChunking(8).split(Arrays.asList(1, 2, 3)).get(0));
+	}
+
+	@Test
+	void padsToTheGivenBuckets() {
+		InListChunking chunking = new InListChunking(10).buckets(3, 0, 3, 20);
+
+		assertEquals(Arrays.asList(1, 2, 2), chunking.split(Arrays.asList(1, 2)).get(0));
+		assertEquals(10, chunking.split(Arrays.asList(1, 2, 3, 4)).get(0).size());
+		assertThrows(IllegalArgumentException.class, () -> new InListChunking(0));
+	}
+
+	@Test
+	void findsTheLargestCollectionExceedingTheChunkSize() {
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		parameters.put("name", "x");
+		parameters.put("small", Arrays.asList(1, 2));
+		InListChunking chunking = new InListChunking(2);
+
+		assertNull(chunking.findParameter(parameters));
+
+		parameters.put("large", Arrays.asList(1, 2, 3, 4));
+		parameters.put("medium", Arrays.asList(1, 2, 3));
+		assertEquals("large", chunking.findParameter(parameters));
+	}
+
+	@Test
+	void mergesTheSortedChunksWithoutDuplicates() {
+		InListChunking chunking = new InListChunking(2).sorted(Comparator.<Integer>reverseOrder()).distinct();
+
+		List<Integer> merged = chunking.execute(null, Arrays.asList(1, 2, 3, 4, 5),
+				(em, chunk) -> chunk, chunk -> chunk.stream().map(value -> (Integer) value % 4)
+						.collect(Collectors.toList()));
+
+		assertEquals(Arrays.asList(3, 2, 1, 0), merged);
+	}
+
+	@Test
+	void createsTheQueriesOfParallelChunksInTheCallingThread() {
+		Set<Thread> preparing = ConcurrentHashMap.newKeySet();
+		Set<Thread> executing = ConcurrentHashMap.newKeySet();
+		InListChunking chunking = new InListChunking(2).parallel(executor);
+
+		List<Object> merged = chunking.execute(em, Arrays.asList(1, 2, 3, 4, 5, 6), (chunkEm, chunk) -> {
+			assertTrue(chunkEm != em);
+			preparing.add(Thread.currentThread());
+			return chunk;
+		}, chunk -> {
+			executing.add(Thread.currentThread());
+			return chunk;
+		});
+
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), merged);
+		assertEquals(Collections.singleton(Thread.currentThread()), preparing);
+		assertTrue(!executing.contains(Thread.currentThread()));
+	}
+
+	@Test
+	void waitsForAllTheChunksBeforeFailing() {
+		InListChunking chunking = new InListChunking(1).parallel(executor);
+		List<Object> finished = Collections.synchronizedList(new ArrayList<Object>());
+		IllegalStateException failure = new IllegalStateException("chunk failed");
+
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> chunking.execute(em, Arrays.asList(1, 2, 3), (chunkEm, chunk) -> chunk, chunk -> {
+					if (chunk.get(0).equals(1)) {
+						throw failure;
+					}
+					sleep();
+					finished.add(chunk.get(0));
+					return chunk;
+				}));
+
+		assertSame(failure, e);
+		assertEquals(2, finished.size());
+	}
+
+	@Test
+	void chunksCriteriaQueriesInParallel() {
+		List<Long> ids = LongStream.rangeClosed(1, DEPARTMENTS).map(i -> i * 100 + 1).boxed()
+				.collect(Collectors.toList());
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Employee.class).from(Employee.class, "e");
+		query.setInListChunking(
+				new InListChunking(4).parallel(executor).sorted(Comparator.comparing(Employee::getId)));
+		query.where(query.in("e.id", ids));
+
+		List<Employee> employees = query.getResultList();
+
+		assertEquals(ids, employees.stream().map(Employee::getId).collect(Collectors.toList()));
+	}
+
+	@Test
+	void chunksJpqlQueriesInParallel() {
+		List<Long> ids = LongStream.rangeClosed(1, DEPARTMENTS).map(i -> i * 100).boxed()
+				.collect(Collectors.toList());
+
+		List<Employee> employees = new JpaQueryFactory(em)
+				.createJpqlQuery("select e from Employee e where e.id in :ids", Employee.class)
+				.setInListChunking(new InListChunking(7).parallel(executor).sorted(Comparator.comparing(Employee::getId)))
+				.setParameter("ids", ids).getResultList();
+
+		assertEquals(ids, employees.stream().map(Employee::getId).collect(Collectors.toList()));
+	}
+
+	private static void sleep() {
+		try {
+			Thread.sleep(50);
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
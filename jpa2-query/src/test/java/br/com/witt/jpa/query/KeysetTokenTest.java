@@ -0,0 +1,67 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+class KeysetTokenTest {
+
+	enum Status {
+		OPEN, CLOSED
+	}
+
+	@Test
+	void decodesTheEncodedValues() {
+		Object[] values = { "a:b", 42L, LocalDate.of(2020, 1, 2), Status.CLOSED, "" };
+		String token = KeysetToken.encode(values);
+
+		assertArrayEquals(values, KeysetToken.decode(token,
+				new Class<?>[] { String.class, Long.class, LocalDate.class, Status.class, String.class }));
+	}
+
+	@Test
+	void encodesUrlSafeTokens() {
+		String token = KeysetToken.encode(new Object[] { "???>>>", 1 });
+
+		assertFalse(token.contains("+") || token.contains("/") || token.contains("="), token);
+	}
+
+	@Test
+	void encodesDatesAsLocalDateTimes() {
+		LocalDateTime dateTime = LocalDateTime.of(2020, 1, 2, 3, 4, 5);
+		Date date = java.sql.Timestamp.valueOf(dateTime);
+
+		Object[] values = KeysetToken.decode(KeysetToken.encode(new Object[] { date }),
+				new Class<?>[] { LocalDateTime.class });
+
+		assertEquals(dateTime, values[0]);
+	}
+
+	@Test
+	void rejectsNullKeys() {
+		assertThrows(IllegalArgumentException.class, () -> KeysetToken.encode(new Object[] { 1, null }));
+	}
+
+	@Test
+	void rejectsTokensWithAnotherNumberOfKeys() {
+		String token = KeysetToken.encode(new Object[] { 1, 2 });
+
+		assertThrows(IllegalArgumentException.class, () -> KeysetToken.decode(token, new Class<?>[] { Integer.class }));
+		assertThrows(IllegalArgumentException.class,
+				() -> KeysetToken.decode(token, new Class<?>[] { Integer.class, Integer.class, Integer.class }));
+	}
+
+	@Test
+	void rejectsMalformedTokens() {
+		assertThrows(IllegalArgumentException.class, () -> KeysetToken.decode("not base64!", new Class<?>[] { Long.class }));
+		assertThrows(IllegalArgumentException.class,
+				() -> KeysetToken.decode(KeysetToken.encode(new Object[] { "x" }), new Class<?>[] { Long.class }));
+	}
+}
@@ -0,0 +1,137 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.cache.QueryResultCache;
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class QueryCacheTest extends JpaTestSupport {
+
+	private JpaQueryFactory factory;
+	private QueryResultCache cache;
+
+	@BeforeEach
+	void createFactory() {
+		factory = new JpaQueryFactory(em);
+		cache = new QueryResultCache(100, 10000, Duration.ofMinutes(1));
+		factory.setResultCache(cache);
+	}
+
+	private List<Department> activeDepartments(String name) {
+		return activeDepartments(factory, name);
+	}
+
+	private static List<Department> activeDepartments(JpaQueryFactory factory, String name) {
+		CriteriaQuery query = factory.createCriteriaQuery(Department.class).from(Department.class)
+				.cacheable("activeDepartments", null);
+		return query.where(query.equal("active", true), query.like("name", name)).getResultList();
+	}
+
+	@Test
+	void cachesCriteriaResultsByNameAndValues() {
+		List<Department> first = activeDepartments("dept2");
+
+		assertSame(first, activeDepartments("dept2"));
+		assertEquals(2, activeDepartments("dept4").size());
+		assertEquals(1, cache.getStatistics().getHitCount());
+		assertEquals(2, cache.getStatistics().getMissCount());
+		assertThrows(UnsupportedOperationException.class, () -> first.clear());
+	}
+
+	@Test
+	void discardsTheResultsOfUpdatedEntities() {
+		List<Department> first = activeDepartments("dept2");
+
+		em.getTransaction().begin();
+		factory.createJpqlQuery("update Department set name = name where id = 0").executeUpdate();
+		em.getTransaction().rollback();
+
+		assertEquals(first.size(), activeDepartments("dept2").size());
+		assertEquals(0, cache.getStatistics().getHitCount());
+		assertEquals(1, cache.getStatistics().getInvalidationCount());
+	}
+
+	@Test
+	void bypassesTheCacheUntilTheTransactionThatUpdatedCompletes() {
+		List<Department> first = activeDepartments("dept2");
+		EntityManager other = getEntityManagerFactory().createEntityManager();
+		try {
+			JpaQueryFactory otherFactory = new JpaQueryFactory(other);
+			otherFactory.setResultCache(cache);
+
+			em.getTransaction().begin();
+			factory.createJpqlQuery("update Department set name = 'renamed' where id = 2").executeUpdate();
+			List<Department> updated = activeDepartments("dept2");
+			List<Department> committed = activeDepartments(otherFactory, "dept2");
+			em.getTransaction().rollback();
+
+			assertEquals(first.size() - 1, updated.size());
+			assertEquals(first.size(), committed.size());
+			assertEquals(0, cache.getStatistics().getHitCount());
+			assertEquals(2, cache.getStatistics().getMissCount());
+			assertEquals(first.size(), activeDepartments(otherFactory, "dept2").size());
+			assertEquals(3, cache.getStatistics().getMissCount());
+			assertEquals(2, cache.getStatistics().getInvalidationCount());
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	void keepsTheResultsOfFailedBatches() {
+		List<Department> first = activeDepartments("dept2");
+		List<Object[]> rows = Arrays.asList(new Object[] { 101L, "new" }, new Object[] { 1L, "duplicated" });
+
+		em.getTransaction().begin();
+		assertThrows(PersistenceException.class,
+				() -> factory.createSqlBatch("insert into Department (id, name, active) values (?, ?, true)")
+						.setBatchSize(1).execute(rows));
+		em.getTransaction().rollback();
+
+		assertSame(first, activeDepartments("dept2"));
+		assertEquals(0, cache.getStatistics().getInvalidationCount());
+	}
+
+	@Test
+	void cachesSlicesByPage() {
+		CriteriaQuery query = factory.createCriteriaQuery(Department.class).from(Department.class)
+				.cacheable("departments", null);
+		query.orderBy(query.cb().asc(query.get("id")));
+
+		Page<Department> first = query.getSlice(1, 10);
+		Page<Department> again = query.getSlice(1, 10);
+		Page<Department> last = query.getSlice(3, 10);
+
+		assertSame(first.getContent().get(0), again.getContent().get(0));
+		assertEquals(10, again.getContent().size());
+		assertEquals(Long.valueOf(21), last.getContent().get(0).getId());
+		assertEquals(1, cache.getStatistics().getHitCount());
+		assertEquals(2, cache.getStatistics().getMissCount());
+	}
+
+	@Test
+	void cachesJpqlResultsByParameters() {
+		JpqlQuery query = factory.createJpqlQuery("select count(d) from Department d where d.active = :active");
+
+		Object active = query.cacheable(null).setParameter("active", true).getSingleResult();
+		Object inactive = query.setParameter("active", false).getSingleResult();
+		query.setParameter("active", true).getSingleResult();
+
+		assertEquals(15L, active);
+		assertEquals(15L, inactive);
+		assertEquals(1, cache.getStatistics().getHitCount());
+	}
+}
@@ -0,0 +1,129 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Root;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.metrics.QueryEvent;
+import br.com.witt.jpa.metrics.QueryMetrics;
+import br.com.witt.jpa.metrics.QueryStatistics;
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.Employee;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class QueryListenerTest extends JpaTestSupport {
+
+	private final List<QueryEvent> events = new ArrayList<QueryEvent>();
+	private JpaQueryFactory factory;
+
+	@BeforeEach
+	void createFactory() {
+		factory = new JpaQueryFactory(em);
+		factory.addQueryListener(events::add);
+	}
+
+	@Test
+	void fingerprintsTheStructureOfCriteriaQueries() {
+		byName("dept1").getResultList();
+		byName("dept2").getResultList();
+		CriteriaQuery bySalary = factory.createCriteriaQuery(Employee.class).from(Employee.class, "e");
+		bySalary.where(bySalary.greaterThan("e.salary", 3000)).getResultList();
+		CriteriaQuery byActive = factory.createCriteriaQuery(Department.class).from(Department.class, "d");
+		byActive.where(byActive.equal("d.active", true)).getResultList();
+
+		assertEquals(4, events.size());
+		assertEquals(events.get(0).getFingerprint(), events.get(1).getFingerprint());
+		assertNotEquals(events.get(0).getFingerprint(), events.get(2).getFingerprint());
+		assertNotEquals(events.get(0).getFingerprint(), events.get(3).getFingerprint());
+		assertTrue(events.get(0).getFingerprint().contains("name"), events.get(0).getFingerprint());
+	}
+
+	@Test
+	void fingerprintsTheQueryAgainAfterItsTreeChanges() {
+		CriteriaQuery query = byName("dept1");
+		query.getResultList();
+		query.getResultList();
+		query.innerJoin("d.employees", "e").where(query.equal("e.name", "emp1"));
+		query.getResultList();
+		query.orderBy(query.cb().asc(query.get("d.id")));
+		query.getResultList();
+
+		assertEquals(events.get(0).getFingerprint(), events.get(1).getFingerprint());
+		assertNotEquals(events.get(1).getFingerprint(), events.get(2).getFingerprint());
+		assertNotEquals(events.get(2).getFingerprint(), events.get(3).getFingerprint());
+		assertTrue(events.get(3).getStatement().contains("e.name"), events.get(3).getStatement());
+	}
+
+	@Test
+	void describesTheStructureOfTheTrees() {
+		String first = CriteriaShape.of(byName("dept1", false));
+		String second = CriteriaShape.of(byName("dept2", false));
+		String joined = CriteriaShape.of(byName("dept1", true));
+
+		assertEquals(first, second);
+		assertNotEquals(first, joined);
+		assertTrue(joined.contains(" INNER join employees f1"), joined);
+		assertTrue(joined.endsWith(" order by f0.id desc"), joined);
+	}
+
+	@Test
+	void measuresSlices() {
+		CriteriaQuery query = byName("dept1");
+		query.orderBy(query.cb().asc(query.get("d.id")));
+
+		Page<Department> slice = query.getSlice(1, 2);
+
+		assertEquals(2, slice.getContent().size());
+		assertEquals(1, events.size());
+		assertEquals(QueryEvent.Operation.RESULT_PAGE, events.get(0).getOperation());
+		assertEquals(3, events.get(0).getRows());
+	}
+
+	@Test
+	void aggregatesTheEventsByKey() {
+		QueryMetrics metrics = new QueryMetrics();
+		factory.addQueryListener(metrics);
+
+		for (int i = 0; i < 3; i++) {
+			factory.createJpqlQuery("select d from Department d where d.id = " + i, Department.class).getResultList();
+		}
+		factory.createJpqlQuery("select d from Department d", Department.class).setName("all").getResultList();
+
+		QueryStatistics byId = metrics.getStatistics(events.get(0).getKey());
+		assertNotNull(byId);
+		assertEquals(3, byId.getCount());
+		assertEquals(DEPARTMENTS, metrics.getStatistics("all").getRows().getMax());
+		assertEquals("all", events.get(3).getKey());
+	}
+
+	private javax.persistence.criteria.CriteriaQuery<Department> byName(String name, boolean joined) {
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		javax.persistence.criteria.CriteriaQuery<Department> query = cb.createQuery(Department.class);
+		Root<Department> d = query.from(Department.class);
+		query.where(cb.equal(d.get("name"), cb.parameter(String.class, name)));
+		if (joined) {
+			Join<Department, Employee> e = d.join("employees");
+			query.where(cb.equal(d.get("name"), name), e.get("name").in(Arrays.asList("emp1", "emp2")),
+					cb.isNull(e.get("salary")).not());
+			query.orderBy(cb.desc(d.get("id")));
+		}
+		return query;
+	}
+
+	private CriteriaQuery byName(String name) {
+		CriteriaQuery query = factory.createCriteriaQuery(Department.class).from(Department.class, "d");
+		return query.where(query.equal("d.name", name));
+	}
+}
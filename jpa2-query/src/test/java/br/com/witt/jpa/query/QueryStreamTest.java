@@ -0,0 +1,113 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.metrics.QueryEvent;
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class QueryStreamTest extends JpaTestSupport {
+
+	static class Summary {
+
+		private final Long id;
+		private final String name;
+
+		Summary(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	@Test
+	void streamsJpqlResults() {
+		JpqlQuery query = new JpaQueryFactory(em).createJpqlQuery("select d from Department d order by d.id",
+				Department.class);
+
+		try (Stream<Department> stream = query.getResultStream()) {
+			List<Long> ids = stream.map(Department::getId).collect(Collectors.toList());
+			assertEquals(DEPARTMENTS, ids.size());
+			assertEquals(Long.valueOf(1), ids.get(0));
+		}
+	}
+
+	@Test
+	void convertsSqlRowsAsTheyAreConsumed() {
+		SqlQuery query = new JpaQueryFactory(em).createSqlQuery(
+				"select id, name from Department where id <= 3 order by id", Summary.class);
+
+		try (Stream<Summary> stream = query.getResultStream()) {
+			List<Summary> summaries = stream.collect(Collectors.toList());
+			assertEquals(3, summaries.size());
+			assertEquals(Long.valueOf(2), summaries.get(1).id);
+			assertEquals("dept2", summaries.get(1).name);
+		}
+	}
+
+	@Test
+	void streamsCriteriaResults() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+		query.where(query.equal("active", true));
+
+		try (Stream<Department> stream = query.getResultStream()) {
+			assertEquals(DEPARTMENTS / 2, stream.count());
+		}
+	}
+
+	@Test
+	void performsActionForEachResult() {
+		List<Object> names = new ArrayList<Object>();
+
+		new JpaQueryFactory(em).createSqlQuery("select name from Employee where department_id = 1 order by id")
+				.setFetchSize(2).forEach(names::add);
+
+		assertEquals(3, names.size());
+		assertEquals("emp0", names.get(0));
+	}
+
+	@Test
+	void setsTheFetchSizeHints() {
+		JpqlQuery query = new JpaQueryFactory(em).createJpqlQuery("select e from Employee e");
+
+		query.setFetchSize(50);
+
+		assertEquals(50, query.query.getHints().get(ProviderHints.HIBERNATE_FETCH_SIZE));
+	}
+
+	@Test
+	void measuresTheStreamsUntilTheyAreClosed() {
+		List<QueryEvent> events = new ArrayList<QueryEvent>();
+		JpaQueryFactory factory = new JpaQueryFactory(em);
+		factory.addQueryListener(events::add);
+		CriteriaQuery criteria = factory.createCriteriaQuery(Department.class).from(Department.class);
+		criteria.where(criteria.equal("active", true));
+
+		try (Stream<Department> stream = criteria.getResultStream()) {
+			assertEquals(DEPARTMENTS / 2, stream.count());
+			assertTrue(events.isEmpty());
+		}
+		try (Stream<Summary> stream = factory
+				.createSqlQuery("select id, name from Department where id <= 3", Summary.class).getResultStream()) {
+			assertEquals(2, stream.limit(2).count());
+		}
+		factory.createJpqlQuery("select d from Department d").forEach(department -> {
+		});
+
+		assertEquals(3, events.size());
+		assertEquals(QueryEvent.Operation.RESULT_STREAM, events.get(0).getOperation());
+		assertEquals(DEPARTMENTS / 2, events.get(0).getRows());
+		assertTrue(events.get(0).getFingerprint().contains("active"), events.get(0).getFingerprint());
+		assertEquals(2, events.get(1).getRows());
+		assertTrue(events.get(1).isNativeStatement());
+		assertEquals(DEPARTMENTS, events.get(2).getRows());
+		assertTrue(events.get(2).getExecuteNanos() > 0);
+	}
+}
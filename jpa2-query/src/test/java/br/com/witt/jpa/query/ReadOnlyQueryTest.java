@@ -0,0 +1,121 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class ReadOnlyQueryTest extends JpaTestSupport {
+
+	@BeforeEach
+	void beginTransaction() {
+		em.getTransaction().begin();
+		em.find(Department.class, 1L).setName("pending");
+	}
+
+	@AfterEach
+	void restoreData() {
+		if (em.getTransaction().isActive()) {
+			em.getTransaction().rollback();
+		}
+		seed();
+	}
+
+	@Test
+	void flushesThePendingChangesBeforeOtherQueries() {
+		List<Department> departments = new JpaQueryFactory(em)
+				.createJpqlQuery("select d from Department d where d.name = 'pending'", Department.class)
+				.getResultList();
+
+		assertEquals(1, departments.size());
+	}
+
+	@Test
+	void doesNotFlushBeforeReadOnlyJpqlQueries() {
+		List<Department> departments = new JpaQueryFactory(em)
+				.createJpqlQuery("select d from Department d where d.name = 'pending' or d.id = 2", Department.class)
+				.readOnly().getResultList();
+
+		assertEquals(1, departments.size());
+		Session session = em.unwrap(Session.class);
+		assertTrue(session.isReadOnly(departments.get(0)));
+		assertFalse(session.isReadOnly(em.find(Department.class, 1L)));
+	}
+
+	@Test
+	void doesNotSaveTheChangesOfReadOnlyResults() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+		query.where(query.equal("id", 2L));
+		Department department = query.readOnly().getSingleResult();
+
+		department.setName("ignored");
+		em.getTransaction().commit();
+
+		em.clear();
+		assertEquals("dept2", em.find(Department.class, 2L).getName());
+		assertEquals("pending", em.find(Department.class, 1L).getName());
+	}
+
+	@Test
+	void doesNotFlushBeforeReadOnlyCriteriaCounts() {
+		CriteriaQuery query = new JpaQueryFactory(em).createCriteriaQuery(Department.class).from(Department.class);
+		query.where(query.equal("name", "pending"));
+
+		assertEquals(0, query.readOnly().getResultCount());
+		assertEquals(0, query.getResultList().size());
+	}
+
+	@Test
+	void doesNotFlushBeforeReadOnlySqlQueries() {
+		SqlQuery query = new JpaQueryFactory(em)
+				.createSqlQuery("select count(*) from Department where name = 'pending'");
+
+		assertEquals(0, ((Number) query.readOnly().getSingleResult()).intValue());
+	}
+
+	@Test
+	void detectsTheProviderOfTheHintsOncePerFactory() {
+		assertEquals(ProviderHints.Provider.HIBERNATE, ProviderHints.of(em));
+		assertEquals(ProviderHints.Provider.ECLIPSELINK,
+				ProviderHints.of(entityManager(Collections.singletonMap("eclipselink.logging.level", "FINE"))));
+		assertEquals(ProviderHints.Provider.OTHER, ProviderHints.of(entityManager(Collections.emptyMap())));
+		assertSame(ProviderHints.of(em), ProviderHints.of(em));
+	}
+
+	/**
+	 * Gives an entity manager of a factory with the given properties, as the ones
+	 * of the other persistence providers.
+	 */
+	private static EntityManager entityManager(Map<String, Object> properties) {
+		EntityManagerFactory emf = (EntityManagerFactory) Proxy.newProxyInstance(
+				ReadOnlyQueryTest.class.getClassLoader(), new Class<?>[] { EntityManagerFactory.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getProperties":
+						return properties;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						return proxy == args[0];
+					}
+				});
+		return (EntityManager) Proxy.newProxyInstance(ReadOnlyQueryTest.class.getClassLoader(),
+				new Class<?>[] { EntityManager.class }, (proxy, method, args) -> emf);
+	}
+}
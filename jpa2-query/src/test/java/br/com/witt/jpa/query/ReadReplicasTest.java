@@ -0,0 +1,176 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class ReadReplicasTest extends JpaTestSupport {
+
+	private EntityManagerFactory replicaFactory;
+	private ReadReplicas replicas;
+	private JpaQueryFactory factory;
+
+	/**
+	 * Creates a replica of its own database, holding a single department, so
+	 * that the results tell where each query went.
+	 */
+	@BeforeEach
+	void createReplica() {
+		replicaFactory = Persistence.createEntityManagerFactory("test",
+				Collections.singletonMap("javax.persistence.jdbc.url", "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1"));
+		EntityManager replicaEm = replicaFactory.createEntityManager();
+		try {
+			replicaEm.getTransaction().begin();
+			replicaEm.persist(new Department(100L, "replica", true));
+			replicaEm.getTransaction().commit();
+		} finally {
+			replicaEm.close();
+		}
+		replicas = new ReadReplicas(ReadReplicas.Balancing.ROUND_ROBIN, Collections.singletonList(replicaFactory));
+		factory = new JpaQueryFactory(em, replicas);
+	}
+
+	@AfterEach
+	void closeReplica() {
+		factory.close();
+		replicaFactory.close();
+	}
+
+	@Test
+	void routesTheReadsToTheReplica() {
+		List<Department> departments = factory.createCriteriaQuery(Department.class).from(Department.class)
+				.getResultList();
+		Object count = factory.createSqlQuery("select count(*) from Department").getSingleResult();
+
+		assertEquals(1, departments.size());
+		assertEquals(Long.valueOf(100), departments.get(0).getId());
+		assertEquals(1L, ((Number) count).longValue());
+	}
+
+	@Test
+	void routesTheLockingReadsAndTheWritesToThePrimary() {
+		List<Object> locked = factory.createSqlQuery("select id from Department for update").getResultList();
+
+		assertEquals(DEPARTMENTS, locked.size());
+		assertFalse(JpaQueryFactory.isRead("select * from Department for share"));
+		assertFalse(JpaQueryFactory.isRead("select * from Department for no key update"));
+		assertFalse(JpaQueryFactory.isRead("select * from Department lock in share mode"));
+		assertFalse(JpaQueryFactory.isRead(
+				"with gone as (delete from Employee where id = 1 returning id) select count(*) from gone"));
+		assertFalse(JpaQueryFactory.isRead("update Department set name = 'x'"));
+		assertTrue(JpaQueryFactory.isRead("with names as (select name from Department) select * from names"));
+		assertTrue(JpaQueryFactory.isRead("select d from Department d where d.name = :name"));
+		assertTrue(JpaQueryFactory.isRead("select updated_at from Department"));
+	}
+
+	@Test
+	void routesTheQueriesOfATransactionToThePrimary() {
+		em.getTransaction().begin();
+
+		List<Department> departments = factory.createCriteriaQuery(Department.class).from(Department.class)
+				.getResultList();
+
+		assertEquals(DEPARTMENTS, departments.size());
+	}
+
+	@Test
+	void fallsBackToThePrimaryWhenTheReplicaCannotBeReached() {
+		useUnreachableReplica();
+		JpqlQuery jpql = factory.createJpqlQuery("select count(d) from Department d");
+		SqlQuery sql = factory.createSqlQuery("select count(*) from Department");
+
+		assertEquals((long) DEPARTMENTS, ((Number) jpql.getSingleResult()).longValue());
+		assertEquals((long) DEPARTMENTS, ((Number) sql.getSingleResult()).longValue());
+		assertFalse(replicas.isAvailable(0));
+		assertEquals(0, replicas.getOutstanding(0));
+	}
+
+	@Test
+	void throwsTheFailureOfCriteriaQueriesOnAReplicaThatCannotBeReached() {
+		useUnreachableReplica();
+		CriteriaQuery routed = factory.createCriteriaQuery(Department.class).from(Department.class, "d");
+		routed.where(routed.equal("d.active", true));
+
+		assertThrows(PersistenceException.class, () -> routed.getResultList());
+		assertFalse(replicas.isAvailable(0));
+		assertEquals(0, replicas.getOutstanding(0));
+
+		CriteriaQuery query = factory.createCriteriaQuery(Department.class).from(Department.class, "d");
+		query.where(query.equal("d.active", true));
+
+		assertEquals(DEPARTMENTS / 2, query.getResultList().size());
+		assertEquals(DEPARTMENTS / 2, query.getResultCount());
+	}
+
+	@Test
+	void throwsTheErrorsOfTheStatementsWithoutLeavingTheReplicaOut() {
+		JpqlQuery jpql = factory.createJpqlQuery("select count(d) from Department d");
+		CriteriaQuery criteria = factory.createCriteriaQuery(Department.class).from(Department.class);
+		dropReplicaTables();
+
+		assertThrows(PersistenceException.class, () -> jpql.getSingleResult());
+		assertThrows(PersistenceException.class, () -> criteria.getResultList());
+		assertTrue(replicas.isAvailable(0));
+		assertEquals(0, replicas.getOutstanding(0));
+	}
+
+	@Test
+	void clearsTheReplicaOnEachQuery() {
+		JpqlQuery first = factory.createJpqlQuery("select d from Department d", Department.class);
+		Department department = first.<Department>getResultList().get(0);
+		assertTrue(first.em.contains(department));
+
+		factory.createJpqlQuery("select d from Department d", Department.class);
+
+		assertFalse(first.em.contains(department));
+	}
+
+	/**
+	 * Replaces the replica by one whose database cannot be reached, which fails
+	 * the queries when they are executed.
+	 */
+	private void useUnreachableReplica() {
+		factory.close();
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("javax.persistence.jdbc.url", "jdbc:h2:tcp://localhost:1/mem:unreachable");
+		properties.put("hibernate.hbm2ddl.auto", "none");
+		properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+		properties.put("hibernate.temp.use_jdbc_metadata_defaults", "false");
+		properties.put("hibernate.connection.initial_pool_size", "0");
+		EntityManagerFactory unreachable = Persistence.createEntityManagerFactory("test", properties);
+		replicaFactory.close();
+		replicaFactory = unreachable;
+		replicas = new ReadReplicas(ReadReplicas.Balancing.ROUND_ROBIN, Collections.singletonList(replicaFactory));
+		factory = new JpaQueryFactory(em, replicas);
+	}
+
+	private void dropReplicaTables() {
+		EntityManager replicaEm = replicaFactory.createEntityManager();
+		try {
+			replicaEm.getTransaction().begin();
+			replicaEm.createNativeQuery("drop table Employee").executeUpdate();
+			replicaEm.createNativeQuery("drop table Department").executeUpdate();
+			replicaEm.getTransaction().commit();
+		} finally {
+			replicaEm.close();
+		}
+	}
+}
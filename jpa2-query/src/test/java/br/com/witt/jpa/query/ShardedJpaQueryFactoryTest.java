@@ -0,0 +1,114 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class ShardedJpaQueryFactoryTest extends JpaTestSupport {
+
+	private ExecutorService executor;
+	private ShardedJpaQueryFactory shards;
+
+	@BeforeEach
+	void createShards() {
+		executor = Executors.newFixedThreadPool(2);
+		EntityManagerFactory emf = getEntityManagerFactory();
+		shards = new ShardedJpaQueryFactory(Arrays.asList(emf, emf), executor);
+	}
+
+	@AfterEach
+	void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void mergesTheSortedPartialsUpToTheLimit() {
+		List<List<Integer>> partials = Arrays.asList(Arrays.asList(1, 4, 7), Arrays.asList(2, 5),
+				Collections.<Integer>emptyList(), Arrays.asList(3, 6));
+
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7),
+				ShardedJpaQueryFactory.merge(partials, Comparator.<Integer>naturalOrder(), 0, Integer.MAX_VALUE));
+		assertEquals(Arrays.asList(3, 4, 5),
+				ShardedJpaQueryFactory.merge(partials, Comparator.<Integer>naturalOrder(), 2, 3));
+		assertEquals(Collections.emptyList(),
+				ShardedJpaQueryFactory.merge(partials, Comparator.<Integer>naturalOrder(), 7, 3));
+	}
+
+	@Test
+	void keepsTheOrderOfTheShardsForEqualResults() {
+		List<List<String>> partials = Arrays.asList(Arrays.asList("a1", "b1"), Arrays.asList("a2", "b2"));
+
+		assertEquals(Arrays.asList("a1", "a2", "b1", "b2"),
+				ShardedJpaQueryFactory.merge(partials, Comparator.comparing((String s) -> s.charAt(0)), 0, 4));
+	}
+
+	@Test
+	void mergesTheResultsOfAllTheShards() {
+		List<Department> departments = shards.getResultList(f -> {
+			CriteriaQuery query = f.createCriteriaQuery(Department.class).from(Department.class, "d");
+			return query.where(query.lessThanOrEqualTo("d.id", 3L)).orderBy(query.cb().asc(query.get("d.id")));
+		}, Comparator.comparing(Department::getId));
+
+		assertEquals(Arrays.asList(1L, 1L, 2L, 2L, 3L, 3L), ids(departments));
+	}
+
+	@Test
+	void pushesTheEndOfThePageDownToTheShards() {
+		List<Integer> limits = Collections.synchronizedList(new ArrayList<Integer>());
+
+		List<Department> page = shards.getResultPage(f -> new JpqlQuery(f.createJpqlQuery("select d from Department d").em) {
+
+			@Override
+			public Query setMaxResults(int maxResults) {
+				limits.add(maxResults);
+				return super.setMaxResults(maxResults);
+			}
+		}.newQuery("select d from Department d order by d.id", Department.class), Comparator
+				.comparing(Department::getId), 2, 3);
+
+		assertEquals(Arrays.asList(2L, 3L, 3L), ids(page));
+		assertEquals(Arrays.asList(6, 6), limits);
+	}
+
+	@Test
+	void addsTheCountsOfTheShards() {
+		assertEquals(2L * DEPARTMENTS, shards.getResultCount(f -> f.createCriteriaQuery(Department.class)
+				.from(Department.class)));
+		assertEquals(2L * DEPARTMENTS * EMPLOYEES,
+				shards.getResultCount(f -> f.createSqlQuery("select count(*) from Employee")));
+	}
+
+	@Test
+	void rejectsWhatIsNotAQuery() {
+		assertThrows(IllegalArgumentException.class,
+				() -> shards.getResultList(f -> "not a query", Comparator.naturalOrder()));
+		assertThrows(IllegalArgumentException.class,
+				() -> new ShardedJpaQueryFactory(Collections.<EntityManagerFactory>emptyList(), executor));
+		assertThrows(IllegalArgumentException.class,
+				() -> shards.getResultPage(f -> null, Comparator.naturalOrder(), 0, 10));
+	}
+
+	private static List<Long> ids(List<Department> departments) {
+		List<Long> ids = new ArrayList<Long>();
+		for (Department department : departments) {
+			ids.add(department.getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,122 @@
+package br.com.witt.jpa.query;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.witt.jpa.test.Department;
+import br.com.witt.jpa.test.JpaTestSupport;
+
+class SqlBatchTest extends JpaTestSupport {
+
+	static class DepartmentRow {
+
+		private final long id;
+		private final String name;
+
+		DepartmentRow(long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	@AfterEach
+	void restoreData() {
+		if (em.getTransaction().isActive()) {
+			em.getTransaction().rollback();
+		}
+		seed();
+	}
+
+	@Test
+	void parsesNamedAndPositionalParameters() {
+		List<String> names = new ArrayList<String>();
+
+		String sql = SqlBatch.parse("update t set a = :first, b = ? where c = ?3 and d = ? and e = :first", names);
+
+		assertEquals("update t set a = ?, b = ? where c = ? and d = ? and e = ?", sql);
+		assertEquals(Arrays.asList("first", "1", "3", "2", "first"), names);
+	}
+
+	@Test
+	void skipsLiteralsAndQuotedIdentifiers() {
+		List<String> names = new ArrayList<String>();
+
+		String sql = SqlBatch.parse("select 'a:b ?', \"c?:d\" from t where x = :x and y = 'it''s :y'", names);
+
+		assertEquals("select 'a:b ?', \"c?:d\" from t where x = ? and y = 'it''s :y'", sql);
+		assertEquals(Arrays.asList("x"), names);
+	}
+
+	@Test
+	void skipsCommentsAndCasts() {
+		List<String> names = new ArrayList<String>();
+
+		String sql = SqlBatch.parse("select a::int -- :skipped ?\nfrom t /* :also ? */ where b = :b::text and c = ?",
+				names);
+
+		assertEquals("select a::int -- :skipped ?\nfrom t /* :also ? */ where b = ?::text and c = ?", sql);
+		assertEquals(Arrays.asList("b", "1"), names);
+	}
+
+	@Test
+	void executesTheRowsInBatches() {
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("id", 101L);
+		row.put("name", "map");
+		em.getTransaction().begin();
+
+		int[] counts = new JpaQueryFactory(em)
+				.createSqlBatch("insert into Department (id, name, active) values (:id, :name, true)")
+				.setBatchSize(2)
+				.execute(Arrays.asList(row, new DepartmentRow(102L, "object"), new DepartmentRow(103L, null)));
+		em.getTransaction().commit();
+
+		assertArrayEquals(new int[] { 2, 1 }, counts);
+		assertEquals("object", em.find(Department.class, 102L).getName());
+		assertNull(em.find(Department.class, 103L).getName());
+	}
+
+	@Test
+	void bindsArraysToPositionalParameters() {
+		em.getTransaction().begin();
+
+		int[] counts = new JpaQueryFactory(em).createSqlBatch("update Department set name = ?2 where id = ?1")
+				.execute(Arrays.asList(new Object[] { 1L, "first" }, new Object[] { 2L, null }));
+		em.getTransaction().commit();
+
+		assertArrayEquals(new int[] { 2 }, counts);
+		assertEquals("first", em.find(Department.class, 1L).getName());
+		assertNull(em.find(Department.class, 2L).getName());
+		assertThrows(IllegalArgumentException.class, () -> new JpaQueryFactory(em)
+				.createSqlBatch("update Department set name = ? where id = ?").execute(Arrays.asList(new Object[] { 1L })));
+	}
+
+	@Test
+	void clearsTheEntityManagerOnlyWhenAsked() {
+		em.getTransaction().begin();
+		Department department = em.find(Department.class, 1L);
+		List<Object[]> rows = Arrays.asList(new Object[] { "x", 2L }, new Object[] { "y", 3L });
+
+		new JpaQueryFactory(em).createSqlBatch("update Department set name = ? where id = ?").setBatchSize(1)
+				.execute(rows);
+		assertTrue(em.contains(department));
+
+		new JpaQueryFactory(em).createSqlBatch("update Department set name = ? where id = ?").setBatchSize(1)
+				.setClearInterval(1).execute(rows);
+		assertFalse(em.contains(department));
+		em.getTransaction().commit();
+	}
+}
@@ -0,0 +1,57 @@
+package br.com.witt.jpa.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.OneToMany;
+
+@Entity
+public class Department {
+
+	@Id
+	private Long id;
+	private String name;
+	private Boolean active;
+	@OneToMany(mappedBy = "department")
+	private List<Employee> employees = new ArrayList<Employee>();
+
+	protected Department() {
+	}
+
+	public Department(Long id, String name, Boolean active) {
+		this.id = id;
+		this.name = name;
+		this.active = active;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Boolean getActive() {
+		return active;
+	}
+
+	public void setActive(Boolean active) {
+		this.active = active;
+	}
+
+	public List<Employee> getEmployees() {
+		return employees;
+	}
+
+	@Override
+	public String toString() {
+		return "Department " + id;
+	}
+}
@@ -0,0 +1,56 @@
+package br.com.witt.jpa.test;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+@Entity
+public class Employee {
+
+	@Id
+	private Long id;
+	private String name;
+	private Integer salary;
+	@ManyToOne(fetch = FetchType.LAZY)
+	private Department department;
+
+	protected Employee() {
+	}
+
+	public Employee(Long id, String name, Integer salary, Department department) {
+		this.id = id;
+		this.name = name;
+		this.salary = salary;
+		this.department = department;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getSalary() {
+		return salary;
+	}
+
+	public void setSalary(Integer salary) {
+		this.salary = salary;
+	}
+
+	public Department getDepartment() {
+		return department;
+	}
+
+	@Override
+	public String toString() {
+		return "Employee " + id;
+	}
+}
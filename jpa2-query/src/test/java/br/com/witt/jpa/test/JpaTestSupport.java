@@ -0,0 +1,90 @@
+package br.com.witt.jpa.test;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ * Base of the tests that run queries against the in-memory H2 database of the
+ * <code>test</code> persistence unit, which holds {@link #DEPARTMENTS}
+ * departments, with ids from 1, each one with {@link #EMPLOYEES} employees.
+ * Department <code>i</code> is named <code>dept{i % 7}</code> and is active
+ * when <code>i</code> is even; its employee <code>j</code>, from 0, has id
+ * <code>i * 100 + j</code>, is named <code>emp{j}</code> and earns
+ * <code>1000 * (j + 1) + i</code>.
+ */
+public abstract class JpaTestSupport {
+
+	public static final int DEPARTMENTS = 30;
+	public static final int EMPLOYEES = 3;
+
+	private static EntityManagerFactory emf;
+
+	protected EntityManager em;
+
+	@BeforeEach
+	void openEntityManager() {
+		em = getEntityManagerFactory().createEntityManager();
+	}
+
+	@AfterEach
+	void closeEntityManager() {
+		if (em.getTransaction().isActive()) {
+			em.getTransaction().rollback();
+		}
+		em.close();
+	}
+
+	/**
+	 * Gives the factory of the <code>test</code> persistence unit, created and
+	 * seeded on the first call.
+	 */
+	protected static synchronized EntityManagerFactory getEntityManagerFactory() {
+		if (Objects.isNull(emf)) {
+			emf = Persistence.createEntityManagerFactory("test");
+			seed();
+		}
+		return emf;
+	}
+
+	/**
+	 * Restores the seeded data, for the tests that change it.
+	 */
+	protected static void seed() {
+		inTransaction(em -> {
+			em.createQuery("delete from Employee").executeUpdate();
+			em.createQuery("delete from Department").executeUpdate();
+			for (long i = 1; i <= DEPARTMENTS; i++) {
+				Department department = new Department(i, "dept" + i % 7, i % 2 == 0);
+				em.persist(department);
+				for (int j = 0; j < EMPLOYEES; j++) {
+					em.persist(new Employee(i * 100 + j, "emp" + j, (int) (1000 * (j + 1) + i), department));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs the given work in a new entity manager, within a transaction that is
+	 * committed at the end.
+	 */
+	protected static void inTransaction(Consumer<EntityManager> work) {
+		EntityManager em = getEntityManagerFactory().createEntityManager();
+		try {
+			em.getTransaction().begin();
+			work.accept(em);
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package br.com.witt.jpa.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.UUID;
+
+import javax.sql.rowset.serial.SerialClob;
+
+import org.junit.jupiter.api.Test;
+
+class ConvertersTest {
+
+	enum Level {
+		LOW, HIGH
+	}
+
+	interface Coded {
+
+		String code();
+	}
+
+	static class Code implements Coded {
+
+		@Override
+		public String code() {
+			return "C-1";
+		}
+	}
+
+	@Test
+	void resolvesTheConverterOfAPairOfTypesOnce() {
+		assertSame(TypeConverter.getConverter(Integer.class, Long.class),
+				TypeConverter.getConverter(Integer.class, Long.class));
+	}
+
+	@Test
+	void convertsNumbers() {
+		assertEquals(Long.valueOf(3), TypeConverter.convertValue(3, Long.class));
+		assertEquals(Integer.valueOf(4), TypeConverter.convertValue(BigInteger.valueOf(4), int.class));
+		assertEquals(new BigDecimal("5"), TypeConverter.convertValue(5L, BigDecimal.class));
+		assertEquals(BigInteger.valueOf(6), TypeConverter.convertValue(new BigDecimal("6.7"), BigInteger.class));
+		assertEquals(Short.valueOf((short) 7), TypeConverter.convertValue(" 7 ", Short.class));
+	}
+
+	@Test
+	void convertsBooleansAndCharacters() {
+		assertEquals(Boolean.TRUE, TypeConverter.convertValue(1, Boolean.class));
+		assertEquals(Boolean.TRUE, TypeConverter.convertValue(1L << 32, Boolean.class));
+		assertEquals(Boolean.TRUE, TypeConverter.convertValue(new BigDecimal("0.5"), Boolean.class));
+		assertEquals(Boolean.FALSE, TypeConverter.convertValue(BigDecimal.ZERO, Boolean.class));
+		assertEquals(Boolean.FALSE, TypeConverter.convertValue("N", boolean.class));
+		assertEquals(Character.valueOf('x'), TypeConverter.convertValue("x", Character.class));
+		assertThrows(IllegalArgumentException.class, () -> TypeConverter.convertValue("maybe", Boolean.class));
+	}
+
+	@Test
+	void convertsEnumsByNameOrOrdinal() {
+		assertEquals(Level.HIGH, TypeConverter.convertValue("HIGH", Level.class));
+		assertEquals(Level.LOW, TypeConverter.convertValue(0, Level.class));
+	}
+
+	@Test
+	void rejectsOrdinalsOutOfRange() {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> TypeConverter.convertValue(2, Level.class));
+		assertTrue(e.getMessage().contains("Invalid ordinal 2"), e.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> TypeConverter.convertValue(-1L, Level.class));
+	}
+
+	@Test
+	void convertsTextualValuesToStrings() throws Exception {
+		assertEquals("42", TypeConverter.convertValue(42, String.class));
+		assertEquals("abc", TypeConverter.convertValue(new char[] { 'a', 'b', 'c' }, String.class));
+		assertEquals("text", TypeConverter.convertValue(new SerialClob("text".toCharArray()), String.class));
+	}
+
+	@Test
+	void rejectsBinaryValuesAsStrings() {
+		assertThrows(IllegalArgumentException.class, () -> TypeConverter.convertValue(new byte[] { 1 }, String.class));
+		assertThrows(IllegalArgumentException.class,
+				() -> TypeConverter.convertValue(new Object[] { "a" }, String.class));
+	}
+
+	@Test
+	void convertsTemporalValues() {
+		LocalDateTime dateTime = LocalDateTime.of(2020, 1, 2, 3, 4, 5);
+		assertEquals(dateTime, TypeConverter.convertValue(Timestamp.valueOf(dateTime), LocalDateTime.class));
+		assertEquals(LocalDate.of(2020, 1, 2), TypeConverter.convertValue("2020-01-02 03:04:05", LocalDate.class));
+		assertEquals(dateTime, TypeConverter.convertValue("2020-01-02T03:04:05", LocalDateTime.class));
+	}
+
+	@Test
+	void convertsLocalDateTimes() {
+		LocalDateTime dateTime = LocalDateTime.of(2020, 1, 2, 3, 4, 5);
+		ZonedDateTime zoned = dateTime.atZone(ZoneId.systemDefault());
+		assertSame(dateTime, TypeConverter.convertValue(dateTime, LocalDateTime.class));
+		assertEquals(zoned.toInstant(), TypeConverter.convertValue(dateTime, Instant.class));
+		assertEquals(zoned, TypeConverter.convertValue(dateTime, ZonedDateTime.class));
+		assertEquals(zoned.toOffsetDateTime(), TypeConverter.convertValue(dateTime, OffsetDateTime.class));
+		assertEquals(LocalTime.of(3, 4, 5), TypeConverter.convertValue(dateTime, LocalTime.class));
+		assertEquals(Date.from(zoned.toInstant()), TypeConverter.convertValue(dateTime, Date.class));
+		assertEquals(Timestamp.valueOf(dateTime), TypeConverter.convertValue(dateTime, Timestamp.class));
+	}
+
+	@Test
+	void convertsBytesToUuid() {
+		UUID uuid = new UUID(1, 2);
+		byte[] bytes = new byte[16];
+		bytes[7] = 1;
+		bytes[15] = 2;
+		assertEquals(uuid, TypeConverter.convertValue(bytes, UUID.class));
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> TypeConverter.convertValue(new byte[8], UUID.class));
+		assertTrue(e.getMessage().contains("8 bytes"), e.getMessage());
+	}
+
+	@Test
+	void prefersConvertersRegisteredForSupertypes() {
+		TypeConverter.registerConverter(Coded.class, String.class, Coded::code);
+
+		assertEquals("C-1", TypeConverter.convertValue(new Code(), String.class));
+	}
+
+	@Test
+	void rejectsUnknownConversions() {
+		assertThrows(IllegalArgumentException.class, () -> TypeConverter.convertValue(new Object(), Long.class));
+	}
+}
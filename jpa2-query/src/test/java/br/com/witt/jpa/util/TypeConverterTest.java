@@ -0,0 +1,180 @@
+package br.com.witt.jpa.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Transient;
+
+import org.junit.jupiter.api.Test;
+
+class TypeConverterTest {
+
+	static class Person {
+
+		static final String KIND = "person";
+
+		private final Long id;
+		private final String name;
+		private final Integer age;
+		private transient String display;
+		@Transient
+		private String nickname;
+
+		Person(Long id, String name, Integer age) {
+			this.id = id;
+			this.name = name;
+			this.age = age;
+		}
+	}
+
+	static class Mismatched {
+
+		private final Long id;
+
+		Mismatched(String id) {
+			this.id = Long.valueOf(id);
+		}
+	}
+
+	static class Digits {
+
+		private final String value;
+
+		Digits(String value) {
+			Long.parseLong(value);
+			this.value = value;
+		}
+	}
+
+	static class Counter {
+
+		private final int count;
+		private final boolean active;
+
+		Counter(int count, boolean active) {
+			this.count = count;
+			this.active = active;
+		}
+	}
+
+	static class Secret {
+
+		private final String value;
+
+		private Secret(String value) {
+			this.value = value;
+		}
+	}
+
+	@Test
+	void mapsColumnsToPersistentFieldsInDeclarationOrder() {
+		Person person = TypeConverter.convert(new Object[] { BigInteger.valueOf(7), "Ann", new BigDecimal("42") },
+				Person.class);
+
+		assertEquals(Long.valueOf(7), person.id);
+		assertEquals("Ann", person.name);
+		assertEquals(Integer.valueOf(42), person.age);
+		assertNull(person.display);
+		assertNull(person.nickname);
+	}
+
+	@Test
+	void givesThePersistentFieldsInDeclarationOrder() {
+		List<String> names = new ArrayList<String>();
+		for (Field field : TypeConverter.getResultFields(Person.class)) {
+			names.add(field.getName());
+		}
+
+		assertEquals(Arrays.asList("id", "name", "age"), names);
+		assertSame(TypeConverter.getResultFields(Person.class), TypeConverter.getResultFields(Person.class));
+		assertThrows(UnsupportedOperationException.class, () -> TypeConverter.getResultFields(Person.class).clear());
+	}
+
+	@Test
+	void reusesTheMappingPlanOfAClass() {
+		RowMapper<Person> mapper = TypeConverter.getRowMapper(Person.class);
+
+		assertSame(mapper, TypeConverter.getRowMapper(Person.class));
+		Person first = mapper.map(new Object[] { 1L, "Ann", 30 });
+		Person second = mapper.map(new Object[] { 2, "Bob", 40L });
+		assertEquals(Long.valueOf(1), first.id);
+		assertEquals(Long.valueOf(2), second.id);
+		assertEquals(Integer.valueOf(40), second.age);
+	}
+
+	@Test
+	void keepsNullValues() {
+		Person person = TypeConverter.convert(new Object[] { 1L, null, null }, Person.class);
+
+		assertNull(person.name);
+		assertNull(person.age);
+	}
+
+	@Test
+	void mapsNullToTheDefaultValueOfPrimitiveFields() {
+		Counter counter = TypeConverter.convert(new Object[] { null, null }, Counter.class);
+
+		assertEquals(0, counter.count);
+		assertFalse(counter.active);
+	}
+
+	@Test
+	void convertsColumnValuesOfAnySourceType() {
+		Converter<Object, ?> column = TypeConverter.getColumnConverter(long.class);
+
+		assertEquals(Long.valueOf(5), column.convert(5));
+		assertEquals(Long.valueOf(6), column.convert(new BigDecimal("6")));
+		assertEquals(Long.valueOf(0), column.convert(null));
+		assertNull(TypeConverter.getColumnConverter(Long.class).convert(null));
+	}
+
+	@Test
+	void rejectsRowsWithLessColumnsThanFields() {
+		RowMapper<Person> mapper = TypeConverter.getRowMapper(Person.class);
+
+		assertThrows(IllegalArgumentException.class, () -> mapper.map(new Object[] { 1L, "Ann" }));
+	}
+
+	@Test
+	void mapsThroughReflectionWhenMethodHandlesAreDisabled() {
+		RowMapper<Person> mapper = TypeConverter.getRowMapper(Person.class);
+		TypeConverter.setMethodHandlesEnabled(false);
+		try {
+			Person person = mapper.map(new Object[] { 3L, "Cid", 25 });
+
+			assertEquals(Long.valueOf(3), person.id);
+			assertEquals("Cid", person.name);
+			assertFalse(TypeConverter.isMethodHandlesEnabled());
+		} finally {
+			TypeConverter.setMethodHandlesEnabled(true);
+		}
+	}
+
+	@Test
+	void fallsBackToReflectionForInaccessibleConstructors() {
+		Secret secret = TypeConverter.convert(new Object[] { "s3cr3t" }, Secret.class);
+
+		assertEquals("s3cr3t", secret.value);
+	}
+
+	@Test
+	void doesNotWrapTheExceptionsOfTheConstructor() {
+		assertThrows(NumberFormatException.class,
+				() -> TypeConverter.convert(new Object[] { "x" }, Digits.class));
+	}
+
+	@Test
+	void failsWhenNoConstructorMatchesTheFields() {
+		assertThrows(RuntimeException.class, () -> TypeConverter.getRowMapper(Mismatched.class));
+	}
+}